@@ -0,0 +1,176 @@
+package de.lmu.ifi.dbs.elki.benchmark;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
+import de.lmu.ifi.dbs.elki.index.IndexFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Generated data sets for benchmarks.
+ *
+ * All data is generated from a fixed seed, so that repeated benchmark runs use
+ * the same data.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public final class BenchmarkData {
+  /**
+   * Default random seed.
+   */
+  public static final long SEED = 0L;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private BenchmarkData() {
+    // Do not instantiate.
+  }
+
+  /**
+   * Generate uniform random vectors in the unit cube.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] uniformVectors(int size, int dim, long seed) {
+    Random rnd = new Random(seed);
+    double[][] data = new double[size][dim];
+    for(int i = 0; i < size; i++) {
+      final double[] row = data[i];
+      for(int d = 0; d < dim; d++) {
+        row[d] = rnd.nextDouble();
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate clustered random vectors, as Gaussian blobs around uniform
+   * centers. This is more realistic for index structures than uniform data.
+   *
+   * @param size Number of vectors
+   * @param dim Dimensionality
+   * @param clusters Number of clusters
+   * @param seed Random seed
+   * @return Data
+   */
+  public static double[][] clusteredVectors(int size, int dim, int clusters, long seed) {
+    Random rnd = new Random(seed);
+    double[][] centers = uniformVectors(clusters, dim, rnd.nextLong());
+    double[][] data = new double[size][dim];
+    for(int i = 0; i < size; i++) {
+      final double[] row = data[i], center = centers[rnd.nextInt(clusters)];
+      for(int d = 0; d < dim; d++) {
+        row[d] = center[d] + rnd.nextGaussian() * .05;
+      }
+    }
+    return data;
+  }
+
+  /**
+   * Generate random integer identifiers.
+   *
+   * @param size Number of values
+   * @param range Value range
+   * @param seed Random seed
+   * @return Values
+   */
+  public static int[] randomIntegers(int size, int range, long seed) {
+    Random rnd = new Random(seed);
+    int[] data = new int[size];
+    for(int i = 0; i < size; i++) {
+      data[i] = rnd.nextInt(range);
+    }
+    return data;
+  }
+
+  /**
+   * Format vectors as CSV text.
+   *
+   * @param data Data
+   * @param labels Add a label column
+   * @return CSV data
+   */
+  public static byte[] toCSV(double[][] data, boolean labels) {
+    StringBuilder buf = new StringBuilder(data.length * (data.length > 0 ? data[0].length : 1) * 20);
+    for(int i = 0; i < data.length; i++) {
+      final double[] row = data[i];
+      for(int d = 0; d < row.length; d++) {
+        if(d > 0) {
+          buf.append(',');
+        }
+        buf.append(row[d]);
+      }
+      if(labels) {
+        buf.append(",label").append(i % 10);
+      }
+      buf.append('\n');
+    }
+    return buf.toString().getBytes();
+  }
+
+  /**
+   * Build a database, optionally with an index.
+   *
+   * @param data Data
+   * @param indexclass Index factory class, may be {@code null}
+   * @param params Index parameters
+   * @param flat Use flat vector storage
+   * @return Database
+   */
+  public static Database makeDatabase(double[][] data, Class<?> indexclass, ListParameterization params, boolean flat) {
+    List<IndexFactory<?, ?>> factories = null;
+    if(indexclass != null) {
+      IndexFactory<?, ?> factory = (IndexFactory<?, ?>) ClassGenericsUtil.parameterizeOrAbort(indexclass, params);
+      factories = Collections.<IndexFactory<?, ?>> singletonList(factory);
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), factories, false, flat);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Get the vector relation of a database.
+   *
+   * @param db Database
+   * @return Relation
+   */
+  public static Relation<DoubleVector> getRelation(Database db) {
+    return db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+  }
+}
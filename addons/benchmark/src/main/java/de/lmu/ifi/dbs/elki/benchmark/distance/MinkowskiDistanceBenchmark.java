@@ -0,0 +1,141 @@
+package de.lmu.ifi.dbs.elki.benchmark.distance;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Benchmark the Minkowski distance functions, computing the distances of one
+ * query vector to all data vectors.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MinkowskiDistanceBenchmark {
+  /**
+   * Number of data vectors.
+   */
+  @Param({ "10000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10", "100" })
+  public int dim;
+
+  /**
+   * Distance function to benchmark.
+   */
+  @Param({ "euclidean", "squaredeuclidean", "manhattan", "maximum", "lp3" })
+  public String distance;
+
+  /**
+   * Data vectors.
+   */
+  private DoubleVector[] data;
+
+  /**
+   * Query vector.
+   */
+  private DoubleVector query;
+
+  /**
+   * Distance function.
+   */
+  private PrimitiveDistanceFunction<? super DoubleVector> df;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    double[][] raw = BenchmarkData.uniformVectors(size + 1, dim, BenchmarkData.SEED);
+    data = new DoubleVector[size];
+    for(int i = 0; i < size; i++) {
+      data[i] = new DoubleVector(raw[i]);
+    }
+    query = new DoubleVector(raw[size]);
+    switch(distance){
+    case "euclidean":
+      df = EuclideanDistanceFunction.STATIC;
+      break;
+    case "squaredeuclidean":
+      df = SquaredEuclideanDistanceFunction.STATIC;
+      break;
+    case "manhattan":
+      df = ManhattanDistanceFunction.STATIC;
+      break;
+    case "maximum":
+      df = MaximumDistanceFunction.STATIC;
+      break;
+    case "lp3":
+      df = new LPNormDistanceFunction(3.);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown distance: " + distance);
+    }
+  }
+
+  /**
+   * Compute all distances to the query vector.
+   *
+   * @return Sum of distances, to avoid dead code elimination.
+   */
+  @Benchmark
+  public double distances() {
+    double sum = 0.;
+    for(DoubleVector v : data) {
+      sum += df.distance(query, v);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,171 @@
+package de.lmu.ifi.dbs.elki.benchmark.heap;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMaxHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleMinHeap;
+
+/**
+ * Benchmark the heap implementations: full sorting via heaps, and bounded
+ * top-k selection as used by kNN search.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class HeapBenchmark {
+  /**
+   * Number of values.
+   */
+  @Param({ "1000", "100000" })
+  public int size;
+
+  /**
+   * Number of neighbors, for bounded heaps.
+   */
+  @Param({ "10", "100" })
+  public int k;
+
+  /**
+   * Random keys.
+   */
+  private double[] keys;
+
+  /**
+   * Boxed keys.
+   */
+  private Double[] boxed;
+
+  /**
+   * DBIDs used as values.
+   */
+  private DBIDRange ids;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    keys = BenchmarkData.uniformVectors(1, size, BenchmarkData.SEED)[0];
+    boxed = new Double[size];
+    for(int i = 0; i < size; i++) {
+      boxed[i] = keys[i];
+    }
+    ids = DBIDUtil.generateStaticDBIDRange(size);
+  }
+
+  /**
+   * Heap sort using {@link DoubleMinHeap}.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double doubleMinHeapSort() {
+    DoubleMinHeap heap = new DoubleMinHeap(size);
+    for(double key : keys) {
+      heap.add(key);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+
+  /**
+   * Heap sort using {@link ComparableMinHeap}.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double comparableMinHeapSort() {
+    ComparableMinHeap<Double> heap = new ComparableMinHeap<>(size);
+    for(Double key : boxed) {
+      heap.add(key);
+    }
+    double sum = 0.;
+    while(!heap.isEmpty()) {
+      sum += heap.poll();
+    }
+    return sum;
+  }
+
+  /**
+   * Top-k selection using a bounded {@link DoubleIntegerMaxHeap}.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double doubleIntegerTopK() {
+    DoubleIntegerMaxHeap heap = new DoubleIntegerMaxHeap(k);
+    for(int i = 0; i < size; i++) {
+      heap.add(keys[i], i, k);
+    }
+    return heap.peekKey();
+  }
+
+  /**
+   * Top-k selection using a {@link KNNHeap} (usually the
+   * {@code DoubleIntegerDBIDKNNHeap}), including the final kNN list.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double knnHeap() {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    double max = Double.POSITIVE_INFINITY;
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      if(keys[i] <= max) {
+        max = heap.insert(keys[i], it);
+      }
+    }
+    return heap.toKNNList().getKNNDistance();
+  }
+}
@@ -0,0 +1,150 @@
+package de.lmu.ifi.dbs.elki.benchmark.ids;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.HashSetModifiableDBIDs;
+
+/**
+ * Benchmark the set operations of {@link DBIDUtil}, on hash sets and arrays.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DBIDSetOperationsBenchmark {
+  /**
+   * Size of each set.
+   */
+  @Param({ "1000", "100000" })
+  public int size;
+
+  /**
+   * Set representation: "hash" or "array".
+   */
+  @Param({ "hash", "array" })
+  public String type;
+
+  /**
+   * Sets to combine.
+   */
+  private DBIDs first, second;
+
+  /**
+   * Generate the sets, as random samples of a DBID range twice as large.
+   */
+  @Setup
+  public void setup() {
+    DBIDRange range = DBIDUtil.generateStaticDBIDRange(size << 1);
+    first = sample(range, BenchmarkData.randomIntegers(size, size << 1, BenchmarkData.SEED));
+    second = sample(range, BenchmarkData.randomIntegers(size, size << 1, BenchmarkData.SEED + 1));
+  }
+
+  /**
+   * Build a DBID set from offsets.
+   *
+   * @param range DBID range
+   * @param offsets Offsets
+   * @return DBIDs
+   */
+  private DBIDs sample(DBIDRange range, int[] offsets) {
+    DBIDArrayIter it = range.iter();
+    if("hash".equals(type)) {
+      HashSetModifiableDBIDs set = DBIDUtil.newHashSet(offsets.length);
+      for(int off : offsets) {
+        set.add(it.seek(off));
+      }
+      return set;
+    }
+    ArrayModifiableDBIDs arr = DBIDUtil.newArray(offsets.length);
+    for(int off : offsets) {
+      arr.add(it.seek(off));
+    }
+    return arr;
+  }
+
+  /**
+   * Benchmark the union.
+   *
+   * @return Result size
+   */
+  @Benchmark
+  public int union() {
+    return DBIDUtil.union(first, second).size();
+  }
+
+  /**
+   * Benchmark the intersection.
+   *
+   * @return Result size
+   */
+  @Benchmark
+  public int intersection() {
+    return DBIDUtil.intersection(first, second).size();
+  }
+
+  /**
+   * Benchmark the intersection size.
+   *
+   * @return Result size
+   */
+  @Benchmark
+  public int intersectionSize() {
+    return DBIDUtil.intersectionSize(first, second);
+  }
+
+  /**
+   * Benchmark the difference.
+   *
+   * @return Result size
+   */
+  @Benchmark
+  public int difference() {
+    return DBIDUtil.difference(first, second).size();
+  }
+}
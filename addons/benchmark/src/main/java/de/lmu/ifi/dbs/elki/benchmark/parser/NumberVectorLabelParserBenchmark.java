@@ -0,0 +1,114 @@
+package de.lmu.ifi.dbs.elki.benchmark.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+
+/**
+ * Benchmark {@link NumberVectorLabelParser} on in-memory CSV data.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class NumberVectorLabelParserBenchmark {
+  /**
+   * Number of rows.
+   */
+  @Param({ "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10", "100" })
+  public int dim;
+
+  /**
+   * Include a label column.
+   */
+  @Param({ "true" })
+  public boolean labels;
+
+  /**
+   * CSV data.
+   */
+  private byte[] csv;
+
+  /**
+   * Generate the data.
+   */
+  @Setup
+  public void setup() {
+    csv = BenchmarkData.toCSV(BenchmarkData.uniformVectors(size, dim, BenchmarkData.SEED), labels);
+  }
+
+  /**
+   * Parse into double vectors.
+   *
+   * @return Number of objects parsed
+   */
+  @Benchmark
+  public int parseDouble() {
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    MultipleObjectsBundle bundle = parser.parse(new ByteArrayInputStream(csv));
+    return bundle.dataLength();
+  }
+
+  /**
+   * Parse into float vectors.
+   *
+   * @return Number of objects parsed
+   */
+  @Benchmark
+  public int parseFloat() {
+    NumberVectorLabelParser<FloatVector> parser = new NumberVectorLabelParser<>(FloatVector.FACTORY);
+    MultipleObjectsBundle bundle = parser.parse(new ByteArrayInputStream(csv));
+    return bundle.dataLength();
+  }
+}
@@ -0,0 +1,203 @@
+package de.lmu.ifi.dbs.elki.benchmark.query;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.AbstractCoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.covertree.CoverTree;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.AbstractMTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.metrical.mtreevariants.mtree.MTreeFactory;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.MinimalisticMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.kd.SmallMemoryKDTree;
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeFactory;
+import de.lmu.ifi.dbs.elki.index.vafile.VAFile;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Benchmark kNN and range queries (Euclidean distance) on each index type.
+ *
+ * Each invocation runs a batch of queries, for a sample of the data objects.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class IndexQueryBenchmark {
+  /**
+   * Number of data vectors.
+   */
+  @Param({ "100000" })
+  public int size;
+
+  /**
+   * Dimensionality.
+   */
+  @Param({ "2", "10" })
+  public int dim;
+
+  /**
+   * Index to use.
+   */
+  @Param({ "linear", "flat", "rstar", "mtree", "covertree", "kdtree", "smallkdtree", "vafile" })
+  public String index;
+
+  /**
+   * Number of neighbors.
+   */
+  @Param({ "10" })
+  public int k;
+
+  /**
+   * Number of queries per invocation.
+   */
+  @Param({ "100" })
+  public int queries;
+
+  /**
+   * Query IDs.
+   */
+  private ArrayDBIDs qids;
+
+  /**
+   * kNN query.
+   */
+  private KNNQuery<DoubleVector> knnq;
+
+  /**
+   * Range query.
+   */
+  private RangeQuery<DoubleVector> rangeq;
+
+  /**
+   * Query radius, chosen to return about k objects on average.
+   */
+  private double radius;
+
+  /**
+   * Generate the data and build the index.
+   */
+  @Setup
+  public void setup() {
+    double[][] data = BenchmarkData.clusteredVectors(size, dim, 20, BenchmarkData.SEED);
+    ListParameterization params = new ListParameterization();
+    Class<?> cls = null;
+    switch(index){
+    case "linear":
+    case "flat":
+      break;
+    case "rstar":
+      cls = RStarTreeFactory.class;
+      break;
+    case "mtree":
+      cls = MTreeFactory.class;
+      params.addParameter(AbstractMTreeFactory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+      break;
+    case "covertree":
+      cls = CoverTree.Factory.class;
+      params.addParameter(AbstractCoverTree.Factory.Parameterizer.DISTANCE_FUNCTION_ID, EuclideanDistanceFunction.class);
+      break;
+    case "kdtree":
+      cls = MinimalisticMemoryKDTree.Factory.class;
+      break;
+    case "smallkdtree":
+      cls = SmallMemoryKDTree.Factory.class;
+      break;
+    case "vafile":
+      cls = VAFile.Factory.class;
+      params.addParameter(VAFile.Factory.PARTITIONS_ID, 8);
+      break;
+    default:
+      throw new IllegalArgumentException("Unknown index: " + index);
+    }
+    Database db = BenchmarkData.makeDatabase(data, cls, params, "flat".equals(index));
+    Relation<DoubleVector> rel = BenchmarkData.getRelation(db);
+    DistanceQuery<DoubleVector> dq = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(dq, k);
+    rangeq = db.getRangeQuery(dq);
+    qids = DBIDUtil.ensureArray(DBIDUtil.randomSample(rel.getDBIDs(), queries, BenchmarkData.SEED));
+    // Choose the radius as average k-distance of the queries.
+    double sum = 0.;
+    for(DBIDArrayIter it = qids.iter(); it.valid(); it.advance()) {
+      sum += knnq.getKNNForDBID(it, k).getKNNDistance();
+    }
+    radius = sum / qids.size();
+  }
+
+  /**
+   * Run kNN queries.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public double knn() {
+    double sum = 0.;
+    for(DBIDArrayIter it = qids.iter(); it.valid(); it.advance()) {
+      sum += knnq.getKNNForDBID(it, k).getKNNDistance();
+    }
+    return sum;
+  }
+
+  /**
+   * Run range queries.
+   *
+   * @return Checksum
+   */
+  @Benchmark
+  public int range() {
+    int sum = 0;
+    for(DBIDArrayIter it = qids.iter(); it.valid(); it.advance()) {
+      sum += rangeq.getRangeForDBID(it, radius).size();
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,111 @@
+package de.lmu.ifi.dbs.elki.benchmark.utilities;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.lmu.ifi.dbs.elki.benchmark.BenchmarkData;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.QuickSelect;
+
+/**
+ * Benchmark {@link QuickSelect}, compared to sorting.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class QuickSelectBenchmark {
+  /**
+   * Number of values.
+   */
+  @Param({ "1000", "1000000" })
+  public int size;
+
+  /**
+   * Original data.
+   */
+  private double[] data;
+
+  /**
+   * Working copy (QuickSelect modifies the array).
+   */
+  private double[] work;
+
+  /**
+   * Generate the data.
+   */
+  @Setup(Level.Trial)
+  public void setup() {
+    data = BenchmarkData.uniformVectors(1, size, BenchmarkData.SEED)[0];
+    work = new double[size];
+  }
+
+  /**
+   * Restore the unsorted data.
+   */
+  @Setup(Level.Invocation)
+  public void reset() {
+    System.arraycopy(data, 0, work, 0, size);
+  }
+
+  /**
+   * Median using QuickSelect.
+   *
+   * @return Median
+   */
+  @Benchmark
+  public double quickSelectMedian() {
+    return QuickSelect.median(work);
+  }
+
+  /**
+   * Median by sorting, as baseline.
+   *
+   * @return Median
+   */
+  @Benchmark
+  public double sortMedian() {
+    Arrays.sort(work);
+    return work[size >> 1];
+  }
+}
@@ -635,6 +635,18 @@ public class Logging {
     }
   }
 
+  /**
+   * Increment a progress by a given amount (unless {@code null}).
+   * 
+   * @param prog Progress to increment, may be {@code null}.
+   * @param increment Number of additional items processed
+   */
+  public void incrementProcessed(AbstractProgress prog, int increment) {
+    if(prog != null) {
+      prog.incrementProcessed(increment, this);
+    }
+  }
+
   /**
    * Increment a progress (unless {@code null}).
    * 
@@ -135,6 +135,19 @@ public abstract class AbstractProgress implements Progress {
     }
   }
 
+  /**
+   * Increment the processed counter by a given amount.
+   * 
+   * @param increment Number of additional items processed
+   * @param logger Logger to report to.
+   */
+  public void incrementProcessed(int increment, Logging logger) {
+    this.processed.addAndGet(increment);
+    if(testLoggingRate()) {
+      logger.progress(this);
+    }
+  }
+
   /**
    * Logging rate control.
    * 
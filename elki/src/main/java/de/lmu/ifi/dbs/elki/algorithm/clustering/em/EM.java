@@ -24,6 +24,7 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.em;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
@@ -117,7 +118,10 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
    */
   private boolean soft;
 
-  private static final double MIN_LOGLIKELIHOOD = -100000;
+  /**
+   * Minimum log-likelihood of a single object, to avoid infinite values.
+   */
+  public static final double MIN_LOGLIKELIHOOD = -100000;
 
   /**
    * Soft assignment result type.
@@ -278,9 +282,9 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
     final int k = models.size();
     double emSum = 0.;
 
+    double[] probabilities = new double[k];
     for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
       NumberVector vec = relation.get(iditer);
-      double[] probabilities = new double[k];
       {
         int i = 0;
         for(EMClusterModel<?> m : models) {
@@ -295,14 +299,21 @@ public class EM<V extends NumberVector, M extends MeanModel> extends AbstractAlg
       double logP = Math.max(Math.log(priorProbability), MIN_LOGLIKELIHOOD);
       emSum += (logP == logP) ? logP : 0.; /* avoid NaN */
 
-      double[] clusterProbabilities = new double[k];
+      // Reuse the previous array, to avoid reallocations in every iteration.
+      double[] clusterProbabilities = probClusterIGivenX.get(iditer);
+      if(clusterProbabilities == null || clusterProbabilities.length != k) {
+        clusterProbabilities = new double[k];
+        probClusterIGivenX.put(iditer, clusterProbabilities);
+      }
       if(priorProbability > 0.) {
         for(int i = 0; i < k; i++) {
           // do not divide by zero!
           clusterProbabilities[i] = probabilities[i] / priorProbability;
         }
       }
-      probClusterIGivenX.put(iditer, clusterProbabilities);
+      else {
+        Arrays.fill(clusterProbabilities, 0.);
+      }
     }
 
     return emSum / relation.size();
@@ -0,0 +1,364 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.em.EM;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Processor for the combined E-step and M-step sums of Gaussian mixture
+ * modeling.
+ *
+ * For every object, the log-densities of all clusters are computed from the
+ * Cholesky decompositions of the covariance matrixes, normalized with the
+ * log-sum-exp trick, and stored in a single {@code n*k} block of
+ * responsibilities. At the same time, each instance accumulates the weighted
+ * sums needed for the next M-step, relative to the current means for
+ * numerical stability. The instances are merged in {@link #cleanup}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has Instance
+ */
+public class EMProcessor<V extends NumberVector> implements Processor {
+  /**
+   * Data relation.
+   */
+  Relation<V> relation;
+
+  /**
+   * Offsets of the objects into the responsibility block.
+   */
+  IntegerDataStore offsets;
+
+  /**
+   * Responsibilities, in one {@code n*k} block.
+   */
+  double[] resp;
+
+  /**
+   * Number of clusters, and dimensionality.
+   */
+  int k, dim;
+
+  /**
+   * Current cluster means.
+   */
+  double[][] means;
+
+  /**
+   * Lower triangular Cholesky factors of the covariance matrixes.
+   */
+  double[][][] chol;
+
+  /**
+   * Log of weight and normalization of each cluster.
+   */
+  double[] lognorm;
+
+  /**
+   * Sum of responsibilities per cluster.
+   */
+  double[] wsum;
+
+  /**
+   * Weighted sum of deviations from the current means.
+   */
+  double[][] sums;
+
+  /**
+   * Weighted scatter matrixes, relative to the current means.
+   */
+  double[][][] scatter;
+
+  /**
+   * Log-likelihood sum.
+   */
+  double loglikelihood;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param offsets Offsets into the responsibility block
+   * @param resp Responsibility block, of size {@code n*k}
+   * @param k Number of clusters
+   * @param dim Dimensionality
+   */
+  public EMProcessor(Relation<V> relation, IntegerDataStore offsets, double[] resp, int k, int dim) {
+    super();
+    this.relation = relation;
+    this.offsets = offsets;
+    this.resp = resp;
+    this.k = k;
+    this.dim = dim;
+    this.wsum = new double[k];
+    this.sums = new double[k][dim];
+    this.scatter = new double[k][dim][dim];
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Cluster means
+   * @param chol Cholesky factors of the covariance matrixes
+   * @param lognorm Log of weight and normalization of each cluster
+   */
+  public void nextIteration(double[][] means, double[][][] chol, double[] lognorm) {
+    this.means = means;
+    this.chol = chol;
+    this.lognorm = lognorm;
+    Arrays.fill(wsum, 0.);
+    for(int c = 0; c < k; c++) {
+      Arrays.fill(sums[c], 0.);
+      for(int i = 0; i < dim; i++) {
+        Arrays.fill(scatter[c][i], 0.);
+      }
+    }
+    loglikelihood = 0.;
+  }
+
+  /**
+   * Get the log-likelihood sum of the last iteration.
+   *
+   * @return Log-likelihood
+   */
+  public double getLogLikelihood() {
+    return loglikelihood;
+  }
+
+  /**
+   * Get the responsibility sums of the last iteration.
+   *
+   * @return Responsibility sum per cluster
+   */
+  public double[] getWeightSums() {
+    return wsum;
+  }
+
+  /**
+   * Get the weighted sums of deviations from the means of the last iteration.
+   *
+   * @return Weighted deviation sums
+   */
+  public double[][] getSums() {
+    return sums;
+  }
+
+  /**
+   * Get the weighted scatter matrixes of the last iteration. Only the upper
+   * triangle is filled.
+   *
+   * @return Scatter matrixes
+   */
+  public double[][][] getScatter() {
+    return scatter;
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    @SuppressWarnings("unchecked")
+    Instance<V> instance = (Instance<V>) inst;
+    synchronized(this) {
+      loglikelihood += instance.loglikelihood;
+      for(int c = 0; c < k; c++) {
+        if(instance.wsum[c] == 0.) {
+          continue;
+        }
+        wsum[c] += instance.wsum[c];
+        final double[] s = sums[c], is = instance.sums[c];
+        for(int i = 0; i < dim; i++) {
+          s[i] += is[i];
+          final double[] row = scatter[c][i], irow = instance.scatter[c][i];
+          for(int j = i; j < dim; j++) {
+            row[j] += irow[j];
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   */
+  public static class Instance<V extends NumberVector> implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    private Relation<V> relation;
+
+    /**
+     * Offsets into the responsibility block.
+     */
+    private IntegerDataStore offsets;
+
+    /**
+     * Responsibility block.
+     */
+    private double[] resp;
+
+    /**
+     * Current model parameters.
+     */
+    private double[][] means;
+
+    /**
+     * Cholesky factors.
+     */
+    private double[][][] chol;
+
+    /**
+     * Log normalization.
+     */
+    private double[] lognorm;
+
+    /**
+     * Buffers for deviations from the means.
+     */
+    private double[][] diff;
+
+    /**
+     * Buffer for the forward substitution.
+     */
+    private double[] y;
+
+    /**
+     * Buffer for log-densities.
+     */
+    private double[] logp;
+
+    /**
+     * Local sums.
+     */
+    private double[] wsum;
+
+    /**
+     * Local weighted deviation sums.
+     */
+    private double[][] sums;
+
+    /**
+     * Local scatter matrixes.
+     */
+    private double[][][] scatter;
+
+    /**
+     * Local log-likelihood.
+     */
+    private double loglikelihood = 0.;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    public Instance(EMProcessor<V> parent) {
+      super();
+      this.relation = parent.relation;
+      this.offsets = parent.offsets;
+      this.resp = parent.resp;
+      this.means = parent.means;
+      this.chol = parent.chol;
+      this.lognorm = parent.lognorm;
+      final int k = parent.k, dim = parent.dim;
+      this.diff = new double[k][dim];
+      this.y = new double[dim];
+      this.logp = new double[k];
+      this.wsum = new double[k];
+      this.sums = new double[k][dim];
+      this.scatter = new double[k][dim][dim];
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final V vec = relation.get(id);
+      final int k = means.length, dim = y.length;
+      double max = Double.NEGATIVE_INFINITY;
+      for(int c = 0; c < k; c++) {
+        final double[] mean = means[c], d = diff[c];
+        final double[][] l = chol[c];
+        // Solve L y = (x - mean) by forward substitution:
+        double maha = 0.;
+        for(int i = 0; i < dim; i++) {
+          d[i] = vec.doubleValue(i) - mean[i];
+          final double[] li = l[i];
+          double s = d[i];
+          for(int j = 0; j < i; j++) {
+            s -= li[j] * y[j];
+          }
+          y[i] = s / li[i];
+          maha += y[i] * y[i];
+        }
+        logp[c] = lognorm[c] - .5 * maha;
+        max = logp[c] > max ? logp[c] : max;
+      }
+      final int off = offsets.intValue(id) * k;
+      if(max == Double.NEGATIVE_INFINITY) {
+        Arrays.fill(resp, off, off + k, 0.);
+        loglikelihood += EM.MIN_LOGLIKELIHOOD;
+        return;
+      }
+      // Log-sum-exp normalization:
+      double sum = 0.;
+      for(int c = 0; c < k; c++) {
+        sum += Math.exp(logp[c] - max);
+      }
+      final double logsum = max + Math.log(sum);
+      loglikelihood += logsum > EM.MIN_LOGLIKELIHOOD ? logsum : EM.MIN_LOGLIKELIHOOD;
+      for(int c = 0; c < k; c++) {
+        final double r = Math.exp(logp[c] - logsum);
+        resp[off + c] = r;
+        if(!(r > 0.)) {
+          continue;
+        }
+        wsum[c] += r;
+        final double[] d = diff[c], s = sums[c];
+        final double[][] sc = scatter[c];
+        for(int i = 0; i < dim; i++) {
+          final double rd = r * d[i];
+          s[i] += rd;
+          final double[] row = sc[i];
+          for(int j = i; j < dim; j++) {
+            row[j] += rd * d[j];
+          }
+        }
+      }
+    }
+  }
+}
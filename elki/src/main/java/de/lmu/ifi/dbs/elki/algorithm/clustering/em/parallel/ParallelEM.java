@@ -0,0 +1,399 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.em.AbstractEMModelFactory;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.em.EM;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyGeneratedInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.EMModel;
+import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.math.MathUtil;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.CholeskyDecomposition;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Matrix;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Parallel EM clustering with multivariate Gaussian models (full covariance
+ * matrixes, {@code 'VVV'} in Mclust).
+ *
+ * The E-step runs in parallel, and accumulates the sums for the following
+ * M-step in per-thread buffers. Densities are evaluated in log space using the
+ * Cholesky decomposition of the covariance matrixes, and the responsibilities
+ * are kept in a single primitive {@code n*k} array, so no memory is allocated
+ * per object and iteration.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has EMProcessor
+ *
+ * @param <V> vector type to analyze
+ */
+public class ParallelEM<V extends NumberVector> extends AbstractAlgorithm<Clustering<EMModel>> implements ClusteringAlgorithm<Clustering<EMModel>> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelEM.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = ParallelEM.class.getName();
+
+  /**
+   * Number of clusters
+   */
+  private int k;
+
+  /**
+   * Delta parameter
+   */
+  private double delta;
+
+  /**
+   * Initialization of the cluster centers.
+   */
+  private KMeansInitialization<? super V> initializer;
+
+  /**
+   * Maximum number of iterations to allow
+   */
+  private int maxiter;
+
+  /**
+   * Retain soft assignments.
+   */
+  private boolean soft;
+
+  /**
+   * Constructor.
+   *
+   * @param k k parameter
+   * @param delta delta parameter
+   * @param initializer Cluster center initialization
+   * @param maxiter Maximum number of iterations
+   * @param soft Include soft assignments
+   */
+  public ParallelEM(int k, double delta, KMeansInitialization<? super V> initializer, int maxiter, boolean soft) {
+    super();
+    this.k = k;
+    this.delta = delta;
+    this.initializer = initializer;
+    this.maxiter = maxiter;
+    this.soft = soft;
+  }
+
+  /**
+   * Performs the EM clustering algorithm on the given database.
+   *
+   * @param database Database
+   * @param relation Relation
+   * @return Result
+   */
+  public Clustering<EMModel> run(Database database, Relation<V> relation) {
+    if(relation.size() == 0) {
+      throw new IllegalArgumentException("database empty: must contain elements");
+    }
+    final int dim = RelationUtil.dimensionality(relation);
+    final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int n = ids.size();
+
+    // Initial models: unit covariance, uniform weights.
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, SquaredEuclideanDistanceFunction.STATIC);
+    double[][][] covs = new double[k][][];
+    double[][][] chol = new double[k][][];
+    double[] lognorm = new double[k];
+    final double logtwopi = dim * Math.log(MathUtil.TWOPI);
+    for(int c = 0; c < k; c++) {
+      covs[c] = Matrix.identity(dim, dim).getArrayRef();
+      chol[c] = Matrix.identity(dim, dim).getArrayRef();
+      lognorm[c] = Math.log(1. / k) - .5 * logtwopi;
+    }
+
+    // Responsibilities, in a single block.
+    if((long) n * k > Integer.MAX_VALUE - 8) {
+      throw new AbortException("Too many responsibilities for a single array: " + n + " * " + k);
+    }
+    WritableIntegerDataStore offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      offsets.putInt(it, it.getOffset());
+    }
+    double[] resp = new double[n * k];
+    EMProcessor<V> proc = new EMProcessor<>(relation, offsets, resp, k, dim);
+
+    proc.nextIteration(means, chol, lognorm);
+    ParallelExecutor.run(ids, proc);
+    double emNew = proc.getLogLikelihood() / n;
+    if(LOG.isVerbose()) {
+      LOG.verbose("iteration " + 0 + " - expectation value: " + emNew);
+    }
+    int it = 1;
+    for(; it <= maxiter || maxiter < 0; it++) {
+      final double emOld = emNew;
+      maximizationStep(proc, n, means, covs, chol, lognorm);
+      proc.nextIteration(means, chol, lognorm);
+      ParallelExecutor.run(ids, proc);
+      emNew = proc.getLogLikelihood() / n;
+      if(LOG.isVerbose()) {
+        LOG.verbose("iteration " + it + " - expectation value: " + emNew);
+      }
+      if(Math.abs(emOld - emNew) <= delta || emOld > emNew) {
+        break;
+      }
+    }
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", it));
+      LOG.statistics(new DoubleStatistic(KEY + ".loglikelihood", emNew));
+    }
+
+    // Provide a hard clustering
+    List<ModifiableDBIDs> hardClusters = new ArrayList<>(k);
+    for(int c = 0; c < k; c++) {
+      hardClusters.add(DBIDUtil.newArray());
+    }
+    for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      final int off = iter.getOffset() * k;
+      int maxIndex = 0;
+      double currentMax = 0.;
+      for(int c = 0; c < k; c++) {
+        if(resp[off + c] > currentMax) {
+          maxIndex = c;
+          currentMax = resp[off + c];
+        }
+      }
+      hardClusters.get(maxIndex).add(iter);
+    }
+    Clustering<EMModel> result = new Clustering<>("EM Clustering", "em-clustering");
+    for(int c = 0; c < k; c++) {
+      result.addToplevelCluster(new Cluster<>(hardClusters.get(c), new EMModel(means[c], new Matrix(covs[c]))));
+    }
+    if(soft) {
+      WritableDataStore<double[]> probClusterIGivenX = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB | DataStoreFactory.HINT_SORTED, double[].class);
+      for(DBIDArrayIter iter = ids.iter(); iter.valid(); iter.advance()) {
+        final int off = iter.getOffset() * k;
+        probClusterIGivenX.put(iter, Arrays.copyOfRange(resp, off, off + k));
+      }
+      result.addChildResult(new MaterializedRelation<>("cluster assignments", "em-soft-score", EM.SOFT_TYPE, probClusterIGivenX, ids));
+    }
+    offsets.destroy();
+    return result;
+  }
+
+  /**
+   * Compute the new models from the sums of the last E-step.
+   *
+   * @param proc Processor with the sums
+   * @param n Number of objects
+   * @param means Cluster means, will be updated
+   * @param covs Covariance matrixes, will be updated
+   * @param chol Cholesky factors, will be updated
+   * @param lognorm Log normalization factors, will be updated
+   */
+  private void maximizationStep(EMProcessor<V> proc, int n, double[][] means, double[][][] covs, double[][][] chol, double[] lognorm) {
+    final double[] wsum = proc.getWeightSums();
+    final double[][] sums = proc.getSums();
+    final double[][][] scatter = proc.getScatter();
+    final int dim = means[0].length;
+    final double logtwopi = dim * Math.log(MathUtil.TWOPI);
+    for(int c = 0; c < k; c++) {
+      final double w = wsum[c];
+      if(w > Double.MIN_NORMAL) {
+        final double[] mean = means[c].clone(), dm = sums[c].clone();
+        final double[][] cov = new double[dim][dim], sc = scatter[c];
+        for(int i = 0; i < dim; i++) {
+          dm[i] /= w;
+          mean[i] += dm[i];
+        }
+        // Scatter relative to the old mean, corrected by the mean shift:
+        for(int i = 0; i < dim; i++) {
+          for(int j = i; j < dim; j++) {
+            cov[i][j] = cov[j][i] = sc[i][j] / w - dm[i] * dm[j];
+          }
+        }
+        means[c] = mean;
+        covs[c] = cov;
+      }
+      CholeskyDecomposition chd = new CholeskyDecomposition(new Matrix(covs[c]));
+      if(!chd.isSPD()) {
+        // Add a small value to the diagonal
+        for(int i = 0; i < dim; i++) {
+          covs[c][i][i] += Matrix.SINGULARITY_CHEAT;
+        }
+        chd = new CholeskyDecomposition(new Matrix(covs[c]));
+      }
+      double[][] l = chd.getL().getArrayRef();
+      double logdet = 0.;
+      for(int i = 0; i < dim; i++) {
+        logdet += Math.log(l[i][i]);
+      }
+      if(!chd.isSPD() || !(logdet > Double.NEGATIVE_INFINITY)) {
+        LOG.warning("Singularity cheat did not resolve zero determinant.");
+        l = Matrix.identity(dim, dim).getArrayRef();
+        logdet = 0.;
+      }
+      chol[c] = l;
+      lognorm[c] = Math.log(w / n) - .5 * logtwopi - logdet;
+    }
+  }
+
+  @Override
+  public TypeInformation[] getInputTypeRestriction() {
+    return TypeUtil.array(TypeUtil.NUMBER_VECTOR_FIELD);
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * @return the soft
+   */
+  public boolean isSoft() {
+    return soft;
+  }
+
+  /**
+   * @param soft the soft to set
+   */
+  public void setSoft(boolean soft) {
+    this.soft = soft;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <V> Vector type
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Parameter to retain the soft assignments.
+     */
+    public static final OptionID SOFT_ID = new OptionID("em.soft", "Retain the soft assignments of objects to clusters.");
+
+    /**
+     * Number of clusters.
+     */
+    protected int k;
+
+    /**
+     * Stopping threshold
+     */
+    protected double delta;
+
+    /**
+     * Initialization method
+     */
+    protected KMeansInitialization<V> initializer;
+
+    /**
+     * Maximum number of iterations.
+     */
+    protected int maxiter = -1;
+
+    /**
+     * Retain soft assignments.
+     */
+    protected boolean soft = false;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter kP = new IntParameter(EM.Parameterizer.K_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(kP)) {
+        k = kP.getValue();
+      }
+
+      ObjectParameter<KMeansInitialization<V>> initialP = new ObjectParameter<>(AbstractEMModelFactory.Parameterizer.INIT_ID, KMeansInitialization.class, RandomlyGeneratedInitialMeans.class);
+      if(config.grab(initialP)) {
+        initializer = initialP.instantiateClass(config);
+      }
+
+      DoubleParameter deltaP = new DoubleParameter(EM.Parameterizer.DELTA_ID, 1e-7) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_DOUBLE);
+      if(config.grab(deltaP)) {
+        delta = deltaP.getValue();
+      }
+
+      IntParameter maxiterP = new IntParameter(KMeans.MAXITER_ID) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ZERO_INT) //
+          .setOptional(true);
+      if(config.grab(maxiterP)) {
+        maxiter = maxiterP.getValue();
+      }
+
+      Flag softF = new Flag(SOFT_ID);
+      if(config.grab(softF)) {
+        soft = softF.isTrue();
+      }
+    }
+
+    @Override
+    protected ParallelEM<V> makeInstance() {
+      return new ParallelEM<>(k, delta, initializer, maxiter, soft);
+    }
+  }
+}
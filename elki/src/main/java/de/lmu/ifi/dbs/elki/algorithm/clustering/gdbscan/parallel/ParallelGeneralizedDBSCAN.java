@@ -23,38 +23,40 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.parallel;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.CorePredicate;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.EpsilonNeighborPredicate;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.GeneralizedDBSCAN;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.MinPtsCorePredicate;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.NeighborPredicate;
-import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.util.Assignment;
-import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.util.Border;
-import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.util.Core;
-import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.util.MultiBorder;
 import de.lmu.ifi.dbs.elki.data.Cluster;
 import de.lmu.ifi.dbs.elki.data.Clustering;
 import de.lmu.ifi.dbs.elki.data.model.ClusterModel;
+import de.lmu.ifi.dbs.elki.data.model.CoreObjectsModel;
 import de.lmu.ifi.dbs.elki.data.model.Model;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
-import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.Executor;
 import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind.ConcurrentQuickUnionInteger;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
@@ -70,11 +72,15 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * This is the archetype of a non-linear shared-memory DBSCAN that does not
  * sequentially expand a cluster, but processes points in arbitrary order and
  * merges clusters when neighboring core points occur.
- * 
- * Because of synchronization when labeling points, the speedup will only be
- * sublinear in the number of cores. But in particular without an index and on
- * large data, the majority of the work is finding the neighbors; not in
- * labeling the points.
+ *
+ * All neighborhoods are computed in parallel. Core points are linked to their
+ * neighboring core points using a lock-free union-find data structure, so the
+ * worker threads never need to synchronize. Because the union-find always
+ * uses the smallest member as root, the clusters can afterwards be numbered in
+ * the same order in which the sequential {@link GeneralizedDBSCAN} would
+ * discover them, and border points are assigned to the first such cluster.
+ * For symmetric neighbor predicates (such as the epsilon neighborhood), the
+ * result is therefore identical to the sequential algorithm.
  *
  * Reference:
  * <p>
@@ -83,9 +89,9 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * Related is the following publication, whose "disjoint set data structure"
  * appears to be a similar union-find approach to ours, and whose DSDBSCAN
- * appears rather similar. The main benefit of our approach is that we avoid
- * using the union-find data structure for every object, but only use it for
- * merging clusters.
+ * appears rather similar. The main difference of our approach is that only
+ * core points are added to the union-find data structure, while border points
+ * are resolved afterwards.
  * <p>
  * M. Patwary, D. Palsetia, A. Agrawal, W. K. Liao, F. Manne, A. Choudhary<br />
  * A new scalable parallel DBSCAN algorithm using the disjoint-set data
@@ -181,8 +187,14 @@ public class ParallelGeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Mode
    *
    * @apiviz.composedOf CorePredicate.Instance
    * @apiviz.composedOf NeighborPredicate.Instance
+   * @apiviz.has ConcurrentQuickUnionInteger
    */
   public static class Instance<T> implements Processor {
+    /**
+     * Label for noise objects.
+     */
+    protected static final int NOISE = 0;
+
     /**
      * The neighborhood predicate
      */
@@ -199,41 +211,45 @@ public class ParallelGeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Mode
     protected boolean coremodel = false;
 
     /**
-     * Cluster assignment storage.
+     * Database for cloning neighbor predicates.
      */
-    private WritableDataStore<Assignment> clusterids;
+    private Database database;
 
     /**
-     * Core objects (shared)
+     * Factory for neighbor predicates.
      */
-    private Core[] cores;
+    private NeighborPredicate<? extends T> npreds;
 
     /**
-     * Border objects (shared)
+     * Object IDs, if they are a range.
      */
-    private Border[] borders;
+    private DBIDRange range;
 
     /**
-     * Next cluster number assigned.
+     * Offset of each object, if the IDs are not a range.
      */
-    private int nextclus = 0;
+    private WritableIntegerDataStore offsets;
 
     /**
-     * Database for cloning neighbor predicates.
+     * Core point flags, by offset.
      */
-    private Database database;
+    private AtomicIntegerArray core;
 
     /**
-     * Factory for neighbor predicates.
+     * Union-find of core points, by offset.
      */
-    private NeighborPredicate<? extends T> npreds;
+    private ConcurrentQuickUnionInteger uf;
+
+    /**
+     * Neighbors of non-core points, by offset.
+     */
+    private ArrayDBIDs[] candidates;
 
     /**
      * Full Constructor
      *
      * @param database Database to process
-     * @param t Type information
-     * @param npred Neighborhood predicates
+     * @param npreds Neighborhood predicates
      * @param corepred Core object predicate
      * @param coremodel Keep track of core points.
      */
@@ -244,9 +260,6 @@ public class ParallelGeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Mode
       this.npreds = npreds;
       this.corepred = corepred.instantiate(database);
       this.coremodel = coremodel;
-      this.clusterids = DataStoreUtil.makeStorage(npred.getIDs(), DataStoreFactory.HINT_TEMP, Assignment.class);
-      this.cores = new Core[100];
-      this.borders = new Border[100];
     }
 
     /**
@@ -255,110 +268,136 @@ public class ParallelGeneralizedDBSCAN extends AbstractAlgorithm<Clustering<Mode
      * @return Clustering result
      */
     public Clustering<Model> run() {
-      DBIDs ids = npred.getIDs();
+      DBIDs dbids = npred.getIDs();
+      ArrayDBIDs ids = DBIDUtil.ensureArray(dbids);
+      final int size = ids.size();
+      if(dbids instanceof DBIDRange) {
+        range = (DBIDRange) dbids;
+      }
+      else {
+        offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+        for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+          offsets.putInt(it, it.getOffset());
+        }
+      }
+      core = new AtomicIntegerArray(size);
+      uf = new ConcurrentQuickUnionInteger(size);
+      candidates = new ArrayDBIDs[size];
+
       // Do the majority of the work in parallel:
       // (This will call "instantiate".)
-      ParallelExecutor.run(ids, this);
-
-      // Build the final result
-      FiniteProgress pprog = LOG.isVerbose() ? new FiniteProgress("Building final result", ids.size(), LOG) : null;
-      ModifiableDBIDs[] clusters = new ModifiableDBIDs[nextclus];
-      ModifiableDBIDs noise = DBIDUtil.newArray();
-      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
-        Assignment cids = clusterids.get(it);
-        if(cids == null) {
-          noise.add(it);
-          LOG.incrementProcessed(pprog);
+      FiniteProgress nprog = LOG.isVerbose() ? new FiniteProgress("Neighborhood queries", size, LOG) : null;
+      ParallelExecutor.run(ids, nprog, LOG, this);
+      LOG.ensureCompleted(nprog);
+
+      // Number the clusters by their first core point, as sequential DBSCAN
+      // would discover them. Core points are labeled positive.
+      WritableIntegerDataStore clusterids = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP, NOISE);
+      DBIDArrayIter root = ids.iter();
+      int numclus = 0;
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final int off = it.getOffset();
+        if(core.get(off) == 0) {
+          continue;
+        }
+        final int r = uf.find(off);
+        clusterids.putInt(it, r == off ? ++numclus : clusterids.intValue(root.seek(r)));
+      }
+      // Border points join the first cluster that reaches them, labeled
+      // negative.
+      for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+        final ArrayDBIDs cands = candidates[it.getOffset()];
+        if(cands == null) {
           continue;
         }
-        if(cids instanceof MultiBorder) {
-          cids = ((MultiBorder) cids).getCore();
+        int best = Integer.MAX_VALUE;
+        for(DBIDIter nei = cands.iter(); nei.valid(); nei.advance()) {
+          final int c = clusterids.intValue(nei);
+          best = (c > NOISE && c < best) ? c : best;
         }
-        else if(cids instanceof Border) {
-          cids = ((Border) cids).core;
+        if(best < Integer.MAX_VALUE) {
+          clusterids.putInt(it, -best);
         }
-        assert (cids instanceof Core);
-        Core co = (Core) cids;
-        while(cores[co.num].num != co.num) {
-          co = cores[co.num = cores[co.num].num];
+      }
+      candidates = null;
+      core = null;
+      uf = null;
+      if(offsets != null) {
+        offsets.destroy();
+        offsets = null;
+      }
+
+      // Build the final result
+      ArrayModifiableDBIDs[] clusterlists = new ArrayModifiableDBIDs[numclus + 1];
+      ArrayModifiableDBIDs[] corelists = coremodel ? new ArrayModifiableDBIDs[numclus + 1] : null;
+      for(int i = 0; i <= numclus; i++) {
+        clusterlists[i] = DBIDUtil.newArray();
+        if(corelists != null) {
+          corelists[i] = DBIDUtil.newArray();
         }
-        ModifiableDBIDs clu = clusters[co.num];
-        if(clu == null) {
-          clu = clusters[co.num] = DBIDUtil.newArray();
+      }
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        final int cid = clusterids.intValue(it);
+        final int cluster = cid < 0 ? -cid : cid;
+        clusterlists[cluster].add(it);
+        if(corelists != null && cid > NOISE) {
+          corelists[cluster].add(it);
         }
-        clu.add(it);
-        LOG.incrementProcessed(pprog);
       }
-      LOG.ensureCompleted(pprog);
       clusterids.destroy();
 
       // Wrap into final format
       Clustering<Model> result = new Clustering<>("DBSCAN Clustering", "dbscan-clustering");
-      for(int i = 0; i < clusters.length; i++) {
-        if(clusters[i] != null) {
-          result.addToplevelCluster(new Cluster<Model>(clusters[i], ClusterModel.CLUSTER));
-        }
-      }
-      if(noise.size() > 0) {
-        result.addToplevelCluster(new Cluster<Model>(noise, true, ClusterModel.CLUSTER));
+      for(int cid = NOISE; cid < clusterlists.length; cid++) {
+        boolean isNoise = (cid == NOISE);
+        Model m = coremodel ? new CoreObjectsModel(corelists[cid]) : ClusterModel.CLUSTER;
+        result.addToplevelCluster(new Cluster<Model>(clusterlists[cid], isNoise, m));
       }
       return result;
     }
 
     /**
-     * Synchronize function to process the neighbors.
+     * Get the offset of an object.
+     *
+     * @param id Object
+     * @return Offset
+     */
+    private int offset(DBIDRef id) {
+      return range != null ? range.getOffset(id) : offsets.intValue(id);
+    }
+
+    /**
+     * Process the neighbors of a single point, called concurrently.
      *
      * @param id Current point
      * @param neighbors Neighbors
      */
     protected void processNeighbors(DBIDRef id, T neighbors) {
-      if(!corepred.isCorePoint(id, neighbors)) {
+      final int off = offset(id);
+      if(corepred.isCorePoint(id, neighbors)) {
+        // The flag must be published before the neighbors are inspected: of
+        // two neighboring core points, at least one will then see the other.
+        core.set(off, 1);
+        for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
+          final int o = offset(it);
+          if(o != off && core.get(o) != 0) {
+            uf.union(off, o);
+          }
+        }
         return;
       }
-      Core core = null;
-      // Find a possible cluster assignment
+      // Remember the neighbors, until we know which of them are core points.
+      ArrayModifiableDBIDs cands = null;
       for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-        Assignment cand = clusterids.get(it);
-        if(cand instanceof Core) { // Another core point
-          core = (Core) cand;
-          break;
-        }
-      }
-      synchronized(this) {
-        // Make a new cluster
-        if(core == null) {
-          // Grow arrays when necessary:
-          if(nextclus == cores.length) {
-            cores = Arrays.copyOf(cores, cores.length + (cores.length >> 1));
-            borders = Arrays.copyOf(borders, cores.length);
-          }
-          core = cores[nextclus] = new Core(nextclus);
-          borders[nextclus] = new Border(core);
-          ++nextclus;
+        if(DBIDUtil.equal(id, it)) {
+          continue;
         }
-        Border border = borders[core.num];
-        clusterids.put(id, core);
-        // Label neighbors, execute merges.
-        for(DBIDIter it = npred.iterDBIDs(neighbors); it.valid(); it.advance()) {
-          Assignment oclus = clusterids.get(it);
-          if(oclus == null) { // Neighbor is still noise:
-            clusterids.put(it, border);
-          }
-          else if(oclus instanceof Core) { // Core and core - merge!
-            core.mergeWith((Core) oclus);
-          }
-          else if(oclus instanceof Border) { // Border point -> MultiBorder
-            Border oborder = (Border) oclus;
-            if(border.core.num != oborder.core.num) {
-              clusterids.put(it, new MultiBorder(border, oborder));
-            }
-          }
-          else { // Point is already border for multiple clusters
-            assert (oclus instanceof MultiBorder);
-            clusterids.put(it, ((MultiBorder) oclus).update(border));
-          }
+        if(cands == null) {
+          cands = DBIDUtil.newArray();
         }
+        cands.add(it);
       }
+      candidates[off] = cands;
     }
 
     @Override
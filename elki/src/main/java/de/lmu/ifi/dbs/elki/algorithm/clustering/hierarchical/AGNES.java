@@ -34,8 +34,10 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.DistanceMatrixUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -50,7 +52,8 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * data has become a single cluster.
  *
  * This is the naive O(n^3) algorithm. See {@link SLINK} for a much faster
- * algorithm (however, only for single-linkage).
+ * algorithm (however, only for single-linkage), and {@link NNChain} for an
+ * O(n^2) algorithm for the reducible linkages.
  *
  * This implementation uses the pointer-based representation used by SLINK, so
  * that the extraction algorithms we have can be used with either of them.
@@ -155,7 +158,7 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
     double[] scratch = new double[triangleSize(size)];
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
     boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
-    initializeDistanceMatrix(scratch, dq, ix, iy, square);
+    initializeDistanceMatrix(scratch, dq, ids, square);
 
     // Initialize space for result:
     PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
@@ -189,25 +192,16 @@ public class AGNES<O> extends AbstractDistanceBasedAlgorithm<O, PointerHierarchy
   }
 
   /**
-   * Initialize a distance matrix.
+   * Initialize a distance matrix, in parallel using the {@link ParallelCore}.
    *
    * @param scratch Scratch space to be used.
    * @param dq Distance query
-   * @param ix Data iterator
-   * @param iy Data iterator
+   * @param ids Object IDs
    * @param square Flag to use squared distances.
    */
-  protected static <O> void initializeDistanceMatrix(double[] scratch, DistanceQuery<O> dq, DBIDArrayIter ix, DBIDArrayIter iy, boolean square) {
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        double dist = dq.distance(ix, iy);
-        // Ward uses variances -- i.e. squared values
-        dist = square ? (dist * dist) : dist;
-        scratch[pos] = dist;
-        pos++;
-      }
-    }
+  protected static <O> void initializeDistanceMatrix(double[] scratch, DistanceQuery<O> dq, ArrayDBIDs ids, boolean square) {
+    // Ward uses variances -- i.e. squared values
+    DistanceMatrixUtil.fill(scratch, dq, ids, square);
   }
 
   /**
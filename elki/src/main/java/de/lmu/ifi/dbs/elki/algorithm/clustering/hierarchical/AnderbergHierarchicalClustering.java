@@ -123,7 +123,7 @@ public class AnderbergHierarchicalClustering<O> extends AbstractDistanceBasedAlg
     DBIDArrayIter ix = ids.iter(), iy = ids.iter();
     // Position counter - must agree with computeOffset!
     final boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(dq.getDistanceFunction()));
-    AGNES.initializeDistanceMatrix(scratch, dq, ix, iy, square);
+    AGNES.initializeDistanceMatrix(scratch, dq, ids, square);
 
     // Arrays used for caching:
     double[] bestd = new double[size];
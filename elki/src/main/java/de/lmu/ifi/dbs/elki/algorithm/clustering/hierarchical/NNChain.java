@@ -0,0 +1,406 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.DistanceMatrixStorage;
+import de.lmu.ifi.dbs.elki.index.distancematrix.DistanceMatrixUtil;
+import de.lmu.ifi.dbs.elki.index.distancematrix.PrecomputedDistanceMatrix.Precision;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+
+/**
+ * Nearest-neighbor chain algorithm for hierarchical agglomerative clustering.
+ *
+ * Starting from an arbitrary cluster, the chain is extended by the nearest
+ * neighbor of its last element, until two clusters are reciprocal nearest
+ * neighbors; these are then merged. For linkages that satisfy the
+ * reducibility property (single, complete, group average, weighted average and
+ * Ward linkage), this yields the same hierarchy as {@link AGNES}, but in
+ * O(n^2) time. Centroid and median linkage are not reducible, and may yield a
+ * different result.
+ *
+ * The initial distance matrix and the Lance-Williams updates of the matrix are
+ * computed in parallel, using the {@link ParallelCore}. The matrix is stored
+ * using a {@link DistanceMatrixStorage}, which is not limited to 65536 objects
+ * and can use reduced precision to save memory.
+ *
+ * Reference:
+ * <p>
+ * F. Murtagh<br />
+ * A survey of recent advances in hierarchical clustering algorithms<br />
+ * The Computer Journal 26(4)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.composedOf DistanceMatrixStorage
+ *
+ * @param <O> Object type
+ */
+@Reference(authors = "F. Murtagh", //
+title = "A survey of recent advances in hierarchical clustering algorithms", //
+booktitle = "The Computer Journal 26(4)", //
+url = "http://dx.doi.org/10.1093/comjnl/26.4.354")
+public class NNChain<O> extends AGNES<O> {
+  /**
+   * Class logger
+   */
+  private static final Logging LOG = Logging.getLogger(NNChain.class);
+
+  /**
+   * Minimum number of clusters updated by a single task.
+   */
+  private static final int MIN_UPDATE_BLOCK = 1 << 12;
+
+  /**
+   * Precision of the distance matrix.
+   */
+  protected Precision precision;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage) {
+    this(distanceFunction, linkage, Precision.DOUBLE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function to use
+   * @param linkage Linkage method
+   * @param precision Precision of the distance matrix
+   */
+  public NNChain(DistanceFunction<? super O> distanceFunction, LinkageMethod linkage, Precision precision) {
+    super(distanceFunction, linkage);
+    this.precision = precision;
+  }
+
+  /**
+   * Run the algorithm
+   *
+   * @param db Database
+   * @param relation Relation
+   * @return Clustering hierarchy
+   */
+  @Override
+  public PointerHierarchyRepresentationResult run(Database db, Relation<O> relation) {
+    DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size();
+
+    if(CentroidLinkageMethod.class.isInstance(linkage) || MedianLinkageMethod.class.isInstance(linkage)) {
+      LOG.warning("Centroid and median linkage are not reducible. The nearest-neighbor chain algorithm may yield a different result than AGNES.");
+    }
+
+    DistanceMatrixStorage matrix;
+    try {
+      matrix = precision.allocate(size);
+    }
+    catch(OutOfMemoryError e) {
+      throw new AbortException("Not enough memory for a distance matrix of " + size + " objects with " + precision + " precision.", e);
+    }
+    final boolean square = WardLinkageMethod.class.isInstance(linkage) && !(SquaredEuclideanDistanceFunction.class.isInstance(getDistanceFunction()));
+
+    // Merges, in the order they are performed (x merged into y, y < x):
+    final int[] mergex = new int[Math.max(0, size - 1)];
+    final int[] mergey = new int[mergex.length];
+    final double[] mergeh = new double[mergex.length];
+
+    // Ward uses variances -- i.e. squared values
+    DistanceMatrixUtil.fill(matrix, dq, ids, square, null, null);
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      nnChain(core, matrix, size, mergex, mergey, mergeh);
+    }
+    finally {
+      core.disconnect();
+    }
+
+    // The chain does not merge in order of increasing distance, but the
+    // pointer representation needs monotone links.
+    int[] order = new int[mergex.length];
+    for(int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    IntegerArrayQuickSort.sort(order, new IntegerComparator() {
+      @Override
+      public int compare(int x, int y) {
+        final int c = Double.compare(mergeh[x], mergeh[y]);
+        return c != 0 ? c : Integer.compare(x, y);
+      }
+    });
+    PointerHierarchyRepresentationBuilder builder = new PointerHierarchyRepresentationBuilder(ids);
+    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+    for(int i : order) {
+      builder.add(ix.seek(mergex[i]), mergeh[i], iy.seek(mergey[i]));
+    }
+    return builder.complete();
+  }
+
+  /**
+   * Main loop of the nearest-neighbor chain algorithm.
+   *
+   * @param core Parallel core
+   * @param matrix Distance matrix
+   * @param size Number of objects
+   * @param mergex Output: merged (removed) cluster
+   * @param mergey Output: cluster merged into
+   * @param mergeh Output: merge height
+   */
+  private void nnChain(ParallelCore core, DistanceMatrixStorage matrix, int size, int[] mergex, int[] mergey, double[] mergeh) {
+    // Cluster sizes, 0 for clusters that have been merged into others.
+    int[] csize = new int[size];
+    for(int i = 0; i < size; i++) {
+      csize[i] = 1;
+    }
+    int[] chain = new int[size];
+    int end = 0, first = 0;
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Agglomerative clustering", size - 1, LOG) : null;
+    for(int m = 0; m < size - 1; m++) {
+      if(end == 0) {
+        while(csize[first] == 0) {
+          first++;
+        }
+        chain[end++] = first;
+      }
+      int a, b;
+      double mindist;
+      while(true) {
+        a = chain[end - 1];
+        b = end > 1 ? chain[end - 2] : -1;
+        // Prefer the previous chain element on ties, to avoid cycles.
+        mindist = b >= 0 ? get(matrix, a, b) : Double.POSITIVE_INFINITY;
+        int c = b;
+        for(int i = 0; i < size; i++) {
+          if(i == a || csize[i] == 0) {
+            continue;
+          }
+          final double d = get(matrix, a, i);
+          if(d < mindist) {
+            mindist = d;
+            c = i;
+          }
+        }
+        if(c == b) {
+          break; // Reciprocal nearest neighbors.
+        }
+        chain[end++] = c;
+      }
+      end -= 2;
+      // Since y < x, prefer keeping y, dropping x.
+      final int x = a > b ? a : b, y = a > b ? b : a;
+      mergex[m] = x;
+      mergey[m] = y;
+      mergeh[m] = mindist;
+      final int sizex = csize[x], sizey = csize[y];
+      csize[x] = 0;
+      if(size > MIN_UPDATE_BLOCK) {
+        core.invoke(new UpdateTask(matrix, csize, 0, size, x, y, sizex, sizey, mindist));
+      }
+      else {
+        updateMatrix(matrix, csize, 0, size, x, y, sizex, sizey, mindist);
+      }
+      csize[y] = sizex + sizey;
+      LOG.incrementProcessed(prog);
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * Get a distance from the matrix.
+   *
+   * @param matrix Distance matrix
+   * @param i First offset
+   * @param j Second offset, must be different from i
+   * @return Distance
+   */
+  private static double get(DistanceMatrixStorage matrix, int i, int j) {
+    return i > j ? matrix.get(i, j) : matrix.get(j, i);
+  }
+
+  /**
+   * Lance-Williams update of the distances to the merged cluster y, for the
+   * clusters in [start; end).
+   *
+   * @param matrix Distance matrix
+   * @param csize Cluster sizes, 0 for inactive clusters
+   * @param start First cluster to update
+   * @param end Last cluster to update (exclusive)
+   * @param x Removed cluster
+   * @param y Cluster merged into
+   * @param sizex Old size of first cluster
+   * @param sizey Old size of second cluster
+   * @param mindist Distance that was used for merging
+   */
+  protected void updateMatrix(DistanceMatrixStorage matrix, int[] csize, int start, int end, int x, int y, int sizex, int sizey, double mindist) {
+    for(int j = start; j < end; j++) {
+      final int sizej = csize[j];
+      if(sizej == 0 || j == y) {
+        continue;
+      }
+      final double d = linkage.combine(sizex, get(matrix, x, j), sizey, get(matrix, y, j), sizej, mindist);
+      if(j < y) {
+        matrix.set(y, j, d);
+      }
+      else {
+        matrix.set(j, y, d);
+      }
+    }
+  }
+
+  /**
+   * Parallel Lance-Williams update.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class UpdateTask extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Distance matrix.
+     */
+    private DistanceMatrixStorage matrix;
+
+    /**
+     * Cluster sizes.
+     */
+    private int[] csize;
+
+    /**
+     * Range to update, merged clusters, and their sizes.
+     */
+    private int start, end, x, y, sizex, sizey;
+
+    /**
+     * Merging distance.
+     */
+    private double mindist;
+
+    /**
+     * Constructor.
+     *
+     * @param matrix Distance matrix
+     * @param csize Cluster sizes, 0 for inactive clusters
+     * @param start First cluster to update
+     * @param end Last cluster to update (exclusive)
+     * @param x Removed cluster
+     * @param y Cluster merged into
+     * @param sizex Old size of first cluster
+     * @param sizey Old size of second cluster
+     * @param mindist Distance that was used for merging
+     */
+    UpdateTask(DistanceMatrixStorage matrix, int[] csize, int start, int end, int x, int y, int sizex, int sizey, double mindist) {
+      this.matrix = matrix;
+      this.csize = csize;
+      this.start = start;
+      this.end = end;
+      this.x = x;
+      this.y = y;
+      this.sizex = sizex;
+      this.sizey = sizey;
+      this.mindist = mindist;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start > MIN_UPDATE_BLOCK) {
+        final int mid = (start + end) >>> 1;
+        invokeAll(new UpdateTask(matrix, csize, start, mid, x, y, sizex, sizey, mindist), //
+            new UpdateTask(matrix, csize, mid, end, x, y, sizex, sizey, mindist));
+        return;
+      }
+      updateMatrix(matrix, csize, start, end, x, y, sizex, sizey, mindist);
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  public static class Parameterizer<O> extends AGNES.Parameterizer<O> {
+    /**
+     * Option ID for the matrix precision.
+     */
+    public static final OptionID PRECISION_ID = new OptionID("nnchain.precision", "Precision used to store the distance matrix: DOUBLE, FLOAT or SHORT (16 bit). Reduced precision saves memory, but rounding errors can change the merge order.");
+
+    /**
+     * Precision of the distance matrix.
+     */
+    protected Precision precision;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      EnumParameter<Precision> precisionP = new EnumParameter<>(PRECISION_ID, Precision.class, Precision.DOUBLE);
+      if(config.grab(precisionP)) {
+        precision = precisionP.getValue();
+      }
+    }
+
+    @Override
+    protected NNChain<O> makeInstance() {
+      return new NNChain<>(distanceFunction, linkage, precision);
+    }
+  }
+}
@@ -23,6 +23,15 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.quality.KMeansQualityMeasure;
@@ -37,17 +46,31 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunctio
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ChainedParameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.MergedParameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
 
 /**
  * Run K-Means multiple times, and keep the best run.
  *
+ * When every trial has its own k-means instance, the trials are executed
+ * concurrently using the {@link ParallelCore}. They share the relation, which
+ * is only read. The parameterizer creates one instance per trial, each with its
+ * own initializer and random seed; the seeds are drawn sequentially from the
+ * main seed, so the result does not depend on the order in which the trials
+ * finish. Only the best result found so far is kept in memory. If the trials
+ * share a k-means instance or an initializer, they are run one after another.
+ *
  * @author Stephan Baier
  * @author Erich Schubert
  * @since 0.6.0
@@ -67,9 +90,15 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
   private int trials;
 
   /**
-   * Variant of kMeans for the bisecting step.
+   * K-means instance to use for each trial.
+   */
+  private List<? extends KMeans<V, M>> trialkMeans;
+
+  /**
+   * Flag whether the trials use independent instances, and can run
+   * concurrently.
    */
-  private KMeans<V, M> innerkMeans;
+  private boolean independent;
 
   /**
    * Quality measure which should be used.
@@ -79,36 +108,107 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
   /**
    * Constructor.
    *
+   * The trials reuse the same k-means instance, and are run sequentially.
+   *
    * @param trials Number of trials to do.
    * @param innerkMeans K-Means variant to actually use.
    * @param qualityMeasure Quality measure
    */
   public BestOfMultipleKMeans(int trials, KMeans<V, M> innerkMeans, KMeansQualityMeasure<? super V> qualityMeasure) {
+    this(Collections.nCopies(trials, innerkMeans), qualityMeasure);
+  }
+
+  /**
+   * Constructor.
+   *
+   * If all instances and their initializers are distinct, the trials are run
+   * concurrently.
+   *
+   * @param trialkMeans K-Means instance for each trial.
+   * @param qualityMeasure Quality measure
+   */
+  public BestOfMultipleKMeans(List<? extends KMeans<V, M>> trialkMeans, KMeansQualityMeasure<? super V> qualityMeasure) {
     super();
-    this.trials = trials;
-    this.innerkMeans = innerkMeans;
+    this.trials = trialkMeans.size();
+    this.trialkMeans = trialkMeans;
     this.qualityMeasure = qualityMeasure;
+    this.independent = allDistinct(trialkMeans) && allDistinct(initializers(trialkMeans));
+  }
+
+  /**
+   * Collect the initializers of the trials.
+   *
+   * Only the initializers of {@link AbstractKMeans} variants are known; for
+   * other variants they may be shared, so these trials are run sequentially.
+   *
+   * @param trialkMeans K-means instance for each trial
+   * @return Initializers, or {@code null} if unknown
+   */
+  private static List<Object> initializers(List<? extends KMeans<?, ?>> trialkMeans) {
+    List<Object> inits = new ArrayList<>(trialkMeans.size());
+    for(KMeans<?, ?> kmeans : trialkMeans) {
+      if(!(kmeans instanceof AbstractKMeans)) {
+        return null;
+      }
+      inits.add(((AbstractKMeans<?, ?>) kmeans).initializer);
+    }
+    return inits;
+  }
+
+  /**
+   * Test whether all trials use distinct instances.
+   *
+   * @param instances Instances
+   * @return {@code true} when no instance is used twice.
+   */
+  private static boolean allDistinct(List<?> instances) {
+    if(instances == null) {
+      return false;
+    }
+    IdentityHashMap<Object, Object> seen = new IdentityHashMap<>(instances.size());
+    for(Object o : instances) {
+      if(seen.put(o, o) != null) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public Clustering<M> run(Database database, Relation<V> relation) {
-    if(!(innerkMeans.getDistanceFunction() instanceof PrimitiveDistanceFunction)) {
-      throw new AbortException("K-Means results can only be evaluated for primitive distance functions, got: " + innerkMeans.getDistanceFunction().getClass());
+    if(!(getDistanceFunction() instanceof PrimitiveDistanceFunction)) {
+      throw new AbortException("K-Means results can only be evaluated for primitive distance functions, got: " + getDistanceFunction().getClass());
     }
     @SuppressWarnings("unchecked")
-    final NumberVectorDistanceFunction<? super NumberVector> df = (NumberVectorDistanceFunction<? super NumberVector>) innerkMeans.getDistanceFunction();
+    final NumberVectorDistanceFunction<? super NumberVector> df = (NumberVectorDistanceFunction<? super NumberVector>) getDistanceFunction();
+
+    // Shared instances (or initializers) cannot run concurrently.
+    return (trials > 1 && independent) //
+        ? runParallel(database, relation, df) //
+        : runSequential(database, relation, df);
+  }
 
+  /**
+   * Run the trials one after another.
+   *
+   * This is used when the trials share a k-means instance or initializer, and
+   * thus cannot run concurrently.
+   *
+   * @param database Database
+   * @param relation Relation
+   * @param df Distance function for evaluation
+   * @return Best clustering result
+   */
+  private Clustering<M> runSequential(Database database, Relation<V> relation, NumberVectorDistanceFunction<? super NumberVector> df) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("K-means iterations", trials, LOG) : null;
     Clustering<M> bestResult = null;
     double bestCost = Double.NaN;
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("K-means iterations", trials, LOG) : null;
     for(int i = 0; i < trials; i++) {
-      Clustering<M> currentCandidate = innerkMeans.run(database, relation);
+      Clustering<M> currentCandidate = trialkMeans.get(i).run(database, relation);
       double currentCost = qualityMeasure.quality(currentCandidate, df, relation);
-
       if(LOG.isVerbose()) {
         LOG.verbose("Cost of candidate " + i + ": " + currentCost);
       }
-
       if(qualityMeasure.isBetter(currentCost, bestCost)) {
         bestResult = currentCandidate;
         bestCost = currentCost;
@@ -116,33 +216,135 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
       LOG.incrementProcessed(prog);
     }
     LOG.ensureCompleted(prog);
+    return bestResult;
+  }
 
+  /**
+   * Run the trials concurrently.
+   *
+   * The results are collected in trial order, and only the best result so far
+   * is kept.
+   *
+   * @param database Database
+   * @param relation Relation
+   * @param df Distance function for evaluation
+   * @return Best clustering result
+   */
+  private Clustering<M> runParallel(final Database database, final Relation<V> relation, final NumberVectorDistanceFunction<? super NumberVector> df) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("K-means iterations", trials, LOG) : null;
+    Clustering<M> bestResult = null;
+    double bestCost = Double.NaN;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Future<Trial<M>>> futures = new ArrayList<>(trials);
+      for(int i = 0; i < trials; i++) {
+        final KMeans<V, M> kmeans = trialkMeans.get(i);
+        futures.add(core.submit(new Callable<Trial<M>>() {
+          @Override
+          public Trial<M> call() {
+            Clustering<M> currentCandidate = kmeans.run(database, relation);
+            return new Trial<>(currentCandidate, qualityMeasure.quality(currentCandidate, df, relation));
+          }
+        }));
+      }
+      for(int i = 0; i < trials; i++) {
+        Trial<M> current = futures.get(i).get();
+        // Drop the reference, so that inferior results can be collected.
+        futures.set(i, null);
+        if(LOG.isVerbose()) {
+          LOG.verbose("Cost of candidate " + i + ": " + current.cost);
+        }
+        if(qualityMeasure.isBetter(current.cost, bestCost)) {
+          bestResult = current.result;
+          bestCost = current.cost;
+        }
+        LOG.incrementProcessed(prog);
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("K-means trial failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("K-means trials interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+    LOG.ensureCompleted(prog);
     return bestResult;
   }
 
+  /**
+   * Result of a single trial.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <M> Model type
+   */
+  private static class Trial<M extends MeanModel> {
+    /**
+     * Clustering result.
+     */
+    final Clustering<M> result;
+
+    /**
+     * Cost of the result.
+     */
+    final double cost;
+
+    /**
+     * Constructor.
+     *
+     * @param result Clustering result
+     * @param cost Cost of the result
+     */
+    Trial(Clustering<M> result, double cost) {
+      this.result = result;
+      this.cost = cost;
+    }
+  }
+
   @Override
   public TypeInformation[] getInputTypeRestriction() {
-    return innerkMeans.getInputTypeRestriction();
+    return trialkMeans.get(0).getInputTypeRestriction();
   }
 
   @Override
   public DistanceFunction<? super V> getDistanceFunction() {
-    return innerkMeans.getDistanceFunction();
+    return trialkMeans.get(0).getDistanceFunction();
   }
 
   @Override
   public void setK(int k) {
-    innerkMeans.setK(k);
+    for(KMeans<V, M> kmeans : trialkMeans) {
+      kmeans.setK(k);
+    }
   }
 
   @Override
   public void setDistanceFunction(NumberVectorDistanceFunction<? super V> distanceFunction) {
-    innerkMeans.setDistanceFunction(distanceFunction);
+    for(KMeans<V, M> kmeans : trialkMeans) {
+      kmeans.setDistanceFunction(distanceFunction);
+    }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * The trials will then share the initializer, and are run sequentially.
+   */
   @Override
   public void setInitializer(KMeansInitialization<? super V> init) {
-    innerkMeans.setInitializer(init);
+    for(KMeans<V, M> kmeans : trialkMeans) {
+      kmeans.setInitializer(init);
+    }
+    independent = false;
   }
 
   @Override
@@ -183,9 +385,9 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
     protected int trials;
 
     /**
-     * Variant of kMeans to use.
+     * K-means instance for each trial.
      */
-    protected KMeans<V, M> kMeansVariant;
+    protected List<KMeans<V, M>> trialkMeans;
 
     /**
      * Quality measure.
@@ -200,9 +402,27 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
         trials = trialsP.intValue();
       }
 
+      RandomFactory rnd = RandomFactory.DEFAULT;
+      RandomParameter rndP = new RandomParameter(KMeans.SEED_ID);
+      if(config.grab(rndP)) {
+        rnd = rndP.getValue();
+      }
+
       ObjectParameter<KMeans<V, M>> kMeansVariantP = new ObjectParameter<>(KMEANS_ID, KMeans.class);
-      if(config.grab(kMeansVariantP)) {
-        kMeansVariant = kMeansVariantP.instantiateClass(config);
+      if(config.grab(kMeansVariantP) && trials > 0) {
+        // Draw the seeds of all trials sequentially from the main seed.
+        Random random = rnd.getSingleThreadedRandom();
+        // Each trial consumes the same parameters again.
+        MergedParameterization merged = new MergedParameterization(config);
+        trialkMeans = new ArrayList<>(trials);
+        for(int i = 0; i < trials; i++) {
+          ListParameterization seedP = new ListParameterization();
+          seedP.addParameter(KMeans.SEED_ID, random.nextLong());
+          ChainedParameterization combinedConfig = new ChainedParameterization(seedP, merged);
+          combinedConfig.errorsTo(config);
+          trialkMeans.add(kMeansVariantP.instantiateClass(combinedConfig));
+          merged.rewind();
+        }
       }
 
       ObjectParameter<KMeansQualityMeasure<V>> qualityMeasureP = new ObjectParameter<>(QUALITYMEASURE_ID, KMeansQualityMeasure.class);
@@ -213,7 +433,7 @@ public class BestOfMultipleKMeans<V extends NumberVector, M extends MeanModel> e
 
     @Override
     protected BestOfMultipleKMeans<V, M> makeInstance() {
-      return new BestOfMultipleKMeans<>(trials, kMeansVariant, qualityMeasure);
+      return new BestOfMultipleKMeans<>(trialkMeans, qualityMeasure);
     }
   }
 }
@@ -22,7 +22,12 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
  You should have received a copy of the GNU Affero General Public License
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.algorithm.clustering.ClusteringAlgorithmUtil;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
@@ -44,7 +49,9 @@ import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
@@ -58,6 +65,11 @@ import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
  * sets based on PAM, partitioning around medoids ({@link KMedoidsPAM}) based on
  * sampling.
  *
+ * The samples and their initial medoids are drawn sequentially, so the result
+ * only depends on the random seed; the PAM optimization of the samples then
+ * runs concurrently using the {@link ParallelCore}. Only the assignment of the
+ * best sample so far is kept, the others are discarded as soon as they lose.
+ *
  * Reference:
  * <p>
  * L. Kaufman, P. J. Rousseeuw<br />
@@ -120,30 +132,21 @@ public class CLARA<V> extends KMedoidsPAM<V> {
     DBIDs ids = relation.getDBIDs();
     DistanceQuery<V> distQ = database.getDistanceQuery(relation, getDistanceFunction());
 
-    double best = Double.POSITIVE_INFINITY;
-    ArrayModifiableDBIDs bestmedoids = null;
-    WritableIntegerDataStore bestclusters = null;
-
+    // Draw the samples and initial medoids in order, for reproducibility.
     Random rnd = random.getSingleThreadedRandom();
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", numsamples, LOG) : null;
+    BestTrial best = new BestTrial();
+    List<Trial> trials = new ArrayList<>(numsamples);
     for(int j = 0; j < numsamples; j++) {
       DBIDs rids = DBIDUtil.randomSample(ids, sampling, rnd);
       // Choose initial medoids
       ArrayModifiableDBIDs medoids = DBIDUtil.newArray(initializer.chooseInitialMedoids(k, rids, distQ));
-      // Setup cluster assignment store
-      WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
-      runPAMOptimization(distQ, rids, medoids, assignment);
-      double score = assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
-      if(score < best) {
-        best = score;
-        bestmedoids = medoids;
-        bestclusters = assignment;
-      }
-      LOG.incrementProcessed(prog);
+      trials.add(new Trial(j, distQ, ids, rids, medoids, best));
     }
-    LOG.ensureCompleted(prog);
+    runTrials(trials);
 
-    ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, bestclusters, k);
+    ArrayModifiableDBIDs bestmedoids = best.trial.medoids;
+    ArrayModifiableDBIDs[] clusters = ClusteringAlgorithmUtil.partitionsFromIntegerLabels(ids, best.trial.assignment, k);
+    best.trial.assignment.destroy();
 
     // Wrap result
     Clustering<MedoidModel> result = new Clustering<>("CLARA Clustering", "clara-clustering");
@@ -154,6 +157,160 @@ public class CLARA<V> extends KMedoidsPAM<V> {
     return result;
   }
 
+  /**
+   * Run the PAM optimization of all samples concurrently.
+   *
+   * @param trials Trials to run
+   */
+  private void runTrials(List<Trial> trials) {
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Processing random samples", trials.size(), LOG) : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Future<Trial>> futures = new ArrayList<>(trials.size());
+      for(Trial trial : trials) {
+        futures.add(core.submit(trial));
+      }
+      // The trials report to the best trial themselves.
+      trials.clear();
+      for(Future<Trial> future : futures) {
+        future.get();
+        LOG.incrementProcessed(prog);
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("CLARA sample failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("CLARA interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+    LOG.ensureCompleted(prog);
+  }
+
+  /**
+   * A single CLARA trial: PAM on a sample, then assignment of the remaining
+   * objects.
+   *
+   * @author Erich Schubert
+   */
+  private class Trial implements Callable<Trial> {
+    /**
+     * Trial number, to break ties.
+     */
+    int index;
+
+    /**
+     * Distance query.
+     */
+    DistanceQuery<V> distQ;
+
+    /**
+     * All object ids.
+     */
+    DBIDs ids;
+
+    /**
+     * Sample.
+     */
+    DBIDs rids;
+
+    /**
+     * Medoids, initialized and then optimized.
+     */
+    ArrayModifiableDBIDs medoids;
+
+    /**
+     * Cluster assignment.
+     */
+    WritableIntegerDataStore assignment;
+
+    /**
+     * Total cost.
+     */
+    double score = Double.POSITIVE_INFINITY;
+
+    /**
+     * Best trial so far, shared by all trials.
+     */
+    BestTrial best;
+
+    /**
+     * Constructor.
+     *
+     * @param index Trial number
+     * @param distQ Distance query
+     * @param ids All object ids
+     * @param rids Sample
+     * @param medoids Initial medoids
+     * @param best Best trial so far
+     */
+    Trial(int index, DistanceQuery<V> distQ, DBIDs ids, DBIDs rids, ArrayModifiableDBIDs medoids, BestTrial best) {
+      this.index = index;
+      this.distQ = distQ;
+      this.ids = ids;
+      this.rids = rids;
+      this.medoids = medoids;
+      this.best = best;
+    }
+
+    @Override
+    public Trial call() {
+      // Setup cluster assignment store
+      assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+      runPAMOptimization(distQ, rids, medoids, assignment);
+      score = assignRemainingToNearestCluster(medoids, ids, rids, assignment, distQ);
+      rids = null;
+      best.offer(this);
+      return this;
+    }
+
+    /**
+     * Release the cluster assignment of a losing trial.
+     */
+    void discard() {
+      assignment.destroy();
+      assignment = null;
+      medoids = null;
+    }
+  }
+
+  /**
+   * Best trial so far. Losing trials are discarded immediately, so at most one
+   * assignment is kept besides those of the running trials.
+   *
+   * @author Erich Schubert
+   */
+  private class BestTrial {
+    /**
+     * Best trial so far.
+     */
+    Trial trial;
+
+    /**
+     * Offer a finished trial. Ties are broken by the trial number, so the
+     * result does not depend on the order in which the trials finish.
+     *
+     * @param t Finished trial
+     */
+    synchronized void offer(Trial t) {
+      if(trial == null || t.score < trial.score || (t.score == trial.score && t.index < trial.index)) {
+        if(trial != null) {
+          trial.discard();
+        }
+        trial = t;
+      }
+      else {
+        t.discard();
+      }
+    }
+  }
+
   /**
    * Returns a list of clusters. The k<sup>th</sup> cluster contains the ids of
    * those FeatureVectors, that are nearest to the k<sup>th</sup> mean.
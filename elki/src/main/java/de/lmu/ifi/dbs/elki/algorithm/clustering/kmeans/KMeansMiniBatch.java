@@ -0,0 +1,479 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMeansInitialization;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ProxyDatabase;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleMeta;
+import de.lmu.ifi.dbs.elki.datasource.bundle.BundleStreamSource;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Mini-batch k-means, which updates the means incrementally from small
+ * batches of data, with a per-cluster learning rate that decreases with the
+ * number of objects assigned.
+ *
+ * On a relation, the data is processed in random order, in passes over the
+ * data set until no object changes its cluster in a full pass (or the maximum
+ * number of iterations is reached); a final pass then assigns all objects to
+ * the nearest mean.
+ *
+ * In addition, {@link #run(BundleStreamSource)} clusters a stream of vectors in
+ * a single pass, without ever materializing the complete data set: a reservoir
+ * sample of the initial window of the stream is clustered for the
+ * initialization, then the remaining stream is processed batch by batch.
+ * Objects of the initial window that are not part of the final sample do not
+ * contribute to the means.
+ *
+ * <p>
+ * Reference:<br />
+ * D. Sculley<br />
+ * Web-scale k-means clustering<br />
+ * Proc. 19th International Conference on World Wide Web, WWW 2010
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has KMeansModel
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "D. Sculley", //
+title = "Web-scale k-means clustering", //
+booktitle = "Proc. 19th International Conference on World Wide Web, WWW 2010", //
+url = "http://dx.doi.org/10.1145/1772690.1772862")
+public class KMeansMiniBatch<V extends NumberVector> extends AbstractKMeans<V, KMeansModel> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansMiniBatch.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMeansMiniBatch.class.getName();
+
+  /**
+   * Size of the initial stream window to draw the initialization sample from,
+   * relative to the sample size.
+   */
+  private static final int WINDOW_FACTOR = 10;
+
+  /**
+   * Batch size.
+   */
+  int batchsize;
+
+  /**
+   * Sample size for initialization (streaming only).
+   */
+  int samplesize;
+
+  /**
+   * Random generator for the processing order and the stream sample.
+   */
+  RandomFactory random;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Initialization method
+   * @param batchsize Batch size
+   * @param samplesize Sample size for initialization on streams
+   * @param random Random generator for the processing order and the stream sample
+   */
+  public KMeansMiniBatch(NumberVectorDistanceFunction<? super V> distanceFunction, int k, int maxiter, KMeansInitialization<? super V> initializer, int batchsize, int samplesize, RandomFactory random) {
+    super(distanceFunction, k, maxiter, initializer);
+    this.batchsize = batchsize;
+    this.samplesize = samplesize;
+    this.random = random;
+  }
+
+  @Override
+  public Clustering<KMeansModel> run(Database database, Relation<V> relation) {
+    if(relation.size() <= 0) {
+      return new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    }
+    // Choose initial means
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+    }
+    double[][] means = initializer.chooseInitialMeans(database, relation, k, getDistanceFunction());
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(relation.getDBIDs(), DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("K-Means iteration", LOG) : null;
+    LongStatistic rstat = LOG.isStatistics() ? new LongStatistic(KEY + ".reassignments") : null;
+    int iteration = iterate(relation, means, new long[k], assignment, prog, rstat);
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+    }
+
+    // Final assignment to the nearest means.
+    List<ModifiableDBIDs> clusters = new ArrayList<>();
+    for(int i = 0; i < k; i++) {
+      clusters.add(DBIDUtil.newHashSet((int) (relation.size() * 2. / k)));
+    }
+    double[] varsum = new double[k];
+    assignToNearestCluster(relation, means, clusters, assignment, varsum);
+    assignment.destroy();
+    logVarstat(LOG.isStatistics() ? new DoubleStatistic(KEY + ".variance-sum") : null, varsum);
+
+    // Wrap result
+    Clustering<KMeansModel> result = new Clustering<>("k-Means Clustering", "kmeans-clustering");
+    for(int i = 0; i < clusters.size(); i++) {
+      DBIDs ids = clusters.get(i);
+      if(ids.size() == 0) {
+        continue;
+      }
+      result.addToplevelCluster(new Cluster<>(ids, new KMeansModel(means[i], varsum[i])));
+    }
+    return result;
+  }
+
+  /**
+   * Process the relation in passes of mini batches, until no object changes
+   * its cluster in a full pass (or the maximum number of iterations is
+   * reached).
+   *
+   * @param relation Relation
+   * @param means Means, will be modified
+   * @param counts Number of objects assigned to each mean so far
+   * @param assignment Output: cluster assignment of the last pass
+   * @param prog Progress (may be {@code null})
+   * @param rstat Statistic for the reassignments (may be {@code null})
+   * @return Number of iterations
+   */
+  private int iterate(Relation<V> relation, double[][] means, long[] counts, WritableIntegerDataStore assignment, IndefiniteProgress prog, LongStatistic rstat) {
+    // Process in random order, to avoid problems with sorted data.
+    ArrayModifiableDBIDs order = DBIDUtil.newArray(relation.getDBIDs());
+    DBIDUtil.randomShuffle(order, random);
+
+    int[] nearest = new int[batchsize];
+    List<V> batch = new ArrayList<>(batchsize);
+    int iteration = 0;
+    for(; maxiter <= 0 || iteration < maxiter; iteration++) {
+      LOG.incrementProcessed(prog);
+      int changed = 0;
+      DBIDArrayIter it = order.iter();
+      for(int start = 0; start < order.size(); start += batchsize) {
+        final int end = Math.min(start + batchsize, order.size());
+        batch.clear();
+        for(it.seek(start); it.getOffset() < end; it.advance()) {
+          batch.add(relation.get(it));
+        }
+        miniBatch(batch, means, counts, nearest);
+        for(it.seek(start); it.getOffset() < end; it.advance()) {
+          final int c = nearest[it.getOffset() - start];
+          if(assignment.putInt(it, c) != c) {
+            ++changed;
+          }
+        }
+      }
+      if(rstat != null) {
+        rstat.setLong(changed);
+        LOG.statistics(rstat);
+      }
+      // Stop if no cluster assignment changed.
+      if(changed == 0) {
+        break;
+      }
+    }
+    return iteration;
+  }
+
+  /**
+   * Cluster a stream of vectors in a single pass.
+   *
+   * The first vector column of the stream is used. As the data is never
+   * materialized, only the means are returned.
+   *
+   * @param source Stream source
+   * @return Cluster means
+   */
+  public double[][] run(BundleStreamSource source) {
+    int col = -1;
+    SimpleTypeInformation<V> type = null;
+    List<V> sample = new ArrayList<>(samplesize);
+    List<V> batch = new ArrayList<>(batchsize);
+    double[][] means = null;
+    long[] counts = new long[k];
+    int[] nearest = new int[batchsize];
+    long processed = 0;
+    // Reservoir sampling over the initial window
+    final long window = samplesize * (long) WINDOW_FACTOR;
+    Random rnd = random.getSingleThreadedRandom();
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Processed batches", LOG) : null;
+    for(BundleStreamSource.Event ev = source.nextEvent(); ev != BundleStreamSource.Event.END_OF_STREAM; ev = source.nextEvent()) {
+      switch(ev){
+      case META_CHANGED: {
+        BundleMeta meta = source.getMeta();
+        col = -1;
+        for(int i = 0; i < meta.size(); i++) {
+          if(TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH.isAssignableFromType(meta.get(i))) {
+            col = i;
+            @SuppressWarnings("unchecked")
+            SimpleTypeInformation<V> t = (SimpleTypeInformation<V>) meta.get(i);
+            type = t;
+            break;
+          }
+        }
+        if(col < 0) {
+          throw new AbortException("The stream does not contain number vectors.");
+        }
+        continue;
+      }
+      case NEXT_OBJECT: {
+        if(col < 0) {
+          throw new AbortException("Received an object before the stream meta data.");
+        }
+        @SuppressWarnings("unchecked")
+        V vec = (V) source.data(col);
+        ++processed;
+        if(means == null) {
+          if(sample.size() < samplesize) {
+            sample.add(vec);
+          }
+          else {
+            long j = (long) (rnd.nextDouble() * processed);
+            if(j < samplesize) {
+              sample.set((int) j, vec);
+            }
+          }
+          if(processed >= window) {
+            means = initialize(type, sample, counts);
+            sample = null;
+          }
+          continue;
+        }
+        batch.add(vec);
+        if(batch.size() >= batchsize) {
+          miniBatch(batch, means, counts, nearest);
+          batch.clear();
+          LOG.incrementProcessed(prog);
+        }
+        continue;
+      }
+      default:
+        continue;
+      }
+    }
+    if(means == null) {
+      if(sample.isEmpty()) {
+        throw new AbortException("The stream did not contain any objects.");
+      }
+      means = initialize(type, sample, counts);
+    }
+    if(!batch.isEmpty()) {
+      miniBatch(batch, means, counts, nearest);
+      LOG.incrementProcessed(prog);
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".processed", processed));
+    }
+    return means;
+  }
+
+  /**
+   * Choose the initial means on a sample of the stream, and refine them by
+   * clustering the sample.
+   *
+   * @param type Data type
+   * @param sample Sample
+   * @param counts Output: number of sample objects assigned to each mean
+   * @return Initial means
+   */
+  private double[][] initialize(SimpleTypeInformation<V> type, List<V> sample, long[] counts) {
+    if(LOG.isStatistics()) {
+      LOG.statistics(new StringStatistic(KEY + ".initialization", initializer.toString()));
+      LOG.statistics(new LongStatistic(KEY + ".initialization.sample-size", sample.size()));
+    }
+    DBIDRange ids = DBIDUtil.generateStaticDBIDRange(sample.size());
+    MaterializedRelation<V> rel = new MaterializedRelation<>(type, ids);
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      rel.insert(it, sample.get(it.getOffset()));
+    }
+    double[][] means = initializer.chooseInitialMeans(new ProxyDatabase(ids, rel), rel, k, getDistanceFunction());
+    WritableIntegerDataStore assignment = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+    iterate(rel, means, new long[k], assignment, null, null);
+    // Continue with the learning rates of the sample clusters.
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance()) {
+      ++counts[assignment.intValue(it)];
+    }
+    assignment.destroy();
+    return means;
+  }
+
+  /**
+   * Process a single mini batch: assign all objects to their nearest mean,
+   * then move each mean towards the objects assigned, with a learning rate of
+   * one over the number of objects assigned to it so far.
+   *
+   * @param batch Batch
+   * @param means Means, will be modified
+   * @param counts Number of objects assigned to each mean so far
+   * @param nearest Output array for the nearest mean of each object
+   */
+  protected void miniBatch(List<? extends V> batch, double[][] means, long[] counts, int[] nearest) {
+    final NumberVectorDistanceFunction<? super V> df = getDistanceFunction();
+    final int size = batch.size();
+    // Assign to the nearest means, which are fixed during this step.
+    for(int i = 0; i < size; i++) {
+      final V fv = batch.get(i);
+      double mindist = Double.POSITIVE_INFINITY;
+      int minIndex = 0;
+      for(int j = 0; j < k; j++) {
+        final double dist = df.distance(fv, DoubleVector.wrap(means[j]));
+        if(dist < mindist) {
+          minIndex = j;
+          mindist = dist;
+        }
+      }
+      nearest[i] = minIndex;
+    }
+    // Gradient step with per-cluster learning rate.
+    for(int i = 0; i < size; i++) {
+      final V fv = batch.get(i);
+      final int c = nearest[i];
+      final double eta = 1. / ++counts[c];
+      final double[] mean = means[c];
+      for(int d = 0; d < mean.length; d++) {
+        mean[d] += eta * (fv.doubleValue(d) - mean[d]);
+      }
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractKMeans.Parameterizer<V> {
+    /**
+     * Parameter for the batch size.
+     */
+    public static final OptionID BATCHSIZE_ID = new OptionID("kmeans.minibatch.size", "Number of objects in each mini batch.");
+
+    /**
+     * Parameter for the initialization sample size, when clustering streams.
+     */
+    public static final OptionID SAMPLESIZE_ID = new OptionID("kmeans.minibatch.sample", "Number of objects to sample from the beginning of a stream for the initialization.");
+
+    /**
+     * Random source for the processing order and the stream sample.
+     */
+    public static final OptionID RANDOM_ID = new OptionID("kmeans.minibatch.random", "Random source for the processing order and the stream sample.");
+
+    /**
+     * Batch size.
+     */
+    int batchsize;
+
+    /**
+     * Sample size.
+     */
+    int samplesize;
+
+    /**
+     * Random generator.
+     */
+    RandomFactory random;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      IntParameter batchP = new IntParameter(BATCHSIZE_ID, 1000);
+      batchP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(batchP)) {
+        batchsize = batchP.intValue();
+      }
+      IntParameter sampleP = new IntParameter(SAMPLESIZE_ID, 10000);
+      sampleP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(sampleP)) {
+        samplesize = sampleP.intValue();
+      }
+      RandomParameter randomP = new RandomParameter(RANDOM_ID);
+      if(config.grab(randomP)) {
+        random = randomP.getValue();
+      }
+    }
+
+    @Override
+    protected Logging getLogger() {
+      return LOG;
+    }
+
+    @Override
+    protected KMeansMiniBatch<V> makeInstance() {
+      return new KMeansMiniBatch<>(distanceFunction, k, maxiter, initializer, batchsize, samplesize, random);
+    }
+  }
+}
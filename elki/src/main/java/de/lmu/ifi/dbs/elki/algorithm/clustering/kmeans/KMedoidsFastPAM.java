@@ -0,0 +1,364 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.KMedoidsInitialization;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * PAM with an accelerated swap phase, which chooses the same swaps as
+ * {@link KMedoidsPAM}.
+ *
+ * For each non-medoid candidate h, the change in cost of all k possible swaps
+ * is computed in a single pass over the data: the distance to the nearest and
+ * second nearest medoid are cached, and the contributions of objects that
+ * would move to h are shared across all k medoids. This reduces the cost of
+ * evaluating a candidate from O(k·n) to O(n+k). The candidates are
+ * additionally evaluated in parallel, and the best swap is chosen in the same
+ * order as in the sequential algorithm.
+ *
+ * Reference:
+ * <p>
+ * E. Schubert, P. J. Rousseeuw<br />
+ * Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS
+ * Algorithms<br />
+ * Similarity Search and Applications, SISAP 2019
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has SwapSearch
+ *
+ * @param <V> vector datatype
+ */
+@Reference(authors = "E. Schubert, P. J. Rousseeuw", //
+title = "Faster k-Medoids Clustering: Improving the PAM, CLARA, and CLARANS Algorithms", //
+booktitle = "Similarity Search and Applications, SISAP 2019", //
+url = "http://dx.doi.org/10.1007/978-3-030-32047-8_16")
+public class KMedoidsFastPAM<V> extends KMedoidsPAM<V> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(KMedoidsFastPAM.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = KMedoidsFastPAM.class.getName();
+
+  /**
+   * Number of candidate blocks per thread, for load balancing.
+   */
+  private static final int BLOCKS_PER_THREAD = 4;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction distance function
+   * @param k k parameter
+   * @param maxiter Maxiter parameter
+   * @param initializer Function to generate the initial means
+   */
+  public KMedoidsFastPAM(DistanceFunction<? super V> distanceFunction, int k, int maxiter, KMedoidsInitialization<V> initializer) {
+    super(distanceFunction, k, maxiter, initializer);
+  }
+
+  @Override
+  protected void runPAMOptimization(DistanceQuery<V> distQ, DBIDs ids, ArrayModifiableDBIDs medoids, WritableIntegerDataStore assignment) {
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    WritableDoubleDataStore nearest = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    WritableDoubleDataStore second = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP);
+    // Initial assignment to nearest medoids
+    double tc = assignToNearestCluster(medoids, ids, nearest, second, assignment, distQ);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + 0 + ".cost", tc));
+    }
+
+    // Split the candidates into blocks:
+    final int size = aids.size();
+    final int nblocks = Math.max(1, Math.min(size, ParallelCore.getCore().getParallelism() * BLOCKS_PER_THREAD));
+    List<SwapSearch> blocks = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      blocks.add(new SwapSearch(distQ, aids, medoids, nearest, second, assignment, (int) ((long) size * b / nblocks), (int) ((long) size * (b + 1) / nblocks)));
+    }
+
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("PAM iteration", LOG) : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    int iteration = 1;
+    try {
+      DBIDArrayIter h = aids.iter();
+      for(; maxiter <= 0 || iteration <= maxiter; iteration++) {
+        LOG.incrementProcessed(prog);
+        // Find the best swap, in the same order as sequential PAM:
+        double best = Double.POSITIVE_INFINITY;
+        int bestoff = -1, bestcluster = -1;
+        for(SwapSearch block : runBlocks(core, blocks)) {
+          if(block.best < best) {
+            best = block.best;
+            bestoff = block.bestoff;
+            bestcluster = block.bestcluster;
+          }
+        }
+        if(best >= 0.) {
+          break;
+        }
+        medoids.set(bestcluster, h.seek(bestoff));
+        // Reassign
+        double nc = assignToNearestCluster(medoids, ids, nearest, second, assignment, distQ);
+        if(LOG.isStatistics()) {
+          LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + iteration + ".cost", nc));
+        }
+        if(nc > tc) {
+          if(nc - tc < 1e-7 * tc) {
+            LOG.warning("PAM failed to converge (numerical instability?)");
+            break;
+          }
+          LOG.warning("PAM failed to converge: costs increased by: " + (nc - tc) + " exepected a decrease by " + best);
+          break;
+        }
+        tc = nc;
+      }
+    }
+    finally {
+      core.disconnect();
+    }
+    LOG.setCompleted(prog);
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KEY + ".iterations", iteration));
+      LOG.statistics(new DoubleStatistic(KEY + ".iteration-" + iteration + ".cost", tc));
+    }
+  }
+
+  /**
+   * Evaluate all candidate blocks, concurrently if there is more than one.
+   *
+   * @param core Parallel core
+   * @param blocks Candidate blocks
+   * @return Blocks, with their best swap
+   */
+  private static List<SwapSearch> runBlocks(ParallelCore core, List<SwapSearch> blocks) {
+    if(blocks.size() == 1) {
+      blocks.get(0).call();
+      return blocks;
+    }
+    try {
+      List<Future<SwapSearch>> futures = new ArrayList<>(blocks.size());
+      for(SwapSearch block : blocks) {
+        futures.add(core.submit(block));
+      }
+      for(Future<SwapSearch> future : futures) {
+        future.get();
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("PAM swap search failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("PAM swap search interrupted.", e);
+    }
+    return blocks;
+  }
+
+  /**
+   * Find the best swap for a range of candidates.
+   *
+   * @author Erich Schubert
+   */
+  private static class SwapSearch implements Callable<SwapSearch> {
+    /**
+     * Distance query.
+     */
+    DistanceQuery<?> distQ;
+
+    /**
+     * All objects.
+     */
+    ArrayDBIDs ids;
+
+    /**
+     * Current medoids.
+     */
+    ArrayDBIDs medoids;
+
+    /**
+     * Distance to the nearest and second nearest medoid.
+     */
+    DoubleDataStore nearest, second;
+
+    /**
+     * Current cluster assignment.
+     */
+    IntegerDataStore assignment;
+
+    /**
+     * Candidate range.
+     */
+    int start, end;
+
+    /**
+     * Cost change per medoid, except for the shared part.
+     */
+    double[] cost;
+
+    /**
+     * Best swap found: change in cost.
+     */
+    double best;
+
+    /**
+     * Best swap found: candidate offset.
+     */
+    int bestoff;
+
+    /**
+     * Best swap found: medoid to replace.
+     */
+    int bestcluster;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param ids All objects
+     * @param medoids Current medoids
+     * @param nearest Distance to the nearest medoid
+     * @param second Distance to the second nearest medoid
+     * @param assignment Current cluster assignment
+     * @param start First candidate offset
+     * @param end Candidate offset end
+     */
+    SwapSearch(DistanceQuery<?> distQ, ArrayDBIDs ids, ArrayDBIDs medoids, DoubleDataStore nearest, DoubleDataStore second, IntegerDataStore assignment, int start, int end) {
+      this.distQ = distQ;
+      this.ids = ids;
+      this.medoids = medoids;
+      this.nearest = nearest;
+      this.second = second;
+      this.assignment = assignment;
+      this.start = start;
+      this.end = end;
+      this.cost = new double[medoids.size()];
+    }
+
+    @Override
+    public SwapSearch call() {
+      final int k = cost.length;
+      best = Double.POSITIVE_INFINITY;
+      bestoff = -1;
+      bestcluster = -1;
+      DBIDArrayIter m = medoids.iter();
+      for(DBIDArrayIter h = ids.iter().seek(start); h.getOffset() < end; h.advance()) {
+        m.seek(assignment.intValue(h));
+        final double hdist = nearest.doubleValue(h); // Current assignment cost of h.
+        if(DBIDUtil.equal(m, h) || hdist <= 0.) {
+          continue; // Only consider non-selected items
+        }
+        // Change in cost shared by all medoids:
+        double shared = -hdist;
+        for(int pi = 0; pi < k; pi++) {
+          cost[pi] = 0.;
+        }
+        for(DBIDIter j = ids.iter(); j.valid(); j.advance()) {
+          if(DBIDUtil.equal(h, j)) {
+            continue;
+          }
+          final int pj = assignment.intValue(j);
+          final double distcur = nearest.doubleValue(j);
+          final double distsec = second.doubleValue(j);
+          final double dist_h = distQ.distance(h, j);
+          // Cost if the current nearest medoid is removed:
+          final double ifremoved = (dist_h < distsec) ? dist_h : distsec;
+          if(dist_h < distcur) {
+            // j moves to h, no matter which other medoid is removed
+            shared += dist_h - distcur;
+            cost[pj] += ifremoved - dist_h;
+          }
+          else {
+            // Only if the nearest medoid of j is removed.
+            cost[pj] += ifremoved - distcur;
+          }
+        }
+        // Consider all possible swaps:
+        for(int pi = 0; pi < k; pi++) {
+          final double c = shared + cost[pi];
+          if(c < best) {
+            best = c;
+            bestoff = h.getOffset();
+            bestcluster = pi;
+          }
+        }
+      }
+      return this;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V> extends KMedoidsPAM.Parameterizer<V> {
+    @Override
+    protected KMedoidsFastPAM<V> makeInstance() {
+      return new KMedoidsFastPAM<>(distanceFunction, k, maxiter, initializer);
+    }
+  }
+}
@@ -0,0 +1,436 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Scalable k-means++ initialization ("k-means||") for k-means.
+ *
+ * Instead of choosing one center per pass over the data, this method samples
+ * about {@code oversampling * k} candidates per round, each with probability
+ * proportional to its distance to the nearest candidate so far. After a few
+ * rounds, the candidates are weighted by the number of points closest to
+ * them, and reduced to k centers using a weighted k-means++ selection.
+ *
+ * The distance updates after each round are computed in parallel; sampling is
+ * a cheap sequential pass, so that the chosen candidates depend on the random
+ * seed only, not on the number of threads.
+ *
+ * Reference:
+ * <p>
+ * B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii<br />
+ * Scalable k-means++<br />
+ * Proc. VLDB Endowment 5(7)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has DistanceUpdateProcessor
+ */
+@Reference(authors = "B. Bahmani, B. Moseley, A. Vattani, R. Kumar, S. Vassilvitskii", //
+title = "Scalable k-means++", //
+booktitle = "Proc. VLDB Endowment 5(7)", //
+url = "http://dx.doi.org/10.14778/2180912.2180915")
+public class KMeansParallelInitialMeans extends AbstractKMeansInitialization<NumberVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(KMeansParallelInitialMeans.class);
+
+  /**
+   * Oversampling factor, relative to k.
+   */
+  protected double oversampling;
+
+  /**
+   * Number of sampling rounds.
+   */
+  protected int rounds;
+
+  /**
+   * Constructor.
+   *
+   * @param rnd Random generator.
+   * @param oversampling Oversampling factor, relative to k
+   * @param rounds Number of sampling rounds
+   */
+  public KMeansParallelInitialMeans(RandomFactory rnd, double oversampling, int rounds) {
+    super(rnd);
+    this.oversampling = oversampling;
+    this.rounds = rounds;
+  }
+
+  @Override
+  public <T extends NumberVector> double[][] chooseInitialMeans(Database database, Relation<T> relation, int k, NumberVectorDistanceFunction<? super T> distanceFunction) {
+    DistanceQuery<T> distQ = database.getDistanceQuery(relation, distanceFunction);
+
+    DBIDs ids = relation.getDBIDs();
+    if(ids.size() <= k) {
+      throw new AbortException("Don't use k-means with k >= data set size.");
+    }
+    WritableDoubleDataStore dist = DataStoreUtil.makeDoubleStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, Double.POSITIVE_INFINITY);
+    WritableIntegerDataStore nearest = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_HOT | DataStoreFactory.HINT_TEMP, -1);
+
+    Random random = rnd.getSingleThreadedRandom();
+    ArrayModifiableDBIDs cands = DBIDUtil.newArray();
+    List<T> candvecs = new ArrayList<>();
+    DBIDRef first = DBIDUtil.randomSample(ids, random);
+    cands.add(first);
+    candvecs.add(relation.get(first));
+
+    DistanceUpdateProcessor<T> proc = new DistanceUpdateProcessor<>(distQ, dist, nearest, candvecs);
+    double cost = proc.update(ids, 0);
+
+    // Oversampling rounds:
+    final double l = oversampling * k;
+    for(int r = 0; r < rounds && cost > 0.; r++) {
+      final int start = candvecs.size();
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        final double w = dist.doubleValue(it);
+        if(w > 0. && random.nextDouble() * cost < l * w) {
+          cands.add(it);
+          candvecs.add(relation.get(it));
+        }
+      }
+      if(candvecs.size() > start) {
+        cost = proc.update(ids, start);
+      }
+    }
+    final int m = candvecs.size();
+    if(LOG.isStatistics()) {
+      LOG.statistics(new LongStatistic(KMeansParallelInitialMeans.class.getName() + ".candidates", m));
+    }
+
+    List<T> means;
+    if(m <= k) {
+      // Too few candidates (e.g., many duplicates): fill with random points.
+      means = candvecs;
+      if(m < k) {
+        for(DBIDIter it = DBIDUtil.randomSample(DBIDUtil.difference(ids, cands), k - m, random).iter(); it.valid(); it.advance()) {
+          means.add(relation.get(it));
+        }
+      }
+    }
+    else {
+      // Weight candidates by the number of points closest to them.
+      double[] weights = new double[m];
+      for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+        weights[nearest.intValue(it)] += 1.;
+      }
+      means = reduceCandidates(candvecs, weights, k, distQ, random);
+    }
+
+    // Explicitly destroy temporary data.
+    dist.destroy();
+    nearest.destroy();
+
+    return unboxVectors(means);
+  }
+
+  /**
+   * Reduce the weighted candidates to k centers using k-means++.
+   *
+   * @param cands Candidate vectors
+   * @param weights Candidate weights
+   * @param k Number of centers to choose
+   * @param distQ Distance query
+   * @param random Random generator
+   * @return Chosen centers
+   * @param <T> Vector type
+   */
+  protected static <T> List<T> reduceCandidates(List<T> cands, double[] weights, int k, DistanceQuery<T> distQ, Random random) {
+    final int m = cands.size();
+    List<T> means = new ArrayList<>(k);
+    double[] mindist = new double[m];
+    Arrays.fill(mindist, Double.POSITIVE_INFINITY);
+    boolean[] chosen = new boolean[m];
+
+    // Choose the first center proportional to weight:
+    double sum = 0.;
+    for(int i = 0; i < m; i++) {
+      sum += weights[i];
+    }
+    int c = choose(weights, null, chosen, sum, random);
+    while(true) {
+      chosen[c] = true;
+      final T newmean = cands.get(c);
+      means.add(newmean);
+      if(means.size() >= k) {
+        break;
+      }
+      // Update distances, and weighted sum:
+      sum = 0.;
+      for(int i = 0; i < m; i++) {
+        if(chosen[i]) {
+          continue;
+        }
+        double d = distQ.distance(newmean, cands.get(i));
+        if(d < mindist[i]) {
+          mindist[i] = d;
+        }
+        sum += weights[i] * mindist[i];
+      }
+      c = choose(weights, mindist, chosen, sum, random);
+    }
+    return means;
+  }
+
+  /**
+   * Choose a candidate proportional to weight (times distance).
+   *
+   * @param weights Candidate weights
+   * @param mindist Minimum distances, may be {@code null}
+   * @param chosen Already chosen candidates
+   * @param sum Sum of weights
+   * @param random Random generator
+   * @return Index of chosen candidate
+   */
+  private static int choose(double[] weights, double[] mindist, boolean[] chosen, double sum, Random random) {
+    int last = -1;
+    if(sum > 0.) {
+      double r = random.nextDouble() * sum;
+      for(int i = 0; i < weights.length; i++) {
+        if(chosen[i]) {
+          continue;
+        }
+        final double w = mindist != null ? weights[i] * mindist[i] : weights[i];
+        if(w <= 0.) {
+          continue;
+        }
+        last = i;
+        r -= w;
+        if(r < 0.) {
+          return i;
+        }
+      }
+    }
+    if(last >= 0) { // Rare case, due to floating point math.
+      return last;
+    }
+    // Only duplicates remain: choose uniformly.
+    int s = 0;
+    for(int i = 0; i < chosen.length; i++) {
+      s += chosen[i] ? 0 : 1;
+    }
+    s = random.nextInt(s);
+    for(int i = 0;; i++) {
+      if(!chosen[i] && s-- == 0) {
+        return i;
+      }
+    }
+  }
+
+  /**
+   * Processor to update the distances to the nearest candidate in parallel.
+   *
+   * @author Erich Schubert
+   *
+   * @param <T> Vector type
+   */
+  private static class DistanceUpdateProcessor<T> implements Processor {
+    /**
+     * Distance query.
+     */
+    private DistanceQuery<T> distQ;
+
+    /**
+     * Distance to the nearest candidate.
+     */
+    private WritableDoubleDataStore dist;
+
+    /**
+     * Index of the nearest candidate.
+     */
+    private WritableIntegerDataStore nearest;
+
+    /**
+     * Candidate vectors.
+     */
+    private List<T> cands;
+
+    /**
+     * First candidate index to process.
+     */
+    private int start;
+
+    /**
+     * Total cost (sum of distances).
+     */
+    private double cost;
+
+    /**
+     * Constructor.
+     *
+     * @param distQ Distance query
+     * @param dist Distance storage
+     * @param nearest Nearest candidate storage
+     * @param cands Candidate vectors
+     */
+    public DistanceUpdateProcessor(DistanceQuery<T> distQ, WritableDoubleDataStore dist, WritableIntegerDataStore nearest, List<T> cands) {
+      super();
+      this.distQ = distQ;
+      this.dist = dist;
+      this.nearest = nearest;
+      this.cands = cands;
+    }
+
+    /**
+     * Update the distances with the candidates added since {@code start}.
+     *
+     * @param ids Objects to process
+     * @param start First new candidate
+     * @return Total cost
+     */
+    public double update(DBIDs ids, int start) {
+      this.start = start;
+      this.cost = 0.;
+      ParallelExecutor.run(ids, this);
+      return cost;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return new Instance();
+    }
+
+    @Override
+    public synchronized void cleanup(Processor.Instance inst) {
+      cost += ((DistanceUpdateProcessor<?>.Instance) inst).cost;
+    }
+
+    /**
+     * Instance for a single thread.
+     *
+     * @author Erich Schubert
+     */
+    private class Instance implements Processor.Instance {
+      /**
+       * Local cost sum.
+       */
+      double cost = 0.;
+
+      @Override
+      public void map(DBIDRef id) {
+        double best = dist.doubleValue(id);
+        int bestc = -1;
+        for(int i = start, end = cands.size(); i < end; i++) {
+          final double d = distQ.distance(cands.get(i), id);
+          if(d < best) {
+            best = d;
+            bestc = i;
+          }
+        }
+        if(bestc >= 0) {
+          dist.putDouble(id, best);
+          nearest.putInt(id, bestc);
+        }
+        cost += best;
+      }
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractKMeansInitialization.Parameterizer {
+    /**
+     * Oversampling factor, relative to k.
+     */
+    public static final OptionID OVERSAMPLING_ID = new OptionID("kmeans.parallel.oversampling", //
+    "Oversampling factor l/k: number of candidates sampled per round, relative to k.");
+
+    /**
+     * Number of sampling rounds.
+     */
+    public static final OptionID ROUNDS_ID = new OptionID("kmeans.parallel.rounds", //
+    "Number of oversampling rounds.");
+
+    /**
+     * Oversampling factor, relative to k.
+     */
+    protected double oversampling;
+
+    /**
+     * Number of sampling rounds.
+     */
+    protected int rounds;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      DoubleParameter oversamplingP = new DoubleParameter(OVERSAMPLING_ID, 2.) //
+          .addConstraint(CommonConstraints.GREATER_THAN_ZERO_DOUBLE);
+      if(config.grab(oversamplingP)) {
+        oversampling = oversamplingP.doubleValue();
+      }
+      IntParameter roundsP = new IntParameter(ROUNDS_ID, 5) //
+          .addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(roundsP)) {
+        rounds = roundsP.intValue();
+      }
+    }
+
+    @Override
+    protected KMeansParallelInitialMeans makeInstance() {
+      return new KMeansParallelInitialMeans(rnd, oversampling, rounds);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static de.lmu.ifi.dbs.elki.math.linearalgebra.VMath.plusEquals;
+import static de.lmu.ifi.dbs.elki.math.linearalgebra.VMath.times;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
+
+/**
+ * Base class for parallel k-means processors that maintain distance bounds.
+ *
+ * The bounds are kept in flat primitive arrays, indexed by the position of
+ * each object in the processed array of IDs. The cluster sums are maintained
+ * incrementally: each instance collects the changes caused by its
+ * reassignments, which are combined in {@link #cleanup}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public abstract class AbstractKMeansBoundsProcessor<V extends NumberVector> implements Processor {
+  /**
+   * Data relation.
+   */
+  Relation<V> relation;
+
+  /**
+   * Distance function.
+   */
+  NumberVectorDistanceFunction<? super V> distance;
+
+  /**
+   * Distance is squared Euclidean, and needs a square root for the bounds.
+   */
+  boolean issquared;
+
+  /**
+   * Assignment storage.
+   */
+  WritableIntegerDataStore assignment;
+
+  /**
+   * Offsets of the objects in the bound arrays.
+   */
+  IntegerDataStore offsets;
+
+  /**
+   * Current mean vectors.
+   */
+  double[][] means;
+
+  /**
+   * Distance the means moved in the last iteration, {@code null} initially.
+   */
+  double[] move;
+
+  /**
+   * Cluster sums.
+   */
+  double[][] sums;
+
+  /**
+   * Cluster sizes.
+   */
+  int[] sizes;
+
+  /**
+   * Number of reassigned objects in the current iteration.
+   */
+  int changed = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment, initialized with -1
+   * @param offsets Offsets of the objects in the bound arrays
+   * @param k Number of clusters
+   * @param dim Dimensionality
+   */
+  public AbstractKMeansBoundsProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, IntegerDataStore offsets, int k, int dim) {
+    super();
+    this.relation = relation;
+    this.distance = distance;
+    this.issquared = distance instanceof SquaredEuclideanDistanceFunction;
+    this.assignment = assignment;
+    this.offsets = offsets;
+    this.sums = new double[k][dim];
+    this.sizes = new int[k];
+  }
+
+  /**
+   * Initialize for a new iteration.
+   *
+   * @param means Current means
+   * @param move Distance moved by each mean in the last iteration, or
+   *        {@code null} in the first iteration.
+   */
+  public void nextIteration(double[][] means, double[] move) {
+    this.means = means;
+    this.move = move;
+    this.changed = 0;
+  }
+
+  /**
+   * Get the number of reassigned objects.
+   *
+   * @return Number of changes
+   */
+  public int changed() {
+    return changed;
+  }
+
+  /**
+   * Get the cluster sizes.
+   *
+   * @return Cluster sizes
+   */
+  public int[] getSizes() {
+    return sizes;
+  }
+
+  /**
+   * Compute the new means from the cluster sums.
+   *
+   * @return New means
+   */
+  public double[][] getMeans() {
+    double[][] newmeans = new double[sums.length][];
+    for(int i = 0; i < sums.length; i++) {
+      final int s = sizes[i];
+      newmeans[i] = times(sums[i], s > 0 ? 1. / s : 1.);
+    }
+    return newmeans;
+  }
+
+  @Override
+  public void cleanup(Processor.Instance inst) {
+    @SuppressWarnings("unchecked")
+    Instance<V> instance = (Instance<V>) inst;
+    synchronized(this) {
+      changed += instance.changed;
+      for(int i = 0; i < sums.length; i++) {
+        if(instance.sums[i] != null) {
+          plusEquals(sums[i], instance.sums[i]);
+        }
+        sizes[i] += instance.sizes[i];
+      }
+    }
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public abstract static class Instance<V extends NumberVector> implements Processor.Instance {
+    /**
+     * Data relation.
+     */
+    protected Relation<V> relation;
+
+    /**
+     * Distance function.
+     */
+    protected NumberVectorDistanceFunction<? super V> distance;
+
+    /**
+     * Distance is squared Euclidean.
+     */
+    protected boolean issquared;
+
+    /**
+     * Cluster assignment storage.
+     */
+    protected WritableIntegerDataStore assignment;
+
+    /**
+     * Offsets in the bound arrays.
+     */
+    protected IntegerDataStore offsets;
+
+    /**
+     * Current mean vectors (shared, read-only).
+     */
+    protected double[][] means;
+
+    /**
+     * Distance moved by the means, may be {@code null}.
+     */
+    protected double[] move;
+
+    /**
+     * Changes to the cluster sums, allocated on demand.
+     */
+    double[][] sums;
+
+    /**
+     * Changes to the cluster sizes.
+     */
+    int[] sizes;
+
+    /**
+     * Number of reassigned objects.
+     */
+    int changed = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    protected Instance(AbstractKMeansBoundsProcessor<V> parent) {
+      super();
+      this.relation = parent.relation;
+      this.distance = parent.distance;
+      this.issquared = parent.issquared;
+      this.assignment = parent.assignment;
+      this.offsets = parent.offsets;
+      this.means = parent.means;
+      this.move = parent.move;
+      this.sums = new double[parent.sums.length][];
+      this.sizes = new int[parent.sums.length];
+    }
+
+    /**
+     * Compute the (metric) distance of a vector to a mean.
+     *
+     * @param fv Vector
+     * @param mean Mean
+     * @return Distance, with the square root taken for squared Euclidean.
+     */
+    protected double distance(V fv, double[] mean) {
+      final double d = distance.distance(fv, DoubleVector.wrap(mean));
+      return issquared ? Math.sqrt(d) : d;
+    }
+
+    /**
+     * Assign an object to a cluster.
+     *
+     * @param id Object
+     * @param fv Vector
+     * @param from Previous cluster, or -1
+     * @param to New cluster
+     */
+    protected void reassign(DBIDRef id, V fv, int from, int to) {
+      assignment.putInt(id, to);
+      final int dim = fv.getDimensionality();
+      double[] newsum = sums[to];
+      if(newsum == null) {
+        newsum = sums[to] = new double[dim];
+      }
+      if(from < 0) {
+        for(int d = 0; d < dim; d++) {
+          newsum[d] += fv.doubleValue(d);
+        }
+      }
+      else {
+        double[] oldsum = sums[from];
+        if(oldsum == null) {
+          oldsum = sums[from] = new double[dim];
+        }
+        for(int d = 0; d < dim; d++) {
+          final double v = fv.doubleValue(d);
+          newsum[d] += v;
+          oldsum[d] -= v;
+        }
+        --sizes[from];
+      }
+      ++sizes[to];
+      ++changed;
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+
+/**
+ * Parallel processor for Elkan's k-means, using one upper bound and k lower
+ * bounds per object.
+ *
+ * The lower bounds are stored in a single n*k array, with the bounds of each
+ * object stored consecutively.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class ElkanKMeansProcessor<V extends NumberVector> extends AbstractKMeansBoundsProcessor<V> {
+  /**
+   * Upper bounds.
+   */
+  double[] upper;
+
+  /**
+   * Lower bounds, n*k.
+   */
+  double[] lower;
+
+  /**
+   * Half the distance of each mean to the nearest other mean.
+   */
+  double[] sep;
+
+  /**
+   * Half the center-to-center distances.
+   */
+  double[][] cdist;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment, initialized with -1
+   * @param offsets Offsets of the objects in the bound arrays
+   * @param k Number of clusters
+   * @param dim Dimensionality
+   */
+  public ElkanKMeansProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, IntegerDataStore offsets, int k, int dim) {
+    super(relation, distance, assignment, offsets, k, dim);
+    final int n = relation.size();
+    if((long) n * k > Integer.MAX_VALUE - 8) {
+      throw new IllegalArgumentException("Too many lower bounds for a single array: " + n + " * " + k);
+    }
+    this.upper = new double[n];
+    this.lower = new double[n * k];
+    this.sep = new double[k];
+    this.cdist = new double[k][k];
+  }
+
+  @Override
+  public void nextIteration(double[][] means, double[] move) {
+    super.nextIteration(means, move);
+    recomputeSeparation();
+  }
+
+  /**
+   * Recompute the separation of cluster means.
+   */
+  private void recomputeSeparation() {
+    final int k = means.length;
+    for(int i = 0; i < k; i++) {
+      sep[i] = Double.POSITIVE_INFINITY;
+    }
+    for(int i = 1; i < k; i++) {
+      DoubleVector mi = DoubleVector.wrap(means[i]);
+      for(int j = 0; j < i; j++) {
+        double d = distance.distance(mi, DoubleVector.wrap(means[j]));
+        d = issquared ? Math.sqrt(d) : d;
+        d *= .5;
+        cdist[i][j] = d;
+        cdist[j][i] = d;
+        sep[i] = (d < sep[i]) ? d : sep[i];
+        sep[j] = (d < sep[j]) ? d : sep[j];
+      }
+    }
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractKMeansBoundsProcessor.Instance<V> {
+    /**
+     * Upper bounds.
+     */
+    private double[] upper;
+
+    /**
+     * Lower bounds.
+     */
+    private double[] lower;
+
+    /**
+     * Mean separation.
+     */
+    private double[] sep;
+
+    /**
+     * Center-to-center distances.
+     */
+    private double[][] cdist;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    protected Instance(ElkanKMeansProcessor<V> parent) {
+      super(parent);
+      this.upper = parent.upper;
+      this.lower = parent.lower;
+      this.sep = parent.sep;
+      this.cdist = parent.cdist;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int k = means.length;
+      final int off = offsets.intValue(id), lo = off * k;
+      final int orig = assignment.intValue(id);
+      if(orig < 0) {
+        initialAssign(id, off, lo);
+        return;
+      }
+      // Update the bounds for the movement of the means.
+      double u = upper[off];
+      if(move != null) {
+        u += move[orig];
+        for(int j = 0; j < k; j++) {
+          lower[lo + j] -= move[j];
+        }
+      }
+      // Upper bound check (#2):
+      if(u <= sep[orig]) {
+        upper[off] = u;
+        return;
+      }
+      boolean recompute_u = true; // Elkan's r(x)
+      V fv = relation.get(id);
+      // Check all (other) means:
+      int cur = orig;
+      for(int j = 0; j < k; j++) {
+        if(orig == j || u <= lower[lo + j] || u <= cdist[cur][j]) {
+          continue; // Condition #3 i-iii not satisfied
+        }
+        if(recompute_u) { // Need to update bound? #3a
+          u = distance(fv, means[cur]);
+          recompute_u = false; // Once only
+          if(u <= lower[lo + j] || u <= cdist[cur][j]) { // #3b
+            continue;
+          }
+        }
+        double dist = distance(fv, means[j]);
+        lower[lo + j] = dist;
+        if(dist < u) {
+          cur = j;
+          u = dist;
+        }
+      }
+      upper[off] = u;
+      // Object is to be reassigned.
+      if(cur != orig) {
+        reassign(id, fv, orig, cur);
+      }
+    }
+
+    /**
+     * Initial assignment of an object.
+     *
+     * @param id Object
+     * @param off Offset of the upper bound
+     * @param lo Offset of the lower bounds
+     */
+    private void initialAssign(DBIDRef id, int off, int lo) {
+      V fv = relation.get(id);
+      // Check all (other) means:
+      double best = Double.POSITIVE_INFINITY;
+      int cur = -1;
+      for(int j = 0; j < means.length; j++) {
+        final double dist = distance(fv, means[j]);
+        lower[lo + j] = dist;
+        if(dist < best) {
+          cur = j;
+          best = dist;
+        }
+      }
+      reassign(id, fv, -1, cur);
+      upper[off] = best;
+    }
+  }
+}
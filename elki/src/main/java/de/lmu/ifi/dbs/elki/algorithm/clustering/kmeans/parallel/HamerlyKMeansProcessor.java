@@ -0,0 +1,253 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.datastore.IntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+
+/**
+ * Parallel processor for Hamerly's k-means, using one upper and one lower
+ * bound per object.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has Instance
+ *
+ * @param <V> Vector type
+ */
+public class HamerlyKMeansProcessor<V extends NumberVector> extends AbstractKMeansBoundsProcessor<V> {
+  /**
+   * Upper bounds.
+   */
+  double[] upper;
+
+  /**
+   * Lower bounds.
+   */
+  double[] lower;
+
+  /**
+   * Half the distance of each mean to the nearest other mean.
+   */
+  double[] sep;
+
+  /**
+   * Maximum distance moved by any mean.
+   */
+  double delta;
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distance Distance function
+   * @param assignment Cluster assignment, initialized with -1
+   * @param offsets Offsets of the objects in the bound arrays
+   * @param k Number of clusters
+   * @param dim Dimensionality
+   */
+  public HamerlyKMeansProcessor(Relation<V> relation, NumberVectorDistanceFunction<? super V> distance, WritableIntegerDataStore assignment, IntegerDataStore offsets, int k, int dim) {
+    super(relation, distance, assignment, offsets, k, dim);
+    final int n = relation.size();
+    this.upper = new double[n];
+    this.lower = new double[n];
+    this.sep = new double[k];
+  }
+
+  @Override
+  public void nextIteration(double[][] means, double[] move) {
+    super.nextIteration(means, move);
+    recomputeSeparation();
+    delta = 0.;
+    if(move != null) {
+      for(double d : move) {
+        delta = (d > delta) ? d : delta;
+      }
+    }
+  }
+
+  /**
+   * Recompute the separation of cluster means.
+   */
+  private void recomputeSeparation() {
+    final int k = means.length;
+    for(int i = 0; i < k; i++) {
+      sep[i] = Double.POSITIVE_INFINITY;
+    }
+    for(int i = 1; i < k; i++) {
+      DoubleVector m1 = DoubleVector.wrap(means[i]);
+      for(int j = 0; j < i; j++) {
+        double d = distance.distance(m1, DoubleVector.wrap(means[j]));
+        sep[i] = (d < sep[i]) ? d : sep[i];
+        sep[j] = (d < sep[j]) ? d : sep[j];
+      }
+    }
+    // We need half the Euclidean distance
+    for(int i = 0; i < k; i++) {
+      sep[i] = issquared ? Math.sqrt(sep[i]) : sep[i];
+      sep[i] *= .5;
+    }
+  }
+
+  @Override
+  public Instance<V> instantiate(Executor executor) {
+    return new Instance<>(this);
+  }
+
+  /**
+   * Instance to process part of the data set, for a single iteration.
+   *
+   * @author Erich Schubert
+   *
+   * @param <V> Vector type
+   */
+  public static class Instance<V extends NumberVector> extends AbstractKMeansBoundsProcessor.Instance<V> {
+    /**
+     * Upper bounds.
+     */
+    private double[] upper;
+
+    /**
+     * Lower bounds.
+     */
+    private double[] lower;
+
+    /**
+     * Mean separation.
+     */
+    private double[] sep;
+
+    /**
+     * Maximum movement of any mean.
+     */
+    private double delta;
+
+    /**
+     * Constructor.
+     *
+     * @param parent Parent processor
+     */
+    protected Instance(HamerlyKMeansProcessor<V> parent) {
+      super(parent);
+      this.upper = parent.upper;
+      this.lower = parent.lower;
+      this.sep = parent.sep;
+      this.delta = parent.delta;
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      final int off = offsets.intValue(id);
+      final int cur = assignment.intValue(id);
+      if(cur < 0) {
+        initialAssign(id, off);
+        return;
+      }
+      // Update the bounds for the movement of the means.
+      double u = upper[off], z = lower[off];
+      if(move != null) {
+        u += move[cur];
+        z -= delta;
+      }
+      final double sa = sep[cur];
+      if(u <= z || u <= sa) {
+        upper[off] = u;
+        lower[off] = z;
+        return;
+      }
+      // Update the upper bound
+      V fv = relation.get(id);
+      u = distance(fv, means[cur]);
+      if(u <= z || u <= sa) {
+        upper[off] = u;
+        lower[off] = z;
+        return;
+      }
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < means.length; i++) {
+        double dist = distance.distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      // make squared Euclidean a metric:
+      if(issquared) {
+        min1 = Math.sqrt(min1);
+        min2 = Math.sqrt(min2);
+      }
+      if(minIndex != cur) {
+        reassign(id, fv, cur, minIndex);
+        u = min1;
+      }
+      upper[off] = u;
+      lower[off] = min2;
+    }
+
+    /**
+     * Initial assignment of an object.
+     *
+     * @param id Object
+     * @param off Offset in the bound arrays
+     */
+    private void initialAssign(DBIDRef id, int off) {
+      V fv = relation.get(id);
+      // Find closest center, and distance to two closest centers
+      double min1 = Double.POSITIVE_INFINITY, min2 = Double.POSITIVE_INFINITY;
+      int minIndex = -1;
+      for(int i = 0; i < means.length; i++) {
+        double dist = distance.distance(fv, DoubleVector.wrap(means[i]));
+        if(dist < min1) {
+          minIndex = i;
+          min2 = min1;
+          min1 = dist;
+        }
+        else if(dist < min2) {
+          min2 = dist;
+        }
+      }
+      // make squared Euclidean a metric:
+      if(issquared) {
+        min1 = Math.sqrt(min1);
+        min2 = Math.sqrt(min2);
+      }
+      reassign(id, fv, -1, minIndex);
+      upper[off] = min1;
+      lower[off] = min2;
+    }
+  }
+}
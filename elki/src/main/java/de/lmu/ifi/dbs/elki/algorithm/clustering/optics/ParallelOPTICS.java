@@ -0,0 +1,581 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
+import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableIntegerDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * The OPTICS algorithm for density-based hierarchical clustering, using a
+ * primitive priority queue and parallel neighborhood queries.
+ *
+ * This produces the same cluster order as {@link OPTICSHeap}, but the
+ * candidates are managed in an indexed heap of integer offsets (into the
+ * sorted object ids) with primitive reachability values, so no objects are
+ * allocated per neighbor. Whenever the neighborhood of the next object is not
+ * yet known, the neighborhoods of the most promising candidates in the heap
+ * are computed as well, as a batch of concurrent range queries.
+ *
+ * The prefetched neighborhoods are kept until the objects are processed; with
+ * a very large epsilon this needs memory proportional to the batch size times
+ * the data set size.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.composedOf Instance
+ *
+ * @param <O> the type of DatabaseObjects handled by the algorithm
+ */
+public class ParallelOPTICS<O> extends AbstractOPTICS<O> {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelOPTICS.class);
+
+  /**
+   * Key for statistics logging.
+   */
+  private static final String KEY = ParallelOPTICS.class.getName();
+
+  /**
+   * Number of neighborhoods to prefetch per thread.
+   */
+  private static final int BATCH_PER_THREAD = 8;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceFunction Distance function
+   * @param epsilon Epsilon value
+   * @param minpts Minpts value
+   */
+  public ParallelOPTICS(DistanceFunction<? super O> distanceFunction, double epsilon, int minpts) {
+    super(distanceFunction, epsilon, minpts);
+  }
+
+  @Override
+  public ClusterOrder run(Database db, Relation<O> relation) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      return new Instance(db, relation, core).run();
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Instance for processing a single data set.
+   *
+   * @author Erich Schubert
+   */
+  private class Instance {
+    /**
+     * IDs to process, in their original order.
+     */
+    private DBIDs ids;
+
+    /**
+     * Sorted IDs; the offsets into this array are consistent with the DBID
+     * order used for tie breaking in {@link OPTICSHeapEntry}.
+     */
+    private ArrayModifiableDBIDs sorted;
+
+    /**
+     * Offsets of the objects in the sorted array.
+     */
+    private WritableIntegerDataStore offsets;
+
+    /**
+     * Processed flags.
+     */
+    private boolean[] processed;
+
+    /**
+     * Current reachability, and predecessor offset of heap entries.
+     */
+    private double[] reach;
+
+    /**
+     * Predecessor offsets, {@code -1} for none.
+     */
+    private int[] pred;
+
+    /**
+     * Heap of candidates.
+     */
+    private IndexedHeap heap;
+
+    /**
+     * Prefetched neighborhoods.
+     */
+    private DoubleDBIDList[] cache;
+
+    /**
+     * Number of prefetched neighborhoods not yet used.
+     */
+    private int cached = 0;
+
+    /**
+     * Number of range queries computed in batches.
+     */
+    private long batched = 0;
+
+    /**
+     * Output cluster order.
+     */
+    private ClusterOrder clusterOrder;
+
+    /**
+     * Progress for logging.
+     */
+    private FiniteProgress progress;
+
+    /**
+     * Range query.
+     */
+    private RangeQuery<O> rangeQuery;
+
+    /**
+     * Parallel executor.
+     */
+    private ParallelCore core;
+
+    /**
+     * Number of neighborhoods to compute at once.
+     */
+    private int batchsize;
+
+    /**
+     * Constructor for a single data set.
+     *
+     * @param db Database
+     * @param relation Data relation
+     * @param core Parallel core
+     */
+    public Instance(Database db, Relation<O> relation, ParallelCore core) {
+      this.core = core;
+      ids = relation.getDBIDs();
+      sorted = DBIDUtil.newArray(ids);
+      sorted.sort();
+      final int size = sorted.size();
+      offsets = DataStoreUtil.makeIntegerStorage(ids, DataStoreFactory.HINT_TEMP | DataStoreFactory.HINT_HOT, -1);
+      for(DBIDArrayIter it = sorted.iter(); it.valid(); it.advance()) {
+        offsets.putInt(it, it.getOffset());
+      }
+      processed = new boolean[size];
+      reach = new double[size];
+      pred = new int[size];
+      heap = new IndexedHeap(reach);
+      cache = new DoubleDBIDList[size];
+      batchsize = core.getParallelism() > 1 ? core.getParallelism() * BATCH_PER_THREAD : 1;
+      clusterOrder = new ClusterOrder(ids, "OPTICS Clusterorder", "optics-clusterorder");
+      progress = LOG.isVerbose() ? new FiniteProgress("OPTICS", size, LOG) : null;
+      DistanceQuery<O> dq = db.getDistanceQuery(relation, getDistanceFunction());
+      rangeQuery = db.getRangeQuery(dq, epsilon);
+    }
+
+    /**
+     * Process the data set.
+     *
+     * @return Cluster order result.
+     */
+    public ClusterOrder run() {
+      for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
+        final int off = offsets.intValue(iditer);
+        if(!processed[off]) {
+          assert (heap.isEmpty());
+          expandClusterOrder(off);
+        }
+      }
+      LOG.ensureCompleted(progress);
+      if(LOG.isStatistics()) {
+        LOG.statistics(new LongStatistic(KEY + ".prefetched", batched));
+      }
+      offsets.destroy();
+      return clusterOrder;
+    }
+
+    /**
+     * OPTICS-function expandClusterOrder.
+     *
+     * @param start Offset of the object to start with
+     */
+    protected void expandClusterOrder(int start) {
+      DBIDArrayIter cur = sorted.iter(), pre = sorted.iter();
+      reach[start] = Double.POSITIVE_INFINITY;
+      pred[start] = -1;
+      heap.add(start);
+
+      while(!heap.isEmpty()) {
+        final int current = heap.poll();
+        cur.seek(current);
+        clusterOrder.add(cur, reach[current], pred[current] >= 0 ? pre.seek(pred[current]) : null);
+        processed[current] = true;
+
+        if(cache[current] == null) {
+          prefetch(current);
+        }
+        DoubleDBIDList neighbors = cache[current];
+        cache[current] = null;
+        --cached;
+        if(neighbors.size() >= minpts) {
+          DoubleDBIDListIter neighbor = neighbors.iter();
+          final double coreDistance = neighbor.seek(minpts - 1).doubleValue();
+
+          for(neighbor.seek(0); neighbor.valid(); neighbor.advance()) {
+            final int off = offsets.intValue(neighbor);
+            if(processed[off]) {
+              continue;
+            }
+            final double reachability = neighbor.doubleValue() > coreDistance ? neighbor.doubleValue() : coreDistance;
+            if(!heap.contains(off)) {
+              reach[off] = reachability;
+              pred[off] = current;
+              heap.add(off);
+            }
+            else if(reachability < reach[off]) {
+              reach[off] = reachability;
+              pred[off] = current;
+              heap.decreaseKey(off);
+            }
+          }
+        }
+        LOG.incrementProcessed(progress);
+      }
+    }
+
+    /**
+     * Compute the neighborhood of the current object, along with the
+     * neighborhoods of the best candidates in the heap.
+     *
+     * @param current Current object offset
+     */
+    private void prefetch(int current) {
+      final int[] batch = new int[batchsize];
+      int size = 0;
+      batch[size++] = current;
+      // Candidates near the top of the heap are likely to be processed next.
+      if(cached < batchsize * 4) {
+        for(int i = 0; i < heap.size() && size < batchsize; i++) {
+          final int off = heap.get(i);
+          if(cache[off] == null) {
+            batch[size++] = off;
+          }
+        }
+      }
+      cached += size;
+      batched += size;
+      if(size == 1) {
+        cache[current] = rangeQuery(sorted.iter().seek(current));
+        return;
+      }
+      // Split the batch among the threads:
+      final int nblocks = Math.min(size, core.getParallelism());
+      List<Future<?>> futures = new ArrayList<>(nblocks);
+      for(int b = 0; b < nblocks; b++) {
+        futures.add(core.submit(new RangeQueries(batch, b * size / nblocks, (b + 1) * size / nblocks)));
+      }
+      try {
+        for(Future<?> future : futures) {
+          future.get();
+        }
+      }
+      catch(ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new AbortException("Range query failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("OPTICS interrupted.", e);
+      }
+    }
+
+    /**
+     * Compute the sorted epsilon neighborhood of an object.
+     *
+     * @param id Object
+     * @return Sorted neighborhood
+     */
+    private DoubleDBIDList rangeQuery(DBIDArrayIter id) {
+      ModifiableDoubleDBIDList neighbors = DBIDUtil.newDistanceDBIDList();
+      rangeQuery.getRangeForDBID(id, epsilon, neighbors);
+      neighbors.sort();
+      return neighbors;
+    }
+
+    /**
+     * Compute a part of a batch of range queries.
+     *
+     * @author Erich Schubert
+     */
+    private class RangeQueries implements Callable<Void> {
+      /**
+       * Object offsets.
+       */
+      private int[] batch;
+
+      /**
+       * Range of the batch to process.
+       */
+      private int start, end;
+
+      /**
+       * Constructor.
+       *
+       * @param batch Object offsets
+       * @param start First position to process
+       * @param end End position
+       */
+      RangeQueries(int[] batch, int start, int end) {
+        this.batch = batch;
+        this.start = start;
+        this.end = end;
+      }
+
+      @Override
+      public Void call() {
+        DBIDArrayIter it = sorted.iter();
+        for(int i = start; i < end; i++) {
+          cache[batch[i]] = rangeQuery(it.seek(batch[i]));
+        }
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Indexed binary min-heap of integer offsets, with primitive double keys.
+   *
+   * Ties are broken by preferring the larger offset, which corresponds to the
+   * ordering of {@link OPTICSHeapEntry}.
+   *
+   * @author Erich Schubert
+   */
+  private static class IndexedHeap {
+    /**
+     * Keys, indexed by offset.
+     */
+    private double[] keys;
+
+    /**
+     * Heap array of offsets.
+     */
+    private int[] heap;
+
+    /**
+     * Position of each offset in the heap, {@code -1} if not contained.
+     */
+    private int[] pos;
+
+    /**
+     * Current size.
+     */
+    private int size = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param keys Key array, indexed by offset
+     */
+    IndexedHeap(double[] keys) {
+      this.keys = keys;
+      this.heap = new int[keys.length];
+      this.pos = new int[keys.length];
+      Arrays.fill(pos, -1);
+    }
+
+    /**
+     * @return {@code true} if empty
+     */
+    boolean isEmpty() {
+      return size == 0;
+    }
+
+    /**
+     * @return Heap size
+     */
+    int size() {
+      return size;
+    }
+
+    /**
+     * Get the i-th element in heap order.
+     *
+     * @param i Position
+     * @return Offset
+     */
+    int get(int i) {
+      return heap[i];
+    }
+
+    /**
+     * Test if an offset is in the heap.
+     *
+     * @param off Offset
+     * @return {@code true} if contained
+     */
+    boolean contains(int off) {
+      return pos[off] >= 0;
+    }
+
+    /**
+     * Add an offset, with the key already set.
+     *
+     * @param off Offset
+     */
+    void add(int off) {
+      heapifyUp(size++, off);
+    }
+
+    /**
+     * Restore the heap after the key of an offset was decreased.
+     *
+     * @param off Offset
+     */
+    void decreaseKey(int off) {
+      heapifyUp(pos[off], off);
+    }
+
+    /**
+     * Remove the minimum.
+     *
+     * @return Offset of the minimum
+     */
+    int poll() {
+      final int ret = heap[0];
+      pos[ret] = -1;
+      if(--size > 0) {
+        heapifyDown(heap[size]);
+      }
+      return ret;
+    }
+
+    /**
+     * Compare two offsets.
+     *
+     * @param a First offset
+     * @param b Second offset
+     * @return {@code true} if a comes before b
+     */
+    private boolean before(int a, int b) {
+      final double ka = keys[a], kb = keys[b];
+      return ka < kb || (ka == kb && a > b);
+    }
+
+    /**
+     * Move an element up the heap.
+     *
+     * @param p Starting position
+     * @param off Offset to place
+     */
+    private void heapifyUp(int p, int off) {
+      while(p > 0) {
+        final int parent = (p - 1) >>> 1;
+        final int po = heap[parent];
+        if(!before(off, po)) {
+          break;
+        }
+        heap[p] = po;
+        pos[po] = p;
+        p = parent;
+      }
+      heap[p] = off;
+      pos[off] = p;
+    }
+
+    /**
+     * Move an element down from the top of the heap.
+     *
+     * @param off Offset to place
+     */
+    private void heapifyDown(int off) {
+      int p = 0;
+      final int half = size >>> 1;
+      while(p < half) {
+        int c = (p << 1) + 1;
+        int co = heap[c];
+        if(c + 1 < size && before(heap[c + 1], co)) {
+          co = heap[++c];
+        }
+        if(!before(co, off)) {
+          break;
+        }
+        heap[p] = co;
+        pos[co] = p;
+        p = c;
+      }
+      heap[p] = off;
+      pos[off] = p;
+    }
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<O> extends AbstractOPTICS.Parameterizer<O> {
+    @Override
+    protected ParallelOPTICS<O> makeInstance() {
+      return new ParallelOPTICS<>(distanceFunction, epsilon, minpts);
+    }
+  }
+}
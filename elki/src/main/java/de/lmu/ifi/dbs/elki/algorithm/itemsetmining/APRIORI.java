@@ -24,17 +24,24 @@ package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
  */
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import de.lmu.ifi.dbs.elki.data.BitVector;
 import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
@@ -42,15 +49,15 @@ import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.Alias;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.InconsistentDataException;
-import gnu.trove.iterator.TLongIntIterator;
-import gnu.trove.map.hash.TLongIntHashMap;
 
 /**
  * The APRIORI algorithm for Mining Association Rules.
@@ -70,6 +77,9 @@ import gnu.trove.map.hash.TLongIntHashMap;
  * domain-specific preprocessing to aggregate items into groups. Use statistics
  * logging to keep track of candidate set sizes.
  *
+ * The support counting scans are split into blocks of transactions, which are
+ * counted in parallel and then aggregated.
+ *
  * @author Arthur Zimek
  * @author Erich Schubert
  * @since 0.2
@@ -197,13 +207,26 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
   protected List<OneItemset> buildFrequentOneItemsets(final Relation<? extends SparseFeatureVector<?>> relation, final int dim, final int needed) {
     // TODO: use TIntList and prefill appropriately to avoid knowing "dim"
     // beforehand?
-    int[] counts = new int[dim];
-    for(DBIDIter iditer = relation.iterDBIDs(); iditer.valid(); iditer.advance()) {
-      SparseFeatureVector<?> bv = relation.get(iditer);
-      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
-        counts[bv.iterDim(it)]++;
-      }
+    ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+    final int size = ids.size(), nblocks = numBlocks(size);
+    List<CountingBlock> blocks = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      blocks.add(new CountingBlock(ids, (int) ((long) size * b / nblocks), (int) ((long) size * (b + 1) / nblocks)) {
+        @Override
+        void initialize() {
+          counts = new int[dim];
+        }
+
+        @Override
+        void process(DBIDRef id) {
+          SparseFeatureVector<?> bv = relation.get(id);
+          for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+            counts[bv.iterDim(it)]++;
+          }
+        }
+      });
     }
+    int[] counts = sumCounts(runBlocks(blocks), dim);
     if(LOG.isStatistics()) {
       LOG.statistics(new LongStatistic(STAT + "1-items.candidates", dim));
     }
@@ -229,47 +252,75 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
    * @return Frequent 2-itemsets
    */
   protected List<SparseItemset> buildFrequentTwoItemsets(List<OneItemset> oneitems, final Relation<BitVector> relation, final int dim, final int needed, DBIDs ids, ArrayModifiableDBIDs survivors) {
-    int f1 = 0;
-    long[] mask = BitsUtil.zero(dim);
+    final long[] mask = BitsUtil.zero(dim);
     for(OneItemset supported : oneitems) {
       BitsUtil.setI(mask, supported.item);
-      f1++;
+    }
+    // Rank of each frequent item, and the items by rank.
+    final int f1 = BitsUtil.cardinality(mask);
+    final int[] rank = new int[dim], items = new int[f1];
+    for(int i = BitsUtil.nextSetBit(mask, 0), r = 0; i >= 0; i = BitsUtil.nextSetBit(mask, i + 1), r++) {
+      rank[i] = r;
+      items[r] = i;
     }
     if(LOG.isStatistics()) {
       LOG.statistics(new LongStatistic(STAT + "2-items.candidates", f1 * (long) (f1 - 1)));
     }
-    // We quite aggressively size the map, assuming that almost each combination
-    // is present somewhere. If this won't fit into memory, we're likely running
-    // OOM somewhere later anyway!
-    TLongIntHashMap map = new TLongIntHashMap((f1 * (f1 - 1)) >>> 1);
-    final long[] scratch = BitsUtil.zero(dim);
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      BitsUtil.setI(scratch, mask);
-      relation.get(iditer).andOnto(scratch);
-      int lives = 0;
-      for(int i = BitsUtil.nextSetBit(scratch, 0); i >= 0; i = BitsUtil.nextSetBit(scratch, i + 1)) {
-        for(int j = BitsUtil.nextSetBit(scratch, i + 1); j >= 0; j = BitsUtil.nextSetBit(scratch, j + 1)) {
-          long key = (((long) i) << 32) | j;
-          map.put(key, 1 + map.get(key));
-          ++lives;
+    // We use a dense counter for every pair of frequent items, assuming that
+    // almost each combination is present somewhere. If this won't fit into
+    // memory, we're likely running OOM somewhere later anyway!
+    // All blocks share the same (atomic) counters.
+    if(f1 * (long) (f1 - 1) / 2 > Integer.MAX_VALUE) {
+      throw new AbortException("Too many frequent 1-itemsets to count all pairs: " + f1);
+    }
+    final int f2 = (int) (f1 * (long) (f1 - 1) / 2);
+    final AtomicIntegerArray paircounts = new AtomicIntegerArray(f2);
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size(), nblocks = numBlocks(size);
+    List<CountingBlock> blocks = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      blocks.add(new CountingBlock(aids, (int) ((long) size * b / nblocks), (int) ((long) size * (b + 1) / nblocks)) {
+        /**
+         * Scratch bitset.
+         */
+        long[] scratch;
+
+        @Override
+        void initialize() {
+          scratch = BitsUtil.zero(dim);
         }
-      }
-      if(lives > 2) {
-        survivors.add(iditer);
-      }
+
+        @Override
+        void process(DBIDRef id) {
+          BitsUtil.setI(scratch, mask);
+          relation.get(id).andOnto(scratch);
+          int lives = 0;
+          for(int i = BitsUtil.nextSetBit(scratch, 0); i >= 0; i = BitsUtil.nextSetBit(scratch, i + 1)) {
+            final int off = pairOffset(rank[i], f1) - rank[i] - 1;
+            for(int j = BitsUtil.nextSetBit(scratch, i + 1); j >= 0; j = BitsUtil.nextSetBit(scratch, j + 1)) {
+              paircounts.incrementAndGet(off + rank[j]);
+              ++lives;
+            }
+          }
+          if(lives > 2) {
+            survivors.add(id);
+          }
+        }
+      });
     }
-    // Generate candidates of length 2.
+    for(CountingBlock block : runBlocks(blocks)) {
+      survivors.addDBIDs(block.survivors);
+    }
+    // Generate candidates of length 2, in lexicographic order.
     List<SparseItemset> frequent = new ArrayList<>(f1 * (int) Math.sqrt(f1));
-    for(TLongIntIterator iter = map.iterator(); iter.hasNext();) {
-      iter.advance(); // Trove style iterator - advance first.
-      if(iter.value() >= needed) {
-        int ii = (int) (iter.key() >>> 32);
-        int ij = (int) (iter.key() & -1L);
-        frequent.add(new SparseItemset(new int[] { ii, ij }, iter.value()));
+    for(int ri = 0, off = 0; ri < f1; ri++) {
+      for(int rj = ri + 1; rj < f1; rj++, off++) {
+        final int c = paircounts.get(off);
+        if(c >= needed) {
+          frequent.add(new SparseItemset(new int[] { items[ri], items[rj] }, c));
+        }
       }
     }
-    // The hashmap may produce them out of order.
-    Collections.sort(frequent);
     if(LOG.isStatistics()) {
       LOG.statistics(new LongStatistic(STAT + "2-items.frequent", frequent.size()));
     }
@@ -390,7 +441,7 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
    * @param length Itemset length
    * @return Itemsets with sufficient support
    */
-  protected List<? extends Itemset> frequentItemsets(List<? extends Itemset> candidates, Relation<BitVector> relation, int needed, DBIDs ids, ArrayModifiableDBIDs survivors, int length) {
+  protected List<? extends Itemset> frequentItemsets(final List<? extends Itemset> candidates, final Relation<BitVector> relation, int needed, DBIDs ids, ArrayModifiableDBIDs survivors, final int length) {
     if(candidates.isEmpty()) {
       return Collections.emptyList();
     }
@@ -406,20 +457,34 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
       List<SparseItemset> sparsecand = (List<SparseItemset>) candidates;
       return frequentItemsetsSparse(sparsecand, relation, needed, ids, survivors, length);
     }
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      BitVector bv = relation.get(iditer);
-      // TODO: exploit that the candidate set it sorted?
-      int lives = 0;
-      for(Itemset candidate : candidates) {
-        if(candidate.containedIn(bv)) {
-          candidate.increaseSupport();
-          ++lives;
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size(), nblocks = numBlocks(size), ncand = candidates.size();
+    List<CountingBlock> blocks = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      blocks.add(new CountingBlock(aids, (int) ((long) size * b / nblocks), (int) ((long) size * (b + 1) / nblocks)) {
+        @Override
+        void initialize() {
+          counts = new int[ncand];
         }
-      }
-      if(lives > length) {
-        survivors.add(iditer);
-      }
+
+        @Override
+        void process(DBIDRef id) {
+          BitVector bv = relation.get(id);
+          // TODO: exploit that the candidate set it sorted?
+          int lives = 0;
+          for(int i = 0; i < ncand; i++) {
+            if(candidates.get(i).containedIn(bv)) {
+              counts[i]++;
+              ++lives;
+            }
+          }
+          if(lives > length) {
+            survivors.add(id);
+          }
+        }
+      });
     }
+    addSupport(candidates, runBlocks(blocks), survivors);
     // Retain only those with minimum support:
     List<Itemset> frequent = new ArrayList<>(candidates.size());
     for(Iterator<? extends Itemset> iter = candidates.iterator(); iter.hasNext();) {
@@ -443,40 +508,76 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
    * @param length Itemset length
    * @return Itemsets with sufficient support
    */
-  protected List<SparseItemset> frequentItemsetsSparse(List<SparseItemset> candidates, Relation<BitVector> relation, int needed, DBIDs ids, ArrayModifiableDBIDs survivors, int length) {
-    // Current search interval:
-    int begin = 0, end = candidates.size();
-    int[] scratchi = new int[length], iters = new int[length];
-    SparseItemset scratch = new SparseItemset(scratchi);
-    for(DBIDIter iditer = ids.iter(); iditer.valid(); iditer.advance()) {
-      BitVector bv = relation.get(iditer);
-      if(!initializeSearchItemset(bv, scratchi, iters)) {
-        continue;
-      }
-      int lives = 0;
-      while(begin < end) {
-        begin = binarySearch(candidates, scratch, begin, end);
-        if(begin > 0) {
-          candidates.get(begin).increaseSupport();
-          ++lives;
-        }
-        else {
-          begin = (-begin) - 1;
-        }
-        if(begin >= end || !nextSearchItemset(bv, scratchi, iters)) {
-          break;
+  protected List<SparseItemset> frequentItemsetsSparse(final List<SparseItemset> candidates, final Relation<BitVector> relation, int needed, DBIDs ids, ArrayModifiableDBIDs survivors, final int length) {
+    ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
+    final int size = aids.size(), nblocks = numBlocks(size), ncand = candidates.size();
+    List<CountingBlock> blocks = new ArrayList<>(nblocks);
+    for(int b = 0; b < nblocks; b++) {
+      blocks.add(new CountingBlock(aids, (int) ((long) size * b / nblocks), (int) ((long) size * (b + 1) / nblocks)) {
+        /**
+         * Items of the current transaction.
+         */
+        int[] titems;
+
+        /**
+         * Positions of the current subset.
+         */
+        int[] pos;
+
+        /**
+         * Scratch itemset used for searching.
+         */
+        SparseItemset scratch;
+
+        @Override
+        void initialize() {
+          counts = new int[ncand];
+          titems = new int[16];
+          pos = new int[length];
+          scratch = new SparseItemset(new int[length]);
         }
-      }
-      for(Itemset candidate : candidates) {
-        if(candidate.containedIn(bv)) {
-          candidate.increaseSupport();
-          ++lives;
+
+        @Override
+        void process(DBIDRef id) {
+          BitVector bv = relation.get(id);
+          // Collect the items of this transaction:
+          int m = 0;
+          for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+            if(m == titems.length) {
+              titems = Arrays.copyOf(titems, m << 1);
+            }
+            titems[m++] = bv.iterDim(it);
+          }
+          if(m < length) {
+            return;
+          }
+          // Enumerate all subsets of the given length in lexicographic order,
+          // and search them in the (sorted) candidate list.
+          int[] scratchi = scratch.indices;
+          for(int i = 0; i < length; i++) {
+            scratchi[i] = titems[pos[i] = i];
+          }
+          int lives = 0, begin = 0;
+          while(begin < ncand) {
+            begin = binarySearch(candidates, scratch, begin, ncand);
+            if(begin >= 0) {
+              counts[begin]++;
+              ++lives;
+            }
+            else {
+              begin = (-begin) - 1;
+            }
+            if(begin >= ncand || !nextSubset(titems, m, pos, scratchi)) {
+              break;
+            }
+          }
+          if(lives > length) {
+            survivors.add(id);
+          }
         }
-      }
-      if(lives > length) {
-        survivors.add(iditer);
-      }
+      });
     }
+    addSupport(candidates, runBlocks(blocks), survivors);
     // Retain only those with minimum support:
     List<SparseItemset> frequent = new ArrayList<>(candidates.size());
     for(Iterator<SparseItemset> iter = candidates.iterator(); iter.hasNext();) {
@@ -489,43 +590,28 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
   }
 
   /**
-   * Initialize the scratch itemset.
+   * Advance to the next subset of a transaction, in lexicographic order.
    *
-   * @param bv Bit vector data source
-   * @param scratchi Scratch itemset
-   * @param iters Iterator array
-   * @return {@code true} if the itemset had minimum length
+   * @param titems Transaction items
+   * @param m Number of items in the transaction
+   * @param pos Positions of the current subset (will be modified)
+   * @param scratchi Items of the current subset (will be modified)
+   * @return {@code false} if no further subset exists.
    */
-  private boolean initializeSearchItemset(BitVector bv, int[] scratchi, int[] iters) {
-    for(int i = 0; i < scratchi.length; i++) {
-      iters[i] = (i == 0) ? bv.iter() : bv.iterAdvance(iters[i - 1]);
-      if(iters[i] < 0) {
-        return false;
-      }
-      scratchi[i] = bv.iterDim(iters[i]);
+  private static boolean nextSubset(int[] titems, int m, int[] pos, int[] scratchi) {
+    final int k = pos.length;
+    int i = k - 1;
+    while(i >= 0 && pos[i] == m - k + i) {
+      --i;
     }
-    return true;
-  }
-
-  /**
-   * Advance scratch itemset to the next.
-   *
-   * @param bv Bit vector data source
-   * @param scratchi Scratch itemset
-   * @param iters Iterator array
-   * @return {@code true} if the itemset had minimum length
-   */
-  private boolean nextSearchItemset(BitVector bv, int[] scratchi, int[] iters) {
-    final int last = scratchi.length - 1;
-    for(int j = last; j >= 0; j--) {
-      int n = bv.iterAdvance(iters[j]);
-      if(n >= 0 && (j == last || n != iters[j + 1])) {
-        iters[j] = n;
-        scratchi[j] = bv.iterDim(n);
-        return true; // Success
-      }
+    if(i < 0) {
+      return false;
     }
-    return false;
+    scratchi[i] = titems[++pos[i]];
+    for(int j = i + 1; j < k; j++) {
+      scratchi[j] = titems[pos[j] = pos[j - 1] + 1];
+    }
+    return true;
   }
 
   /**
@@ -535,11 +621,11 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
    * @param scratch Scratch space
    * @param begin Search interval begin
    * @param end Search interval end
-   * @return Position of first equal-or-larger element
+   * @return Position of the element if found, or {@code -(insertion point + 1)}
    */
-  private int binarySearch(List<SparseItemset> candidates, SparseItemset scratch, int begin, int end) {
+  private static int binarySearch(List<SparseItemset> candidates, SparseItemset scratch, int begin, int end) {
     --end;
-    while(begin < end) {
+    while(begin <= end) {
       final int mid = (begin + end) >>> 1;
       SparseItemset midVal = candidates.get(mid);
       int cmp = midVal.compareTo(scratch);
@@ -557,6 +643,163 @@ public class APRIORI extends AbstractFrequentItemsetAlgorithm {
     return -(begin + 1); // key not found, return next
   }
 
+  /**
+   * Offset of the first pair (i, i+1) in a triangular pair counter array.
+   *
+   * @param i Rank of the first item
+   * @param n Number of items
+   * @return Offset
+   */
+  private static int pairOffset(int i, int n) {
+    return (int) ((i * (2L * n - i - 1)) >>> 1);
+  }
+
+  /**
+   * Number of blocks to split the transactions into.
+   *
+   * @param size Number of transactions
+   * @return Number of blocks
+   */
+  private static int numBlocks(int size) {
+    return Math.max(1, Math.min(size, ParallelCore.getCore().getParallelism()));
+  }
+
+  /**
+   * Run all counting blocks, concurrently if there is more than one.
+   *
+   * @param blocks Blocks to process
+   * @return Blocks, in the original order
+   */
+  private static List<CountingBlock> runBlocks(List<CountingBlock> blocks) {
+    if(blocks.size() == 1) {
+      blocks.get(0).call();
+      return blocks;
+    }
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Future<CountingBlock>> futures = new ArrayList<>(blocks.size());
+      for(CountingBlock block : blocks) {
+        futures.add(core.submit(block));
+      }
+      for(Future<CountingBlock> future : futures) {
+        future.get();
+      }
+      return blocks;
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Counting support failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Counting support interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Sum the counts of all blocks.
+   *
+   * @param blocks Processed blocks
+   * @param len Number of counters
+   * @return Total counts
+   */
+  private static int[] sumCounts(List<CountingBlock> blocks, int len) {
+    int[] counts = blocks.get(0).counts;
+    for(int b = 1; b < blocks.size(); b++) {
+      int[] other = blocks.get(b).counts;
+      for(int i = 0; i < len; i++) {
+        counts[i] += other[i];
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Add the counts of all blocks to the candidate supports, and collect the
+   * surviving transactions.
+   *
+   * @param candidates Candidate itemsets
+   * @param blocks Processed blocks
+   * @param survivors Output: surviving transactions
+   */
+  private static void addSupport(List<? extends Itemset> candidates, List<CountingBlock> blocks, ArrayModifiableDBIDs survivors) {
+    int[] counts = sumCounts(blocks, candidates.size());
+    for(int i = 0; i < counts.length; i++) {
+      candidates.get(i).support += counts[i];
+    }
+    for(CountingBlock block : blocks) {
+      survivors.addDBIDs(block.survivors);
+    }
+  }
+
+  /**
+   * Block of transactions, for counting support in parallel.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private abstract static class CountingBlock implements Callable<CountingBlock> {
+    /**
+     * Transactions to process.
+     */
+    private final ArrayDBIDs ids;
+
+    /**
+     * Range of transactions to process.
+     */
+    private final int start, end;
+
+    /**
+     * Support counts of this block.
+     */
+    int[] counts;
+
+    /**
+     * Transactions that survive to the next level.
+     */
+    final ArrayModifiableDBIDs survivors = DBIDUtil.newArray();
+
+    /**
+     * Constructor.
+     *
+     * @param ids Transactions
+     * @param start First offset
+     * @param end End offset
+     */
+    CountingBlock(ArrayDBIDs ids, int start, int end) {
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+    }
+
+    /**
+     * Allocate the block-local counters.
+     */
+    abstract void initialize();
+
+    /**
+     * Process a single transaction.
+     *
+     * @param id Transaction
+     */
+    abstract void process(DBIDRef id);
+
+    @Override
+    public CountingBlock call() {
+      initialize();
+      for(DBIDArrayIter iter = ids.iter().seek(start); iter.getOffset() < end; iter.advance()) {
+        process(iter);
+      }
+      return this;
+    }
+  }
+
   /**
    * Debug method: output all itemsets.
    *
@@ -26,6 +26,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.data.BitVector;
 import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
@@ -33,19 +36,18 @@ import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.Database;
-import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
-import de.lmu.ifi.dbs.elki.database.ids.HashSetDBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * Eclat is a depth-first discovery algorithm for mining frequent itemsets.
@@ -55,16 +57,18 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * prefix lattice, stopping traversal when the minimum support is no longer
  * satisfied.
  *
- * This implementation is the basic algorithm only, and does not use diffsets.
- * Columns are represented using a sparse representation, which theoretically is
- * beneficial when the density is less than 1/31. This corresponds roughly to a
- * minimum support of 3% for 1-itemsets. When searching for itemsets with a
- * larger minimum support, it may be desirable to use a dense bitset
- * representation instead and/or implement an automatic switching technique!
+ * Transactions are numbered consecutively. The transaction list of an item is
+ * stored as a dense {@code long[]} bitset when at least 1/32 of all
+ * transactions contain it (where the bitset is not larger than a sorted
+ * {@code int[]} list), and as sorted {@code int[]} otherwise. When extending a
+ * prefix, we compute both the intersection and the difference of the
+ * transaction lists in a single pass, and keep whichever is smaller for the
+ * whole equivalence class. Once a class uses differences ("diffsets", as in
+ * dEclat), all its descendants use diffsets, too, which are usually much
+ * smaller than the transaction lists for dense data.
  *
- * Performance of this implementation is probably surpassed with a low-level C
- * implementation based on SIMD bitset operations as long as support of an
- * itemset is high, which are not easily accessible in Java.
+ * The prefix classes of the individual items are independent, and are mined
+ * in parallel.
  *
  * Reference:
  * <p>
@@ -72,6 +76,13 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * M.J. Zaki, S. Parthasarathy, M. Ogihara, and W. Li<br />
  * Proc. 3rd ACM SIGKDD '97 Int. Conf. on Knowledge Discovery and Data Mining
  * </p>
+ *
+ * Diffsets:
+ * <p>
+ * M. J. Zaki, K. Gouda<br />
+ * Fast vertical mining using diffsets<br />
+ * Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining
+ * </p>
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -91,6 +102,15 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
    */
   private static final String STAT = Eclat.class.getName() + ".";
 
+  /**
+   * Additional reference for diffsets.
+   */
+  @Reference(authors = "M. J. Zaki, K. Gouda", //
+  title = "Fast vertical mining using diffsets", //
+  booktitle = "Proc. 9th ACM SIGKDD Int. Conf. on Knowledge Discovery and Data Mining", //
+  url = "http://dx.doi.org/10.1145/956750.956788")
+  public static final Void DIFFSET_REFERENCE = null;
+
   /**
    * Constructor.
    *
@@ -118,15 +138,58 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
 
     LOG.verbose("Build 1-dimensional transaction lists.");
     Duration ctime = LOG.newDuration(STAT + "eclat.transposition.time").begin();
-    DBIDs[] idx = buildIndex(relation, dim, minsupp);
+    final int[] supports = new int[dim];
+    final int[][] sparse = new int[dim][];
+    final long[][] dense = new long[dim][];
+    final int numfreq = buildIndex(relation, dim, minsupp, supports, sparse, dense);
     LOG.statistics(ctime.end());
+    if(LOG.isStatistics()) {
+      int numdense = 0;
+      for(int i = 0; i < dim; i++) {
+        numdense += dense[i] != null ? 1 : 0;
+      }
+      LOG.statistics(new LongStatistic(STAT + "frequent-items", numfreq));
+      LOG.statistics(new LongStatistic(STAT + "dense-items", numdense));
+    }
 
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", idx.length, LOG) : null;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Building frequent itemsets", dim, LOG) : null;
     Duration etime = LOG.newDuration(STAT + "eclat.extraction.time").begin();
     final List<Itemset> solution = new ArrayList<>();
-    for(int i = 0; i < idx.length; i++) {
-      LOG.incrementProcessed(prog);
-      extractItemsets(idx, i, minsupp, solution);
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Future<List<Itemset>>> futures = new ArrayList<>(numfreq);
+      for(int i = 0; i < dim; i++) {
+        if(supports[i] < minsupp) {
+          LOG.incrementProcessed(prog);
+          continue;
+        }
+        final int start = i;
+        futures.add(core.submit(new Callable<List<Itemset>>() {
+          @Override
+          public List<Itemset> call() {
+            List<Itemset> part = new ArrayList<>();
+            extractItemsets(supports, sparse, dense, start, minsupp, part);
+            LOG.incrementProcessed(prog);
+            return part;
+          }
+        }));
+      }
+      for(Future<List<Itemset>> future : futures) {
+        solution.addAll(future.get());
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Eclat failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Eclat interrupted.", e);
+    }
+    finally {
+      core.disconnect();
     }
     LOG.ensureCompleted(prog);
     Collections.sort(solution);
@@ -136,88 +199,272 @@ public class Eclat extends AbstractFrequentItemsetAlgorithm {
     return new FrequentItemsetsResult("Eclat", "eclat", solution, meta);
   }
 
-  // TODO: implement diffsets.
-  private void extractItemsets(DBIDs[] idx, int start, int minsupp, List<Itemset> solution) {
-    int[] buf = new int[idx.length];
-    DBIDs iset = idx[start];
-    if(iset == null || iset.size() < minsupp) {
+  /**
+   * Extract all itemsets with the given item as first item.
+   *
+   * @param supports Item supports
+   * @param sparse Sparse transaction lists
+   * @param dense Dense transaction bitsets
+   * @param start First item
+   * @param minsupp Minimum support
+   * @param solution Output list
+   */
+  private void extractItemsets(int[] supports, int[][] sparse, long[][] dense, int start, int minsupp, List<Itemset> solution) {
+    if(minlength <= 1) {
+      solution.add(new OneItemset(start, supports[start]));
+    }
+    if(maxlength <= 1) {
       return;
     }
-    if(minlength <= 1) {
-      solution.add(new OneItemset(start, iset.size()));
+    // Build the equivalence class of 2-itemsets with this prefix:
+    final int dim = supports.length, supp = supports[start];
+    final int maxout = supp - minsupp;
+    int[] items = new int[dim - start - 1], supps = new int[items.length];
+    int[] in = new int[supp], out = new int[supp];
+    int n = 0;
+    long tidsize = 0, diffsize = 0;
+    // First pass: count only, to choose the representation.
+    for(int j = start + 1; j < dim; j++) {
+      if(supports[j] < minsupp) {
+        continue;
+      }
+      int c = split(sparse[start], dense[start], sparse[j], dense[j], maxout, in, out);
+      if(c < 0) {
+        continue;
+      }
+      items[n] = j;
+      supps[n] = c;
+      tidsize += c;
+      diffsize += supp - c;
+      ++n;
     }
-    if(maxlength > 1) {
-      buf[0] = start;
-      extractItemsets(iset, idx, buf, 1, start + 1, minsupp, solution);
+    // Second pass: materialize only the chosen lists.
+    final boolean diff = diffsize < tidsize;
+    int[][] lists = new int[n][];
+    for(int m = 0; m < n; m++) {
+      final int j = items[m], c = supps[m];
+      split(sparse[start], dense[start], sparse[j], dense[j], maxout, in, out);
+      lists[m] = diff ? Arrays.copyOf(out, supp - c) : Arrays.copyOf(in, c);
     }
+    int[] buf = new int[dim];
+    buf[0] = start;
+    extractItemsets(items, supps, lists, diff, n, buf, 1, minsupp, solution);
   }
 
-  private void extractItemsets(DBIDs iset, DBIDs[] idx, int[] buf, int depth, int start, int minsupp, List<Itemset> solution) {
-    // TODO: reuse arrays.
-    for(int i = start; i < idx.length; i++) {
-      if(idx[i] == null) {
+  /**
+   * Extract itemsets from an equivalence class.
+   *
+   * @param items Last item of each class member
+   * @param supps Support of each class member
+   * @param lists Transaction lists or diffsets of each class member
+   * @param diff Flag to indicate that the lists are diffsets
+   * @param n Number of class members
+   * @param buf Prefix buffer
+   * @param depth Prefix length
+   * @param minsupp Minimum support
+   * @param solution Output list
+   */
+  private void extractItemsets(int[] items, int[] supps, int[][] lists, boolean diff, int n, int[] buf, int depth, int minsupp, List<Itemset> solution) {
+    for(int i = 0; i < n; i++) {
+      buf[depth] = items[i];
+      final int len = depth + 1;
+      if(len >= minlength) {
+        solution.add(new SparseItemset(Arrays.copyOf(buf, len), supps[i]));
+      }
+      if(len >= maxlength || i + 1 >= n) {
         continue;
       }
-      DBIDs ids = mergeJoin(iset, idx[i]);
-      if(ids.size() < minsupp) {
+      // Build the next equivalence class:
+      final int supp = supps[i], maxout = supp - minsupp;
+      int[] citems = new int[n - i - 1], csupps = new int[citems.length];
+      int[][] clists = new int[citems.length][];
+      int cn = 0;
+      if(diff) {
+        int[] out = new int[maxout + 1];
+        for(int j = i + 1; j < n; j++) {
+          // d(PXY) = d(PY) \ d(PX)
+          int c = minus(lists[j], lists[i], maxout, out);
+          if(c < 0) {
+            continue;
+          }
+          citems[cn] = items[j];
+          csupps[cn] = supp - c;
+          clists[cn] = Arrays.copyOf(out, c);
+          ++cn;
+        }
+        if(cn > 0) {
+          extractItemsets(citems, csupps, clists, true, cn, buf, len, minsupp, solution);
+        }
         continue;
       }
-      buf[depth] = i;
-      int[] items = Arrays.copyOf(buf, depth + 1);
-      if(depth >= minlength) {
-        solution.add(new SparseItemset(items, ids.size()));
+      int[] in = new int[supp], out = new int[supp];
+      int[] cpos = new int[citems.length];
+      long tidsize = 0, diffsize = 0;
+      // First pass: count only, to choose the representation.
+      for(int j = i + 1; j < n; j++) {
+        int c = split(lists[i], null, lists[j], null, maxout, in, out);
+        if(c < 0) {
+          continue;
+        }
+        citems[cn] = items[j];
+        csupps[cn] = c;
+        cpos[cn] = j;
+        tidsize += c;
+        diffsize += supp - c;
+        ++cn;
       }
-      if(depth < maxlength) {
-        extractItemsets(ids, idx, buf, depth + 1, i + 1, minsupp, solution);
+      if(cn == 0) {
+        continue;
+      }
+      // Second pass: materialize only the chosen lists.
+      final boolean cdiff = diffsize < tidsize;
+      for(int m = 0; m < cn; m++) {
+        final int c = csupps[m];
+        split(lists[i], null, lists[cpos[m]], null, maxout, in, out);
+        clists[m] = cdiff ? Arrays.copyOf(out, supp - c) : Arrays.copyOf(in, c);
       }
+      extractItemsets(citems, csupps, clists, cdiff, cn, buf, len, minsupp, solution);
     }
   }
 
-  private DBIDs mergeJoin(DBIDs first, DBIDs second) {
-    assert (!(first instanceof HashSetDBIDs));
-    assert (!(second instanceof HashSetDBIDs));
-    ArrayModifiableDBIDs ids = DBIDUtil.newArray();
-
-    DBIDIter i1 = first.iter(), i2 = second.iter();
-    while(i1.valid() && i2.valid()) {
-      int c = DBIDUtil.compare(i1, i2);
-      if(c < 0) {
-        i1.advance();
+  /**
+   * Split a transaction list into the transactions also contained in a second
+   * list, and the remaining transactions. Each list is given either as sorted
+   * {@code int[]} or as bitset.
+   *
+   * @param xs First list, sparse (or {@code null})
+   * @param xd First list, dense (or {@code null})
+   * @param ys Second list, sparse (or {@code null})
+   * @param yd Second list, dense (or {@code null})
+   * @param maxout Maximum number of remaining transactions
+   * @param in Output buffer for common transactions
+   * @param out Output buffer for remaining transactions
+   * @return Number of common transactions, or -1 if more than {@code maxout}
+   *         remain.
+   */
+  private static int split(int[] xs, long[] xd, int[] ys, long[] yd, int maxout, int[] in, int[] out) {
+    int ni = 0, no = 0;
+    if(xd != null && yd != null) {
+      for(int w = 0; w < xd.length; w++) {
+        long a = xd[w] & yd[w], b = xd[w] & ~yd[w];
+        final int base = w << 6;
+        no += Long.bitCount(b);
+        if(no > maxout) {
+          return -1;
+        }
+        for(int o = no - Long.bitCount(b); b != 0; b &= b - 1) {
+          out[o++] = base + Long.numberOfTrailingZeros(b);
+        }
+        for(; a != 0; a &= a - 1) {
+          in[ni++] = base + Long.numberOfTrailingZeros(a);
+        }
+      }
+      return ni;
+    }
+    // Iterate over the first list, test membership in the second list.
+    int k = 0, p = 0;
+    for(int x = xs != null ? (xs.length > 0 ? xs[0] : -1) : BitsUtil.nextSetBit(xd, 0); x >= 0;) {
+      boolean contained;
+      if(yd != null) {
+        contained = BitsUtil.get(yd, x);
+      }
+      else {
+        while(p < ys.length && ys[p] < x) {
+          ++p;
+        }
+        contained = p < ys.length && ys[p] == x;
       }
-      else if(c > 0) {
-        i2.advance();
+      if(contained) {
+        in[ni++] = x;
       }
       else {
-        ids.add(i1);
-        i1.advance();
-        i2.advance();
+        if(no == maxout) {
+          return -1;
+        }
+        out[no++] = x;
       }
+      x = xs != null ? (++k < xs.length ? xs[k] : -1) : BitsUtil.nextSetBit(xd, x + 1);
     }
-    return ids;
+    return ni;
   }
 
-  private DBIDs[] buildIndex(Relation<BitVector> relation, int dim, int minsupp) {
-    ArrayModifiableDBIDs[] idx = new ArrayModifiableDBIDs[dim];
-    for(int i = 0; i < dim; i++) {
-      idx[i] = DBIDUtil.newArray();
+  /**
+   * Compute the difference of two sorted lists.
+   *
+   * @param a First list
+   * @param b Second list, to remove
+   * @param max Maximum output size
+   * @param out Output buffer
+   * @return Number of elements in the difference, or -1 if more than
+   *         {@code max}.
+   */
+  private static int minus(int[] a, int[] b, int max, int[] out) {
+    int n = 0;
+    for(int i = 0, j = 0; i < a.length; i++) {
+      final int x = a[i];
+      while(j < b.length && b[j] < x) {
+        ++j;
+      }
+      if(j < b.length && b[j] == x) {
+        continue;
+      }
+      if(n == max) {
+        return -1;
+      }
+      out[n++] = x;
     }
+    return n;
+  }
+
+  /**
+   * Build the transaction lists of the frequent 1-items.
+   *
+   * @param relation Data relation
+   * @param dim Dimensionality
+   * @param minsupp Minimum support
+   * @param supports Output: item supports
+   * @param sparse Output: sparse transaction lists
+   * @param dense Output: dense transaction bitsets
+   * @return Number of frequent items
+   */
+  private int buildIndex(Relation<BitVector> relation, int dim, int minsupp, int[] supports, int[][] sparse, long[][] dense) {
     for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
       SparseFeatureVector<?> bv = relation.get(iter);
-      // TODO: only count those which satisfy minlength?
       for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
-        idx[bv.iterDim(it)].add(iter);
+        supports[bv.iterDim(it)]++;
       }
     }
-    // Forget non-frequent 1-itemsets.
+    // Choose the representation of frequent items:
+    final int size = relation.size();
+    int numfreq = 0;
     for(int i = 0; i < dim; i++) {
-      if(idx[i].size() < minsupp) {
-        idx[i] = null;
+      if(supports[i] < minsupp) {
+        continue;
+      }
+      ++numfreq;
+      if(supports[i] >= (size >>> 5)) {
+        dense[i] = BitsUtil.zero(size);
       }
       else {
-        idx[i].sort();
+        sparse[i] = new int[supports[i]];
+      }
+    }
+    // Fill the transaction lists.
+    int[] fill = new int[dim];
+    int t = 0;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance(), t++) {
+      SparseFeatureVector<?> bv = relation.get(iter);
+      for(int it = bv.iter(); bv.iterValid(it); it = bv.iterAdvance(it)) {
+        final int d = bv.iterDim(it);
+        if(dense[d] != null) {
+          BitsUtil.setI(dense[d], t);
+        }
+        else if(sparse[d] != null) {
+          sparse[d][fill[d]++] = t;
+        }
       }
     }
-    return idx;
+    return numfreq;
   }
 
   @Override
@@ -26,6 +26,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.data.BitVector;
 import de.lmu.ifi.dbs.elki.data.SparseFeatureVector;
@@ -42,10 +45,12 @@ import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.DoubleStatistic;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerArrayQuickSort;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.arrays.IntegerComparator;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * FP-Growth is an algorithm for mining the frequent itemsets by using a
@@ -59,7 +64,8 @@ import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
  * item combinations.
  *
  * This implementation is in-memory only, and has not yet been carefully
- * optimized.
+ * optimized. The conditional trees of the individual items are independent,
+ * and are mined in parallel.
  *
  * The worst case memory use probably is O(min(n*l,i^l)) where i is the number
  * of items, l the average itemset length, and n the number of items. The worst
@@ -159,25 +165,43 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     final IndefiniteProgress itemp = LOG.isVerbose() ? new IndefiniteProgress("Frequent itemsets", LOG) : null;
     final List<Itemset> solution = new ArrayList<>();
     // Start extraction with the least frequent items
-    tree.extract(minsupp, minlength, maxlength, true, new FPTree.Collector() {
-      @Override
-      public void collect(int support, int[] data, int start, int plen) {
-        // Always translate the indexes back to the original values via 'idx'!
-        if(plen - start == 1) {
-          solution.add(new OneItemset(idx[data[start]], support));
-          LOG.incrementProcessed(itemp);
-          return;
-        }
-        // Copy from buffer to a permanent storage
-        int[] indices = new int[plen - start];
-        for(int i = start, j = 0; i < plen; i++) {
-          indices[j++] = idx[data[i]]; // Translate to original items
-        }
-        Arrays.sort(indices);
-        solution.add(new SparseItemset(indices, support));
-        LOG.incrementProcessed(itemp);
+    final int stop = (minlength > 1) ? minlength - 1 : 0;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Extracting itemsets", items - stop, LOG) : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // The tree is not modified when extracting, so we can share it.
+      final FPTree ftree = tree;
+      List<Future<List<Itemset>>> futures = new ArrayList<>(items - stop);
+      for(int j = items - 1; j >= stop; --j) {
+        final int item = j;
+        futures.add(core.submit(new Callable<List<Itemset>>() {
+          @Override
+          public List<Itemset> call() {
+            ItemsetCollector col = new ItemsetCollector(idx, itemp);
+            ftree.extract(minsupp, minlength, maxlength, item, col);
+            LOG.incrementProcessed(prog);
+            return col.solution;
+          }
+        }));
       }
-    });
+      for(Future<List<Itemset>> future : futures) {
+        solution.addAll(future.get());
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("FP-Growth failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("FP-Growth interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+    LOG.ensureCompleted(prog);
     LOG.setCompleted(itemp);
     Collections.sort(solution);
     LOG.statistics(etime.end());
@@ -186,6 +210,59 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
     return new FrequentItemsetsResult("FP-Growth", "fp-growth", solution, meta);
   }
 
+  /**
+   * Collector for itemsets, translating the item indexes back.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class ItemsetCollector implements FPTree.Collector {
+    /**
+     * Item index, to translate back to original values.
+     */
+    private final int[] idx;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private final IndefiniteProgress itemp;
+
+    /**
+     * Itemsets collected.
+     */
+    final List<Itemset> solution = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param idx Item index
+     * @param itemp Progress, may be {@code null}
+     */
+    ItemsetCollector(int[] idx, IndefiniteProgress itemp) {
+      this.idx = idx;
+      this.itemp = itemp;
+    }
+
+    @Override
+    public void collect(int support, int[] data, int start, int plen) {
+      // Always translate the indexes back to the original values via 'idx'!
+      if(plen - start == 1) {
+        solution.add(new OneItemset(idx[data[start]], support));
+        LOG.incrementProcessed(itemp);
+        return;
+      }
+      // Copy from buffer to a permanent storage
+      int[] indices = new int[plen - start];
+      for(int i = start, j = 0; i < plen; i++) {
+        indices[j++] = idx[data[i]]; // Translate to original items
+      }
+      Arrays.sort(indices);
+      solution.add(new SparseItemset(indices, support));
+      LOG.incrementProcessed(itemp);
+    }
+  }
+
   /**
    * Count the support of each 1-item.
    *
@@ -355,6 +432,23 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       LOG.ensureCompleted(prog);
     }
 
+    /**
+     * Extract itemsets ending in the given item, without modifying the tree.
+     *
+     * This method does not modify the tree, and may be called for different
+     * items concurrently.
+     *
+     * @param minsupp Minimum support
+     * @param minlength Minimum length
+     * @param maxlength Maximum length
+     * @param item Item to process
+     * @param col Itemset collector
+     */
+    public void extract(int minsupp, int minlength, int maxlength, int item, Collector col) {
+      final int len = header.length;
+      extract(minsupp, minlength, maxlength, item, new int[len], 0, new int[len], new int[len], false, col);
+    }
+
     /**
      * Extract itemsets ending in the given item.
      *
@@ -374,17 +468,6 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       if(header[item] == null) {
         return;
       }
-      // No siblings: single path only.
-      if(header[item].sibling == null) {
-        if(header[item].count < minsupp) {
-          return;
-        }
-        extractLinear(header[item].count, minsupp, minlength, maxlength, item, postfix, plen, buf2, col);
-        if(destruct) {
-          Arrays.fill(header, null);
-        }
-        return;
-      }
       // Count total support.
       int support = 0;
       for(FPNode cur = header[item]; cur != null; cur = cur.sibling) {
@@ -427,6 +510,8 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
           proj.insert(proj, buf2, j, buf2.length, cur.count);
         }
       }
+      // Single path only: enumerate all combinations directly.
+      final boolean linear = proj.isPath();
       // Release memory:
       proj.reduceMemory();
       // TODO: other pruning techniques we should have employed here?
@@ -434,8 +519,15 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       if(plen >= minlength && plen <= maxlength) {
         col.collect(support, postfix, 0, plen);
       }
-      for(int j = last; j >= 0; j--) {
-        proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
+      if(linear) {
+        if(last >= 0 && plen < maxlength) {
+          proj.extractLinear(support, minsupp, minlength, maxlength, last, postfix, plen, buf2, col);
+        }
+      }
+      else {
+        for(int j = last; j >= 0; j--) {
+          proj.extract(minsupp, minlength, maxlength, j, postfix, plen, buf2, buf3, destruct, col);
+        }
       }
       if(destruct) {
         header[item] = null;
@@ -583,6 +675,21 @@ public class FPGrowth extends AbstractFrequentItemsetAlgorithm {
       sub.insert(tree, buf, i + 1, l, weight);
     }
 
+    /**
+     * Test whether the subtree is a single path, must be called before
+     * {@link #reduceMemory}.
+     *
+     * @return {@code true} if no node has more than one child.
+     */
+    public boolean isPath() {
+      for(FPNode cur = this; cur.numchildren > 0; cur = cur.children[0]) {
+        if(cur.numchildren > 1) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     /**
      * Ensure we have enough storage.
      */
@@ -24,7 +24,11 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
  */
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
@@ -45,12 +49,14 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.subspace.SubspaceEuclideanD
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -128,31 +134,62 @@ public class FeatureBagging extends AbstractAlgorithm<OutlierResult> implements
   /**
    * Run the algorithm on a data set.
    *
+   * The ensemble members are run in parallel, on subspaces chosen beforehand.
+   *
    * @param database Database context
    * @param relation Relation to use
    * @return Outlier detection result
    */
-  public OutlierResult run(Database database, Relation<NumberVector> relation) {
+  public OutlierResult run(final Database database, final Relation<NumberVector> relation) {
     final int dbdim = RelationUtil.dimensionality(relation);
     final int mindim = dbdim >> 1;
     final int maxdim = dbdim - 1;
     final Random rand = rnd.getSingleThreadedRandom();
 
+    // Draw all subspaces upfront, so the result does not depend on the order
+    // in which the ensemble members are executed.
+    long[][] dimsets = new long[num][];
+    for(int i = 0; i < num; i++) {
+      dimsets[i] = randomSubspace(dbdim, mindim, maxdim, rand);
+    }
+
     ArrayList<OutlierResult> results = new ArrayList<>(num);
-    {
-      FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
+    final FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("LOF iterations", num, LOG) : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Future<OutlierResult>> futures = new ArrayList<>(num);
       for(int i = 0; i < num; i++) {
-        long[] dimset = randomSubspace(dbdim, mindim, maxdim, rand);
-        SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimset);
-        LOF<NumberVector> lof = new LOF<>(k, df);
-
-        // run LOF and collect the result
-        OutlierResult result = lof.run(database, relation);
-        results.add(result);
-        LOG.incrementProcessed(prog);
+        final long[] dimset = dimsets[i];
+        futures.add(core.submit(new Callable<OutlierResult>() {
+          @Override
+          public OutlierResult call() {
+            SubspaceEuclideanDistanceFunction df = new SubspaceEuclideanDistanceFunction(dimset);
+            LOF<NumberVector> lof = new LOF<>(k, df);
+            // run LOF and collect the result
+            OutlierResult result = lof.run(database, relation);
+            LOG.incrementProcessed(prog);
+            return result;
+          }
+        }));
       }
-      LOG.ensureCompleted(prog);
+      for(Future<OutlierResult> future : futures) {
+        results.add(future.get());
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Feature bagging failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Feature bagging interrupted.", e);
+    }
+    finally {
+      core.disconnect();
     }
+    LOG.ensureCompleted(prog);
 
     WritableDoubleDataStore scores = DataStoreUtil.makeDoubleStorage(relation.getDBIDs(), DataStoreFactory.HINT_STATIC);
     DoubleMinMax minmax = new DoubleMinMax();
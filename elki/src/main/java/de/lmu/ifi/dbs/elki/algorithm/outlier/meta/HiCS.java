@@ -31,6 +31,9 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.OutlierAlgorithm;
@@ -57,11 +60,13 @@ import de.lmu.ifi.dbs.elki.database.relation.ProjectedView;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.database.relation.RelationUtil;
 import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.AbstractProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
 import de.lmu.ifi.dbs.elki.math.DoubleMinMax;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.GoodnessOfFitTest;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.KolmogorovSmirnovTest;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.BasicOutlierScoreMeta;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierScoreMeta;
@@ -70,6 +75,7 @@ import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.TopBoundedHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -78,6 +84,7 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.DoubleParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.RandomParameter;
+import de.lmu.ifi.dbs.elki.utilities.random.FastNonThreadsafeRandom;
 import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
 
 /**
@@ -263,17 +270,21 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     TreeSet<HiCSSubspace> subspaceList = new TreeSet<>(HiCSSubspace.SORT_BY_SUBSPACE);
     TopBoundedHeap<HiCSSubspace> dDimensionalList = new TopBoundedHeap<>(cutoff, HiCSSubspace.SORT_BY_CONTRAST_ASC);
     FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Generating two-element subsets", (dbdim * (dbdim - 1)) >> 1, LOG) : null;
+    final double[][] fullValues = projectOneDimIndexes(relation, subspaceIndex);
     // compute two-element sets of subspaces
+    ArrayList<HiCSSubspace> pairs = new ArrayList<>((dbdim * (dbdim - 1)) >> 1);
     for(int i = 0; i < dbdim; i++) {
       for(int j = i + 1; j < dbdim; j++) {
         HiCSSubspace ts = new HiCSSubspace();
         ts.set(i);
         ts.set(j);
-        calculateContrast(relation, ts, subspaceIndex, random);
-        dDimensionalList.add(ts);
-        LOG.incrementProcessed(prog);
+        pairs.add(ts);
       }
     }
+    calculateContrasts(relation, pairs, subspaceIndex, fullValues, random, prog);
+    for(HiCSSubspace ts : pairs) {
+      dDimensionalList.add(ts);
+    }
     LOG.ensureCompleted(prog);
 
     IndefiniteProgress qprog = LOG.isVerbose() ? new IndefiniteProgress("Testing subspace candidates", LOG) : null;
@@ -293,6 +304,7 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
       Collections.sort(candidateList, HiCSSubspace.SORT_BY_SUBSPACE);
 
       // TODO: optimize APRIORI style, by not even computing the bit set or?
+      ArrayList<HiCSSubspace> joinedSets = new ArrayList<>();
       for(int i = 0; i < candidateList.size() - 1; i++) {
         for(int j = i + 1; j < candidateList.size(); j++) {
           HiCSSubspace set1 = candidateList.get(i);
@@ -304,12 +316,13 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
           if(joinedSet.cardinality() != d) {
             continue;
           }
-
-          calculateContrast(relation, joinedSet, subspaceIndex, random);
-          dDimensionalList.add(joinedSet);
-          LOG.incrementProcessed(qprog);
+          joinedSets.add(joinedSet);
         }
       }
+      calculateContrasts(relation, joinedSets, subspaceIndex, fullValues, random, qprog);
+      for(HiCSSubspace joinedSet : joinedSets) {
+        dDimensionalList.add(joinedSet);
+      }
       // Prune
       for(HiCSSubspace cand : candidateList) {
         for(Heap<HiCSSubspace>.UnorderedIter it = dDimensionalList.unorderedIter(); it.valid(); it.advance()) {
@@ -328,18 +341,89 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
     return subspaceList;
   }
 
+  /**
+   * Project the relation onto each single dimension, in sorted order.
+   * 
+   * @param relation Relation to process
+   * @param subspaceIndex Subspace indexes
+   * @return Sorted attribute values, for each dimension
+   */
+  private double[][] projectOneDimIndexes(Relation<? extends NumberVector> relation, ArrayList<ArrayDBIDs> subspaceIndex) {
+    double[][] fullValues = new double[subspaceIndex.size()][relation.size()];
+    for(int d = 0; d < fullValues.length; d++) {
+      final double[] values = fullValues[d];
+      int l = 0;
+      for(DBIDIter iter = subspaceIndex.get(d).iter(); iter.valid(); iter.advance()) {
+        values[l++] = relation.get(iter).doubleValue(d);
+      }
+    }
+    return fullValues;
+  }
+
+  /**
+   * Calculate the contrast of all candidate subspaces in parallel.
+   * 
+   * Every candidate uses its own random generator, seeded from the main random
+   * generator in candidate order; so the results are deterministic and do not
+   * depend on the number of threads used.
+   * 
+   * @param relation Relation to process
+   * @param candidates Candidate subspaces
+   * @param subspaceIndex Subspace indexes
+   * @param fullValues Sorted attribute values
+   * @param random Random generator
+   * @param prog Progress to increment (may be {@code null})
+   */
+  private void calculateContrasts(final Relation<? extends NumberVector> relation, List<HiCSSubspace> candidates, final ArrayList<ArrayDBIDs> subspaceIndex, final double[][] fullValues, Random random, final AbstractProgress prog) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Future<?>> futures = new ArrayList<>(candidates.size());
+      for(final HiCSSubspace subspace : candidates) {
+        final long seed = random.nextLong();
+        futures.add(core.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            calculateContrast(relation, subspace, subspaceIndex, fullValues, new FastNonThreadsafeRandom(seed));
+            LOG.incrementProcessed(prog);
+            return null;
+          }
+        }));
+      }
+      for(Future<?> future : futures) {
+        future.get();
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("HiCS contrast computation failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("HiCS contrast computation interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
   /**
    * Calculates the actual contrast of a given subspace.
    * 
    * @param relation Relation to process
    * @param subspace Subspace
    * @param subspaceIndex Subspace indexes
+   * @param fullValues Sorted attribute values
+   * @param random Random generator
    */
-  private void calculateContrast(Relation<? extends NumberVector> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, Random random) {
+  private void calculateContrast(Relation<? extends NumberVector> relation, HiCSSubspace subspace, ArrayList<ArrayDBIDs> subspaceIndex, double[][] fullValues, Random random) {
     final int card = subspace.cardinality();
     final double alpha1 = Math.pow(alpha, (1.0 / card));
     final int windowsize = (int) (relation.size() * alpha1);
     final FiniteProgress prog = LOG.isDebugging() ? new FiniteProgress("Monte-Carlo iterations", m, LOG) : null;
+    // Working copy, as the statistical test may modify its input.
+    final double[] fullSample = new double[relation.size()];
 
     int retries = 0;
     double deviationSum = 0.0;
@@ -390,15 +474,8 @@ public class HiCS<V extends NumberVector> extends AbstractAlgorithm<OutlierResul
         }
       }
       // Project full set
-      double[] fullValues = new double[relation.size()];
-      {
-        int l = 0;
-        for(DBIDIter iter = subspaceIndex.get(chosen).iter(); iter.valid(); iter.advance()) {
-          fullValues[l] = relation.get(iter).doubleValue(chosen);
-          l++;
-        }
-      }
-      double contrast = statTest.deviation(fullValues, sampleValues);
+      System.arraycopy(fullValues[chosen], 0, fullSample, 0, fullSample.length);
+      double contrast = statTest.deviation(fullSample, sampleValues);
       if(Double.isNaN(contrast)) {
         i--;
         LOG.warning("Contrast was NaN");
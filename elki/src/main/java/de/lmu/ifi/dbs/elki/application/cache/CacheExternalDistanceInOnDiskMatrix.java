@@ -0,0 +1,190 @@
+package de.lmu.ifi.dbs.elki.application.cache;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import de.lmu.ifi.dbs.elki.application.AbstractApplication;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheBasedFloatDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DiskCacheDistanceWriter;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.DistanceParser;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.FileBasedDoubleDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.external.ParallelAsciiDistanceParser;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.FileUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Convert an external distance matrix file (e.g. ASCII, as read by
+ * {@link FileBasedDoubleDistanceFunction}) into a binary on-disk matrix, for
+ * use with {@link DiskCacheBasedDoubleDistanceFunction} or
+ * {@link DiskCacheBasedFloatDistanceFunction}.
+ *
+ * By default, the input is parsed with the multi-threaded
+ * {@link ParallelAsciiDistanceParser}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has DiskCacheDistanceWriter
+ * @apiviz.uses DistanceParser
+ */
+public class CacheExternalDistanceInOnDiskMatrix extends AbstractApplication {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(CacheExternalDistanceInOnDiskMatrix.class);
+
+  /**
+   * Distance parser.
+   */
+  private DistanceParser parser;
+
+  /**
+   * Input file.
+   */
+  private File in;
+
+  /**
+   * Output file.
+   */
+  private File out;
+
+  /**
+   * Use single precision.
+   */
+  private boolean singlePrecision;
+
+  /**
+   * Constructor.
+   *
+   * @param parser Distance parser
+   * @param in Input file
+   * @param out Matrix output file
+   * @param singlePrecision Store distances as float instead of double
+   */
+  public CacheExternalDistanceInOnDiskMatrix(DistanceParser parser, File in, File out, boolean singlePrecision) {
+    super();
+    this.parser = parser;
+    this.in = in;
+    this.out = out;
+    this.singlePrecision = singlePrecision;
+  }
+
+  @Override
+  public void run() {
+    try (InputStream input = new BufferedInputStream(FileUtil.tryGzipInput(new FileInputStream(in))); //
+        DiskCacheDistanceWriter writer = new DiskCacheDistanceWriter(out, singlePrecision)) {
+      parser.parse(input, writer);
+      if(LOG.isVerbose()) {
+        LOG.verbose("Distance matrix has size " + writer.size());
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error converting the distance matrix.", e);
+    }
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractApplication.Parameterizer {
+    /**
+     * Flag to store single precision values.
+     * <p>
+     * Key: {@code -loader.float}
+     * </p>
+     */
+    public static final OptionID FLOAT_ID = new OptionID("loader.float", "Store distances with single precision, for use with " + DiskCacheBasedFloatDistanceFunction.class.getSimpleName() + ".");
+
+    /**
+     * Distance parser.
+     */
+    private DistanceParser parser = null;
+
+    /**
+     * Input file.
+     */
+    private File in = null;
+
+    /**
+     * Output file.
+     */
+    private File out = null;
+
+    /**
+     * Use single precision.
+     */
+    private boolean singlePrecision = false;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      final FileParameter ipar = new FileParameter(FileBasedDoubleDistanceFunction.Parameterizer.MATRIX_ID, FileParameter.FileType.INPUT_FILE);
+      if(config.grab(ipar)) {
+        in = ipar.getValue();
+      }
+      final ObjectParameter<DistanceParser> ppar = new ObjectParameter<>(FileBasedDoubleDistanceFunction.Parameterizer.PARSER_ID, DistanceParser.class, ParallelAsciiDistanceParser.class);
+      if(config.grab(ppar)) {
+        parser = ppar.instantiateClass(config);
+      }
+      final FileParameter cpar = new FileParameter(CacheDoubleDistanceInOnDiskMatrix.Parameterizer.CACHE_ID, FileParameter.FileType.OUTPUT_FILE);
+      if(config.grab(cpar)) {
+        out = cpar.getValue();
+      }
+      final Flag fpar = new Flag(FLOAT_ID);
+      if(config.grab(fpar)) {
+        singlePrecision = fpar.isTrue();
+      }
+    }
+
+    @Override
+    protected CacheExternalDistanceInOnDiskMatrix makeInstance() {
+      return new CacheExternalDistanceInOnDiskMatrix(parser, in, out, singlePrecision);
+    }
+  }
+
+  /**
+   * Main method, delegate to super class.
+   *
+   * @param args Command line arguments
+   */
+  public static void main(String[] args) {
+    runCLIApplication(CacheExternalDistanceInOnDiskMatrix.class, args);
+  }
+}
@@ -26,7 +26,11 @@ package de.lmu.ifi.dbs.elki.application.greedyensemble;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintStream;
+import java.util.ArrayDeque;
 import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractAlgorithm;
@@ -69,6 +73,7 @@ import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
 import de.lmu.ifi.dbs.elki.math.statistics.intrinsicdimensionality.HillEstimator;
 import de.lmu.ifi.dbs.elki.math.statistics.kernelfunctions.GaussianKernelDensityFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
@@ -96,6 +101,11 @@ import de.lmu.ifi.dbs.elki.workflow.InputStep;
  * For methods where k=1 does not make sense, this value will be skipped, and
  * the procedure will commence at 1+stepsize.
  *
+ * The nearest neighbors are materialized only once, for the maximum k, and
+ * shared by all methods and values of k. The individual runs are independent,
+ * and are executed in parallel (see {@link ParallelCore}); the results are
+ * still written in a fixed order.
+ *
  * Reference:
  * <p>
  * E. Schubert, R. Wojdanowski, A. Zimek, H.-P. Kriegel<br />
@@ -233,207 +243,181 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
       writeResult(fout, ids, bylabelresult, new IdentityScaling(), "bylabel");
     }
 
-    final int startk = (this.startk > 0) ? this.startk : this.stepk;
-    final int startkmin2 = (startk >= 2) ? startk : (startk + stepk);
-    final int startkmin3 = (startk >= 3) ? startk : (startkmin2 >= 3) ? startkmin2 : (startkmin2 + stepk);
-
-    // KNN
-    runForEachK("KNN", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        KNNOutlier<O> knn = new KNNOutlier<>(distf, k);
-        OutlierResult result = knn.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // KNN Weight
-    runForEachK("KNNW", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        KNNWeightOutlier<O> knnw = new KNNWeightOutlier<>(distf, k);
-        OutlierResult result = knnw.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run LOF
-    runForEachK("LOF", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        LOF<O> lof = new LOF<>(k, distf);
-        OutlierResult result = lof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run Simplified-LOF
-    runForEachK("SimplifiedLOF", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        SimplifiedLOF<O> lof = new SimplifiedLOF<>(k, distf);
-        OutlierResult result = lof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // LoOP
-    runForEachK("LoOP", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        LoOP<O> loop = new LoOP<>(k, k, distf, distf, 1.0);
-        OutlierResult result = loop.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // LDOF
-    runForEachK("LDOF", startkmin2, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        if(k == startkmin2 && maxk > 100) {
-          LOG.verbose("Note: LODF needs O(k^2) distance computations. Use -" + Parameterizer.DISABLE_ID.getName() + " LDOF to disable.");
+    // Run the algorithms in parallel, but write the results in order.
+    final ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      final OrderedResultWriter out = new OrderedResultWriter(core, fout, ids);
+      final int startk = (this.startk > 0) ? this.startk : this.stepk;
+      final int startkmin2 = (startk >= 2) ? startk : (startk + stepk);
+      final int startkmin3 = (startk >= 3) ? startk : (startkmin2 >= 3) ? startkmin2 : (startkmin2 + stepk);
+
+      // KNN
+      runForEachK(out, "KNN", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          KNNOutlier<O> knn = new KNNOutlier<>(distf, k);
+          return knn.run(database, relation);
         }
-        LDOF<O> ldof = new LDOF<>(distf, k);
-        OutlierResult result = ldof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run ODIN
-    runForEachK("ODIN", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        ODIN<O> odin = new ODIN<>(distf, k);
-        OutlierResult result = odin.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run FastABOD
-    runForEachK("FastABOD", startkmin3, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        if(k == startkmin3 && maxk > 100) {
-          LOG.verbose("Note: FastABOD needs quadratic memory. Use -" + Parameterizer.DISABLE_ID.getName() + " FastABOD to disable.");
+      });
+      // KNN Weight
+      runForEachK(out, "KNNW", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          KNNWeightOutlier<O> knnw = new KNNWeightOutlier<>(distf, k);
+          return knnw.run(database, relation);
         }
-        FastABOD<O> fabod = new FastABOD<>(new PolynomialKernelFunction(2), k);
-        OutlierResult result = fabod.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run KDEOS with intrinsic dimensionality 2.
-    runForEachK("KDEOS", startkmin2, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        KDEOS<O> kdeos = new KDEOS<>(distf, k, k, //
-        GaussianKernelDensityFunction.KERNEL, 0., //
-        .5 * GaussianKernelDensityFunction.KERNEL.canonicalBandwidth(), 2);
-        OutlierResult result = kdeos.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run LDF
-    runForEachK("LDF", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        LDF<O> ldf = new LDF<>(k, distf, GaussianKernelDensityFunction.KERNEL, 1., .1);
-        OutlierResult result = ldf.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run INFLO
-    runForEachK("INFLO", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        INFLO<O> inflo = new INFLO<>(distf, 1.0, k);
-        OutlierResult result = inflo.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run COF
-    runForEachK("COF", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        COF<O> cof = new COF<>(k, distf);
-        OutlierResult result = cof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run simple Intrinsic dimensionality
-    runForEachK("Intrinsic", startkmin2, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        IntrinsicDimensionalityOutlier<O> sid = new IntrinsicDimensionalityOutlier<>(distf, k, HillEstimator.STATIC);
-        OutlierResult result = sid.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run IDOS
-    runForEachK("IDOS", startkmin2, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        IDOS<O> idos = new IDOS<>(distf, HillEstimator.STATIC, k, k);
-        OutlierResult result = idos.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run simple kernel-density LOF variant
-    runForEachK("KDLOF", startkmin2, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        SimpleKernelDensityLOF<O> kdlof = new SimpleKernelDensityLOF<>(k, distf, //
-        GaussianKernelDensityFunction.KERNEL);
-        OutlierResult result = kdlof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run DWOF (need pairwise distances, too)
-    runForEachK("DWOF", startkmin2, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        if(k == startkmin2 && maxk > 100) {
-          LOG.verbose("Note: DWOF needs O(k^2) distance computations. Use -" + Parameterizer.DISABLE_ID.getName() + " DWOF to disable.");
+      });
+      // Run LOF
+      runForEachK(out, "LOF", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          LOF<O> lof = new LOF<>(k, distf);
+          return lof.run(database, relation);
         }
-        DWOF<O> dwof = new DWOF<>(distf, k, 1.1);
-        OutlierResult result = dwof.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run LIC
-    runForEachK("LIC", startk, stepk, maxk, new AlgRunner() {
-      @Override
-      public void run(int k, String kstr) {
-        LocalIsolationCoefficient<O> lic = new LocalIsolationCoefficient<>(distf, k);
-        OutlierResult result = lic.run(database, relation);
-        writeResult(fout, ids, result, scaling, kstr);
-        database.getHierarchy().removeSubtree(result);
-      }
-    });
-    // Run VOV (requires a vector field).
-    if(TypeUtil.DOUBLE_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation())) {
-      @SuppressWarnings("unchecked")
-      final DistanceFunction<? super DoubleVector> df = (DistanceFunction<? super DoubleVector>) distf;
-      @SuppressWarnings("unchecked")
-      final Relation<DoubleVector> rel = (Relation<DoubleVector>) (Relation<?>) relation;
-      runForEachK("VOV", startk, stepk, maxk, new AlgRunner() {
+      });
+      // Run Simplified-LOF
+      runForEachK(out, "SimplifiedLOF", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          SimplifiedLOF<O> lof = new SimplifiedLOF<>(k, distf);
+          return lof.run(database, relation);
+        }
+      });
+      // LoOP
+      runForEachK(out, "LoOP", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          LoOP<O> loop = new LoOP<>(k, k, distf, distf, 1.0);
+          return loop.run(database, relation);
+        }
+      });
+      // LDOF
+      runForEachK(out, "LDOF", startkmin2, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          if(k == startkmin2 && maxk > 100) {
+            LOG.verbose("Note: LODF needs O(k^2) distance computations. Use -" + Parameterizer.DISABLE_ID.getName() + " LDOF to disable.");
+          }
+          LDOF<O> ldof = new LDOF<>(distf, k);
+          return ldof.run(database, relation);
+        }
+      });
+      // Run ODIN
+      runForEachK(out, "ODIN", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          ODIN<O> odin = new ODIN<>(distf, k);
+          return odin.run(database, relation);
+        }
+      });
+      // Run FastABOD
+      runForEachK(out, "FastABOD", startkmin3, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          if(k == startkmin3 && maxk > 100) {
+            LOG.verbose("Note: FastABOD needs quadratic memory. Use -" + Parameterizer.DISABLE_ID.getName() + " FastABOD to disable.");
+          }
+          FastABOD<O> fabod = new FastABOD<>(new PolynomialKernelFunction(2), k);
+          return fabod.run(database, relation);
+        }
+      });
+      // Run KDEOS with intrinsic dimensionality 2.
+      runForEachK(out, "KDEOS", startkmin2, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          KDEOS<O> kdeos = new KDEOS<>(distf, k, k, //
+          GaussianKernelDensityFunction.KERNEL, 0., //
+          .5 * GaussianKernelDensityFunction.KERNEL.canonicalBandwidth(), 2);
+          return kdeos.run(database, relation);
+        }
+      });
+      // Run LDF
+      runForEachK(out, "LDF", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          LDF<O> ldf = new LDF<>(k, distf, GaussianKernelDensityFunction.KERNEL, 1., .1);
+          return ldf.run(database, relation);
+        }
+      });
+      // Run INFLO
+      runForEachK(out, "INFLO", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          INFLO<O> inflo = new INFLO<>(distf, 1.0, k);
+          return inflo.run(database, relation);
+        }
+      });
+      // Run COF
+      runForEachK(out, "COF", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          COF<O> cof = new COF<>(k, distf);
+          return cof.run(database, relation);
+        }
+      });
+      // Run simple Intrinsic dimensionality
+      runForEachK(out, "Intrinsic", startkmin2, stepk, maxk, new AlgRunner() {
         @Override
-        public void run(int k, String kstr) {
-          VarianceOfVolume<DoubleVector> vov = new VarianceOfVolume<>(k, df);
-          OutlierResult result = vov.run(database, rel);
-          writeResult(fout, ids, result, scaling, kstr);
-          database.getHierarchy().removeSubtree(result);
+        public OutlierResult run(int k) {
+          IntrinsicDimensionalityOutlier<O> sid = new IntrinsicDimensionalityOutlier<>(distf, k, HillEstimator.STATIC);
+          return sid.run(database, relation);
         }
       });
+      // Run IDOS
+      runForEachK(out, "IDOS", startkmin2, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          IDOS<O> idos = new IDOS<>(distf, HillEstimator.STATIC, k, k);
+          return idos.run(database, relation);
+        }
+      });
+      // Run simple kernel-density LOF variant
+      runForEachK(out, "KDLOF", startkmin2, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          SimpleKernelDensityLOF<O> kdlof = new SimpleKernelDensityLOF<>(k, distf, //
+          GaussianKernelDensityFunction.KERNEL);
+          return kdlof.run(database, relation);
+        }
+      });
+      // Run DWOF (need pairwise distances, too)
+      runForEachK(out, "DWOF", startkmin2, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          if(k == startkmin2 && maxk > 100) {
+            LOG.verbose("Note: DWOF needs O(k^2) distance computations. Use -" + Parameterizer.DISABLE_ID.getName() + " DWOF to disable.");
+          }
+          DWOF<O> dwof = new DWOF<>(distf, k, 1.1);
+          return dwof.run(database, relation);
+        }
+      });
+      // Run LIC
+      runForEachK(out, "LIC", startk, stepk, maxk, new AlgRunner() {
+        @Override
+        public OutlierResult run(int k) {
+          LocalIsolationCoefficient<O> lic = new LocalIsolationCoefficient<>(distf, k);
+          return lic.run(database, relation);
+        }
+      });
+      // Run VOV (requires a vector field).
+      if(TypeUtil.DOUBLE_VECTOR_FIELD.isAssignableFromType(relation.getDataTypeInformation())) {
+        @SuppressWarnings("unchecked")
+        final DistanceFunction<? super DoubleVector> df = (DistanceFunction<? super DoubleVector>) distf;
+        @SuppressWarnings("unchecked")
+        final Relation<DoubleVector> rel = (Relation<DoubleVector>) (Relation<?>) relation;
+        runForEachK(out, "VOV", startk, stepk, maxk, new AlgRunner() {
+          @Override
+          public OutlierResult run(int k) {
+            VarianceOfVolume<DoubleVector> vov = new VarianceOfVolume<>(k, df);
+            return vov.run(database, rel);
+          }
+        });
+      }
+      out.flush();
+    }
+    finally {
+      core.disconnect();
     }
   }
 
@@ -465,13 +449,14 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
   /**
    * Iterate over the k range.
    *
+   * @param out Result writer
    * @param prefix Prefix string
    * @param startk Start k
    * @param stepk Step k
    * @param maxk Max k
    * @param runner Runner to run
    */
-  private void runForEachK(String prefix, int startk, int stepk, int maxk, AlgRunner runner) {
+  private void runForEachK(OrderedResultWriter out, final String prefix, int startk, int stepk, int maxk, final AlgRunner runner) {
     if(isDisabled(prefix)) {
       LOG.verbose("Skipping (disabled): " + prefix);
       return; // Disabled
@@ -480,9 +465,16 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
     final int digits = (int) Math.ceil(Math.log10(maxk + 1));
     final String format = "%s-%0" + digits + "d";
     for(int k = startk; k <= maxk; k += stepk) {
-      Duration time = LOG.newDuration(this.getClass().getCanonicalName() + "." + prefix + ".k" + k + ".runtime").begin();
-      runner.run(k, String.format(Locale.ROOT, format, prefix, k));
-      LOG.statistics(time.end());
+      final int fk = k;
+      out.submit(String.format(Locale.ROOT, format, prefix, k), new Callable<OutlierResult>() {
+        @Override
+        public OutlierResult call() {
+          Duration time = LOG.newDuration(ComputeKNNOutlierScores.class.getCanonicalName() + "." + prefix + ".k" + fk + ".runtime").begin();
+          OutlierResult result = runner.run(fk);
+          LOG.statistics(time.end());
+          return result;
+        }
+      });
     }
   }
 
@@ -508,9 +500,107 @@ public class ComputeKNNOutlierScores<O extends NumberVector> extends AbstractApp
      * Run a single algorithm instance.
      *
      * @param k K parameter
-     * @param kstr String identifier.
+     * @return Outlier result
+     */
+    public OutlierResult run(int k);
+  }
+
+  /**
+   * Run the algorithm instances concurrently, and write their results in the
+   * order they were submitted. All instances share the materialized kNN
+   * lists, so they are independent of each other. The number of pending
+   * results is bounded, to limit memory usage.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class OrderedResultWriter {
+    /**
+     * Executor core.
+     */
+    private ParallelCore core;
+
+    /**
+     * Output stream.
      */
-    public void run(int k, String kstr);
+    private PrintStream fout;
+
+    /**
+     * Object ids, in output order.
+     */
+    private DBIDs ids;
+
+    /**
+     * Maximum number of pending results.
+     */
+    private int window;
+
+    /**
+     * Labels of pending results.
+     */
+    private ArrayDeque<String> labels = new ArrayDeque<>();
+
+    /**
+     * Pending results.
+     */
+    private ArrayDeque<Future<OutlierResult>> pending = new ArrayDeque<>();
+
+    /**
+     * Constructor.
+     *
+     * @param core Executor core
+     * @param fout Output stream
+     * @param ids Object ids
+     */
+    OrderedResultWriter(ParallelCore core, PrintStream fout, DBIDs ids) {
+      this.core = core;
+      this.fout = fout;
+      this.ids = ids;
+      this.window = core.getParallelism() << 1;
+    }
+
+    /**
+     * Submit an algorithm run.
+     *
+     * @param label Output label
+     * @param task Task computing the outlier result
+     */
+    void submit(String label, Callable<OutlierResult> task) {
+      while(pending.size() >= window) {
+        writeNext();
+      }
+      labels.add(label);
+      pending.add(core.submit(task));
+    }
+
+    /**
+     * Write all pending results.
+     */
+    void flush() {
+      while(!pending.isEmpty()) {
+        writeNext();
+      }
+    }
+
+    /**
+     * Wait for the oldest pending result, and write it.
+     */
+    private void writeNext() {
+      final String label = labels.poll();
+      try {
+        writeResult(fout, ids, pending.poll().get(), scaling, label);
+      }
+      catch(ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new AbortException("Computing " + label + " failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Computing " + label + " interrupted.", e);
+      }
+    }
   }
 
   /**
@@ -28,10 +28,14 @@ import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDTWKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanFlatVectorKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDTWRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanEuclideanDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanFlatVectorRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveDistanceRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveSimilarityRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanSimilarityRangeQuery;
@@ -39,9 +43,12 @@ import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.rknn.RKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.similarity.PrimitiveSimilarityQuery;
 import de.lmu.ifi.dbs.elki.database.query.similarity.SimilarityQuery;
+import de.lmu.ifi.dbs.elki.database.relation.FlatVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.flat.FlatVectorKernel;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries.DTWDistanceFunction;
 import de.lmu.ifi.dbs.elki.distance.similarityfunction.SimilarityFunction;
 
 /**
@@ -227,10 +234,22 @@ public final class QueryUtil {
     // Slight optimizations of linear scans
     if(distanceQuery instanceof PrimitiveDistanceQuery) {
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
+      if(pdq.getRelation() instanceof FlatVectorRelation) {
+        final FlatVectorKernel kernel = FlatVectorKernel.get(pdq.getDistanceFunction());
+        if(kernel != null) {
+          final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
+          return (KNNQuery<O>) new LinearScanFlatVectorKNNQuery<>(ndq, kernel);
+        }
+      }
       if(EuclideanDistanceFunction.STATIC.equals(pdq.getDistanceFunction())) {
         final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
         return (KNNQuery<O>) new LinearScanEuclideanDistanceKNNQuery<>(ndq);
       }
+      // Subclasses of DTW use different recurrences, the bounds do not apply.
+      if(DTWDistanceFunction.class.equals(pdq.getDistanceFunction().getClass())) {
+        final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
+        return (KNNQuery<O>) new LinearScanDTWKNNQuery<>(ndq);
+      }
       return new LinearScanPrimitiveDistanceKNNQuery<>(pdq);
     }
     return new LinearScanDistanceKNNQuery<>(distanceQuery);
@@ -248,10 +267,22 @@ public final class QueryUtil {
     // Slight optimizations of linear scans
     if(distanceQuery instanceof PrimitiveDistanceQuery) {
       final PrimitiveDistanceQuery<O> pdq = (PrimitiveDistanceQuery<O>) distanceQuery;
+      if(pdq.getRelation() instanceof FlatVectorRelation) {
+        final FlatVectorKernel kernel = FlatVectorKernel.get(pdq.getDistanceFunction());
+        if(kernel != null) {
+          final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
+          return (RangeQuery<O>) new LinearScanFlatVectorRangeQuery<>(ndq, kernel);
+        }
+      }
       if(EuclideanDistanceFunction.STATIC.equals(pdq.getDistanceFunction())) {
         final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
         return (RangeQuery<O>) new LinearScanEuclideanDistanceRangeQuery<>(ndq);
       }
+      // Subclasses of DTW use different recurrences, the bounds do not apply.
+      if(DTWDistanceFunction.class.equals(pdq.getDistanceFunction().getClass())) {
+        final PrimitiveDistanceQuery<NumberVector> ndq = (PrimitiveDistanceQuery<NumberVector>) pdq;
+        return (RangeQuery<O>) new LinearScanDTWRangeQuery<>(ndq);
+      }
       return new LinearScanPrimitiveDistanceRangeQuery<>(pdq);
     }
     return new LinearScanDistanceRangeQuery<>(distanceQuery);
@@ -23,17 +23,31 @@ package de.lmu.ifi.dbs.elki.database;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.FloatVector;
 import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreFactory;
 import de.lmu.ifi.dbs.elki.database.datastore.DataStoreUtil;
 import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayStaticDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.relation.DBIDView;
+import de.lmu.ifi.dbs.elki.database.relation.AbstractFlatVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.FlatDoubleVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.FlatFloatVectorRelation;
+import de.lmu.ifi.dbs.elki.database.relation.FlatVectorRelation;
 import de.lmu.ifi.dbs.elki.database.relation.MaterializedRelation;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.datasource.DatabaseConnection;
@@ -43,8 +57,15 @@ import de.lmu.ifi.dbs.elki.index.Index;
 import de.lmu.ifi.dbs.elki.index.IndexFactory;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.statistics.Duration;
+import de.lmu.ifi.dbs.elki.parallel.Executor;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.parallel.ParallelExecutor;
+import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.Flag;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectListParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
@@ -53,6 +74,15 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * dynamic insert, delete and update operations. However, array access is
  * expected to be faster and use less memory.
  *
+ * Optionally, the relations can be filled in parallel, and the indexes can be
+ * built concurrently. Note that in this mode, indexes are not able to use
+ * each other during construction, as they are only added to the database
+ * after all indexes have been built.
+ *
+ * Dense double and float vector fields can also be stored in a single flat
+ * array (see {@link FlatVectorRelation}), which allows linear scans to use
+ * specialized distance kernels.
+ *
  * @author Arthur Zimek
  * @author Erich Schubert
  * @since 0.2
@@ -83,6 +113,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
    */
   protected DatabaseConnection databaseConnection;
 
+  /**
+   * Fill relations and build indexes in parallel.
+   */
+  protected boolean parallel;
+
+  /**
+   * Store dense vector fields in flat arrays.
+   */
+  protected boolean flat;
+
   /**
    * Constructor.
    *
@@ -90,8 +130,33 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @param indexFactories Indexes to add
    */
   public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories) {
+    this(databaseConnection, indexFactories, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param parallel Fill relations and build indexes in parallel
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, boolean parallel) {
+    this(databaseConnection, indexFactories, parallel, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param databaseConnection Database connection to get the initial data from.
+   * @param indexFactories Indexes to add
+   * @param parallel Fill relations and build indexes in parallel
+   * @param flat Store dense vector fields in flat arrays
+   */
+  public StaticArrayDatabase(DatabaseConnection databaseConnection, Collection<IndexFactory<?, ?>> indexFactories, boolean parallel, boolean flat) {
     super();
     this.databaseConnection = databaseConnection;
+    this.parallel = parallel;
+    this.flat = flat;
     this.ids = null;
     this.idrep = null;
 
@@ -141,49 +206,246 @@ public class StaticArrayDatabase extends AbstractDatabase {
       relations.add(this.idrep);
       getHierarchy().add(this, idrep);
 
-      DBIDArrayIter it = this.ids.iter();
-
       int numrel = bundle.metaLength();
+      List<Relation<?>> newrels = new ArrayList<>(numrel);
+      List<WritableDataStore<Object>> stores = new ArrayList<>(numrel);
       for(int i = 0; i < numrel; i++) {
         SimpleTypeInformation<?> meta = bundle.meta(i);
         @SuppressWarnings("unchecked")
         SimpleTypeInformation<Object> ometa = (SimpleTypeInformation<Object>) meta;
+        AbstractFlatVectorRelation<?> frel = flat ? makeFlatRelation(meta) : null;
+        if(frel != null) {
+          // Flat relations serve as their own storage.
+          @SuppressWarnings("unchecked")
+          WritableDataStore<Object> store = (WritableDataStore<Object>) frel;
+          stores.add(store);
+          newrels.add(frel);
+          continue;
+        }
         WritableDataStore<Object> store = DataStoreUtil.makeStorage(ids, DataStoreFactory.HINT_DB, ometa.getRestrictionClass());
-        for(it.seek(0); it.valid(); it.advance()) {
-          store.put(it, bundle.data(it.getOffset(), i));
+        stores.add(store);
+        newrels.add(new MaterializedRelation<>(ometa, ids, null, store));
+      }
+      // Array stores can be written concurrently, other stores cannot.
+      if(parallel && ids instanceof DBIDRange) {
+        Processor[] procs = new Processor[numrel];
+        for(int i = 0; i < numrel; i++) {
+          procs[i] = new FillStoreProcessor(bundle, i, (DBIDRange) ids, stores.get(i));
+        }
+        ParallelExecutor.run(ids, procs);
+      }
+      else {
+        DBIDArrayIter it = this.ids.iter();
+        for(int i = 0; i < numrel; i++) {
+          WritableDataStore<Object> store = stores.get(i);
+          for(it.seek(0); it.valid(); it.advance()) {
+            store.put(it, bundle.data(it.getOffset(), i));
+          }
         }
-        Relation<?> relation = new MaterializedRelation<>(ometa, ids, null, store);
+      }
+
+      for(Relation<?> relation : newrels) {
         relations.add(relation);
         getHierarchy().add(this, relation);
-
-        // Try to add indexes where appropriate
-        for(IndexFactory<?, ?> factory : indexFactories) {
-          if(factory.getInputTypeRestriction().isAssignableFromType(ometa)) {
-            @SuppressWarnings("unchecked")
-            final IndexFactory<Object, ?> ofact = (IndexFactory<Object, ?>) factory;
-            @SuppressWarnings("unchecked")
-            final Relation<Object> orep = (Relation<Object>) relation;
-            final Index index = ofact.instantiate(orep);
-            Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".construction").begin() : null;
-            index.initialize();
-            if(duration != null) {
-              LOG.statistics(duration.end());
+        if(!parallel) {
+          // Try to add indexes where appropriate
+          for(IndexFactory<?, ?> factory : indexFactories) {
+            Index index = instantiateIndex(factory, relation);
+            if(index != null) {
+              buildIndex(index);
+              getHierarchy().add(relation, index);
             }
-            getHierarchy().add(relation, index);
           }
         }
       }
+      if(parallel) {
+        buildIndexesParallel(newrels);
+      }
 
       // fire insertion event
       eventManager.fireObjectsInserted(ids);
     }
   }
 
+  /**
+   * Make a flat relation for dense double or float vector fields.
+   *
+   * @param meta Type information
+   * @return Flat relation, or {@code null} if not supported.
+   */
+  @SuppressWarnings("unchecked")
+  private AbstractFlatVectorRelation<?> makeFlatRelation(SimpleTypeInformation<?> meta) {
+    if(!(ids instanceof DBIDRange) || !(meta instanceof VectorFieldTypeInformation)) {
+      return null;
+    }
+    VectorFieldTypeInformation<?> vmeta = (VectorFieldTypeInformation<?>) meta;
+    if(vmeta.mindim() != vmeta.maxdim()) {
+      return null;
+    }
+    if(vmeta.getFactory() == DoubleVector.FACTORY) {
+      return new FlatDoubleVectorRelation((VectorFieldTypeInformation<DoubleVector>) vmeta, (DBIDRange) ids);
+    }
+    if(vmeta.getFactory() == FloatVector.FACTORY) {
+      return new FlatFloatVectorRelation((VectorFieldTypeInformation<FloatVector>) vmeta, (DBIDRange) ids);
+    }
+    return null;
+  }
+
+  /**
+   * Instantiate an index for a relation, if the index factory is applicable.
+   *
+   * @param factory Index factory
+   * @param relation Relation to index
+   * @return Index, or {@code null}
+   */
+  private Index instantiateIndex(IndexFactory<?, ?> factory, Relation<?> relation) {
+    if(!factory.getInputTypeRestriction().isAssignableFromType(relation.getDataTypeInformation())) {
+      return null;
+    }
+    @SuppressWarnings("unchecked")
+    final IndexFactory<Object, ?> ofact = (IndexFactory<Object, ?>) factory;
+    @SuppressWarnings("unchecked")
+    final Relation<Object> orep = (Relation<Object>) relation;
+    return ofact.instantiate(orep);
+  }
+
+  /**
+   * Initialize an index, and log its construction time.
+   *
+   * @param index Index to initialize
+   */
+  private static void buildIndex(Index index) {
+    Duration duration = LOG.isStatistics() ? LOG.newDuration(index.getClass().getName() + ".construction").begin() : null;
+    index.initialize();
+    if(duration != null) {
+      LOG.statistics(duration.end());
+    }
+  }
+
+  /**
+   * Build all applicable indexes concurrently. The indexes are added to the
+   * hierarchy in the usual order once all have been built.
+   *
+   * @param newrels New relations
+   */
+  private void buildIndexesParallel(List<Relation<?>> newrels) {
+    List<Relation<?>> irels = new ArrayList<>();
+    List<Index> indexes = new ArrayList<>();
+    for(Relation<?> relation : newrels) {
+      for(IndexFactory<?, ?> factory : indexFactories) {
+        Index index = instantiateIndex(factory, relation);
+        if(index != null) {
+          irels.add(relation);
+          indexes.add(index);
+        }
+      }
+    }
+    if(indexes.isEmpty()) {
+      return;
+    }
+    Duration total = LOG.isStatistics() ? LOG.newDuration(this.getClass().getName() + ".index-construction").begin() : null;
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      List<Future<Index>> futures = new ArrayList<>(indexes.size());
+      for(final Index index : indexes) {
+        futures.add(core.submit(new Callable<Index>() {
+          @Override
+          public Index call() {
+            buildIndex(index);
+            return index;
+          }
+        }));
+      }
+      for(Future<Index> future : futures) {
+        future.get();
+      }
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Index construction failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Index construction interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+    if(total != null) {
+      LOG.statistics(total.end());
+    }
+    for(int i = 0; i < indexes.size(); i++) {
+      getHierarchy().add(irels.get(i), indexes.get(i));
+    }
+  }
+
   @Override
   protected Logging getLogger() {
     return LOG;
   }
 
+  /**
+   * Processor to copy a bundle column into a data store.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class FillStoreProcessor implements Processor, Processor.Instance {
+    /**
+     * Bundle to read from.
+     */
+    private MultipleObjectsBundle bundle;
+
+    /**
+     * Column number.
+     */
+    private int col;
+
+    /**
+     * DBID range, to map DBIDs to bundle offsets.
+     */
+    private DBIDRange range;
+
+    /**
+     * Store to write to.
+     */
+    private WritableDataStore<Object> store;
+
+    /**
+     * Constructor.
+     *
+     * @param bundle Bundle to read from
+     * @param col Column number
+     * @param range DBID range
+     * @param store Store to write to
+     */
+    public FillStoreProcessor(MultipleObjectsBundle bundle, int col, DBIDRange range, WritableDataStore<Object> store) {
+      super();
+      this.bundle = bundle;
+      this.col = col;
+      this.range = range;
+      this.store = store;
+    }
+
+    @Override
+    public Instance instantiate(Executor executor) {
+      return this; // Stateless
+    }
+
+    @Override
+    public void cleanup(Instance inst) {
+      // Nothing to do.
+    }
+
+    @Override
+    public void map(DBIDRef id) {
+      store.put(id, bundle.data(range.getOffset(id), col));
+    }
+  }
+
   /**
    * Parameterization class.
    *
@@ -192,6 +454,22 @@ public class StaticArrayDatabase extends AbstractDatabase {
    * @apiviz.exclude
    */
   public static class Parameterizer extends AbstractDatabase.Parameterizer {
+    /**
+     * Flag to fill relations and build indexes in parallel.
+     * <p>
+     * Key: {@code -db.parallel}
+     * </p>
+     */
+    public static final OptionID PARALLEL_ID = new OptionID("db.parallel", "Fill relations and build indexes in parallel. Indexes cannot use each other during construction in this mode.");
+
+    /**
+     * Flag to store dense vector fields in flat arrays.
+     * <p>
+     * Key: {@code -db.flatvectors}
+     * </p>
+     */
+    public static final OptionID FLAT_ID = new OptionID("db.flatvectors", "Store dense double and float vector fields in flat arrays, to enable vectorized linear scans.");
+
     /**
      * Holds the database connection to get the initial data from.
      */
@@ -202,6 +480,16 @@ public class StaticArrayDatabase extends AbstractDatabase {
      */
     private Collection<IndexFactory<?, ?>> indexFactories;
 
+    /**
+     * Fill relations and build indexes in parallel.
+     */
+    private boolean parallel = false;
+
+    /**
+     * Store dense vector fields in flat arrays.
+     */
+    private boolean flat = false;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -215,11 +503,19 @@ public class StaticArrayDatabase extends AbstractDatabase {
       if(config.grab(indexFactoryP)) {
         indexFactories = indexFactoryP.instantiateClasses(config);
       }
+      final Flag parallelF = new Flag(PARALLEL_ID);
+      if(config.grab(parallelF)) {
+        parallel = parallelF.isTrue();
+      }
+      final Flag flatF = new Flag(FLAT_ID);
+      if(config.grab(flatF)) {
+        flat = flatF.isTrue();
+      }
     }
 
     @Override
     protected StaticArrayDatabase makeInstance() {
-      return new StaticArrayDatabase(databaseConnection, indexFactories);
+      return new StaticArrayDatabase(databaseConnection, indexFactories, parallel, flat);
     }
   }
 }
@@ -0,0 +1,105 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries.DTWDistanceFunction;
+
+/**
+ * Linear scan kNN query for dynamic time warping, using a cascade of lower
+ * bounds: candidates are first checked against LB_Kim, then LB_Keogh, and only
+ * if both fail to prune, the full DTW distance is computed with early
+ * abandoning.
+ *
+ * All computations are on squared distances, as in
+ * {@link LinearScanEuclideanDistanceKNNQuery}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.uses DTWDistanceFunction
+ *
+ * @param <O> Vector type
+ */
+public class LinearScanDTWKNNQuery<O extends NumberVector> extends AbstractDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * DTW distance function.
+   */
+  private final DTWDistanceFunction dtw;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance query, using {@link DTWDistanceFunction}
+   */
+  public LinearScanDTWKNNQuery(PrimitiveDistanceQuery<O> distanceQuery) {
+    super(distanceQuery);
+    this.dtw = (DTWDistanceFunction) distanceQuery.getDistanceFunction();
+    assert (DTWDistanceFunction.class.equals(dtw.getClass()));
+  }
+
+  @Override
+  public KNNList getKNNForDBID(DBIDRef id, int k) {
+    return getKNNForObject(relation.get(id), k);
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    // Envelope of the query, for the current candidate length.
+    int envdim = -1;
+    double[] lower = null, upper = null;
+    double max = Double.POSITIVE_INFINITY;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      final O cand = relation.get(iter);
+      if(dtw.squaredLowerBoundKim(obj, cand) > max) {
+        continue;
+      }
+      final int dim2 = cand.getDimensionality();
+      if(dim2 != envdim) {
+        if(lower == null || lower.length < dim2) {
+          lower = new double[dim2];
+          upper = new double[dim2];
+        }
+        dtw.envelope(obj, dim2, lower, upper);
+        envdim = dim2;
+      }
+      if(dtw.squaredLowerBoundKeogh(lower, upper, cand, max) > max) {
+        continue;
+      }
+      final double dist = dtw.squaredDistance(obj, cand, max);
+      if(dist <= max) {
+        max = heap.insert(dist, iter);
+      }
+    }
+    return heap.toKNNListSqrt();
+  }
+}
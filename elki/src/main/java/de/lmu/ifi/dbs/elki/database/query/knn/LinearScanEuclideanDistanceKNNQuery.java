@@ -125,17 +125,6 @@ public class LinearScanEuclideanDistanceKNNQuery<O extends NumberVector> extends
    */
   @Override
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
-    final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = SQUARED.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
-        }
-      }
-    }
+    linearScanBatchKNN(SQUARED, objs, heaps);
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,120 @@
+package de.lmu.ifi.dbs.elki.database.query.knn;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.FlatVectorRelation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.flat.FlatVectorKernel;
+
+/**
+ * Linear scan kNN query on a {@link FlatVectorRelation}, computing distances
+ * block-wise directly on the flat array using a {@link FlatVectorKernel}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.uses FlatVectorRelation
+ * @apiviz.uses FlatVectorKernel
+ *
+ * @param <O> Vector type
+ */
+public class LinearScanFlatVectorKNNQuery<O extends NumberVector> extends AbstractDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Number of rows to process at once.
+   */
+  protected static final int BLOCKSIZE = 256;
+
+  /**
+   * Flat vector relation.
+   */
+  protected final FlatVectorRelation<? extends O> flat;
+
+  /**
+   * Distance kernel.
+   */
+  protected final FlatVectorKernel kernel;
+
+  /**
+   * Fallback for query objects of different dimensionality.
+   */
+  private final LinearScanPrimitiveDistanceKNNQuery<O> fallback;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance query, on a flat vector relation
+   * @param kernel Distance kernel, must match the distance function
+   */
+  public LinearScanFlatVectorKNNQuery(PrimitiveDistanceQuery<O> distanceQuery, FlatVectorKernel kernel) {
+    super(distanceQuery);
+    this.flat = (FlatVectorRelation<? extends O>) distanceQuery.getRelation();
+    this.kernel = kernel;
+    this.fallback = new LinearScanPrimitiveDistanceKNNQuery<>(distanceQuery);
+  }
+
+  @Override
+  public KNNList getKNNForDBID(DBIDRef id, int k) {
+    return linearScan(flat.getRow(id, null), k);
+  }
+
+  @Override
+  public KNNList getKNNForObject(O obj, int k) {
+    if(obj.getDimensionality() != flat.getDimensionality()) {
+      return fallback.getKNNForObject(obj, k);
+    }
+    return linearScan(obj.toArray(), k);
+  }
+
+  /**
+   * Main loop of the linear scan.
+   *
+   * @param q Query vector
+   * @param k Number of neighbors
+   * @return kNN list
+   */
+  protected KNNList linearScan(double[] q, int k) {
+    final int size = flat.size();
+    final double[] buf = new double[BLOCKSIZE];
+    KNNHeap heap = DBIDUtil.newHeap(k);
+    DBIDArrayIter iter = flat.getDBIDs().iter();
+    double max = Double.POSITIVE_INFINITY;
+    for(int start = 0; start < size; start += BLOCKSIZE) {
+      final int end = (start + BLOCKSIZE < size) ? start + BLOCKSIZE : size;
+      flat.rawDistances(kernel, q, start, end, buf);
+      for(int i = 0, row = start; row < end; i++, row++) {
+        if(buf[i] <= max) {
+          max = heap.insert(buf[i], iter.seek(row));
+        }
+      }
+    }
+    return kernel.toKNNList(heap);
+  }
+}
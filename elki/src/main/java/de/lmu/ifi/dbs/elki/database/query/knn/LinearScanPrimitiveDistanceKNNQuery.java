@@ -25,8 +25,10 @@ package de.lmu.ifi.dbs.elki.database.query.knn;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
@@ -36,6 +38,7 @@ import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
 import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 
 /**
  * Instance of this query for a particular database.
@@ -43,13 +46,27 @@ import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
  * This is a subtle optimization: for primitive queries, it is clearly faster to
  * retrieve the query object from the relation only once!
  * 
+ * Bulk queries are processed in tiles of queries and candidates, to improve
+ * cache locality, and the query tiles are distributed across all cores.
+ * 
  * @author Erich Schubert
  * @since 0.4.0
  * 
  * @apiviz.uses PrimitiveDistanceQuery
  * @apiviz.uses PrimitiveDistanceFunction
+ * @apiviz.has BatchKNNTask
  */
 public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQuery<O> implements LinearScanQuery {
+  /**
+   * Number of queries processed together in one tile.
+   */
+  protected static final int QUERY_BLOCK = 64;
+
+  /**
+   * Number of candidates processed together in one tile.
+   */
+  protected static final int CANDIDATE_BLOCK = 512;
+
   /**
    * Unboxed distance function.
    */
@@ -121,17 +138,158 @@ public class LinearScanPrimitiveDistanceKNNQuery<O> extends AbstractDistanceKNNQ
    * @param heaps Heaps array
    */
   protected void linearScanBatchKNN(List<O> objs, List<KNNHeap> heaps) {
+    linearScanBatchKNN(rawdist, objs, heaps);
+  }
+
+  /**
+   * Perform a tiled linear scan batch kNN, in parallel if beneficial.
+   * 
+   * Within each query, candidates are processed in relation order, so the
+   * result is identical to the sequential linear scan.
+   * 
+   * @param dist Distance function to use
+   * @param objs Objects list
+   * @param heaps Heaps array
+   */
+  protected void linearScanBatchKNN(PrimitiveDistanceFunction<? super O> dist, List<O> objs, List<KNNHeap> heaps) {
     final int size = objs.size();
-    // Linear scan style KNN.
-    for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-      O candidate = relation.get(iter);
-      for(int index = 0; index < size; index++) {
-        final KNNHeap heap = heaps.get(index);
-        final double dist = rawdist.distance(objs.get(index), candidate);
-        if(dist <= heap.getKNNDistance()) {
-          heap.insert(dist, iter);
+    ArrayDBIDs cids = DBIDUtil.ensureArray(relation.getDBIDs());
+    ParallelCore core = ParallelCore.getCore();
+    if(size < (QUERY_BLOCK << 1) || core.getParallelism() <= 1) {
+      batchKNNTile(relation, cids, dist, objs, heaps, 0, size);
+      return;
+    }
+    core.connect();
+    try {
+      core.invoke(new BatchKNNTask<>(relation, cids, dist, objs, heaps, 0, size));
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Process a range of queries, in blocks of candidates.
+   * 
+   * @param relation Data relation
+   * @param cids Candidate IDs
+   * @param dist Distance function
+   * @param objs Query objects
+   * @param heaps Query heaps
+   * @param qstart First query
+   * @param qend Query end (exclusive)
+   */
+  protected static <O> void batchKNNTile(Relation<? extends O> relation, ArrayDBIDs cids, PrimitiveDistanceFunction<? super O> dist, List<O> objs, List<KNNHeap> heaps, int qstart, int qend) {
+    final int qsize = qend - qstart, csize = cids.size();
+    // Avoid the list indirection in the inner loop:
+    Object[] qobjs = new Object[qsize];
+    KNNHeap[] qheaps = new KNNHeap[qsize];
+    double[] max = new double[qsize];
+    for(int i = 0; i < qsize; i++) {
+      qobjs[i] = objs.get(qstart + i);
+      qheaps[i] = heaps.get(qstart + i);
+      max[i] = qheaps[i].getKNNDistance();
+    }
+    Object[] cands = new Object[Math.min(CANDIDATE_BLOCK, csize)];
+    DBIDArrayIter citer = cids.iter();
+    for(int cstart = 0; cstart < csize; cstart += CANDIDATE_BLOCK) {
+      final int cend = Math.min(cstart + CANDIDATE_BLOCK, csize);
+      for(int j = 0, c = cstart; c < cend; j++, c++) {
+        cands[j] = relation.get(citer.seek(c));
+      }
+      for(int i = 0; i < qsize; i++) {
+        @SuppressWarnings("unchecked")
+        final O q = (O) qobjs[i];
+        final KNNHeap heap = qheaps[i];
+        double m = max[i];
+        for(int j = 0, c = cstart; c < cend; j++, c++) {
+          @SuppressWarnings("unchecked")
+          final double d = dist.distance(q, (O) cands[j]);
+          if(d <= m) {
+            m = heap.insert(d, citer.seek(c));
+          }
         }
+        max[i] = m;
+      }
+    }
+  }
+
+  /**
+   * Task to process a range of queries, splitting into query tiles.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   * 
+   * @param <O> Object type
+   */
+  protected static class BatchKNNTask<O> extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Data relation.
+     */
+    private Relation<? extends O> relation;
+
+    /**
+     * Candidate IDs.
+     */
+    private ArrayDBIDs cids;
+
+    /**
+     * Distance function.
+     */
+    private PrimitiveDistanceFunction<? super O> dist;
+
+    /**
+     * Query objects.
+     */
+    private List<O> objs;
+
+    /**
+     * Query heaps.
+     */
+    private List<KNNHeap> heaps;
+
+    /**
+     * Query range.
+     */
+    private int start, end;
+
+    /**
+     * Constructor.
+     * 
+     * @param relation Data relation
+     * @param cids Candidate IDs
+     * @param dist Distance function
+     * @param objs Query objects
+     * @param heaps Query heaps
+     * @param start First query
+     * @param end Query end (exclusive)
+     */
+    protected BatchKNNTask(Relation<? extends O> relation, ArrayDBIDs cids, PrimitiveDistanceFunction<? super O> dist, List<O> objs, List<KNNHeap> heaps, int start, int end) {
+      super();
+      this.relation = relation;
+      this.cids = cids;
+      this.dist = dist;
+      this.objs = objs;
+      this.heaps = heaps;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if(end - start < (QUERY_BLOCK << 1)) {
+        batchKNNTile(relation, cids, dist, objs, heaps, start, end);
+        return;
       }
+      final int mid = (start + end) >>> 1;
+      invokeAll(new BatchKNNTask<>(relation, cids, dist, objs, heaps, start, mid), //
+          new BatchKNNTask<>(relation, cids, dist, objs, heaps, mid, end));
     }
   }
-}
\ No newline at end of file
+}
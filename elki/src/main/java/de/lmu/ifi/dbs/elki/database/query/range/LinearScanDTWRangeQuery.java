@@ -0,0 +1,127 @@
+package de.lmu.ifi.dbs.elki.database.query.range;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries.DTWDistanceFunction;
+
+/**
+ * Linear scan range query for dynamic time warping, using a cascade of lower
+ * bounds (LB_Kim, LB_Keogh) and early abandoning of the full DTW computation.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.uses DTWDistanceFunction
+ *
+ * @param <O> Vector type
+ */
+public class LinearScanDTWRangeQuery<O extends NumberVector> extends AbstractDistanceRangeQuery<O> implements LinearScanQuery {
+  /**
+   * DTW distance function.
+   */
+  private final DTWDistanceFunction dtw;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance query, using {@link DTWDistanceFunction}
+   */
+  public LinearScanDTWRangeQuery(PrimitiveDistanceQuery<O> distanceQuery) {
+    super(distanceQuery);
+    this.dtw = (DTWDistanceFunction) distanceQuery.getDistanceFunction();
+    assert (DTWDistanceFunction.class.equals(dtw.getClass()));
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForDBID(DBIDRef id, double range) {
+    return getRangeForObject(relation.get(id), range);
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForObject(O obj, double range) {
+    ModifiableDoubleDBIDList result = DBIDUtil.newDistanceDBIDList();
+    linearScan(obj, range, result);
+    result.sort();
+    return result;
+  }
+
+  @Override
+  public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList neighbors) {
+    linearScan(relation.get(id), range, neighbors);
+  }
+
+  @Override
+  public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList neighbors) {
+    linearScan(obj, range, neighbors);
+  }
+
+  /**
+   * Main loop for linear scan.
+   *
+   * @param obj Query object
+   * @param range Query radius
+   * @param result Output data structure
+   */
+  private void linearScan(O obj, double range, ModifiableDoubleDBIDList result) {
+    // Avoid a loss in numerical precision when using the squared radius:
+    final double upper = range * 1.0000001;
+    final double sqrange = upper * upper;
+    // Envelope of the query, for the current candidate length.
+    int envdim = -1;
+    double[] lenv = null, uenv = null;
+    for(DBIDIter iter = relation.iterDBIDs(); iter.valid(); iter.advance()) {
+      final O cand = relation.get(iter);
+      if(dtw.squaredLowerBoundKim(obj, cand) > sqrange) {
+        continue;
+      }
+      final int dim2 = cand.getDimensionality();
+      if(dim2 != envdim) {
+        if(lenv == null || lenv.length < dim2) {
+          lenv = new double[dim2];
+          uenv = new double[dim2];
+        }
+        dtw.envelope(obj, dim2, lenv, uenv);
+        envdim = dim2;
+      }
+      if(dtw.squaredLowerBoundKeogh(lenv, uenv, cand, sqrange) > sqrange) {
+        continue;
+      }
+      final double sqdistance = dtw.squaredDistance(obj, cand, sqrange);
+      if(sqdistance <= sqrange) {
+        final double dist = Math.sqrt(sqdistance);
+        if(dist <= range) { // double check, as we increased the radius above
+          result.add(dist, iter);
+        }
+      }
+    }
+  }
+}
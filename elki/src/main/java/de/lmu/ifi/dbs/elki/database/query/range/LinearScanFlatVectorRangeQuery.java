@@ -0,0 +1,131 @@
+package de.lmu.ifi.dbs.elki.database.query.range;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.ModifiableDoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.query.LinearScanQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.relation.FlatVectorRelation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.flat.FlatVectorKernel;
+
+/**
+ * Linear scan range query on a {@link FlatVectorRelation}, computing distances
+ * block-wise directly on the flat array using a {@link FlatVectorKernel}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.uses FlatVectorRelation
+ * @apiviz.uses FlatVectorKernel
+ *
+ * @param <O> Vector type
+ */
+public class LinearScanFlatVectorRangeQuery<O extends NumberVector> extends AbstractDistanceRangeQuery<O> implements LinearScanQuery {
+  /**
+   * Number of rows to process at once.
+   */
+  private static final int BLOCKSIZE = 256;
+
+  /**
+   * Flat vector relation.
+   */
+  private final FlatVectorRelation<? extends O> flat;
+
+  /**
+   * Distance kernel.
+   */
+  private final FlatVectorKernel kernel;
+
+  /**
+   * Fallback for query objects of different dimensionality.
+   */
+  private final LinearScanPrimitiveDistanceRangeQuery<O> fallback;
+
+  /**
+   * Constructor.
+   *
+   * @param distanceQuery Distance query, on a flat vector relation
+   * @param kernel Distance kernel, must match the distance function
+   */
+  public LinearScanFlatVectorRangeQuery(PrimitiveDistanceQuery<O> distanceQuery, FlatVectorKernel kernel) {
+    super(distanceQuery);
+    this.flat = (FlatVectorRelation<? extends O>) distanceQuery.getRelation();
+    this.kernel = kernel;
+    this.fallback = new LinearScanPrimitiveDistanceRangeQuery<>(distanceQuery);
+  }
+
+  @Override
+  public DoubleDBIDList getRangeForDBID(DBIDRef id, double range) {
+    ModifiableDoubleDBIDList result = DBIDUtil.newDistanceDBIDList();
+    linearScan(flat.getRow(id, null), range, result);
+    result.sort();
+    return result;
+  }
+
+  @Override
+  public void getRangeForDBID(DBIDRef id, double range, ModifiableDoubleDBIDList neighbors) {
+    linearScan(flat.getRow(id, null), range, neighbors);
+  }
+
+  @Override
+  public void getRangeForObject(O obj, double range, ModifiableDoubleDBIDList neighbors) {
+    if(obj.getDimensionality() != flat.getDimensionality()) {
+      fallback.getRangeForObject(obj, range, neighbors);
+      return;
+    }
+    linearScan(obj.toArray(), range, neighbors);
+  }
+
+  /**
+   * Main loop of the linear scan.
+   *
+   * @param q Query vector
+   * @param range Query radius
+   * @param result Output list
+   */
+  private void linearScan(double[] q, double range, ModifiableDoubleDBIDList result) {
+    // Avoid a loss in numerical precision in the raw distance space:
+    final double rawrange = kernel.toRaw(range * 1.0000001);
+    final int size = flat.size();
+    final double[] buf = new double[BLOCKSIZE];
+    DBIDArrayIter iter = flat.getDBIDs().iter();
+    for(int start = 0; start < size; start += BLOCKSIZE) {
+      final int end = (start + BLOCKSIZE < size) ? start + BLOCKSIZE : size;
+      flat.rawDistances(kernel, q, start, end, buf);
+      for(int i = 0, row = start; row < end; i++, row++) {
+        if(buf[i] <= rawrange) {
+          final double dist = kernel.toDistance(buf[i]);
+          if(dist <= range) { // double check, as we increased the radius above
+            result.add(dist, iter.seek(row));
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.SimpleTypeInformation;
+import de.lmu.ifi.dbs.elki.database.datastore.WritableDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Abstract base class for relations storing vectors in a flat array.
+ * 
+ * The relation also serves as (writable) data store for its vectors; writing a
+ * vector copies its values into the array.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ * 
+ * @param <V> Vector type
+ */
+public abstract class AbstractFlatVectorRelation<V extends NumberVector> extends AbstractRelation<V> implements FlatVectorRelation<V>, WritableDataStore<V> {
+  /**
+   * The DBIDs of this relation.
+   */
+  protected final DBIDRange ids;
+
+  /**
+   * Dimensionality.
+   */
+  protected final int dim;
+
+  /**
+   * Type information.
+   */
+  private final SimpleTypeInformation<V> type;
+
+  /**
+   * The relation name.
+   */
+  private String name;
+
+  /**
+   * Constructor.
+   * 
+   * @param type Type information
+   * @param ids DBIDs
+   * @param dim Dimensionality
+   * @param name Relation name
+   */
+  public AbstractFlatVectorRelation(SimpleTypeInformation<V> type, DBIDRange ids, int dim, String name) {
+    super();
+    checkedSize(ids, dim);
+    this.type = type;
+    this.ids = ids;
+    this.dim = dim;
+    this.name = name;
+  }
+
+  /**
+   * Compute the size of the flat array, and verify it can be allocated.
+   * 
+   * @param ids DBIDs
+   * @param dim Dimensionality
+   * @return Array size
+   * @throws AbortException if the data does not fit into a single array
+   */
+  protected static int checkedSize(DBIDRange ids, int dim) {
+    final long size = (long) ids.size() * dim;
+    if(size > Integer.MAX_VALUE) {
+      throw new AbortException("Too much data for a single flat array: " + ids.size() + " x " + dim);
+    }
+    return (int) size;
+  }
+
+  /**
+   * Copy a vector into the given row.
+   * 
+   * @param row Row number
+   * @param vec Vector to copy
+   */
+  protected abstract void setRow(int row, NumberVector vec);
+
+  /**
+   * Copy all vectors of a relation.
+   * 
+   * @param relation Relation to copy
+   */
+  protected void copyFrom(Relation<? extends NumberVector> relation) {
+    for(DBIDIter it = ids.iter(); it.valid(); it.advance()) {
+      setRow(ids.getOffset(it), relation.get(it));
+    }
+  }
+
+  @Override
+  public V put(DBIDRef id, V value) {
+    setRow(ids.getOffset(id), value);
+    return null; // We do not keep the previous vector object.
+  }
+
+  @Override
+  public void delete(DBIDRef id) {
+    throw new AbortException("Flat vector relations do not support deletion.");
+  }
+
+  @Override
+  public int getDimensionality() {
+    return dim;
+  }
+
+  @Override
+  public DBIDRange getDBIDs() {
+    return ids;
+  }
+
+  @Override
+  public DBIDIter iterDBIDs() {
+    return ids.iter();
+  }
+
+  @Override
+  public int size() {
+    return ids.size();
+  }
+
+  @Override
+  public SimpleTypeInformation<V> getDataTypeInformation() {
+    return type;
+  }
+
+  @Override
+  public String getLongName() {
+    return (name != null) ? name : type.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "relation";
+  }
+}
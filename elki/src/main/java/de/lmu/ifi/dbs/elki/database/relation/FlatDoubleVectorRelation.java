@@ -0,0 +1,162 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.flat.FlatVectorKernel;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+
+/**
+ * Relation of double vectors, stored in a single row-major {@code double[]}.
+ * 
+ * Compared to a {@link MaterializedRelation} of {@link DoubleVector}s, this
+ * avoids the per-object overhead, and allows cache-friendly linear scans.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class FlatDoubleVectorRelation extends AbstractFlatVectorRelation<DoubleVector> {
+  /**
+   * Class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(FlatDoubleVectorRelation.class);
+
+  /**
+   * Vector data, row-major.
+   */
+  private double[] data;
+
+  /**
+   * Constructor for an empty relation.
+   * 
+   * @param ids DBIDs
+   * @param dim Dimensionality
+   * @param name Relation name
+   */
+  public FlatDoubleVectorRelation(DBIDRange ids, int dim, String name) {
+    this(ids, dim, name, new double[checkedSize(ids, dim)]);
+  }
+
+  /**
+   * Constructor, wrapping an existing array.
+   * 
+   * @param ids DBIDs
+   * @param dim Dimensionality
+   * @param name Relation name
+   * @param data Data array, of length {@code ids.size() * dim}
+   */
+  public FlatDoubleVectorRelation(DBIDRange ids, int dim, String name, double[] data) {
+    super(new VectorFieldTypeInformation<>(DoubleVector.FACTORY, dim), ids, dim, name);
+    assert (data.length == ids.size() * dim) : "Array size does not match.";
+    this.data = data;
+  }
+
+  /**
+   * Constructor for an empty relation, using the given type information (e.g.
+   * to retain column labels).
+   * 
+   * @param type Vector field type information
+   * @param ids DBIDs
+   */
+  public FlatDoubleVectorRelation(VectorFieldTypeInformation<DoubleVector> type, DBIDRange ids) {
+    super(type, ids, type.getDimensionality(), null);
+    this.data = new double[checkedSize(ids, type.getDimensionality())];
+  }
+
+  /**
+   * Constructor, copying an existing relation.
+   * 
+   * @param relation Relation to copy
+   * @param dim Dimensionality
+   */
+  public FlatDoubleVectorRelation(Relation<? extends NumberVector> relation, int dim) {
+    this(DBIDUtil.assertRange(relation.getDBIDs()), dim, relation.getLongName());
+    copyFrom(relation);
+  }
+
+  /**
+   * {@inheritDoc}
+   * 
+   * Note: this copies the row into a new vector object on every call. Use
+   * {@link #getRow} with a reused buffer to avoid this garbage.
+   */
+  @Override
+  public DoubleVector get(DBIDRef id) {
+    final int off = ids.getOffset(id) * dim;
+    return DoubleVector.wrap(Arrays.copyOfRange(data, off, off + dim));
+  }
+
+  @Override
+  public double[] getRow(DBIDRef id, double[] buf) {
+    buf = (buf != null) ? buf : new double[dim];
+    System.arraycopy(data, ids.getOffset(id) * dim, buf, 0, dim);
+    return buf;
+  }
+
+  @Override
+  protected void setRow(int row, NumberVector vec) {
+    assert (vec.getDimensionality() == dim) : "Dimensionality does not match.";
+    for(int d = 0, off = row * dim; d < dim; d++, off++) {
+      data[off] = vec.doubleValue(d);
+    }
+  }
+
+  @Override
+  public void rawDistances(FlatVectorKernel kernel, double[] q, int start, int end, double[] out) {
+    for(int i = 0, off = start * dim; start + i < end; i++, off += dim) {
+      out[i] = kernel.rawDistance(q, data, off, dim);
+    }
+  }
+
+  /**
+   * Get the raw data array. Modifications will be visible in the relation.
+   * 
+   * @return Data array
+   */
+  public double[] getData() {
+    return data;
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(data, 0.);
+  }
+
+  @Override
+  public void destroy() {
+    data = null;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -0,0 +1,77 @@
+package de.lmu.ifi.dbs.elki.database.relation;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRange;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.flat.FlatVectorKernel;
+
+/**
+ * Relation of vectors stored in a single contiguous row-major array, rather
+ * than as individual vector objects.
+ * 
+ * {@link #get} will materialize a vector object on every call; performance
+ * critical code should rather use {@link #getRow} or
+ * {@link #rawDistances}.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ * 
+ * @apiviz.uses FlatVectorKernel
+ * 
+ * @param <V> Vector type
+ */
+public interface FlatVectorRelation<V extends NumberVector> extends Relation<V> {
+  /**
+   * Get the dimensionality of all vectors in this relation.
+   * 
+   * @return Dimensionality
+   */
+  int getDimensionality();
+
+  @Override
+  DBIDRange getDBIDs();
+
+  /**
+   * Copy the values of a single row into a buffer.
+   * 
+   * @param id Object to get
+   * @param buf Buffer of length {@link #getDimensionality()}, may be
+   *        {@code null}
+   * @return Buffer containing the values.
+   */
+  double[] getRow(DBIDRef id, double[] buf);
+
+  /**
+   * Compute raw distances from a query vector to a block of rows.
+   * 
+   * @param kernel Distance kernel
+   * @param q Query vector, of length {@link #getDimensionality()}
+   * @param start First row (offset in {@link #getDBIDs()})
+   * @param end End row (exclusive)
+   * @param out Output array, of length at least {@code end - start}
+   */
+  void rawDistances(FlatVectorKernel kernel, double[] q, int start, int end, double[] out);
+}
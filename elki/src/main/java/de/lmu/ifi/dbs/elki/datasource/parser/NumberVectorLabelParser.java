@@ -320,6 +320,20 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
    * @return Prototype object
    */
   SimpleTypeInformation<V> getTypeInformation(int mindim, int maxdim) {
+    return getTypeInformation(factory, mindim, maxdim, columnnames, labelIndices);
+  }
+
+  /**
+   * Get a prototype object for the given dimensionality.
+   *
+   * @param factory Vector factory
+   * @param mindim Minimum dimensionality
+   * @param maxdim Maximum dimensionality
+   * @param columnnames Column names (may be {@code null})
+   * @param labelIndices Label columns (may be {@code null})
+   * @return Prototype object
+   */
+  static <V extends NumberVector> SimpleTypeInformation<V> getTypeInformation(NumberVector.Factory<V> factory, int mindim, int maxdim, List<String> columnnames, long[] labelIndices) {
     if(mindim > maxdim) {
       throw new AbortException("No vectors were read from the input file - cannot determine vector data type.");
     }
@@ -329,7 +343,7 @@ public class NumberVectorLabelParser<V extends NumberVector> extends AbstractStr
         colnames = new String[mindim];
         int j = 0;
         for(int i = 0; i < mindim; i++) {
-          if(isLabelColumn(i)) {
+          if(labelIndices != null && BitsUtil.get(labelIndices, i)) {
             continue;
           }
           colnames[j] = columnnames.get(i);
@@ -0,0 +1,688 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.LabelList;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.BitsUtil;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.DoubleArray;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.hash.Unique;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ParseUtil;
+import de.lmu.ifi.dbs.elki.utilities.io.Tokenizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.IntListParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
+
+/**
+ * Multi-threaded parser for numerical vectors with labels, reading the same
+ * format as {@link NumberVectorLabelParser}.
+ *
+ * The input is read in large blocks of bytes, which are cut at line boundaries
+ * and parsed concurrently. Numbers are parsed directly from the raw bytes,
+ * only labels are decoded (as UTF-8). For the default column separator and
+ * comment pattern, the lines are also tokenized on the byte level; other
+ * patterns use the regular expression based {@link Tokenizer}.
+ *
+ * As the data type can only be determined once all blocks have been parsed,
+ * this parser is not streaming.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.has NumberVector
+ *
+ * @param <V> the type of NumberVector used
+ */
+public class ParallelNumberVectorLabelParser<V extends NumberVector> implements Parser {
+  /**
+   * Logging class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelNumberVectorLabelParser.class);
+
+  /**
+   * Default block size: 4 MB.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 22;
+
+  /**
+   * Character set used for labels.
+   */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * Input format.
+   */
+  protected CSVReaderFormat format;
+
+  /**
+   * Keeps the indices of the attributes to be treated as a string label.
+   */
+  private long[] labelIndices;
+
+  /**
+   * Vector factory class.
+   */
+  protected NumberVector.Factory<V> factory;
+
+  /**
+   * Block size to read.
+   */
+  private int blocksize;
+
+  /**
+   * Use the byte tokenizer for the default separator.
+   */
+  private boolean bytesep;
+
+  /**
+   * Use the byte comment detection for the default comment pattern.
+   */
+  private boolean bytecomment;
+
+  /**
+   * Quote characters, as bytes.
+   */
+  private byte[] quotes;
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory) {
+    this(format, labelIndices, factory, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param format Input format
+   * @param labelIndices Column indexes that are not numeric.
+   * @param factory Vector factory
+   * @param blocksize Block size to read and parse at once
+   */
+  public ParallelNumberVectorLabelParser(CSVReaderFormat format, long[] labelIndices, NumberVector.Factory<V> factory, int blocksize) {
+    super();
+    this.format = format;
+    this.labelIndices = labelIndices;
+    this.factory = factory;
+    this.blocksize = blocksize > 0 ? blocksize : DEFAULT_BLOCK_SIZE;
+    this.bytesep = CSVReaderFormat.DEFAULT_SEPARATOR.equals(format.colSep.pattern()) && format.colSep.flags() == 0;
+    this.bytecomment = format.comment == null || (CSVReaderFormat.COMMENT_PATTERN.equals(format.comment.pattern()) && format.comment.flags() == 0);
+    String q = format.quoteChars != null ? format.quoteChars : "";
+    byte[] quotes = new byte[q.length()];
+    int n = 0;
+    for(int i = 0; i < q.length(); i++) {
+      final char c = q.charAt(i);
+      if(c < 0x80) { // Only ASCII quotes are single bytes.
+        quotes[n++] = (byte) c;
+      }
+      else {
+        LOG.warning("Non-ASCII quote characters are not supported: " + c);
+      }
+    }
+    this.quotes = Arrays.copyOf(quotes, n);
+  }
+
+  /**
+   * Test if the current column is marked as label column.
+   *
+   * @param col Column number
+   * @return {@code true} when a label column.
+   */
+  protected boolean isLabelColumn(int col) {
+    return labelIndices != null && BitsUtil.get(labelIndices, col);
+  }
+
+  @Override
+  public MultipleObjectsBundle parse(InputStream in) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // Limit the number of pending blocks, to bound memory usage.
+      final int maxpending = core.getParallelism() << 1;
+      List<Future<BlockParser>> futures = new ArrayList<>();
+      int waited = 0;
+      byte[] buf = new byte[blocksize];
+      int fill = 0;
+      while(true) {
+        boolean eof = false;
+        while(fill < buf.length) {
+          final int r = in.read(buf, fill, buf.length - fill);
+          if(r < 0) {
+            eof = true;
+            break;
+          }
+          fill += r;
+        }
+        // Cut after the last complete line.
+        int cut = fill;
+        if(!eof) {
+          while(cut > 0 && buf[cut - 1] != '\n') {
+            --cut;
+          }
+          if(cut == 0) { // Line longer than the buffer.
+            buf = Arrays.copyOf(buf, buf.length << 1);
+            continue;
+          }
+        }
+        if(cut > 0) {
+          futures.add(core.submit(new BlockParser(buf, cut)));
+        }
+        if(eof) {
+          break;
+        }
+        final int rest = fill - cut;
+        byte[] next = new byte[Math.max(blocksize, rest << 1)];
+        System.arraycopy(buf, cut, next, 0, rest);
+        buf = next;
+        fill = rest;
+        while(futures.size() - waited > maxpending) {
+          futures.get(waited++).get();
+        }
+      }
+      return merge(futures);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error while reading the input.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Parsing failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parsing interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Merge the parsed blocks, in input order.
+   *
+   * @param futures Block results
+   * @return Bundle
+   * @throws InterruptedException When interrupted
+   * @throws ExecutionException When parsing a block failed
+   */
+  private MultipleObjectsBundle merge(List<Future<BlockParser>> futures) throws InterruptedException, ExecutionException {
+    ArrayList<V> vecs = new ArrayList<>();
+    ArrayList<LabelList> lbls = new ArrayList<>();
+    List<String> columnnames = null;
+    boolean haslabels = false;
+    int mindim = Integer.MAX_VALUE, maxdim = 0;
+    for(int b = 0; b < futures.size(); b++) {
+      BlockParser block = futures.get(b).get();
+      futures.set(b, null); // Allow garbage collection.
+      vecs.ensureCapacity(vecs.size() + block.vecs.size());
+      lbls.ensureCapacity(lbls.size() + block.vecs.size());
+      for(int i = 0; i < block.vecs.size(); i++) {
+        V vec = block.vecs.get(i);
+        final LabelList lbl = block.lbls.get(i);
+        if(vec == null) {
+          // Label row before the first vector: column names.
+          if(vecs.isEmpty()) {
+            columnnames = new ArrayList<>(lbl.size());
+            for(int j = 0; j < lbl.size(); j++) {
+              columnnames.add(lbl.get(j));
+            }
+            continue;
+          }
+          vec = factory.newNumberVector(new double[0]);
+        }
+        final int dim = vec.getDimensionality();
+        mindim = (dim < mindim) ? dim : mindim;
+        maxdim = (dim > maxdim) ? dim : maxdim;
+        haslabels |= lbl.size() > 0;
+        vecs.add(vec);
+        lbls.add(lbl);
+      }
+    }
+    MultipleObjectsBundle bundle = new MultipleObjectsBundle();
+    if(vecs.isEmpty()) {
+      return bundle;
+    }
+    bundle.appendColumn(NumberVectorLabelParser.getTypeInformation(factory, mindim, maxdim, columnnames, labelIndices), vecs);
+    if(haslabels) {
+      bundle.appendColumn(TypeUtil.LABELLIST, lbls);
+    }
+    return bundle;
+  }
+
+  @Override
+  public void cleanup() {
+    // Nothing to do: all state is local to parse().
+  }
+
+  /**
+   * Parser for a single block of complete lines.
+   *
+   * Rows without numerical values are stored as {@code null} vectors, as only
+   * the merge step can decide whether they are a header.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private class BlockParser implements Callable<BlockParser> {
+    /**
+     * Data block; released after parsing.
+     */
+    private byte[] data;
+
+    /**
+     * Length of valid data.
+     */
+    private int len;
+
+    /**
+     * Parsed vectors.
+     */
+    ArrayList<V> vecs = new ArrayList<>();
+
+    /**
+     * Parsed labels.
+     */
+    ArrayList<LabelList> lbls = new ArrayList<>();
+
+    /**
+     * Numerical attributes of the current row.
+     */
+    private DoubleArray attributes = new DoubleArray(11);
+
+    /**
+     * Labels of the current row.
+     */
+    private ArrayList<String> labels = new ArrayList<>();
+
+    /**
+     * For String unification.
+     */
+    private Unique<String> unique = new Unique<>();
+
+    /**
+     * Regular expression tokenizer, if needed.
+     */
+    private Tokenizer tokenizer;
+
+    /**
+     * Regular expression comment matcher, if needed.
+     */
+    private Matcher comment;
+
+    /**
+     * Byte tokenizer state: token range, current position, end of line,
+     * separator search position and end of the last separator.
+     */
+    private int start, end, index, send, mpos, mend;
+
+    /**
+     * Byte tokenizer state: quoted token.
+     */
+    private boolean quoted;
+
+    /**
+     * Constructor.
+     *
+     * @param data Data block
+     * @param len Length of valid data
+     */
+    BlockParser(byte[] data, int len) {
+      this.data = data;
+      this.len = len;
+    }
+
+    @Override
+    public BlockParser call() {
+      if(!bytesep) {
+        tokenizer = new Tokenizer(format.colSep, format.quoteChars);
+      }
+      if(!bytecomment) {
+        comment = format.comment.matcher("");
+      }
+      for(int pos = 0; pos < len;) {
+        int eol = pos;
+        while(eol < len && data[eol] != '\n') {
+          ++eol;
+        }
+        parseLine(pos, eol);
+        pos = eol + 1;
+      }
+      data = null; // Release the buffer.
+      unique.clear();
+      return this;
+    }
+
+    /**
+     * Parse a single line.
+     *
+     * @param s Start
+     * @param e End (exclusive)
+     */
+    private void parseLine(int s, int e) {
+      final byte[] b = data;
+      // Remove carriage returns, as the line reader does.
+      for(int i = s; i < e; i++) {
+        if(b[i] == '\r') {
+          int j = i;
+          for(; i < e; i++) {
+            if(b[i] != '\r') {
+              b[j++] = b[i];
+            }
+          }
+          e = j;
+          break;
+        }
+      }
+      if(s >= e) {
+        return; // Skip empty lines.
+      }
+      if(bytesep && bytecomment) {
+        if(!isComment(b, s, e)) {
+          parseBytes(b, s, e);
+        }
+        return;
+      }
+      String line = new String(b, s, e - s, UTF8);
+      if(bytecomment ? isComment(b, s, e) : comment.reset(line).matches()) {
+        return;
+      }
+      if(bytesep) {
+        parseBytes(b, s, e);
+        return;
+      }
+      int i = 0;
+      for(tokenizer.initialize(line, 0, line.length()); tokenizer.valid(); tokenizer.advance(), i++) {
+        if(!isLabelColumn(i) && !tokenizer.isQuoted()) {
+          try {
+            attributes.add(tokenizer.getDouble());
+            continue;
+          }
+          catch(NumberFormatException ex) {
+            // Ignore attempt, add to labels below.
+          }
+        }
+        addLabel(tokenizer.getSubstring());
+      }
+      finishRow();
+    }
+
+    /**
+     * Parse a line, tokenized on the byte level.
+     *
+     * @param b Buffer
+     * @param s Start
+     * @param e End (exclusive)
+     */
+    private void parseBytes(byte[] b, int s, int e) {
+      int i = 0;
+      for(initialize(b, s, e); start < send; advance(b), i++) {
+        if(!isLabelColumn(i) && !quoted) {
+          try {
+            attributes.add(ParseUtil.parseDouble(b, start, end));
+            continue;
+          }
+          catch(NumberFormatException ex) {
+            // Ignore attempt, add to labels below.
+          }
+        }
+        if(start < end) {
+          addLabel(new String(b, start, end - start, UTF8));
+        }
+      }
+      finishRow();
+    }
+
+    /**
+     * Add a label to the current row.
+     *
+     * @param lbl Label
+     */
+    private void addLabel(String lbl) {
+      if(lbl.length() > 0) {
+        labels.add(unique.addOrGet(lbl));
+      }
+    }
+
+    /**
+     * Store the current row.
+     */
+    private void finishRow() {
+      vecs.add(attributes.size > 0 ? factory.newNumberVector(attributes, attributes) : null);
+      lbls.add(LabelList.make(labels));
+      attributes.clear();
+      labels.clear();
+    }
+
+    /**
+     * Test for the default comment pattern, {@code ^\s*(#|//|;).*$}.
+     *
+     * @param b Buffer
+     * @param s Start
+     * @param e End (exclusive)
+     * @return {@code true} for comment lines
+     */
+    private boolean isComment(byte[] b, int s, int e) {
+      if(format.comment == null) {
+        return false;
+      }
+      while(s < e && isWhitespace(b[s])) {
+        ++s;
+      }
+      if(s == e) {
+        return false;
+      }
+      final byte c = b[s];
+      return c == '#' || c == ';' || (c == '/' && s + 1 < e && b[s + 1] == '/');
+    }
+
+    /**
+     * Start tokenizing a line.
+     *
+     * @param b Buffer
+     * @param s Start
+     * @param e End (exclusive)
+     */
+    private void initialize(byte[] b, int s, int e) {
+      this.send = e;
+      this.index = s;
+      this.mpos = s;
+      advance(b);
+    }
+
+    /**
+     * Advance to the next token, with the same semantics as
+     * {@link Tokenizer#advance()}.
+     *
+     * @param b Buffer
+     */
+    private void advance(byte[] b) {
+      final byte inquote = isQuote(b, index);
+      int mstart;
+      while((mstart = findSeparator(b)) >= 0) {
+        // Quoted code path vs. regular code path
+        if(inquote != 0) {
+          // Matching closing quote found?
+          if(mstart > index + 1 && b[mstart - 1] == inquote) {
+            this.start = index + 1;
+            this.end = mstart - 1;
+            this.index = mend;
+            this.quoted = true;
+            return;
+          }
+          continue;
+        }
+        this.start = index;
+        this.end = mstart;
+        this.index = mend;
+        this.quoted = false;
+        return;
+      }
+      // Add tail after last separator.
+      this.start = index;
+      this.end = send;
+      this.index = end + 1;
+      this.quoted = false;
+      if(inquote != 0) {
+        if(b[send - 1] == inquote) {
+          ++this.start;
+          --this.end;
+          this.quoted = true;
+        }
+        else {
+          LOG.warning("Invalid quoted line in input: no closing quote found.");
+        }
+      }
+    }
+
+    /**
+     * Find the next match of the default separator,
+     * {@code \s*[,;\s]\s*}, starting at {@link #mpos}.
+     *
+     * @param b Buffer
+     * @return Start of separator, or -1; {@link #mend} is set to its end.
+     */
+    private int findSeparator(byte[] b) {
+      for(int i = mpos; i < send; i++) {
+        final byte c = b[i];
+        final boolean ws = isWhitespace(c);
+        if(ws || c == ',' || c == ';') {
+          int j = i + 1;
+          if(ws) {
+            while(j < send && isWhitespace(b[j])) {
+              ++j;
+            }
+            if(j < send && (b[j] == ',' || b[j] == ';')) {
+              ++j;
+            }
+          }
+          while(j < send && isWhitespace(b[j])) {
+            ++j;
+          }
+          mpos = mend = j;
+          return i;
+        }
+      }
+      mpos = send;
+      return -1;
+    }
+
+    /**
+     * Test for a quote character.
+     *
+     * @param b Buffer
+     * @param i Position
+     * @return Quote character, or 0
+     */
+    private byte isQuote(byte[] b, int i) {
+      if(i >= send) {
+        return 0;
+      }
+      final byte c = b[i];
+      for(int j = 0; j < quotes.length; j++) {
+        if(c == quotes[j]) {
+          return c;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /**
+   * Test for whitespace, as in the regular expression class {@code \s}.
+   *
+   * @param c Byte
+   * @return {@code true} for whitespace
+   */
+  private static boolean isWhitespace(byte c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer<V extends NumberVector> extends AbstractParameterizer {
+    /**
+     * Reader format.
+     */
+    protected CSVReaderFormat format;
+
+    /**
+     * Keeps the indices of the attributes to be treated as a string label.
+     */
+    protected long[] labelIndices;
+
+    /**
+     * Factory object.
+     */
+    protected NumberVector.Factory<V> factory;
+
+    @Override
+    protected void makeOptions(Parameterization config) {
+      super.makeOptions(config);
+      format = ClassGenericsUtil.parameterizeOrAbort(CSVReaderFormat.class, config);
+      IntListParameter labelIndicesP = new IntListParameter(NumberVectorLabelParser.Parameterizer.LABEL_INDICES_ID, true);
+      if(config.grab(labelIndicesP)) {
+        labelIndices = labelIndicesP.getValueAsBitSet();
+      }
+      ObjectParameter<NumberVector.Factory<V>> factoryP = new ObjectParameter<>(NumberVectorLabelParser.Parameterizer.VECTOR_TYPE_ID, NumberVector.Factory.class, DoubleVector.Factory.class);
+      if(config.grab(factoryP)) {
+        factory = factoryP.instantiateClass(config);
+      }
+    }
+
+    @Override
+    protected ParallelNumberVectorLabelParser<V> makeInstance() {
+      return new ParallelNumberVectorLabelParser<>(format, labelIndices, factory);
+    }
+  }
+}
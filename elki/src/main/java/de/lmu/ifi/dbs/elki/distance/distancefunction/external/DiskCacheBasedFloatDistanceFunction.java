@@ -86,17 +86,12 @@ public class DiskCacheBasedFloatDistanceFunction extends AbstractDBIDRangeDistan
 
   @Override
   public double distance(int i1, int i2) {
-    // the smaller id is the first key
-    if(i1 > i2) {
-      return distance(i2, i1);
-    }
-
-    try {
-      return cache.getRecordBuffer(i1, i2).getFloat();
-    }
-    catch(IOException e) {
-      throw new RuntimeException("Read error when loading distance " + i1 + "," + i2 + " from cache file.", e);
+    final int size = cache.getMatrixSize();
+    if(i1 >= size || i2 >= size) {
+      throw new ArrayIndexOutOfBoundsException("Distance " + i1 + "," + i2 + " is not in the cache file.");
     }
+    // Offset arithmetic on the memory mapped file, without locking.
+    return cache.getFloat(i1, i2);
   }
 
   @Override
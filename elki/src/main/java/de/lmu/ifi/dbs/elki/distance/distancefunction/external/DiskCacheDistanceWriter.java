@@ -0,0 +1,190 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.external;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import de.lmu.ifi.dbs.elki.persistent.OnDiskUpperTriangleMatrix;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Distance cache writer that stores the distances in a binary, memory mapped
+ * triangular matrix file, as read by {@link DiskCacheBasedDoubleDistanceFunction}
+ * and {@link DiskCacheBasedFloatDistanceFunction}.
+ *
+ * The matrix grows as needed; the ids are expected to start at 0. Missing
+ * distances are stored as NaN until written, so NaN values cannot be told
+ * apart from missing values by {@link #containsKey}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.composedOf OnDiskUpperTriangleMatrix
+ */
+public class DiskCacheDistanceWriter implements DistanceCacheWriter, AutoCloseable {
+  /**
+   * Initial matrix size.
+   */
+  private static final int INITIAL_SIZE = 64;
+
+  /**
+   * Use single precision.
+   */
+  private final boolean singlePrecision;
+
+  /**
+   * Output matrix.
+   */
+  private OnDiskUpperTriangleMatrix matrix;
+
+  /**
+   * Allocated matrix size.
+   */
+  private int capacity;
+
+  /**
+   * Number of objects written, i.e. the largest id plus one.
+   */
+  private int size = 0;
+
+  /**
+   * Constructor.
+   *
+   * @param file Output file
+   * @param singlePrecision Store distances as float instead of double
+   * @throws IOException on errors creating the file
+   */
+  public DiskCacheDistanceWriter(File file, boolean singlePrecision) throws IOException {
+    super();
+    this.singlePrecision = singlePrecision;
+    this.capacity = INITIAL_SIZE;
+    if(singlePrecision) {
+      matrix = new OnDiskUpperTriangleMatrix(file, DiskCacheBasedFloatDistanceFunction.FLOAT_CACHE_MAGIC, 0, ByteArrayUtil.SIZE_FLOAT, capacity);
+    }
+    else {
+      matrix = new OnDiskUpperTriangleMatrix(file, DiskCacheBasedDoubleDistanceFunction.DOUBLE_CACHE_MAGIC, 0, ByteArrayUtil.SIZE_DOUBLE, capacity);
+    }
+    initialize(0, capacity);
+  }
+
+  @Override
+  public void put(int id1, int id2, double distance) {
+    if(id1 < 0 || id2 < 0) {
+      throw new IllegalArgumentException("Negative ids are not supported: " + id1 + "," + id2);
+    }
+    ensureSize((id1 > id2 ? id1 : id2) + 1);
+    if(singlePrecision) {
+      matrix.putFloat(id1, id2, (float) distance);
+    }
+    else {
+      matrix.putDouble(id1, id2, distance);
+    }
+  }
+
+  @Override
+  public boolean containsKey(int id1, int id2) {
+    if(id1 < 0 || id2 < 0 || id1 >= size || id2 >= size) {
+      return false;
+    }
+    return !Double.isNaN(singlePrecision ? matrix.getFloat(id1, id2) : matrix.getDouble(id1, id2));
+  }
+
+  /**
+   * Grow the matrix, if necessary.
+   *
+   * @param newsize Required size
+   */
+  private void ensureSize(int newsize) {
+    if(newsize > capacity) {
+      final int newcapacity = Math.max(newsize, capacity + (capacity >>> 1));
+      try {
+        matrix.resizeMatrix(newcapacity);
+      }
+      catch(IOException e) {
+        throw new AbortException("Error resizing the distance matrix file.", e);
+      }
+      initialize(capacity, newcapacity);
+      capacity = newcapacity;
+    }
+    size = newsize > size ? newsize : size;
+  }
+
+  /**
+   * Initialize new rows of the matrix: NaN for missing values, 0 on the
+   * diagonal.
+   *
+   * @param start First row
+   * @param end End row (exclusive)
+   */
+  private void initialize(int start, int end) {
+    for(int x = start; x < end; x++) {
+      for(int y = 0; y < x; y++) {
+        if(singlePrecision) {
+          matrix.putFloat(x, y, Float.NaN);
+        }
+        else {
+          matrix.putDouble(x, y, Double.NaN);
+        }
+      }
+      if(singlePrecision) {
+        matrix.putFloat(x, x, 0.f);
+      }
+      else {
+        matrix.putDouble(x, x, 0.);
+      }
+    }
+  }
+
+  /**
+   * Get the number of objects written.
+   *
+   * @return Matrix size
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Truncate the matrix to the objects written, and close the file.
+   *
+   * @throws IOException on IO errors
+   */
+  @Override
+  public void close() throws IOException {
+    if(matrix == null) {
+      return;
+    }
+    try {
+      if(size > 0 && size != capacity) {
+        matrix.resizeMatrix(size);
+      }
+    }
+    finally {
+      matrix.close();
+      matrix = null;
+    }
+  }
+}
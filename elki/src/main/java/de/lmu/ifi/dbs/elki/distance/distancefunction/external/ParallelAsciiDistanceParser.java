@@ -0,0 +1,489 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.external;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.IndefiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Description;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Title;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ParseUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
+
+/**
+ * Multi-threaded parser for distance files with one distance value per line,
+ * in the format of {@link AsciiDistanceParser}: {@code id1 id2 distanceValue}.
+ *
+ * The input is read in large blocks of bytes, which are cut at line boundaries
+ * and parsed concurrently, directly from the raw bytes. The parsed blocks are
+ * passed to the cache writer in input order, so the writer does not need to
+ * be thread safe.
+ *
+ * Values must be separated by whitespace, comma or semicolon, and lines
+ * starting with {@code #}, {@code //} or {@code ;} are ignored, as with the
+ * default {@link de.lmu.ifi.dbs.elki.datasource.parser.CSVReaderFormat}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.uses DistanceCacheWriter
+ */
+@Title("Parallel Number Distance Parser")
+@Description("Multi-threaded parser for the following line format:\n" //
++ "id1 id2 distanceValue, where id1 and is2 are integers starting at 0 representing the two ids belonging to the distance value.\n" //
++ "The ids and the distance value are separated by whitespace, comma or semicolon. Empty lines and comment lines will be ignored.")
+public class ParallelAsciiDistanceParser implements DistanceParser {
+  /**
+   * The logger for this class.
+   */
+  private static final Logging LOG = Logging.getLogger(ParallelAsciiDistanceParser.class);
+
+  /**
+   * Default block size: 4 MB.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 22;
+
+  /**
+   * Block size to read.
+   */
+  private int blocksize;
+
+  /**
+   * Constructor.
+   */
+  public ParallelAsciiDistanceParser() {
+    this(DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param blocksize Block size to read and parse at once
+   */
+  public ParallelAsciiDistanceParser(int blocksize) {
+    super();
+    this.blocksize = blocksize > 0 ? blocksize : DEFAULT_BLOCK_SIZE;
+  }
+
+  @Override
+  public void parse(InputStream in, DistanceCacheWriter cache) {
+    IndefiniteProgress prog = LOG.isVerbose() ? new IndefiniteProgress("Parsing distance matrix", LOG) : null;
+    Writer writer = new Writer(cache, prog);
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      // Limit the number of pending blocks, to bound memory usage.
+      final int maxpending = core.getParallelism() << 1;
+      ArrayDeque<Future<BlockParser>> pending = new ArrayDeque<>();
+      byte[] buf = new byte[blocksize];
+      int fill = 0;
+      while(true) {
+        boolean eof = false;
+        while(fill < buf.length) {
+          final int r = in.read(buf, fill, buf.length - fill);
+          if(r < 0) {
+            eof = true;
+            break;
+          }
+          fill += r;
+        }
+        // Cut after the last complete line.
+        int cut = fill;
+        if(!eof) {
+          while(cut > 0 && buf[cut - 1] != '\n') {
+            --cut;
+          }
+          if(cut == 0) { // Line longer than the buffer.
+            buf = Arrays.copyOf(buf, buf.length << 1);
+            continue;
+          }
+        }
+        if(cut > 0) {
+          pending.add(core.submit(new BlockParser(buf, cut)));
+        }
+        if(eof) {
+          break;
+        }
+        final int rest = fill - cut;
+        byte[] next = new byte[Math.max(blocksize, rest << 1)];
+        System.arraycopy(buf, cut, next, 0, rest);
+        buf = next;
+        fill = rest;
+        while(pending.size() > maxpending) {
+          writer.write(pending.removeFirst().get());
+        }
+      }
+      while(!pending.isEmpty()) {
+        writer.write(pending.removeFirst().get());
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("Error while reading the input.", e);
+    }
+    catch(ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new AbortException("Parsing failed.", e.getCause());
+    }
+    catch(InterruptedException e) {
+      throw new AbortException("Parsing interrupted.", e);
+    }
+    finally {
+      core.disconnect();
+    }
+    LOG.setCompleted(prog);
+
+    // check if all distance values are specified
+    for(int i1 = writer.min; i1 <= writer.max; i1++) {
+      for(int i2 = i1 + 1; i2 <= writer.max; i2++) {
+        if(!cache.containsKey(i1, i2)) {
+          throw new IllegalArgumentException("Distance value for " + i1 + " to " + i2 + " is missing!");
+        }
+      }
+    }
+  }
+
+  /**
+   * Pass parsed blocks to the cache, in input order.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class Writer {
+    /**
+     * Cache to write to.
+     */
+    private DistanceCacheWriter cache;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private IndefiniteProgress prog;
+
+    /**
+     * Lines processed so far.
+     */
+    private int lines = 0;
+
+    /**
+     * Minimum and maximum ids seen.
+     */
+    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+
+    /**
+     * Constructor.
+     *
+     * @param cache Cache to write to
+     * @param prog Progress, may be {@code null}
+     */
+    Writer(DistanceCacheWriter cache, IndefiniteProgress prog) {
+      this.cache = cache;
+      this.prog = prog;
+    }
+
+    /**
+     * Write a parsed block.
+     *
+     * @param block Block
+     */
+    void write(BlockParser block) {
+      if(block.error != null) {
+        throw new IllegalArgumentException("Error in line " + (lines + block.errorline) + ": " + block.error);
+      }
+      final int[] id1 = block.id1, id2 = block.id2;
+      final double[] dist = block.dist;
+      for(int i = 0; i < block.size; i++) {
+        final int a = id1[i], b = id2[i];
+        if(a < b) {
+          min = (a < min) ? a : min;
+          max = (b > max) ? b : max;
+        }
+        else {
+          min = (b < min) ? b : min;
+          max = (a > max) ? a : max;
+        }
+        cache.put(a, b, dist[i]);
+      }
+      lines += block.lines;
+      LOG.incrementProcessed(prog, block.lines);
+    }
+  }
+
+  /**
+   * Parse a single block of input.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class BlockParser implements Callable<BlockParser> {
+    /**
+     * Input data.
+     */
+    private byte[] data;
+
+    /**
+     * Length of valid data.
+     */
+    private int len;
+
+    /**
+     * Parsed values.
+     */
+    int[] id1, id2;
+
+    /**
+     * Parsed distances.
+     */
+    double[] dist;
+
+    /**
+     * Number of parsed values, and number of lines.
+     */
+    int size = 0, lines = 0;
+
+    /**
+     * First error message, or {@code null}.
+     */
+    String error;
+
+    /**
+     * Line of the first error, within this block.
+     */
+    int errorline;
+
+    /**
+     * Current token position.
+     */
+    private int start, end, pos;
+
+    /**
+     * Constructor.
+     *
+     * @param data Input data
+     * @param len Length of valid data
+     */
+    BlockParser(byte[] data, int len) {
+      this.data = data;
+      this.len = len;
+    }
+
+    @Override
+    public BlockParser call() {
+      // Typical lines have at least 6 bytes.
+      final int initial = Math.max(16, len / 16);
+      id1 = new int[initial];
+      id2 = new int[initial];
+      dist = new double[initial];
+      int s = 0;
+      while(s < len && error == null) {
+        int e = s;
+        while(e < len && data[e] != '\n') {
+          ++e;
+        }
+        ++lines;
+        parseLine(s, e);
+        s = e + 1;
+      }
+      data = null; // Allow garbage collection.
+      return this;
+    }
+
+    /**
+     * Parse a single line.
+     *
+     * @param s Start
+     * @param e End (exclusive)
+     */
+    private void parseLine(int s, int e) {
+      final byte[] b = data;
+      while(s < e && isWhitespace(b[s])) {
+        ++s;
+      }
+      while(e > s && isWhitespace(b[e - 1])) {
+        --e;
+      }
+      // Skip empty lines and comments.
+      if(s == e || b[s] == '#' || b[s] == ';' || (b[s] == '/' && s + 1 < e && b[s + 1] == '/')) {
+        return;
+      }
+      this.pos = s;
+      if(size == id1.length) {
+        final int newsize = size + (size >>> 1);
+        id1 = Arrays.copyOf(id1, newsize);
+        id2 = Arrays.copyOf(id2, newsize);
+        dist = Arrays.copyOf(dist, newsize);
+      }
+      if(!nextToken(e)) {
+        fail("Less than three values in line.");
+        return;
+      }
+      try {
+        id1[size] = parseInt(b, start, end);
+      }
+      catch(NumberFormatException ex) {
+        fail("id1 is not an integer!");
+        return;
+      }
+      if(!nextToken(e)) {
+        fail("Less than three values in line.");
+        return;
+      }
+      try {
+        id2[size] = parseInt(b, start, end);
+      }
+      catch(NumberFormatException ex) {
+        fail("id2 is not an integer!");
+        return;
+      }
+      if(!nextToken(e)) {
+        fail("Less than three values in line.");
+        return;
+      }
+      try {
+        dist[size] = ParseUtil.parseDouble(b, start, end);
+      }
+      catch(NumberFormatException ex) {
+        fail(ex.getMessage());
+        return;
+      }
+      if(nextToken(e)) {
+        fail("More than three values in line.");
+        return;
+      }
+      ++size;
+    }
+
+    /**
+     * Find the next token, using the separator {@code \s*[,;\s]\s*}.
+     *
+     * @param e End of line
+     * @return {@code true} if a token was found
+     */
+    private boolean nextToken(int e) {
+      final byte[] b = data;
+      if(pos >= e) {
+        return false;
+      }
+      start = pos;
+      int i = pos;
+      while(i < e && !isWhitespace(b[i]) && b[i] != ',' && b[i] != ';') {
+        ++i;
+      }
+      end = i;
+      // Skip the separator:
+      while(i < e && isWhitespace(b[i])) {
+        ++i;
+      }
+      if(i < e && (b[i] == ',' || b[i] == ';')) {
+        ++i;
+      }
+      while(i < e && isWhitespace(b[i])) {
+        ++i;
+      }
+      pos = i;
+      return true;
+    }
+
+    /**
+     * Record an error, and stop parsing.
+     *
+     * @param message Error message
+     */
+    private void fail(String message) {
+      error = message;
+      errorline = lines;
+    }
+  }
+
+  /**
+   * Parse an integer from a byte array.
+   *
+   * @param b Buffer
+   * @param s Start
+   * @param e End (exclusive)
+   * @return Parsed value
+   * @throws NumberFormatException on invalid input
+   */
+  private static int parseInt(byte[] b, int s, int e) {
+    if(s < e && b[s] == '+') {
+      ++s;
+    }
+    final boolean neg = s < e && b[s] == '-';
+    if(neg) {
+      ++s;
+    }
+    if(s >= e || e - s > 10) {
+      throw new NumberFormatException("Not an integer.");
+    }
+    long v = 0;
+    for(int i = s; i < e; i++) {
+      final int d = b[i] - '0';
+      if(d < 0 || d > 9) {
+        throw new NumberFormatException("Not an integer.");
+      }
+      v = v * 10 + d;
+    }
+    v = neg ? -v : v;
+    if(v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+      throw new NumberFormatException("Integer out of range.");
+    }
+    return (int) v;
+  }
+
+  /**
+   * Test for whitespace, as in the regular expression class {@code \s}.
+   *
+   * @param c Byte
+   * @return {@code true} for whitespace
+   */
+  private static boolean isWhitespace(byte c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+  }
+
+  /**
+   * Parameterization class.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static class Parameterizer extends AbstractParameterizer {
+    @Override
+    protected ParallelAsciiDistanceParser makeInstance() {
+      return new ParallelAsciiDistanceParser();
+    }
+  }
+}
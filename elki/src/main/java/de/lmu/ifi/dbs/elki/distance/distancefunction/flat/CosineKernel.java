@@ -0,0 +1,85 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.flat;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Cosine distance kernel on flat arrays, computing {@code 1 - cos(x,y)} as
+ * {@link de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction}
+ * does.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class CosineKernel extends FlatVectorKernel {
+  /**
+   * Static instance.
+   */
+  public static final CosineKernel STATIC = new CosineKernel();
+
+  /**
+   * Constructor, use {@link #STATIC} instead.
+   */
+  protected CosineKernel() {
+    super();
+  }
+
+  @Override
+  public double rawDistance(double[] q, double[] data, int off, int dim) {
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int d = 0; d < dim; d++) {
+      final double r1 = q[d], r2 = data[off + d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return cosineDistance(cross, l1, l2);
+  }
+
+  @Override
+  public double rawDistance(double[] q, float[] data, int off, int dim) {
+    double cross = 0, l1 = 0, l2 = 0;
+    for(int d = 0; d < dim; d++) {
+      final double r1 = q[d], r2 = data[off + d];
+      cross += r1 * r2;
+      l1 += r1 * r1;
+      l2 += r2 * r2;
+    }
+    return cosineDistance(cross, l1, l2);
+  }
+
+  /**
+   * Compute the cosine distance from the aggregates.
+   * 
+   * @param cross Scalar product
+   * @param l1 Squared length of first vector
+   * @param l2 Squared length of second vector
+   * @return Cosine distance
+   */
+  private static double cosineDistance(double cross, double l1, double l2) {
+    final double a = (cross == 0.) ? 0. : //
+        (l1 == 0. || l2 == 0.) ? 1. : //
+            Math.sqrt((cross / l1) * (cross / l2));
+    return (a < 1.) ? 1. - a : 0.;
+  }
+}
@@ -0,0 +1,63 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.flat;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+
+/**
+ * Euclidean distance kernel on flat arrays. The raw distance is the squared
+ * Euclidean distance.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class EuclideanKernel extends SquaredEuclideanKernel {
+  /**
+   * Static instance.
+   */
+  public static final EuclideanKernel STATIC = new EuclideanKernel();
+
+  /**
+   * Constructor, use {@link #STATIC} instead.
+   */
+  protected EuclideanKernel() {
+    super();
+  }
+
+  @Override
+  public double toDistance(double raw) {
+    return Math.sqrt(raw);
+  }
+
+  @Override
+  public double toRaw(double distance) {
+    return distance * distance;
+  }
+
+  @Override
+  public KNNList toKNNList(KNNHeap heap) {
+    return heap.toKNNListSqrt();
+  }
+}
@@ -0,0 +1,130 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.flat;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.CosineDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.DistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.LPNormDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.MaximumDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.SquaredEuclideanDistanceFunction;
+
+/**
+ * Distance kernel on flat, row-major arrays of vectors.
+ * 
+ * Kernels compute a <em>raw</em> distance, which must be monotone in the
+ * actual distance (e.g. the sum of powers for Minkowski norms, skipping the
+ * final root). This allows linear scans to postpone the expensive root to the
+ * final results.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public abstract class FlatVectorKernel {
+  /**
+   * Compute the raw distance of a query vector to a row of a double array.
+   * 
+   * @param q Query vector
+   * @param data Data array
+   * @param off Offset of the row in the data array
+   * @param dim Dimensionality
+   * @return Raw distance
+   */
+  public abstract double rawDistance(double[] q, double[] data, int off, int dim);
+
+  /**
+   * Compute the raw distance of a query vector to a row of a float array.
+   * 
+   * @param q Query vector
+   * @param data Data array
+   * @param off Offset of the row in the data array
+   * @param dim Dimensionality
+   * @return Raw distance
+   */
+  public abstract double rawDistance(double[] q, float[] data, int off, int dim);
+
+  /**
+   * Convert a raw distance into the actual distance.
+   * 
+   * @param raw Raw distance
+   * @return Distance
+   */
+  public double toDistance(double raw) {
+    return raw;
+  }
+
+  /**
+   * Convert a distance into a raw distance (inverse of
+   * {@link #toDistance(double)}).
+   * 
+   * @param distance Distance
+   * @return Raw distance
+   */
+  public double toRaw(double distance) {
+    return distance;
+  }
+
+  /**
+   * Convert a heap of raw distances into a kNN list of actual distances.
+   * 
+   * @param heap Heap containing raw distances
+   * @return kNN list
+   */
+  public KNNList toKNNList(KNNHeap heap) {
+    return heap.toKNNList();
+  }
+
+  /**
+   * Get the kernel for a distance function, if available.
+   * 
+   * @param df Distance function
+   * @return Kernel, or {@code null} if the distance function is not supported.
+   */
+  public static FlatVectorKernel get(DistanceFunction<?> df) {
+    // Only exact classes, subclasses may change semantics.
+    final Class<?> c = df != null ? df.getClass() : null;
+    if(c == SquaredEuclideanDistanceFunction.class) {
+      return SquaredEuclideanKernel.STATIC;
+    }
+    if(c == EuclideanDistanceFunction.class) {
+      return EuclideanKernel.STATIC;
+    }
+    if(c == ManhattanDistanceFunction.class) {
+      return ManhattanKernel.STATIC;
+    }
+    if(c == MaximumDistanceFunction.class) {
+      return MaximumKernel.STATIC;
+    }
+    if(c == CosineDistanceFunction.class) {
+      return CosineKernel.STATIC;
+    }
+    if(c == LPNormDistanceFunction.class) {
+      return new LPNormKernel(((LPNormDistanceFunction) df).getP());
+    }
+    return null;
+  }
+}
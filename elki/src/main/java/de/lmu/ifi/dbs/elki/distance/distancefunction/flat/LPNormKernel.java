@@ -0,0 +1,96 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.flat;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+
+/**
+ * Minkowski (L_p norm) distance kernel on flat arrays, for arbitrary p. The raw
+ * distance is the sum of the p-th powers.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class LPNormKernel extends FlatVectorKernel {
+  /**
+   * Exponent, and its inverse.
+   */
+  private final double p, invp;
+
+  /**
+   * Constructor.
+   * 
+   * @param p Exponent
+   */
+  public LPNormKernel(double p) {
+    super();
+    this.p = p;
+    this.invp = 1. / p;
+  }
+
+  @Override
+  public double rawDistance(double[] q, double[] data, int off, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = q[d], yd = data[off + d];
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      agg += Math.pow(delta, p);
+    }
+    return agg;
+  }
+
+  @Override
+  public double rawDistance(double[] q, float[] data, int off, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = q[d], yd = data[off + d];
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      agg += Math.pow(delta, p);
+    }
+    return agg;
+  }
+
+  @Override
+  public double toDistance(double raw) {
+    return Math.pow(raw, invp);
+  }
+
+  @Override
+  public double toRaw(double distance) {
+    return Math.pow(distance, p);
+  }
+
+  @Override
+  public KNNList toKNNList(KNNHeap heap) {
+    KNNList raw = heap.toKNNList();
+    KNNHeap res = DBIDUtil.newHeap(heap.getK());
+    for(DoubleDBIDListIter it = raw.iter(); it.valid(); it.advance()) {
+      res.insert(toDistance(it.doubleValue()), it);
+    }
+    return res.toKNNList();
+  }
+}
@@ -0,0 +1,66 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.flat;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Maximum distance kernel on flat arrays.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class MaximumKernel extends FlatVectorKernel {
+  /**
+   * Static instance.
+   */
+  public static final MaximumKernel STATIC = new MaximumKernel();
+
+  /**
+   * Constructor, use {@link #STATIC} instead.
+   */
+  protected MaximumKernel() {
+    super();
+  }
+
+  @Override
+  public double rawDistance(double[] q, double[] data, int off, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = q[d], yd = data[off + d];
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      agg = (delta < agg) ? agg : delta;
+    }
+    return agg;
+  }
+
+  @Override
+  public double rawDistance(double[] q, float[] data, int off, int dim) {
+    double agg = 0.;
+    for(int d = 0; d < dim; d++) {
+      final double xd = q[d], yd = data[off + d];
+      final double delta = (xd >= yd) ? xd - yd : yd - xd;
+      agg = (delta < agg) ? agg : delta;
+    }
+    return agg;
+  }
+}
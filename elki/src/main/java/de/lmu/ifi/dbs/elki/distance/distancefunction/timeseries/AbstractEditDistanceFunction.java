@@ -45,6 +45,11 @@ public abstract class AbstractEditDistanceFunction extends AbstractNumberVectorD
    */
   protected double bandSize;
 
+  /**
+   * Per-thread buffers for the dynamic programming rows.
+   */
+  private final ThreadLocalBuffers buffers = new ThreadLocalBuffers();
+
   /**
    * Constructor.
    * 
@@ -73,6 +78,30 @@ public abstract class AbstractEditDistanceFunction extends AbstractNumberVectorD
     return (int) Math.ceil((dim1 >= dim2 ? dim1 : dim2) * bandSize);
   }
 
+  /**
+   * Get the buffer of the current thread, of at least the given size.
+   *
+   * The buffer is reused across calls, so its contents are undefined.
+   *
+   * @param size Minimum size
+   * @return Buffer
+   */
+  protected double[] getBuffer(int size) {
+    return buffers.getDoubleBuffer(size);
+  }
+
+  /**
+   * Get the integer buffer of the current thread, of at least the given size.
+   *
+   * The buffer is reused across calls, so its contents are undefined.
+   *
+   * @param size Minimum size
+   * @return Buffer
+   */
+  protected int[] getIntBuffer(int size) {
+    return buffers.getIntBuffer(size);
+  }
+
   @Override
   public VectorTypeInformation<? super NumberVector> getInputTypeRestriction() {
     return TypeUtil.NUMBER_VECTOR_VARIABLE_LENGTH;
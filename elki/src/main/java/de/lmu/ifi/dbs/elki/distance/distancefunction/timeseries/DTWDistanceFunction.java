@@ -71,6 +71,23 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
 
   @Override
   public double distance(NumberVector v1, NumberVector v2) {
+    // TODO: support Euclidean, Manhattan here:
+    return Math.sqrt(squaredDistance(v1, v2, Double.POSITIVE_INFINITY));
+  }
+
+  /**
+   * Compute the squared DTW distance, with early abandoning: as soon as all
+   * cells of a row exceed the limit, infinity is returned.
+   *
+   * Note: this is the plain DTW recurrence, it is not used by subclasses that
+   * override {@link #distance}.
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @param limit Squared distance limit
+   * @return Squared distance, or infinity if it exceeds the limit
+   */
+  public double squaredDistance(NumberVector v1, NumberVector v2, double limit) {
     // Dimensionality, and last valid value in second vector:
     final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
     final int m2 = dim2 - 1;
@@ -82,11 +99,15 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
       return Double.POSITIVE_INFINITY;
     }
     // Current and previous columns of the matrix
-    double[] buf = new double[dim2 << 1];
-    Arrays.fill(buf, Double.POSITIVE_INFINITY);
+    double[] buf = getBuffer(dim2 << 1);
+    Arrays.fill(buf, 0, dim2 << 1, Double.POSITIVE_INFINITY);
 
     // Fill first row:
     firstRow(buf, band, v1, v2, dim2);
+    // The first row is increasing, every path includes its first cell.
+    if(buf[0] > limit) {
+      return Double.POSITIVE_INFINITY;
+    }
 
     // Active buffer offsets (cur = read, nxt = write)
     int cur = 0, nxt = dim2;
@@ -94,6 +115,7 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
     int i = 1, l = 0, r = Math.min(m2, i + band);
     while(i < dim1) {
       final double val1 = v1.doubleValue(i);
+      double rowmin = Double.POSITIVE_INFINITY;
       for(int j = l; j <= r; j++) {
         // Value in previous row (must exist, may be infinite):
         double min = buf[cur + j];
@@ -108,7 +130,12 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
           }
         }
         // Write:
-        buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        final double v = buf[nxt + j] = min + delta(val1, v2.doubleValue(j));
+        rowmin = (v < rowmin) ? v : rowmin;
+      }
+      // Every warping path passes through this row, costs are non-negative.
+      if(rowmin > limit) {
+        return Double.POSITIVE_INFINITY;
       }
       // Swap buffer positions:
       cur = dim2 - cur;
@@ -122,9 +149,133 @@ public class DTWDistanceFunction extends AbstractEditDistanceFunction {
         ++r;
       }
     }
+    return buf[cur + dim2 - 1];
+  }
 
-    // TODO: support Euclidean, Manhattan here:
-    return Math.sqrt(buf[cur + dim2 - 1]);
+  /**
+   * Squared LB_Kim lower bound: every warping path includes the first and the
+   * last cell.
+   *
+   * Reference:
+   * <p>
+   * S.-W. Kim, S. Park, W. W. Chu<br />
+   * An index-based approach for similarity search supporting time warping in
+   * large sequence databases<br />
+   * Proc. 17th International Conference on Data Engineering (ICDE 2001)
+   * </p>
+   *
+   * @param v1 First vector
+   * @param v2 Second vector
+   * @return Lower bound of the squared distance
+   */
+  @Reference(authors = "S.-W. Kim, S. Park, W. W. Chu", //
+  title = "An index-based approach for similarity search supporting time warping in large sequence databases", //
+  booktitle = "Proc. 17th International Conference on Data Engineering (ICDE 2001)", //
+  url = "http://dx.doi.org/10.1109/ICDE.2001.914875")
+  public double squaredLowerBoundKim(NumberVector v1, NumberVector v2) {
+    final int dim1 = v1.getDimensionality(), dim2 = v2.getDimensionality();
+    if(Math.abs(dim1 - dim2) > effectiveBandSize(dim1, dim2)) {
+      return Double.POSITIVE_INFINITY;
+    }
+    final double first = delta(v1.doubleValue(0), v2.doubleValue(0));
+    // Unless both have length 1, the last cell is a different cell.
+    return (dim1 > 1 || dim2 > 1) ? first + delta(v1.doubleValue(dim1 - 1), v2.doubleValue(dim2 - 1)) : first;
+  }
+
+  /**
+   * Compute the LB_Keogh envelope of a (query) vector, for comparison with
+   * vectors of length {@code dim2}.
+   *
+   * Uses the streaming minimum and maximum of Lemire, in linear time.
+   *
+   * @param v1 Vector to compute the envelope of
+   * @param dim2 Length of the vectors to compare with
+   * @param lower Output lower envelope, length at least {@code dim2}
+   * @param upper Output upper envelope, length at least {@code dim2}
+   */
+  public void envelope(NumberVector v1, int dim2, double[] lower, double[] upper) {
+    final int dim1 = v1.getDimensionality();
+    final int band = effectiveBandSize(dim1, dim2);
+    if(Math.abs(dim1 - dim2) > band) {
+      // Unsatisfiable, use a trivial envelope.
+      Arrays.fill(lower, 0, dim2, Double.NEGATIVE_INFINITY);
+      Arrays.fill(upper, 0, dim2, Double.POSITIVE_INFINITY);
+      return;
+    }
+    // Monotone queues of positions, each position is added only once.
+    // The maximum queue uses the first half of the buffer, the minimum queue
+    // the second half.
+    final int[] q = getIntBuffer(dim1 << 1);
+    int maxh = 0, maxt = 0, minh = dim1, mint = dim1;
+    for(int j = 0, next = 0; j < dim2; j++) {
+      // Extend the window to the right:
+      for(final int end = Math.min(dim1 - 1, j + band); next <= end; next++) {
+        final double v = v1.doubleValue(next);
+        while(maxt > maxh && v1.doubleValue(q[maxt - 1]) <= v) {
+          --maxt;
+        }
+        q[maxt++] = next;
+        while(mint > minh && v1.doubleValue(q[mint - 1]) >= v) {
+          --mint;
+        }
+        q[mint++] = next;
+      }
+      // Shrink the window from the left:
+      final int start = j - band;
+      while(q[maxh] < start) {
+        ++maxh;
+      }
+      while(q[minh] < start) {
+        ++minh;
+      }
+      upper[j] = v1.doubleValue(q[maxh]);
+      lower[j] = v1.doubleValue(q[minh]);
+    }
+  }
+
+  /**
+   * Squared LB_Keogh lower bound, with early abandoning.
+   *
+   * Every value of the second vector is aligned with at least one value of the
+   * first vector within the band, i.e. within the envelope.
+   *
+   * Reference:
+   * <p>
+   * E. Keogh, C. A. Ratanamahatana<br />
+   * Exact indexing of dynamic time warping<br />
+   * Knowledge and Information Systems 7(3), 2005
+   * </p>
+   *
+   * @param lower Lower envelope of the first vector, see {@link #envelope}
+   * @param upper Upper envelope of the first vector, see {@link #envelope}
+   * @param v2 Second vector
+   * @param limit Squared distance limit
+   * @return Lower bound of the squared distance, or a value larger than the
+   *         limit.
+   */
+  @Reference(authors = "E. Keogh, C. A. Ratanamahatana", //
+  title = "Exact indexing of dynamic time warping", //
+  booktitle = "Knowledge and Information Systems 7(3)", //
+  url = "http://dx.doi.org/10.1007/s10115-004-0154-9")
+  public double squaredLowerBoundKeogh(double[] lower, double[] upper, NumberVector v2, double limit) {
+    final int dim2 = v2.getDimensionality();
+    double agg = 0.;
+    for(int j = 0; j < dim2; j++) {
+      final double v = v2.doubleValue(j);
+      if(v > upper[j]) {
+        agg += delta(v, upper[j]);
+      }
+      else if(v < lower[j]) {
+        agg += delta(v, lower[j]);
+      }
+      else {
+        continue;
+      }
+      if(agg > limit) {
+        return agg;
+      }
+    }
+    return agg;
   }
 
   /**
@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.util.Arrays;
+
 import de.lmu.ifi.dbs.elki.data.NumberVector;
 import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
 import de.lmu.ifi.dbs.elki.data.type.VectorTypeInformation;
@@ -86,6 +88,11 @@ public class LCSSDistanceFunction extends AbstractNumberVectorDistanceFunction {
    */
   private double pEpsilon;
 
+  /**
+   * Per-thread buffer for the dynamic programming rows.
+   */
+  private final ThreadLocalBuffers buffers = new ThreadLocalBuffers();
+
   /**
    * Constructor.
    * 
@@ -109,33 +116,36 @@ public class LCSSDistanceFunction extends AbstractNumberVectorDistanceFunction {
     // Compute value range, for scaling epsilon:
     final double epsilon = getRange(v1, dim1, v2, dim2) * pEpsilon;
 
-    double[] curr = new double[dim2 + 1];
-    double[] next = new double[dim2 + 1];
+    // Current and next row, in a single reused buffer:
+    final int width = dim2 + 1;
+    double[] buf = buffers.getDoubleBuffer(width << 1);
+    Arrays.fill(buf, 0, width << 1, 0.);
+    // Active buffer offsets (curr = read, next = write)
+    int curr = 0, next = width;
 
     for(int i = 0; i < dim1; i++) {
       final double ai = v1.doubleValue(i);
       for(int j = Math.max(0, i - delta); j <= Math.min(dim2 - 1, i + delta); j++) {
         final double bj = v2.doubleValue(j);
         if((bj + epsilon) >= ai && (bj - epsilon) <= ai) { // match
-          next[j + 1] = curr[j] + 1;
+          buf[next + j + 1] = buf[curr + j] + 1;
         }
-        else if(curr[j + 1] > next[j]) { // ins
-          next[j + 1] = curr[j + 1];
+        else if(buf[curr + j + 1] > buf[next + j]) { // ins
+          buf[next + j + 1] = buf[curr + j + 1];
         }
         else { // del
-          next[j + 1] = next[j];
+          buf[next + j + 1] = buf[next + j];
         }
       }
       // Swap
-      double[] tmp = curr;
-      curr = next;
-      next = tmp;
+      curr = width - curr;
+      next = width - next;
     }
 
     // search for maximum in the last line
-    double maxEntry = curr[1];
-    for(int i = 2; i < dim2 + 1; i++) {
-      maxEntry = (curr[i] > maxEntry) ? curr[i] : maxEntry;
+    double maxEntry = buf[curr + 1];
+    for(int i = 2; i < width; i++) {
+      maxEntry = (buf[curr + i] > maxEntry) ? buf[curr + i] : maxEntry;
     }
     final double sim = maxEntry / Math.min(dim1, dim2);
     return 1. - sim;
@@ -0,0 +1,75 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Per-thread scratch buffers for the time series distances, which are reused
+ * across calls to avoid allocating new arrays for every distance computation.
+ *
+ * The contents of a buffer are undefined when it is returned.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+final class ThreadLocalBuffers {
+  /**
+   * Per-thread buffer of doubles.
+   */
+  private final ThreadLocal<double[]> doubles = new ThreadLocal<>();
+
+  /**
+   * Per-thread buffer of integers.
+   */
+  private final ThreadLocal<int[]> ints = new ThreadLocal<>();
+
+  /**
+   * Get the double buffer of the current thread, of at least the given size.
+   *
+   * @param size Minimum size
+   * @return Buffer
+   */
+  double[] getDoubleBuffer(int size) {
+    double[] buf = doubles.get();
+    if(buf == null || buf.length < size) {
+      buf = new double[size];
+      doubles.set(buf);
+    }
+    return buf;
+  }
+
+  /**
+   * Get the integer buffer of the current thread, of at least the given size.
+   *
+   * @param size Minimum size
+   * @return Buffer
+   */
+  int[] getIntBuffer(int size) {
+    int[] buf = ints.get();
+    if(buf == null || buf.length < size) {
+      buf = new int[size];
+      ints.set(buf);
+    }
+    return buf;
+  }
+}
@@ -0,0 +1,84 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Abstract base class for in-memory distance matrix storage.
+ *
+ * The triangle is stored in segments of {@code 2^27} values, so the number of
+ * entries is not limited by the maximum size of a Java array.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public abstract class AbstractDistanceMatrixStorage implements DistanceMatrixStorage {
+  /**
+   * Bits used for the position within a segment.
+   */
+  protected static final int SEGMENT_SHIFT = 27;
+
+  /**
+   * Mask for the position within a segment.
+   */
+  protected static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+  /**
+   * Number of entries.
+   */
+  protected final long size;
+
+  /**
+   * Constructor.
+   *
+   * @param n Number of objects
+   */
+  public AbstractDistanceMatrixStorage(int n) {
+    super();
+    this.size = DistanceMatrixUtil.triangleSize(n);
+  }
+
+  /**
+   * Number of segments needed.
+   *
+   * @return Number of segments
+   */
+  protected int numSegments() {
+    return (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+  }
+
+  /**
+   * Size of the i'th segment.
+   *
+   * @param i Segment number
+   * @return Segment size
+   */
+  protected int segmentSize(int i) {
+    return (int) Math.min(SEGMENT_MASK + 1, size - (((long) i) << SEGMENT_SHIFT));
+  }
+
+  @Override
+  public long size() {
+    return size;
+  }
+}
@@ -0,0 +1,61 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * Storage of the strict lower triangle of a symmetric distance matrix.
+ *
+ * Implementations may trade precision for memory, and may hold more than 2^31
+ * entries. Concurrent writes to different cells must be supported, to allow
+ * filling the matrix in parallel.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public interface DistanceMatrixStorage {
+  /**
+   * Get a stored distance.
+   *
+   * @param x First offset, must be larger than y
+   * @param y Second offset, must be smaller than x
+   * @return Distance
+   */
+  double get(int x, int y);
+
+  /**
+   * Store a distance.
+   *
+   * @param x First offset, must be larger than y
+   * @param y Second offset, must be smaller than x
+   * @param d Distance
+   */
+  void set(int x, int y, double d);
+
+  /**
+   * Number of distances stored.
+   *
+   * @return Number of stored entries
+   */
+  long size();
+}
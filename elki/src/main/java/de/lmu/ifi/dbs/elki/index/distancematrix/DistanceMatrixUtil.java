@@ -0,0 +1,253 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.RecursiveAction;
+
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Utility functions for lower triangular distance matrixes, shared by the
+ * precomputed distance matrix index and hierarchical clustering.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ * 
+ * @apiviz.uses DistanceMatrixStorage
+ */
+public final class DistanceMatrixUtil {
+  /**
+   * Minimum number of distances computed by a single task when filling the
+   * matrix in parallel.
+   */
+  private static final long MIN_TASK_SIZE = 1 << 14;
+
+  /**
+   * Fake constructor: do not instantiate.
+   */
+  private DistanceMatrixUtil() {
+    // Static methods only.
+  }
+
+  /**
+   * Compute the size of a complete x by x triangle (minus diagonal)
+   *
+   * @param x Offset
+   * @return Size of complete triangle
+   */
+  public static long triangleSize(int x) {
+    return (x * (x - 1L)) >>> 1;
+  }
+
+  /**
+   * Choose a row to split the lower triangle rows [start; end) into two parts
+   * with roughly the same number of cells, for parallel processing.
+   *
+   * @param start First row
+   * @param end Last row (exclusive)
+   * @return Split row, or -1 if the range is too small to split.
+   */
+  public static int splitTriangle(int start, int end) {
+    if(end - start < 2 || triangleSize(end) - triangleSize(start) < MIN_TASK_SIZE) {
+      return -1;
+    }
+    int mid = (int) Math.sqrt(.5 * ((double) start * start + (double) end * end));
+    return Math.max(start + 1, Math.min(end - 1, mid));
+  }
+
+  /**
+   * Fill a distance matrix in parallel, using the {@link ParallelCore}.
+   *
+   * @param matrix Matrix storage
+   * @param dq Distance query
+   * @param ids Object IDs, in matrix order
+   * @param square Flag to store squared distances (e.g. for Ward linkage)
+   * @param prog Progress (rows processed), may be {@code null}
+   * @param log Logger for progress reporting
+   * @param <O> Object type
+   */
+  public static <O> void fill(DistanceMatrixStorage matrix, DistanceQuery<O> dq, ArrayDBIDs ids, boolean square, FiniteProgress prog, Logging log) {
+    ParallelCore core = ParallelCore.getCore();
+    core.connect();
+    try {
+      core.invoke(new FillTask<>(matrix, dq, ids, 0, ids.size(), square, prog, log));
+    }
+    finally {
+      core.disconnect();
+    }
+  }
+
+  /**
+   * Fill a distance matrix stored in a single array, in parallel.
+   *
+   * @param matrix Matrix array, of size {@code triangleSize(ids.size())}
+   * @param dq Distance query
+   * @param ids Object IDs, in matrix order
+   * @param square Flag to store squared distances (e.g. for Ward linkage)
+   * @param <O> Object type
+   */
+  public static <O> void fill(double[] matrix, DistanceQuery<O> dq, ArrayDBIDs ids, boolean square) {
+    assert (matrix.length == triangleSize(ids.size()));
+    fill(new ArrayStorage(matrix), dq, ids, square, null, null);
+  }
+
+  /**
+   * Adapter for a distance matrix stored in a single array.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  private static class ArrayStorage implements DistanceMatrixStorage {
+    /**
+     * Distance matrix.
+     */
+    private final double[] matrix;
+
+    /**
+     * Constructor.
+     *
+     * @param matrix Distance matrix
+     */
+    ArrayStorage(double[] matrix) {
+      this.matrix = matrix;
+    }
+
+    @Override
+    public double get(int x, int y) {
+      return matrix[(int) triangleSize(x) + y];
+    }
+
+    @Override
+    public void set(int x, int y, double d) {
+      matrix[(int) triangleSize(x) + y] = d;
+    }
+
+    @Override
+    public long size() {
+      return matrix.length;
+    }
+  }
+
+  /**
+   * Task to fill the rows [start; end) of a distance matrix, splitting the
+   * range into parts of roughly equal numbers of distances.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   *
+   * @param <O> Object type
+   */
+  private static class FillTask<O> extends RecursiveAction {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Distance matrix.
+     */
+    private DistanceMatrixStorage matrix;
+
+    /**
+     * Distance query
+     */
+    private DistanceQuery<O> dq;
+
+    /**
+     * Object IDs.
+     */
+    private ArrayDBIDs ids;
+
+    /**
+     * Row range.
+     */
+    private int start, end;
+
+    /**
+     * Flag to use squared distances.
+     */
+    private boolean square;
+
+    /**
+     * Progress, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Logger for progress reporting.
+     */
+    private Logging log;
+
+    /**
+     * Constructor.
+     *
+     * @param matrix Distance matrix
+     * @param dq Distance query
+     * @param ids Object IDs
+     * @param start First row
+     * @param end Last row (exclusive)
+     * @param square Flag to use squared distances.
+     * @param prog Progress, may be {@code null}
+     * @param log Logger for progress reporting
+     */
+    FillTask(DistanceMatrixStorage matrix, DistanceQuery<O> dq, ArrayDBIDs ids, int start, int end, boolean square, FiniteProgress prog, Logging log) {
+      this.matrix = matrix;
+      this.dq = dq;
+      this.ids = ids;
+      this.start = start;
+      this.end = end;
+      this.square = square;
+      this.prog = prog;
+      this.log = log;
+    }
+
+    @Override
+    protected void compute() {
+      final int mid = splitTriangle(start, end);
+      if(mid > 0) {
+        invokeAll(new FillTask<>(matrix, dq, ids, start, mid, square, prog, log), //
+            new FillTask<>(matrix, dq, ids, mid, end, square, prog, log));
+        return;
+      }
+      DBIDArrayIter ix = ids.iter(), iy = ids.iter();
+      for(ix.seek(start); ix.getOffset() < end; ix.advance()) {
+        final int x = ix.getOffset();
+        for(iy.seek(0); iy.getOffset() < x; iy.advance()) {
+          final double dist = dq.distance(ix, iy);
+          matrix.set(x, iy.getOffset(), square ? (dist * dist) : dist);
+        }
+      }
+      if(prog != null) {
+        prog.incrementProcessed(end - start, log);
+      }
+    }
+  }
+}
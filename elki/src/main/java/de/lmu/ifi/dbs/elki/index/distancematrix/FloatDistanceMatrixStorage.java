@@ -0,0 +1,63 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * In-memory distance matrix storage with single (float) precision, using half
+ * the memory of {@link DoubleDistanceMatrixStorage}.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class FloatDistanceMatrixStorage extends AbstractDistanceMatrixStorage {
+  /**
+   * Data segments.
+   */
+  private float[][] segments;
+
+  /**
+   * Constructor.
+   *
+   * @param n Number of objects
+   */
+  public FloatDistanceMatrixStorage(int n) {
+    super(n);
+    segments = new float[numSegments()][];
+    for(int i = 0; i < segments.length; i++) {
+      segments[i] = new float[segmentSize(i)];
+    }
+  }
+
+  @Override
+  public double get(int x, int y) {
+    final long pos = DistanceMatrixUtil.triangleSize(x) + y;
+    return segments[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)];
+  }
+
+  @Override
+  public void set(int x, int y, double d) {
+    final long pos = DistanceMatrixUtil.triangleSize(x) + y;
+    segments[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)] = (float) d;
+  }
+}
@@ -0,0 +1,126 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+import de.lmu.ifi.dbs.elki.persistent.OnDiskUpperTriangleMatrix;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
+
+/**
+ * Distance matrix storage in a memory-mapped file, using
+ * {@link OnDiskUpperTriangleMatrix}.
+ *
+ * The operating system will page the matrix in and out of memory as needed,
+ * so this can be used for matrixes that exceed the available main memory.
+ * Access is, however, much faster when the matrix fits into the file system
+ * cache.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ *
+ * @apiviz.composedOf OnDiskUpperTriangleMatrix
+ */
+public class OnDiskDistanceMatrixStorage implements DistanceMatrixStorage, AutoCloseable {
+  /**
+   * Magic number for the file format.
+   */
+  public static final int MAGIC = 0x4d617472;
+
+  /**
+   * Matrix on disk.
+   */
+  private OnDiskUpperTriangleMatrix matrix;
+
+  /**
+   * Size of each record, determines the precision.
+   */
+  private int recordsize;
+
+  /**
+   * Constructor.
+   *
+   * An existing file is replaced, as its contents may belong to a different
+   * data set or distance function.
+   *
+   * @param file File to create
+   * @param n Number of objects
+   * @param recordsize Record size: 8 for double, 4 for float, 2 for 16 bit
+   *        quantized values.
+   * @throws IOException when the file cannot be created
+   */
+  public OnDiskDistanceMatrixStorage(File file, int n, int recordsize) throws IOException {
+    super();
+    if(recordsize != ByteArrayUtil.SIZE_DOUBLE && recordsize != ByteArrayUtil.SIZE_FLOAT && recordsize != ByteArrayUtil.SIZE_SHORT) {
+      throw new IllegalArgumentException("Unsupported record size: " + recordsize);
+    }
+    this.recordsize = recordsize;
+    if(file.exists() && !file.delete()) {
+      throw new IOException("Cannot replace existing file " + file);
+    }
+    this.matrix = new OnDiskUpperTriangleMatrix(file, MAGIC, 0, recordsize, n);
+  }
+
+  @Override
+  public double get(int x, int y) {
+    switch(recordsize){
+    case ByteArrayUtil.SIZE_DOUBLE:
+      return matrix.getDouble(x, y);
+    case ByteArrayUtil.SIZE_FLOAT:
+      return matrix.getFloat(x, y);
+    default:
+      return ShortDistanceMatrixStorage.decode(matrix.getShort(x, y));
+    }
+  }
+
+  @Override
+  public void set(int x, int y, double d) {
+    switch(recordsize){
+    case ByteArrayUtil.SIZE_DOUBLE:
+      matrix.putDouble(x, y, d);
+      break;
+    case ByteArrayUtil.SIZE_FLOAT:
+      matrix.putFloat(x, y, (float) d);
+      break;
+    default:
+      matrix.putShort(x, y, ShortDistanceMatrixStorage.encode(d));
+    }
+  }
+
+  @Override
+  public long size() {
+    return DistanceMatrixUtil.triangleSize(matrix.getMatrixSize());
+  }
+
+  /**
+   * Close the underlying file.
+   *
+   * @throws IOException on errors
+   */
+  @Override
+  public void close() throws IOException {
+    matrix.close();
+  }
+}
@@ -23,6 +23,8 @@ package de.lmu.ifi.dbs.elki.index.distancematrix;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -51,10 +53,15 @@ import de.lmu.ifi.dbs.elki.index.RangeIndex;
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.logging.statistics.StringStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.Parameterization;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.EnumParameter;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.FileParameter;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
 
 /**
@@ -62,10 +69,18 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  *
  * This class uses a linear memory layout (not a ragged array), and assumes
  * symmetry as well as strictness. This way, it only stores the upper triangle
- * matrix with double precision. It has to store (n-1) * (n-2) distance values
- * in memory, requiring 8 * (n-1) * (n-2) bytes. Since Java has a size limit of
- * arrays of 31 bits (signed integer), we can store at most 2^16 objects
- * (precisely, 65536 objects) in a single array, which needs about 16 GB of RAM.
+ * matrix, i.e. n * (n-1) / 2 distance values. With double precision, this
+ * requires 4 * n * (n-1) bytes, about 16 GB for 65536 objects. The storage is
+ * segmented, so it is not limited by the maximum Java array size.
+ *
+ * To reduce memory usage, the distances can be stored with {@link Precision}
+ * float or 16 bit precision, and the matrix can be stored in a memory-mapped
+ * file instead of main memory (see {@link OnDiskDistanceMatrixStorage}). For
+ * 200000 objects, the matrix needs 80 GB with float precision, and 40 GB with
+ * 16 bit precision. An existing matrix file is rebuilt; call {@link #close()}
+ * to release the file when the index is no longer needed.
+ *
+ * The matrix is computed in parallel, using the {@link ParallelCore}.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -73,15 +88,67 @@ import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameters.ObjectParameter;
  * @apiviz.has PrecomputedDistanceQuery
  * @apiviz.has PrecomputedKNNQuery
  * @apiviz.has PrecomputedRangeQuery
+ * @apiviz.composedOf DistanceMatrixStorage
  *
  * @param <O> Object type
  */
-public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements DistanceIndex<O>, RangeIndex<O>, KNNIndex<O> {
+public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements DistanceIndex<O>, RangeIndex<O>, KNNIndex<O>, AutoCloseable {
   /**
    * Class logger.
    */
   private static final Logging LOG = Logging.getLogger(PrecomputedDistanceMatrix.class);
 
+  /**
+   * Precision used for storing the distances.
+   *
+   * @author Erich Schubert
+   *
+   * @apiviz.exclude
+   */
+  public static enum Precision {
+    /** Double precision, 8 bytes per distance. */
+    DOUBLE(ByteArrayUtil.SIZE_DOUBLE), //
+    /** Single precision, 4 bytes per distance. */
+    FLOAT(ByteArrayUtil.SIZE_FLOAT), //
+    /**
+     * 16 bit floating point, 2 bytes per distance.
+     *
+     * @see ShortDistanceMatrixStorage
+     */
+    SHORT(ByteArrayUtil.SIZE_SHORT);
+
+    /**
+     * Bytes per distance.
+     */
+    final int recordsize;
+
+    /**
+     * Constructor.
+     *
+     * @param recordsize Bytes per distance
+     */
+    private Precision(int recordsize) {
+      this.recordsize = recordsize;
+    }
+
+    /**
+     * Allocate the in-memory storage for n objects.
+     *
+     * @param n Number of objects
+     * @return Storage
+     */
+    public DistanceMatrixStorage allocate(int n) {
+      switch(this){
+      case FLOAT:
+        return new FloatDistanceMatrixStorage(n);
+      case SHORT:
+        return new ShortDistanceMatrixStorage(n);
+      default:
+        return new DoubleDistanceMatrixStorage(n);
+      }
+    }
+  }
+
   /**
    * Nested distance function.
    */
@@ -95,7 +162,17 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
   /**
    * Distance matrix.
    */
-  private double[] matrix = null;
+  private DistanceMatrixStorage matrix = null;
+
+  /**
+   * Storage precision.
+   */
+  private Precision precision;
+
+  /**
+   * File to store the matrix in, may be {@code null}.
+   */
+  private File file;
 
   /**
    * DBID range.
@@ -114,8 +191,22 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
    * @param distanceFunction Distance function
    */
   public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction) {
+    this(relation, distanceFunction, Precision.DOUBLE, null);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param relation Data relation
+   * @param distanceFunction Distance function
+   * @param precision Storage precision
+   * @param file File to store the matrix in, {@code null} for main memory.
+   */
+  public PrecomputedDistanceMatrix(Relation<O> relation, DistanceFunction<? super O> distanceFunction, Precision precision, File file) {
     super(relation);
     this.distanceFunction = distanceFunction;
+    this.precision = precision;
+    this.file = file;
 
     if(!distanceFunction.isSymmetric()) {
       throw new AbortException("Distance matrixes currently only support symmetric distance functions (Patches welcome).");
@@ -124,62 +215,70 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
 
   @Override
   public void initialize() {
+    close();
     DBIDs rids = relation.getDBIDs();
     if(!(rids instanceof DBIDRange)) {
       throw new AbortException("Distance matrixes are currently only supported for DBID ranges (as used by static databases) for performance reasons (Patches welcome).");
     }
     ids = (DBIDRange) rids;
     size = ids.size();
-    if(size > 65536) {
-      throw new AbortException("Distance matrixes currently have a limit of 65536 objects (~16 GB). After this, the array size exceeds the Java integer range, and a different data structure needs to be used.");
-    }
 
     distanceQuery = distanceFunction.instantiate(relation);
 
-    final int msize = triangleSize(size);
-    matrix = new double[msize];
-    DBIDArrayIter ix = ids.iter(), iy = ids.iter();
-
-    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", msize, LOG) : null;
-    int pos = 0;
-    for(ix.seek(0); ix.valid(); ix.advance()) {
-      // y < x -- must match {@link #getOffset}!
-      for(iy.seek(0); iy.getOffset() < ix.getOffset(); iy.advance()) {
-        matrix[pos] = distanceQuery.distance(ix, iy);
-        pos++;
+    if(file == null) {
+      try {
+        matrix = precision.allocate(size);
+      }
+      catch(OutOfMemoryError e) {
+        throw new AbortException("Not enough memory for a distance matrix of " + size + " objects with " + precision + " precision (" + (DistanceMatrixUtil.triangleSize(size) * precision.recordsize >>> 20) + " MB). Use a lower precision, or store the matrix on disk.", e);
+      }
+    }
+    else {
+      try {
+        matrix = new OnDiskDistanceMatrixStorage(file, size, precision.recordsize);
       }
-      if(prog != null) {
-        prog.setProcessed(prog.getProcessed() + ix.getOffset(), LOG);
+      catch(IOException e) {
+        throw new AbortException("Cannot create distance matrix file " + file + ": " + e.getMessage(), e);
       }
     }
+
+    FiniteProgress prog = LOG.isVerbose() ? new FiniteProgress("Precomputing distance matrix", size, LOG) : null;
+    DistanceMatrixUtil.fill(matrix, distanceQuery, ids, false, prog, LOG);
     LOG.ensureCompleted(prog);
   }
 
   /**
-   * Compute the size of a complete x by x triangle (minus diagonal)
-   *
-   * @param x Offset
-   * @return Size of complete triangle
+   * Release the distance matrix, and close the file it is stored in, if any.
    */
-  protected static int triangleSize(int x) {
-    return (x * (x - 1)) >>> 1;
+  @Override
+  public void close() {
+    if(matrix instanceof OnDiskDistanceMatrixStorage) {
+      try {
+        ((OnDiskDistanceMatrixStorage) matrix).close();
+      }
+      catch(IOException e) {
+        LOG.exception("Error closing distance matrix file " + file, e);
+      }
+    }
+    matrix = null;
   }
 
   /**
-   * Array offset computation.
+   * Get a distance from the matrix.
    *
    * @param x X parameter
-   * @param y Y parameter
-   * @return Array offset
+   * @param y Y parameter, must be different from x
+   * @return Distance
    */
-  private int getOffset(int x, int y) {
-    return (y < x) ? (triangleSize(x) + y) : (triangleSize(y) + x);
+  private double get(int x, int y) {
+    return (y < x) ? matrix.get(x, y) : matrix.get(y, x);
   }
 
   @Override
   public void logStatistics() {
     if(matrix != null) {
-      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.length));
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".matrix-size", matrix.size()));
+      LOG.statistics(new StringStatistic(this.getClass().getName() + ".precision", precision.toString()));
     }
   }
 
@@ -226,7 +325,7 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
     @Override
     public double distance(DBIDRef id1, DBIDRef id2) {
       final int x = ids.getOffset(id1), y = ids.getOffset(id2);
-      return (x != y) ? matrix[getOffset(x, y)] : 0.;
+      return (x != y) ? get(x, y) : 0.;
     }
 
     @Override
@@ -275,24 +374,17 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       DBIDArrayIter it = ids.iter();
 
       final int x = ids.getOffset(id);
-      // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(x, y);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
-        pos++;
       }
-      assert (pos == triangleSize(x + 1));
-      // Case y > x: triangleSize(y) + x
-      pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(y, x);
         if(dist <= range) {
           result.add(dist, it.seek(y));
         }
-        pos += y;
       }
     }
 
@@ -320,24 +412,17 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
       DBIDArrayIter it = ids.iter();
       double max = Double.POSITIVE_INFINITY;
       final int x = ids.getOffset(id);
-      // Case y < x: triangleSize(x) + y
-      int pos = triangleSize(x);
       for(int y = 0; y < x; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(x, y);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
-        pos++;
       }
-      assert (pos == triangleSize(x + 1));
-      // Case y > x: triangleSize(y) + x
-      pos = triangleSize(x + 1) + x;
       for(int y = x + 1; y < size; y++) {
-        final double dist = matrix[pos];
+        final double dist = matrix.get(y, x);
         if(dist <= max) {
           max = heap.insert(dist, it.seek(y));
         }
-        pos += y;
       }
       return heap.toKNNList();
     }
@@ -373,19 +458,42 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
      */
     final protected DistanceFunction<? super O> distanceFunction;
 
+    /**
+     * Storage precision.
+     */
+    final protected Precision precision;
+
+    /**
+     * File to store the matrix in, may be {@code null}.
+     */
+    final protected File file;
+
     /**
      * Constructor.
      *
      * @param distanceFunction Distance function
      */
     public Factory(DistanceFunction<? super O> distanceFunction) {
+      this(distanceFunction, Precision.DOUBLE, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param distanceFunction Distance function
+     * @param precision Storage precision
+     * @param file File to store the matrix in, {@code null} for main memory.
+     */
+    public Factory(DistanceFunction<? super O> distanceFunction, Precision precision, File file) {
       super();
       this.distanceFunction = distanceFunction;
+      this.precision = precision;
+      this.file = file;
     }
 
     @Override
     public PrecomputedDistanceMatrix<O> instantiate(Relation<O> relation) {
-      return new PrecomputedDistanceMatrix<>(relation, distanceFunction);
+      return new PrecomputedDistanceMatrix<>(relation, distanceFunction, precision, file);
     }
 
     @Override
@@ -408,11 +516,31 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
        */
       public static final OptionID DISTANCE_ID = new OptionID("matrix.distance", "Distance function for the precomputed distance matrix.");
 
+      /**
+       * Option parameter for the storage precision.
+       */
+      public static final OptionID PRECISION_ID = new OptionID("matrix.precision", "Precision used to store the distances: DOUBLE (8 bytes), FLOAT (4 bytes) or SHORT (2 bytes, 16 bit floating point).");
+
+      /**
+       * Option parameter for storing the matrix in a file.
+       */
+      public static final OptionID FILE_ID = new OptionID("matrix.file", "Memory-mapped file to store the distance matrix in, instead of main memory. An existing file is overwritten.");
+
       /**
        * Nested distance function.
        */
       protected DistanceFunction<? super O> distanceFunction;
 
+      /**
+       * Storage precision.
+       */
+      protected Precision precision;
+
+      /**
+       * File to store the matrix in.
+       */
+      protected File file;
+
       @Override
       protected void makeOptions(Parameterization config) {
         super.makeOptions(config);
@@ -420,11 +548,19 @@ public class PrecomputedDistanceMatrix<O> extends AbstractIndex<O> implements Di
         if(config.grab(distanceP)) {
           distanceFunction = distanceP.instantiateClass(config);
         }
+        EnumParameter<Precision> precisionP = new EnumParameter<>(PRECISION_ID, Precision.class, Precision.DOUBLE);
+        if(config.grab(precisionP)) {
+          precision = precisionP.getValue();
+        }
+        FileParameter fileP = new FileParameter(FILE_ID, FileParameter.FileType.OUTPUT_FILE, true);
+        if(config.grab(fileP)) {
+          file = fileP.getValue();
+        }
       }
 
       @Override
       protected Factory<O> makeInstance() {
-        return new Factory<>(distanceFunction);
+        return new Factory<>(distanceFunction, precision, file);
       }
     }
   }
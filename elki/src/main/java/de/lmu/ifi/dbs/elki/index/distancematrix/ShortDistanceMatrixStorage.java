@@ -0,0 +1,94 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * In-memory distance matrix storage quantized to 16 bit, using a quarter of
+ * the memory of {@link DoubleDistanceMatrixStorage}.
+ *
+ * Values are stored as the upper half of a single precision float ("bfloat16"
+ * format), with rounding to nearest. This keeps the full range of float values
+ * and thus does not need to know the maximum distance in advance, but keeps
+ * only 8 significant bits: the relative error is at most 2^-8 (about 0.4%).
+ * This is usually sufficient for algorithms such as PAM, which only compare
+ * distances, but ties become more likely.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class ShortDistanceMatrixStorage extends AbstractDistanceMatrixStorage {
+  /**
+   * Data segments.
+   */
+  private short[][] segments;
+
+  /**
+   * Constructor.
+   *
+   * @param n Number of objects
+   */
+  public ShortDistanceMatrixStorage(int n) {
+    super(n);
+    segments = new short[numSegments()][];
+    for(int i = 0; i < segments.length; i++) {
+      segments[i] = new short[segmentSize(i)];
+    }
+  }
+
+  /**
+   * Encode a value as 16 bit float, rounding to the nearest value.
+   *
+   * @param d Value
+   * @return Encoded value
+   */
+  public static short encode(double d) {
+    final int bits = Float.floatToRawIntBits((float) d);
+    if(d != d) { // NaN: keep a mantissa bit set.
+      return (short) ((bits >>> 16) | 0x40);
+    }
+    return (short) ((bits + 0x7FFF + ((bits >>> 16) & 1)) >>> 16);
+  }
+
+  /**
+   * Decode a 16 bit float value.
+   *
+   * @param s Encoded value
+   * @return Decoded value
+   */
+  public static double decode(short s) {
+    return Float.intBitsToFloat(s << 16);
+  }
+
+  @Override
+  public double get(int x, int y) {
+    final long pos = DistanceMatrixUtil.triangleSize(x) + y;
+    return decode(segments[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)]);
+  }
+
+  @Override
+  public void set(int x, int y, double d) {
+    final long pos = DistanceMatrixUtil.triangleSize(x) + y;
+    segments[(int) (pos >>> SEGMENT_SHIFT)][(int) (pos & SEGMENT_MASK)] = encode(d);
+  }
+}
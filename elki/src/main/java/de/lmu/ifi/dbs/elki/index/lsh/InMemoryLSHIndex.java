@@ -23,16 +23,19 @@ package de.lmu.ifi.dbs.elki.index.lsh;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
-import gnu.trove.iterator.TIntObjectIterator;
-import gnu.trove.map.TIntObjectMap;
-import gnu.trove.map.hash.TIntObjectHashMap;
-
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import de.lmu.ifi.dbs.elki.data.type.TypeInformation;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
 import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
@@ -52,6 +55,8 @@ import de.lmu.ifi.dbs.elki.index.lsh.hashfunctions.LocalitySensitiveHashFunction
 import de.lmu.ifi.dbs.elki.logging.Logging;
 import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.AbstractParameterizer;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.OptionID;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.constraints.CommonConstraints;
@@ -91,6 +96,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    */
   int numberOfBuckets;
 
+  /**
+   * Number of buckets to probe in each table.
+   */
+  int probes;
+
   /**
    * Constructor.
    *
@@ -99,10 +109,23 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    * @param numberOfBuckets Number of buckets to use.
    */
   public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets) {
+    this(family, l, numberOfBuckets, 1);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param family Projection family
+   * @param l Number of hash tables to use
+   * @param numberOfBuckets Number of buckets to use.
+   * @param probes Number of buckets to probe in each table (multi-probe LSH)
+   */
+  public InMemoryLSHIndex(LocalitySensitiveHashFunctionFamily<? super V> family, int l, int numberOfBuckets, int probes) {
     super();
     this.family = family;
     this.l = l;
     this.numberOfBuckets = numberOfBuckets;
+    this.probes = probes;
   }
 
   @Override
@@ -121,6 +144,7 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
    * @author Erich Schubert
    *
    * @apiviz.has LocalitySensitiveHashFunction
+   * @apiviz.composedOf HashTable
    */
   public class Instance extends AbstractRefiningIndex<V> implements KNNIndex<V>, RangeIndex<V> {
     /**
@@ -129,9 +153,9 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     ArrayList<? extends LocalitySensitiveHashFunction<? super V>> hashfunctions;
 
     /**
-     * The actual table
+     * The actual tables.
      */
-    ArrayList<TIntObjectMap<DBIDs>> hashtables;
+    ArrayList<HashTable> hashtables;
 
     /**
      * Number of buckets to use.
@@ -163,54 +187,48 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
     @Override
     public void initialize() {
       final int numhash = hashfunctions.size();
-      hashtables = new ArrayList<>(numhash);
-      for(int i = 0; i < numhash; i++) {
-        hashtables.add(new TIntObjectHashMap<DBIDs>(numberOfBuckets));
-      }
-
-      // TODO: We assume all hash functions have the same dimensionality.
-      double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH index", relation.size(), LOG) : null;
-      int expect = Math.max(2, (int) Math.ceil(relation.size() / (double) numberOfBuckets));
-      for(DBIDIter iter = relation.getDBIDs().iter(); iter.valid(); iter.advance()) {
-        V obj = relation.get(iter);
+      final ArrayDBIDs ids = DBIDUtil.ensureArray(relation.getDBIDs());
+      FiniteProgress progress = LOG.isVerbose() ? new FiniteProgress("Building LSH hash tables", numhash, LOG) : null;
+      // The tables are independent, and each has its own hash function.
+      ParallelCore core = ParallelCore.getCore();
+      core.connect();
+      try {
+        List<Future<HashTable>> futures = new ArrayList<>(numhash);
         for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
           final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur == null) {
-            table.put(bucket, DBIDUtil.deref(iter));
-          }
-          else if(cur.size() > 1) {
-            ((ModifiableDBIDs) cur).add(iter);
-          }
-          else {
-            ModifiableDBIDs newbuck = DBIDUtil.newArray(expect);
-            newbuck.addDBIDs(cur);
-            newbuck.add(iter);
-            table.put(bucket, newbuck);
-          }
+          futures.add(core.submit(new Callable<HashTable>() {
+            @Override
+            public HashTable call() {
+              return new HashTable(ids, hashfunc);
+            }
+          }));
+        }
+        hashtables = new ArrayList<>(numhash);
+        for(Future<HashTable> future : futures) {
+          hashtables.add(future.get());
+          LOG.incrementProcessed(progress);
         }
-        LOG.incrementProcessed(progress);
+      }
+      catch(ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new AbortException("Building the LSH index failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Building the LSH index interrupted.", e);
+      }
+      finally {
+        core.disconnect();
       }
       LOG.ensureCompleted(progress);
       if(LOG.isStatistics()) {
         int min = Integer.MAX_VALUE, max = 0;
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          for(TIntObjectIterator<DBIDs> iter = table.iterator(); iter.hasNext();) {
-            iter.advance();
-            int size = iter.value().size();
-            if(size < min) {
-              min = size;
-            }
-            if(size > max) {
-              max = size;
-            }
+        for(HashTable table : hashtables) {
+          for(int b = 0; b < table.keys.length; b++) {
+            final int size = table.offsets[b + 1] - table.offsets[b];
+            min = size < min ? size : min;
+            max = size > max ? size : max;
           }
         }
         LOG.statistics(new LongStatistic(this.getClass().getName() + ".fill.min", min));
@@ -219,6 +237,110 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       }
     }
 
+    /**
+     * Collect the candidates of an object from all hash tables, probing
+     * multiple buckets per table when multi-probe LSH is enabled.
+     *
+     * @param obj Query object
+     * @param candidates Output candidates
+     */
+    protected void collectCandidates(V obj, ModifiableDBIDs candidates) {
+      final int numhash = hashtables.size();
+      double[] buf = null;
+      int[] hashes = new int[probes];
+      for(int i = 0; i < numhash; i++) {
+        final HashTable table = hashtables.get(i);
+        final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
+        // Hash functions use the buffer length, which may differ among them.
+        final int nproj = hashfunc.getNumberOfProjections();
+        buf = (buf != null && buf.length == nproj) ? buf : new double[nproj];
+        // Get the initial (unbounded) hash codes:
+        final int num = hashfunc.hashProbes(obj, buf, hashes);
+        for(int j = 0; j < num; j++) {
+          // Reduce to hash table size
+          table.addBucket(hashes[j] % numberOfBuckets, candidates);
+        }
+      }
+    }
+
+    /**
+     * Hash table, stored in a compact compressed-sparse-row layout: the sorted
+     * bucket keys, the offsets of each bucket, and the bucket contents.
+     *
+     * @author Erich Schubert
+     */
+    protected class HashTable {
+      /**
+       * Sorted keys of the non-empty buckets.
+       */
+      int[] keys;
+
+      /**
+       * Start offsets of the buckets; the last entry is the total size.
+       */
+      int[] offsets;
+
+      /**
+       * Bucket contents.
+       */
+      ArrayModifiableDBIDs members;
+
+      /**
+       * Build the hash table.
+       *
+       * @param ids Objects to index
+       * @param hashfunc Hash function
+       */
+      protected HashTable(ArrayDBIDs ids, LocalitySensitiveHashFunction<? super V> hashfunc) {
+        final int size = ids.size();
+        double[] buf = new double[hashfunc.getNumberOfProjections()];
+        // Pack bucket and offset into a long, for sorting primitives.
+        long[] tmp = new long[size];
+        DBIDArrayIter iter = ids.iter();
+        for(; iter.valid(); iter.advance()) {
+          // Get the initial (unbounded) hash code, and reduce to table size.
+          final int bucket = hashfunc.hashObject(relation.get(iter), buf) % numberOfBuckets;
+          tmp[iter.getOffset()] = (((long) bucket) << 32) | iter.getOffset();
+        }
+        Arrays.sort(tmp);
+        int numkeys = 0;
+        for(int j = 0; j < size; j++) {
+          if(j == 0 || (tmp[j] >> 32) != (tmp[j - 1] >> 32)) {
+            ++numkeys;
+          }
+        }
+        keys = new int[numkeys];
+        offsets = new int[numkeys + 1];
+        members = DBIDUtil.newArray(size);
+        for(int j = 0, k = 0; j < size; j++) {
+          final int bucket = (int) (tmp[j] >> 32);
+          if(j == 0 || bucket != keys[k - 1]) {
+            keys[k] = bucket;
+            offsets[k++] = j;
+          }
+          members.add(iter.seek((int) tmp[j]));
+        }
+        offsets[numkeys] = size;
+      }
+
+      /**
+       * Add the contents of a bucket to a set of candidates.
+       *
+       * @param bucket Bucket key
+       * @param candidates Output candidates
+       */
+      protected void addBucket(int bucket, ModifiableDBIDs candidates) {
+        final int b = Arrays.binarySearch(keys, bucket);
+        if(b < 0) {
+          return;
+        }
+        final int end = offsets[b + 1];
+        for(DBIDArrayIter iter = members.iter().seek(offsets[b]); iter.getOffset() < end; iter.advance()) {
+          candidates.add(iter);
+        }
+      }
+    }
+
     @Override
     public Logging getLogger() {
       return LOG;
@@ -271,27 +393,8 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
 
       @Override
       public KNNList getKNNForObject(V obj, int k) {
-        ModifiableDBIDs candidates = null;
-        final int numhash = hashtables.size();
-        double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            if(candidates == null) {
-              candidates = DBIDUtil.newHashSet(cur.size() * numhash + k);
-            }
-            candidates.addDBIDs(cur);
-          }
-        }
-        if(candidates == null) {
-          candidates = DBIDUtil.newArray();
-        }
+        ModifiableDBIDs candidates = DBIDUtil.newHashSet();
+        collectCandidates(obj, candidates);
 
         // Refine.
         KNNHeap heap = DBIDUtil.newHeap(k);
@@ -324,20 +427,7 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       @Override
       public void getRangeForObject(V obj, double range, ModifiableDoubleDBIDList result) {
         ModifiableDBIDs candidates = DBIDUtil.newHashSet();
-        final int numhash = hashtables.size();
-        double[] buf = new double[hashfunctions.get(0).getNumberOfProjections()];
-        for(int i = 0; i < numhash; i++) {
-          final TIntObjectMap<DBIDs> table = hashtables.get(i);
-          final LocalitySensitiveHashFunction<? super V> hashfunc = hashfunctions.get(i);
-          // Get the initial (unbounded) hash code:
-          int hash = hashfunc.hashObject(obj, buf);
-          // Reduce to hash table size
-          int bucket = hash % numberOfBuckets;
-          DBIDs cur = table.get(bucket);
-          if(cur != null) {
-            candidates.addDBIDs(cur);
-          }
-        }
+        collectCandidates(obj, candidates);
 
         // Refine.
         for(DBIDIter iter = candidates.iter(); iter.valid(); iter.advance()) {
@@ -374,6 +464,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     public static final OptionID BUCKETS_ID = new OptionID("lsh.buckets", "Number of hash buckets to use.");
 
+    /**
+     * Number of buckets to probe in each hash table.
+     */
+    public static final OptionID PROBES_ID = new OptionID("lsh.probes", "Number of buckets to probe in each hash table (multi-probe LSH). Probing more buckets increases recall with fewer hash tables.");
+
     /**
      * LSH hash function family to use.
      */
@@ -389,6 +484,11 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
      */
     int numberOfBuckets;
 
+    /**
+     * Number of buckets to probe in each table.
+     */
+    int probes = 1;
+
     @Override
     protected void makeOptions(Parameterization config) {
       super.makeOptions(config);
@@ -409,11 +509,17 @@ public class InMemoryLSHIndex<V> implements IndexFactory<V, InMemoryLSHIndex<V>.
       if(config.grab(bucketsP)) {
         numberOfBuckets = bucketsP.intValue();
       }
+
+      IntParameter probesP = new IntParameter(PROBES_ID, 1);
+      probesP.addConstraint(CommonConstraints.GREATER_EQUAL_ONE_INT);
+      if(config.grab(probesP)) {
+        probes = probesP.intValue();
+      }
     }
 
     @Override
     protected InMemoryLSHIndex<V> makeInstance() {
-      return new InMemoryLSHIndex<>(family, l, numberOfBuckets);
+      return new InMemoryLSHIndex<>(family, l, numberOfBuckets, probes);
     }
   }
 }
@@ -84,6 +84,29 @@ public class CosineLocalitySensitiveHashFunction implements LocalitySensitiveHas
     return hashValue;
   }
 
+  @Override
+  public int hashProbes(NumberVector obj, double[] buf, int[] probes) {
+    probes[0] = hashObject(obj, buf);
+    if(probes.length == 1) {
+      return 1;
+    }
+    // Flipping the bits of projections close to zero is most promising.
+    final double[] scores = new double[buf.length];
+    for(int i = 0; i < buf.length; i++) {
+      scores[i] = buf[i] * buf[i];
+    }
+    MultiProbeSequence seq = new MultiProbeSequence(scores, buf.length, false);
+    int n = 1;
+    for(int[] set; n < probes.length && (set = seq.next()) != null;) {
+      int hashValue = probes[0];
+      for(int p : set) {
+        hashValue ^= 1 << p;
+      }
+      probes[n++] = hashValue;
+    }
+    return n;
+  }
+
   @Override
   public int getNumberOfProjections() {
     return projection.getOutputDimensionality();
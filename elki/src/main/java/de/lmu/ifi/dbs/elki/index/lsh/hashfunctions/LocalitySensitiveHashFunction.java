@@ -49,6 +49,19 @@ public interface LocalitySensitiveHashFunction<V> {
    */
   int hashObject(V obj, double[] buf);
 
+  /**
+   * Compute the hash values of the buckets to probe for multi-probe LSH: the
+   * bucket of the object itself, followed by neighboring buckets in the order
+   * of their likelihood to contain near neighbors.
+   *
+   * @param obj Object to hash
+   * @param buf Buffer, sized according to the number of projections.
+   * @param probes Output hash values; the array length is the maximum number
+   *        of buckets to probe.
+   * @return Number of hash values produced.
+   */
+  int hashProbes(V obj, double[] buf, int[] probes);
+
   /**
    * Get the number of projections performed.
    *
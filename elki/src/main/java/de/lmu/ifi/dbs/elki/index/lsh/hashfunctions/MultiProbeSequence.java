@@ -0,0 +1,143 @@
+package de.lmu.ifi.dbs.elki.index.lsh.hashfunctions;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleObjectMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Generate the perturbation sets for multi-probe LSH, in the order of
+ * increasing score (i.e. decreasing likelihood of the perturbed bucket to
+ * contain near neighbors of the query).
+ *
+ * Each perturbation has a non-negative score, and the score of a set of
+ * perturbations is the sum of their scores. The sets are enumerated lazily
+ * using the "shift" and "expand" operations of Lv et al.
+ *
+ * Reference:
+ * <p>
+ * Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li<br />
+ * Multi-probe LSH: efficient indexing for high-dimensional similarity
+ * search<br />
+ * Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@Reference(authors = "Q. Lv, W. Josephson, Z. Wang, M. Charikar, K. Li", //
+title = "Multi-probe LSH: efficient indexing for high-dimensional similarity search", //
+booktitle = "Proc. 33rd Int. Conf. on Very Large Data Bases (VLDB 2007)", //
+url = "http://www.vldb.org/conf/2007/papers/research/p950-lv.pdf")
+public class MultiProbeSequence {
+  /**
+   * Perturbation scores, in ascending order.
+   */
+  private double[] scores;
+
+  /**
+   * Perturbation ids, in the order of their scores.
+   */
+  private int[] order;
+
+  /**
+   * Perturbations {@code 2i} and {@code 2i+1} are mutually exclusive.
+   */
+  private boolean paired;
+
+  /**
+   * Candidate sets, as positions in the sorted order.
+   */
+  private DoubleObjectMinHeap<int[]> heap = new DoubleObjectMinHeap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param score Score of each perturbation
+   * @param size Number of perturbations
+   * @param paired Perturbations {@code 2i} and {@code 2i+1} are mutually
+   *        exclusive (e.g. moving to the left or right neighbor bucket)
+   */
+  public MultiProbeSequence(double[] score, int size, boolean paired) {
+    this.scores = new double[size];
+    this.order = new int[size];
+    this.paired = paired;
+    // Insertion sort; the number of perturbations is small.
+    for(int i = 0; i < size; i++) {
+      final double s = score[i];
+      int j = i;
+      for(; j > 0 && scores[j - 1] > s; j--) {
+        scores[j] = scores[j - 1];
+        order[j] = order[j - 1];
+      }
+      scores[j] = s;
+      order[j] = i;
+    }
+    if(size > 0) {
+      heap.add(scores[0], new int[] { 0 });
+    }
+  }
+
+  /**
+   * Get the next perturbation set.
+   *
+   * @return Perturbation ids, or {@code null} when exhausted.
+   */
+  public int[] next() {
+    while(!heap.isEmpty()) {
+      final double score = heap.peekKey();
+      final int[] set = heap.peekValue();
+      heap.poll();
+      final int last = set[set.length - 1];
+      if(last + 1 < scores.length) {
+        // Shift: replace the last perturbation with the next one.
+        int[] shift = set.clone();
+        shift[set.length - 1] = last + 1;
+        heap.add(score - scores[last] + scores[last + 1], shift);
+        // Expand: add the next perturbation.
+        int[] expand = Arrays.copyOf(set, set.length + 1);
+        expand[set.length] = last + 1;
+        heap.add(score + scores[last + 1], expand);
+      }
+      // Map to perturbation ids, and check validity.
+      boolean valid = true;
+      for(int i = 0; i < set.length; i++) {
+        set[i] = order[set[i]];
+        if(paired) {
+          for(int j = 0; j < i; j++) {
+            if((set[j] >>> 1) == (set[i] >>> 1)) {
+              valid = false;
+            }
+          }
+        }
+      }
+      if(valid) {
+        return set;
+      }
+    }
+    return null;
+  }
+}
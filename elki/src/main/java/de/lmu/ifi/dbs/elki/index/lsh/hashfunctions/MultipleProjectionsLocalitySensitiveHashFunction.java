@@ -121,6 +121,40 @@ public class MultipleProjectionsLocalitySensitiveHashFunction implements Localit
     return fastModPrime(t1sum);
   }
 
+  @Override
+  public int hashProbes(NumberVector vec, double[] buf, int[] probes) {
+    // Project the vector:
+    projection.project(vec, buf);
+    final int num = shift.length;
+    // Distance to the lower and upper bin boundary, for perturbations.
+    final double[] scores = probes.length > 1 ? new double[num << 1] : null;
+    long t1sum = 0L;
+    for(int i = 0; i < num; i++) {
+      final double x = (buf[i] + shift[i]) * iwidth, fx = Math.floor(x);
+      t1sum += (randoms1[i] & MASK32) * (int) fx; // unsigned math!
+      if(scores != null) {
+        final double f = x - fx;
+        scores[i << 1] = f * f;
+        scores[(i << 1) + 1] = (1 - f) * (1 - f);
+      }
+    }
+    probes[0] = fastModPrime(t1sum);
+    if(scores == null) {
+      return 1;
+    }
+    MultiProbeSequence seq = new MultiProbeSequence(scores, num << 1, true);
+    int n = 1;
+    for(int[] set; n < probes.length && (set = seq.next()) != null;) {
+      long sum = t1sum;
+      for(int p : set) {
+        final long r = randoms1[p >>> 1] & MASK32;
+        sum += ((p & 1) == 0) ? -r : r;
+      }
+      probes[n++] = fastModPrime(sum);
+    }
+    return n;
+  }
+
   /**
    * Fast modulo operation for the largest unsigned integer prime.
    *
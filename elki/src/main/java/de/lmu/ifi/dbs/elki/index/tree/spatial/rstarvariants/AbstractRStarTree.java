@@ -879,6 +879,19 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       }
     }
 
+    /**
+     * Count a number of distance computations, e.g. of a batch query.
+     *
+     * @param n Number of distance computations
+     */
+    public void countDistanceCalculations(long n) {
+      if(distanceCalcs != null) {
+        synchronized(distanceCalcs) {
+          distanceCalcs.increment(n);
+        }
+      }
+    }
+
     /**
      * Count a knn query invocation.
      */
@@ -888,6 +901,19 @@ public abstract class AbstractRStarTree<N extends AbstractRStarTreeNode<N, E>, E
       }
     }
 
+    /**
+     * Count a number of knn query invocations, e.g. of a batch query.
+     *
+     * @param n Number of queries
+     */
+    public void countKNNQueries(long n) {
+      if(knnQueries != null) {
+        synchronized(knnQueries) {
+          knnQueries.increment(n);
+        }
+      }
+    }
+
     /**
      * Count a range query invocation.
      */
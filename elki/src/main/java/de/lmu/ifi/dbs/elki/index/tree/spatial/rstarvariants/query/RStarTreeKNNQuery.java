@@ -24,26 +24,27 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query;
  */
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import de.lmu.ifi.dbs.elki.data.ModifiableHyperBoundingBox;
 import de.lmu.ifi.dbs.elki.data.spatial.SpatialComparable;
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBID;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDRef;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
-import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
 import de.lmu.ifi.dbs.elki.database.ids.KNNHeap;
 import de.lmu.ifi.dbs.elki.database.ids.KNNList;
-import de.lmu.ifi.dbs.elki.database.ids.ModifiableDBIDs;
 import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
 import de.lmu.ifi.dbs.elki.database.relation.Relation;
 import de.lmu.ifi.dbs.elki.distance.distancefunction.SpatialPrimitiveDistanceFunction;
-import de.lmu.ifi.dbs.elki.index.tree.DirectoryEntry;
 import de.lmu.ifi.dbs.elki.index.tree.LeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.query.DoubleDistanceSearchCandidate;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialDirectoryEntry;
@@ -51,8 +52,12 @@ import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.SpatialPointLeafEntry;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTree;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeNode;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.arraylike.IntegerArray;
 import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.ComparableMinHeap;
+import de.lmu.ifi.dbs.elki.utilities.datastructures.heap.DoubleIntegerMinHeap;
 import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
 
 /**
  * Instance of a KNN query for a particular spatial index.
@@ -168,138 +173,248 @@ public class RStarTreeKNNQuery<O extends SpatialComparable> implements KNNQuery<
     return maxDist;
   }
 
+  @Override
+  public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
+    return getKNNForBulkDBIDs(ids, k, distanceFunction, false);
+  }
+
   /**
-   * Performs a batch knn query.
-   * 
-   * @param node the node for which the query should be performed
-   * @param knnLists a map containing the knn lists for each query objects
+   * Batched kNN join: the query objects are grouped by the leaf containing
+   * them, and each group is answered with a single best-first traversal of
+   * the tree, pruning pages by the minimum distance to the group bounding box.
+   * The groups are processed in parallel.
+   *
+   * @param ids Query objects
+   * @param k Number of neighbors
+   * @param distance Distance function to use in the tree
+   * @param sqrt Take the square root of the distances in the results
+   * @return kNN lists, in the order of the query ids
    */
-  protected void batchNN(AbstractRStarTreeNode<?, ?> node, Map<DBID, KNNHeap> knnLists) {
-    if(node.isLeaf()) {
-      for(int i = 0; i < node.getNumEntries(); i++) {
-        SpatialEntry p = node.getEntry(i);
-        for(Entry<DBID, KNNHeap> ent : knnLists.entrySet()) {
-          final DBID q = ent.getKey();
-          final KNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.getKNNDistance();
-
-          DBID pid = ((LeafEntry) p).getDBID();
-          // FIXME: objects are NOT accessible by DBID in a plain R-tree
-          // context!
-          double dist_pq = distanceFunction.distance(relation.get(pid), relation.get(q));
-          tree.statistics.countDistanceCalculation();
-          if(dist_pq <= knn_q_maxDist) {
-            knns_q.insert(dist_pq, pid);
-          }
+  protected List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k, SpatialPrimitiveDistanceFunction<? super O> distance, boolean sqrt) {
+    if(k < 1) {
+      throw new IllegalArgumentException("At least one enumeration has to be requested!");
+    }
+    // Sorted, duplicate-free query ids; heaps are indexed by offset.
+    ArrayModifiableDBIDs sorted = DBIDUtil.newArray(ids.size());
+    {
+      ArrayModifiableDBIDs tmp = DBIDUtil.newArray(ids);
+      tmp.sort();
+      DBIDVar prev = DBIDUtil.newVar();
+      for(DBIDIter iter = tmp.iter(); iter.valid(); iter.advance()) {
+        if(sorted.size() == 0 || !DBIDUtil.equal(prev, iter)) {
+          sorted.add(iter);
+          prev.set(iter);
         }
       }
     }
+    final KNNHeap[] heaps = new KNNHeap[sorted.size()];
+    for(int i = 0; i < heaps.length; i++) {
+      heaps[i] = DBIDUtil.newHeap(k);
+    }
+    List<int[]> groups = groupByLeaf(sorted);
+
+    ParallelCore core = ParallelCore.getCore();
+    final int nblocks = Math.min(groups.size(), core.getParallelism() > 1 ? core.getParallelism() * 4 : 1);
+    if(nblocks <= 1) {
+      new BatchKNN(sorted, heaps, groups, 0, groups.size(), distance).call();
+    }
     else {
-      ModifiableDBIDs ids = DBIDUtil.newArray(knnLists.size());
-      for(DBID id : knnLists.keySet()) {
-        ids.add(id);
+      core.connect();
+      try {
+        List<Future<Void>> futures = new ArrayList<>(nblocks);
+        for(int b = 0; b < nblocks; b++) {
+          futures.add(core.submit(new BatchKNN(sorted, heaps, groups, b * groups.size() / nblocks, (b + 1) * groups.size() / nblocks, distance)));
+        }
+        for(Future<Void> future : futures) {
+          future.get();
+        }
       }
-      List<DoubleDistanceEntry> entries = getSortedEntries(node, ids);
-      for(DoubleDistanceEntry distEntry : entries) {
-        double minDist = distEntry.distance;
-        for(Entry<DBID, KNNHeap> ent : knnLists.entrySet()) {
-          final KNNHeap knns_q = ent.getValue();
-          double knn_q_maxDist = knns_q.getKNNDistance();
-
-          if(minDist <= knn_q_maxDist) {
-            SpatialEntry entry = distEntry.entry;
-            AbstractRStarTreeNode<?, ?> child = tree.getNode(((DirectoryEntry) entry).getPageID().intValue());
-            batchNN(child, knnLists);
-            break;
-          }
+      catch(ExecutionException e) {
+        if(e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
         }
+        throw new AbortException("Batch kNN query failed.", e.getCause());
+      }
+      catch(InterruptedException e) {
+        throw new AbortException("Batch kNN query interrupted.", e);
+      }
+      finally {
+        core.disconnect();
       }
     }
+    tree.statistics.countKNNQueries(sorted.size());
+
+    List<KNNList> result = new ArrayList<>(ids.size());
+    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
+      final KNNHeap heap = heaps[sorted.binarySearch(iter)];
+      result.add(sqrt ? heap.toKNNListSqrt() : heap.toKNNList());
+    }
+    return result;
   }
 
   /**
-   * Sorts the entries of the specified node according to their minimum distance
-   * to the specified objects.
-   * 
-   * @param node the node
-   * @param ids the id of the objects
-   * @return a list of the sorted entries
+   * Group the query objects by the leaf of the tree containing them. Query
+   * objects not found in the tree form a group of their own.
+   *
+   * @param sorted Sorted query ids
+   * @return Groups of offsets into the sorted ids
    */
-  protected List<DoubleDistanceEntry> getSortedEntries(AbstractRStarTreeNode<?, ?> node, DBIDs ids) {
-    List<DoubleDistanceEntry> result = new ArrayList<>();
-
-    for(int i = 0; i < node.getNumEntries(); i++) {
-      SpatialEntry entry = node.getEntry(i);
-      double minMinDist = Double.MAX_VALUE;
-      for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-        double minDist = distanceFunction.minDist(entry, relation.get(iter));
-        tree.statistics.countDistanceCalculation();
-        minMinDist = Math.min(minDist, minMinDist);
+  private List<int[]> groupByLeaf(ArrayDBIDs sorted) {
+    List<int[]> groups = new ArrayList<>();
+    boolean[] grouped = new boolean[sorted.size()];
+    int[] buf = new int[16];
+    IntegerArray stack = new IntegerArray();
+    stack.add(tree.getRootID());
+    while(stack.size > 0) {
+      AbstractRStarTreeNode<?, ?> node = tree.getNode(stack.data[--stack.size]);
+      if(node.isLeaf()) {
+        int size = 0;
+        for(int i = 0; i < node.getNumEntries(); i++) {
+          final int off = sorted.binarySearch(((LeafEntry) node.getEntry(i)).getDBID());
+          if(off >= 0 && !grouped[off]) {
+            if(size == buf.length) {
+              buf = Arrays.copyOf(buf, size << 1);
+            }
+            buf[size++] = off;
+            grouped[off] = true;
+          }
+        }
+        if(size > 0) {
+          groups.add(Arrays.copyOf(buf, size));
+        }
+      }
+      else {
+        for(int i = 0; i < node.getNumEntries(); i++) {
+          stack.add(((SpatialDirectoryEntry) node.getEntry(i)).getPageID());
+        }
       }
-      result.add(new DoubleDistanceEntry(entry, minMinDist));
     }
-
-    Collections.sort(result);
-    return result;
+    for(int off = 0; off < grouped.length; off++) {
+      if(!grouped[off]) {
+        groups.add(new int[] { off });
+      }
+    }
+    return groups;
   }
 
   /**
-   * Optimized double distance entry implementation.
-   * 
+   * Process a range of query groups.
+   *
    * @author Erich Schubert
-   * 
-   * @apiviz.hidden
    */
-  static class DoubleDistanceEntry implements Comparable<DoubleDistanceEntry> {
+  private class BatchKNN implements Callable<Void> {
     /**
-     * Referenced entry
+     * Sorted query ids.
      */
-    SpatialEntry entry;
+    private ArrayDBIDs sorted;
 
     /**
-     * Distance value
+     * kNN heaps, by offset.
      */
-    double distance;
+    private KNNHeap[] heaps;
 
     /**
-     * Constructor.
-     * 
-     * @param entry Entry
-     * @param distance Distance
+     * Query groups.
      */
-    public DoubleDistanceEntry(SpatialEntry entry, double distance) {
-      this.entry = entry;
-      this.distance = distance;
-    }
+    private List<int[]> groups;
 
-    @Override
-    public int compareTo(DoubleDistanceEntry o) {
-      return Double.compare(this.distance, o.distance);
-    }
-  }
+    /**
+     * Range of groups to process.
+     */
+    private int start, end;
 
-  @Override
-  public List<KNNList> getKNNForBulkDBIDs(ArrayDBIDs ids, int k) {
-    if(k < 1) {
-      throw new IllegalArgumentException("At least one enumeration has to be requested!");
-    }
+    /**
+     * Distance function.
+     */
+    private SpatialPrimitiveDistanceFunction<? super O> distance;
 
-    // While this works, it seems to be slow at least for large sets!
-    // TODO: use a DataStore instead of a map.
-    final Map<DBID, KNNHeap> knnLists = new HashMap<>(ids.size());
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      knnLists.put(id, DBIDUtil.newHeap(k));
+    /**
+     * Constructor.
+     *
+     * @param sorted Sorted query ids
+     * @param heaps kNN heaps
+     * @param groups Query groups
+     * @param start First group
+     * @param end End of groups
+     * @param distance Distance function
+     */
+    BatchKNN(ArrayDBIDs sorted, KNNHeap[] heaps, List<int[]> groups, int start, int end, SpatialPrimitiveDistanceFunction<? super O> distance) {
+      this.sorted = sorted;
+      this.heaps = heaps;
+      this.groups = groups;
+      this.start = start;
+      this.end = end;
+      this.distance = distance;
     }
 
-    batchNN(tree.getRoot(), knnLists);
-
-    List<KNNList> result = new ArrayList<>();
-    for(DBIDIter iter = ids.iter(); iter.valid(); iter.advance()) {
-      DBID id = DBIDUtil.deref(iter);
-      tree.statistics.countKNNQuery();
-      result.add(knnLists.get(id).toKNNList());
+    @Override
+    public Void call() {
+      DBIDArrayIter iter = sorted.iter();
+      DoubleIntegerMinHeap pq = new DoubleIntegerMinHeap(21);
+      List<O> objs = new ArrayList<>();
+      long dists = 0;
+      for(int g = start; g < end; g++) {
+        final int[] group = groups.get(g);
+        objs.clear();
+        ModifiableHyperBoundingBox mbr = null;
+        for(int off : group) {
+          O obj = relation.get(iter.seek(off));
+          objs.add(obj);
+          if(mbr == null) {
+            mbr = new ModifiableHyperBoundingBox(obj);
+          }
+          else {
+            mbr.extend(obj);
+          }
+        }
+        // Largest kNN distance in the group.
+        double maxDist = Double.POSITIVE_INFINITY;
+        pq.clear();
+        pq.add(0., tree.getRootID());
+        while(!pq.isEmpty()) {
+          if(pq.peekKey() > maxDist) {
+            break;
+          }
+          AbstractRStarTreeNode<?, ?> node = tree.getNode(pq.peekValue());
+          pq.poll();
+          if(node.isLeaf()) {
+            for(int i = 0; i < node.getNumEntries(); i++) {
+              SpatialEntry entry = node.getEntry(i);
+              if(group.length > 1) {
+                ++dists;
+                if(distance.minDist(entry, mbr) > maxDist) {
+                  continue;
+                }
+              }
+              DBID pid = ((LeafEntry) entry).getDBID();
+              for(int j = 0; j < group.length; j++) {
+                final KNNHeap heap = heaps[group[j]];
+                final double d = distance.minDist(entry, objs.get(j));
+                if(d <= heap.getKNNDistance()) {
+                  heap.insert(d, pid);
+                }
+              }
+              dists += group.length;
+            }
+            maxDist = 0.;
+            for(int off : group) {
+              maxDist = Math.max(maxDist, heaps[off].getKNNDistance());
+            }
+          }
+          else {
+            for(int i = 0; i < node.getNumEntries(); i++) {
+              SpatialDirectoryEntry entry = (SpatialDirectoryEntry) node.getEntry(i);
+              final double d = distance.minDist(entry, mbr);
+              ++dists;
+              if(d <= maxDist) {
+                pq.add(d, entry.getPageID());
+              }
+            }
+          }
+        }
+      }
+      tree.statistics.countDistanceCalculations(dists);
+      return null;
     }
-    return result;
   }
 }
\ No newline at end of file
@@ -24,16 +24,18 @@ package de.lmu.ifi.dbs.elki.parallel;
  */
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Core for parallel processing in ELKI, based on {@link ThreadPoolExecutor}.
+ * Core for parallel processing in ELKI, based on a work-stealing
+ * {@link ForkJoinPool}.
  * 
- * TODO: make configurable how many threads are used.
+ * The number of threads defaults to the number of available processors, and
+ * can be changed using {@link #setParallelism(int)} (or the
+ * {@code -parallel.threads} command line option).
  * 
  * @author Erich Schubert
  * @since 0.7.0
@@ -52,7 +54,7 @@ public class ParallelCore {
   /**
    * Executor service.
    */
-  ThreadPoolExecutor executor;
+  ForkJoinPool executor;
 
   /**
    * Number of connected submitters.
@@ -87,7 +89,22 @@ public class ParallelCore {
    * @return Number of threads to run in parallel
    */
   public int getParallelism() {
-    return executor != null ? executor.getMaximumPoolSize() : processors;
+    return processors;
+  }
+
+  /**
+   * Set the desired level of parallelism.
+   * 
+   * Changes take effect the next time the executor is connected to; tasks
+   * that are currently running will continue to use the previous pool.
+   * 
+   * @param processors Number of threads to run in parallel, must be positive.
+   */
+  public synchronized void setParallelism(int processors) {
+    if(processors < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
+    this.processors = processors;
   }
 
   /**
@@ -101,35 +118,38 @@ public class ParallelCore {
     return executor.submit(task);
   }
 
+  /**
+   * Run a fork-join task on the executor core, and wait for its completion.
+   * 
+   * @param task Task to run
+   * @return Task result
+   */
+  public <T> T invoke(ForkJoinTask<T> task) {
+    return executor.invoke(task);
+  }
+
   /**
    * Connect to the executor.
    */
   public void connect() {
-    if(executor == null) {
-      synchronized(this) {
-        if(executor == null) {
-          executor = new ThreadPoolExecutor(0, processors, 10L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
-          executor.allowCoreThreadTimeOut(true);
+    synchronized(this) {
+      if(executor == null || (executor.getParallelism() != processors && connected.get() == 0)) {
+        if(executor != null) {
+          executor.shutdown();
         }
+        executor = new ForkJoinPool(processors);
       }
-    }
-    int c = this.connected.incrementAndGet();
-    if(c == 1) {
-      executor.allowCoreThreadTimeOut(false);
-      executor.setCorePoolSize(executor.getMaximumPoolSize());
+      connected.incrementAndGet();
     }
   }
 
   /**
    * Disconnect to the executor.
+   * 
+   * Idle worker threads of the {@link ForkJoinPool} are daemon threads, and
+   * will be reclaimed by the pool automatically.
    */
   public void disconnect() {
-    int c = this.connected.decrementAndGet();
-    if(c == 0) {
-      synchronized(this) {
-        executor.allowCoreThreadTimeOut(true);
-        executor.setCorePoolSize(0);
-      }
-    }
+    connected.decrementAndGet();
   }
 }
@@ -26,14 +26,14 @@ package de.lmu.ifi.dbs.elki.parallel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 
 import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
 import de.lmu.ifi.dbs.elki.database.ids.DBIDs;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.progress.FiniteProgress;
 import de.lmu.ifi.dbs.elki.parallel.processor.Processor;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable;
 import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
@@ -41,7 +41,10 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
 /**
  * Class to run processors in parallel, on all available cores.
  *
- * TODO: add progress
+ * The work is distributed using work-stealing: the ID range is split lazily
+ * into smaller blocks only while other worker threads are running out of
+ * work, so skewed workloads (where some objects are much more expensive to
+ * process than others) are balanced dynamically.
  *
  * @author Erich Schubert
  * @since 0.7.0
@@ -50,6 +53,17 @@ import de.lmu.ifi.dbs.elki.parallel.variables.SharedVariable.Instance;
  * @apiviz.uses ParallelCore
  */
 public class ParallelExecutor {
+  /**
+   * Target number of blocks per thread, used to choose the granularity at
+   * which the work can be split.
+   */
+  private static final int BLOCKS_PER_THREAD = 64;
+
+  /**
+   * Number of queued tasks tolerated before a runner stops splitting.
+   */
+  private static final int SURPLUS_THRESHOLD = 2;
+
   /**
    * Run a task on all available CPUs.
    *
@@ -57,34 +71,25 @@ public class ParallelExecutor {
    * @param procs Processors to run
    */
   public static final void run(DBIDs ids, Processor... procs) {
+    run(ids, null, null, procs);
+  }
+
+  /**
+   * Run a task on all available CPUs, with progress reporting.
+   *
+   * @param ids IDs to process
+   * @param prog Progress to increment (may be {@code null})
+   * @param log Logger to report progress to
+   * @param procs Processors to run
+   */
+  public static final void run(DBIDs ids, FiniteProgress prog, Logging log, Processor... procs) {
     ParallelCore core = ParallelCore.getCore();
     core.connect();
     try {
-      // TODO: try different strategies anyway!
       ArrayDBIDs aids = DBIDUtil.ensureArray(ids);
       final int size = aids.size();
-      int numparts = core.getParallelism();
-      // TODO: are there better heuristics for choosing this?
-      numparts = (size > numparts * numparts * 16) ? numparts * Math.max(1, numparts - 1) : numparts;
-
-      final int blocksize = (size + (numparts - 1)) / numparts;
-      List<Future<ArrayDBIDs>> parts = new ArrayList<>(numparts);
-      for(int i = 0; i < numparts; i++) {
-        final int start = i * blocksize;
-        final int end = (start + blocksize < size) ? start + blocksize : size;
-        Callable<ArrayDBIDs> run = new BlockArrayRunner(aids, start, end, procs);
-        parts.add(core.submit(run));
-      }
-
-      for(Future<ArrayDBIDs> fut : parts) {
-        fut.get();
-      }
-    }
-    catch(ExecutionException e) {
-      throw new RuntimeException("Processor execution failed.", e);
-    }
-    catch(InterruptedException e) {
-      throw new RuntimeException("Parallel execution interrupted.");
+      final int minblock = Math.max(1, size / (core.getParallelism() * BLOCKS_PER_THREAD));
+      core.invoke(new BlockArrayRunner(aids, 0, size, minblock, procs, prog, log));
     }
     finally {
       core.disconnect();
@@ -92,13 +97,19 @@ public class ParallelExecutor {
   }
 
   /**
-   * Run for an array part, without step size.
+   * Run for an array part, splitting off the upper half of the remaining work
+   * whenever other workers may be idle.
    *
    * @author Erich Schubert
    *
    * @apiviz.uses Processor
    */
-  protected static class BlockArrayRunner implements Callable<ArrayDBIDs>, Executor {
+  protected static class BlockArrayRunner extends RecursiveAction implements Executor {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
     /**
      * Array IDs to process
      */
@@ -114,11 +125,26 @@ public class ParallelExecutor {
      */
     private int end;
 
+    /**
+     * Minimum block size, i.e. granularity of splitting.
+     */
+    private int minblock;
+
     /**
      * The processor masters that own the instances.
      */
     private Processor[] procs;
 
+    /**
+     * Progress to report to, may be {@code null}.
+     */
+    private FiniteProgress prog;
+
+    /**
+     * Logger for progress reporting.
+     */
+    private Logging log;
+
     /**
      * Variables map.
      */
@@ -130,34 +156,63 @@ public class ParallelExecutor {
      * @param ids IDs to process
      * @param start Starting position
      * @param end End position
+     * @param minblock Minimum block size
      * @param procs Processors to run
+     * @param prog Progress to increment, may be {@code null}
+     * @param log Logger for progress reporting
      */
-    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, Processor[] procs) {
+    protected BlockArrayRunner(ArrayDBIDs ids, int start, int end, int minblock, Processor[] procs, FiniteProgress prog, Logging log) {
       super();
       this.ids = ids;
       this.start = start;
       this.end = end;
+      this.minblock = minblock;
       this.procs = procs;
+      this.prog = prog;
+      this.log = log;
     }
 
     @Override
-    public ArrayDBIDs call() {
+    protected void compute() {
       Processor.Instance[] instances = new Processor.Instance[procs.length];
       for(int i = 0; i < procs.length; i++) {
         instances[i] = procs[i].instantiate(this);
       }
 
+      List<BlockArrayRunner> forked = null;
       DBIDArrayIter iter = ids.iter();
-      iter.seek(start);
-      for(int c = end - start; iter.valid() && c >= 0; iter.advance(), c--) {
-        for(int i = 0; i < instances.length; i++) {
-          instances[i].map(iter);
+      while(start < end) {
+        // Lazy splitting: fork off the upper half while others lack work.
+        while(end - start >= (minblock << 1) && getSurplusQueuedTaskCount() <= SURPLUS_THRESHOLD) {
+          final int mid = (start + end) >>> 1;
+          BlockArrayRunner other = new BlockArrayRunner(ids, mid, end, minblock, procs, prog, log);
+          other.fork();
+          if(forked == null) {
+            forked = new ArrayList<>();
+          }
+          forked.add(other);
+          end = mid;
+        }
+        // Process a single block.
+        final int stop = Math.min(start + minblock, end);
+        for(iter.seek(start); iter.getOffset() < stop; iter.advance()) {
+          for(int i = 0; i < instances.length; i++) {
+            instances[i].map(iter);
+          }
         }
+        if(prog != null) {
+          log.incrementProcessed(prog, stop - start);
+        }
+        start = stop;
       }
-      for(int i = 0; i < instances.length; i++) {
+      for(int i = 0; i < procs.length; i++) {
         procs[i].cleanup(instances[i]);
       }
-      return ids;
+      if(forked != null) {
+        for(int i = forked.size() - 1; i >= 0; i--) {
+          forked.get(i).join();
+        }
+      }
     }
 
     @Override
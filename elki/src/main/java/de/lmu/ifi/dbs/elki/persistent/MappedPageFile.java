@@ -0,0 +1,734 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * A page file that stores {@link ExternalizablePage}s in a memory-mapped file.
+ * 
+ * In contrast to {@link PersistentPageFile}, pages are not serialized through
+ * Java object streams into temporary byte arrays. Instead, the
+ * {@link ExternalizablePage#writeExternal} and
+ * {@link ExternalizablePage#readExternal} methods write and read their
+ * primitive values directly to and from the mapped region, using a fixed
+ * binary layout: each page starts with an integer type marker, followed by the
+ * values written by the page.
+ * 
+ * The file is mapped in segments of up to 64 MB, on demand, so the file can be
+ * much larger than the Java heap; the operating system takes care of paging.
+ * Segments are mapped only as far as pages are used, and are grown
+ * geometrically, so small page files also remain small on disk.
+ * 
+ * Reading pages does not change the state of the mapped buffers, and the
+ * segment table is replaced rather than modified, so concurrent reads are
+ * safe.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ * 
+ * @apiviz.composedOf PageHeader
+ * @apiviz.composedOf MappedByteBuffer
+ * 
+ * @param <P> Page type
+ */
+public class MappedPageFile<P extends ExternalizablePage> extends AbstractStoringPageFile<P> {
+  /**
+   * Our logger
+   */
+  private static final Logging LOG = Logging.getLogger(MappedPageFile.class);
+
+  /**
+   * Indicates an empty page.
+   */
+  private static final int EMPTY_PAGE = 0;
+
+  /**
+   * Indicates a filled page.
+   */
+  private static final int FILLED_PAGE = 1;
+
+  /**
+   * Maximum size of a single mapped segment.
+   */
+  private static final int SEGMENT_SIZE = 1 << 26;
+
+  /**
+   * Minimum number of pages to map at once.
+   */
+  private static final int MIN_MAPPED_PAGES = 16;
+
+  /**
+   * The file storing the pages.
+   */
+  private final RandomAccessFile file;
+
+  /**
+   * File channel, for mapping.
+   */
+  private final FileChannel channel;
+
+  /**
+   * Mapped segments. This array is never modified once published; it is
+   * replaced by a grown copy while holding the lock.
+   */
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  /**
+   * Number of pages per segment.
+   */
+  private int pagesPerSegment;
+
+  /**
+   * The header of this page file.
+   */
+  protected PageHeader header;
+
+  /**
+   * Page constructor.
+   */
+  protected final Constructor<P> pageconstructor;
+
+  /**
+   * Whether we are initializing from an existing file.
+   */
+  private boolean existed;
+
+  /**
+   * Constructor.
+   * 
+   * @param pageSize the page size
+   * @param fileName the file name
+   * @param pageclass the class of pages to be used
+   */
+  public MappedPageFile(int pageSize, String fileName, Class<P> pageclass) {
+    super(pageSize);
+    File f = new File(fileName);
+    existed = f.exists();
+    try {
+      pageconstructor = pageclass.getDeclaredConstructor();
+      pageconstructor.setAccessible(true);
+    }
+    catch(NoSuchMethodException | SecurityException e) {
+      throw new AbortException("Page class does not have a public no-argument constructor: " + pageclass.getName(), e);
+    }
+    try {
+      file = new RandomAccessFile(f, "rw");
+      channel = file.getChannel();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error in loading mapped page file.", e);
+    }
+  }
+
+  /**
+   * Get the buffer containing a page.
+   * 
+   * @param pageID Page id
+   * @return Mapped segment
+   */
+  private ByteBuffer getSegment(int pageID) {
+    final int seg = pageID / pagesPerSegment;
+    final int needed = segmentOffset(pageID) + pageSize;
+    final MappedByteBuffer[] segs = segments;
+    if(seg < segs.length) {
+      MappedByteBuffer buf = segs[seg];
+      if(buf != null && buf.capacity() >= needed) {
+        return buf;
+      }
+    }
+    return mapSegment(seg, needed);
+  }
+
+  /**
+   * Map (or grow) a segment of the file.
+   * 
+   * @param seg Segment number
+   * @param needed Number of bytes of the segment needed
+   * @return Mapped segment
+   */
+  private synchronized ByteBuffer mapSegment(int seg, int needed) {
+    MappedByteBuffer[] segs = segments;
+    MappedByteBuffer buf = seg < segs.length ? segs[seg] : null;
+    if(buf != null && buf.capacity() >= needed) {
+      return buf; // Mapped concurrently.
+    }
+    // Grow geometrically, up to the full segment size.
+    final int seglen = pagesPerSegment * pageSize;
+    final int len = Math.min(seglen, Math.max(needed, buf != null ? buf.capacity() << 1 : MIN_MAPPED_PAGES * pageSize));
+    final long offset = (long) header.getReservedPages() * pageSize + (long) seg * seglen;
+    try {
+      // Previous, smaller mappings remain valid for concurrent readers.
+      buf = channel.map(FileChannel.MapMode.READ_WRITE, offset, len);
+    }
+    catch(IOException e) {
+      throw new AbortException("Could not map page file segment " + seg, e);
+    }
+    segs = Arrays.copyOf(segs, Math.max(segs.length, seg + 1));
+    segs[seg] = buf;
+    segments = segs;
+    return buf;
+  }
+
+  /**
+   * Offset of a page within its segment.
+   * 
+   * @param pageID Page id
+   * @return Offset
+   */
+  private int segmentOffset(int pageID) {
+    return (pageID % pagesPerSegment) * pageSize;
+  }
+
+  @Override
+  public P readPage(int pageID) {
+    countRead();
+    final int off = segmentOffset(pageID);
+    PageInput in = new PageInput(getSegment(pageID), off, off + pageSize);
+    try {
+      int type = in.readInt();
+      if(type == EMPTY_PAGE) {
+        return null;
+      }
+      if(type != FILLED_PAGE) {
+        throw new AbortException("Unknown page type: " + type + " in page " + pageID);
+      }
+      P page = pageconstructor.newInstance();
+      page.readExternal(in);
+      return page;
+    }
+    catch(ReflectiveOperationException e) {
+      throw new AbortException("Error instanciating an index page", e);
+    }
+    catch(IOException e) {
+      throw new AbortException("IO Error reading page " + pageID, e);
+    }
+  }
+
+  @Override
+  public void deletePage(int pageID) {
+    super.deletePage(pageID);
+    countWrite();
+    getSegment(pageID).putInt(segmentOffset(pageID), EMPTY_PAGE);
+  }
+
+  @Override
+  public void writePage(int pageID, P page) {
+    countWrite();
+    final int off = segmentOffset(pageID);
+    PageOutput out = new PageOutput(getSegment(pageID), off, off + pageSize);
+    try {
+      out.writeInt(FILLED_PAGE);
+      page.writeExternal(out);
+    }
+    catch(IOException e) {
+      throw new AbortException("Error writing page " + pageID + ": " + e.getMessage(), e);
+    }
+    page.setDirty(false);
+  }
+
+  /**
+   * Closes this file, keeping its pages.
+   */
+  @Override
+  public void close() {
+    try {
+      synchronized(this) {
+        for(MappedByteBuffer buf : segments) {
+          if(buf != null) {
+            buf.force();
+          }
+        }
+        segments = new MappedByteBuffer[0];
+      }
+      // Note: unlike super.close(), we do not clear the file, so it can be
+      // reopened later.
+      if(!emptyPages.isEmpty() && header instanceof TreeIndexHeader) {
+        // write the list of empty pages to the end of the file
+        ((TreeIndexHeader) header).writeEmptyPages(emptyPages, file);
+      }
+      if(header instanceof TreeIndexHeader) {
+        ((TreeIndexHeader) header).setLargestPageID(nextPageID);
+      }
+      header.writeHeader(file);
+      file.close();
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error closing page file.", e);
+    }
+  }
+
+  /**
+   * Clears this PageFile.
+   */
+  @Override
+  public void clear() {
+    try {
+      synchronized(this) {
+        segments = new MappedByteBuffer[0];
+      }
+      file.setLength(header.size());
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error clearing page file.", e);
+    }
+  }
+
+  /**
+   * Get the header of this page file.
+   * 
+   * @return the header used by this page file
+   */
+  public PageHeader getHeader() {
+    return header;
+  }
+
+  @Override
+  public void setNextPageID(int next_page_id) {
+    this.nextPageID = next_page_id;
+    while(!emptyPages.isEmpty() && emptyPages.peek() >= this.nextPageID) {
+      emptyPages.pop();
+    }
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    this.header = header;
+    this.pagesPerSegment = Math.max(1, SEGMENT_SIZE / pageSize);
+    try {
+      if(existed) {
+        LOG.debug("Initializing from an existing page file.");
+        header.readHeader(file);
+        if(header.getPageSize() != pageSize) {
+          throw new AbortException("Page size of existing page file does not match: " + header.getPageSize() + " != " + pageSize);
+        }
+        if(header instanceof TreeIndexHeader) {
+          TreeIndexHeader tiHeader = (TreeIndexHeader) header;
+          nextPageID = tiHeader.getLargestPageID();
+          try {
+            emptyPages = tiHeader.readEmptyPages(file);
+          }
+          catch(ClassNotFoundException e) {
+            throw new AbortException("ClassNotFoundException occurred when reading empty pages.", e);
+          }
+        }
+        else { // must scan complete file
+          final long base = (long) header.getReservedPages() * pageSize;
+          final int numpages = (int) ((file.length() - base) / pageSize);
+          for(int i = 0; i < numpages; i++) {
+            int type = getSegment(i).getInt(segmentOffset(i));
+            if(type == EMPTY_PAGE) {
+              emptyPages.push(i);
+            }
+            else if(type == FILLED_PAGE) {
+              nextPageID = i + 1;
+            }
+            else {
+              throw new AbortException("Unknown page type: " + type);
+            }
+          }
+          // Drop trailing empty pages, e.g. from the mapping slack.
+          setNextPageID(nextPageID);
+        }
+      }
+      else {
+        LOG.debug("Initializing with a new page file.");
+        header.writeHeader(file);
+      }
+    }
+    catch(IOException e) {
+      throw new AbortException("IO error initializing page file.", e);
+    }
+    return existed;
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+
+  /**
+   * Object input reading primitive values directly from a page in a buffer,
+   * using absolute positions only (to not modify the buffer state).
+   * 
+   * Objects are read from a length-prefixed Java serialization block; this is
+   * only used by some entries with nested objects, and is slow.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class PageInput implements ObjectInput {
+    /**
+     * Buffer to read from.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Current position and end position.
+     */
+    private int pos, end;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Buffer
+     * @param pos Start position
+     * @param end End position
+     */
+    PageInput(ByteBuffer buf, int pos, int end) {
+      this.buf = buf;
+      this.pos = pos;
+      this.end = end;
+    }
+
+    /**
+     * Advance the position.
+     * 
+     * @param len Number of bytes to consume
+     * @return Previous position
+     * @throws EOFException When reading beyond the page.
+     */
+    private int advance(int len) throws EOFException {
+      final int p = pos;
+      if(p + len > end) {
+        throw new EOFException("Read beyond end of page.");
+      }
+      pos += len;
+      return p;
+    }
+
+    @Override
+    public void readFully(byte[] b) throws IOException {
+      readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(byte[] b, int off, int len) throws IOException {
+      int p = advance(len);
+      for(int i = 0; i < len; i++) {
+        b[off + i] = buf.get(p + i);
+      }
+    }
+
+    @Override
+    public int skipBytes(int n) {
+      n = Math.max(0, Math.min(n, end - pos));
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+      return buf.get(advance(1)) != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+      return buf.get(advance(1));
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+      return buf.get(advance(1)) & 0xFF;
+    }
+
+    @Override
+    public short readShort() throws IOException {
+      return buf.getShort(advance(2));
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+      return buf.getShort(advance(2)) & 0xFFFF;
+    }
+
+    @Override
+    public char readChar() throws IOException {
+      return buf.getChar(advance(2));
+    }
+
+    @Override
+    public int readInt() throws IOException {
+      return buf.getInt(advance(4));
+    }
+
+    @Override
+    public long readLong() throws IOException {
+      return buf.getLong(advance(8));
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+      return buf.getFloat(advance(4));
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+      return buf.getDouble(advance(8));
+    }
+
+    @Override
+    public String readLine() throws IOException {
+      StringBuilder b = new StringBuilder();
+      while(pos < end) {
+        char c = (char) readUnsignedByte();
+        if(c == '\n') {
+          break;
+        }
+        if(c != '\r') {
+          b.append(c);
+        }
+      }
+      return b.toString();
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+      final int len = readInt();
+      char[] chars = new char[len];
+      for(int i = 0; i < len; i++) {
+        chars[i] = readChar();
+      }
+      return new String(chars);
+    }
+
+    @Override
+    public Object readObject() throws ClassNotFoundException, IOException {
+      byte[] bytes = new byte[readInt()];
+      readFully(bytes);
+      try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+        return ois.readObject();
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      return pos < end ? readUnsignedByte() : -1;
+    }
+
+    @Override
+    public int read(byte[] b) throws IOException {
+      return read(b, 0, b.length);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if(pos >= end) {
+        return -1;
+      }
+      len = Math.min(len, end - pos);
+      readFully(b, off, len);
+      return len;
+    }
+
+    @Override
+    public long skip(long n) {
+      return skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public int available() {
+      return end - pos;
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+
+  /**
+   * Object output writing primitive values directly into a page in a buffer,
+   * using absolute positions only.
+   * 
+   * Objects are written as length-prefixed Java serialization block; this is
+   * only used by some entries with nested objects, and is slow.
+   * 
+   * @author Erich Schubert
+   * 
+   * @apiviz.exclude
+   */
+  private static class PageOutput implements ObjectOutput {
+    /**
+     * Buffer to write to.
+     */
+    private final ByteBuffer buf;
+
+    /**
+     * Current position and end position.
+     */
+    private int pos, end;
+
+    /**
+     * Constructor.
+     * 
+     * @param buf Buffer
+     * @param pos Start position
+     * @param end End position
+     */
+    PageOutput(ByteBuffer buf, int pos, int end) {
+      this.buf = buf;
+      this.pos = pos;
+      this.end = end;
+    }
+
+    /**
+     * Advance the position.
+     * 
+     * @param len Number of bytes to produce
+     * @return Previous position
+     * @throws IOException When the page size is exceeded.
+     */
+    private int advance(int len) throws IOException {
+      final int p = pos;
+      if(p + len > end) {
+        throw new IOException("Page is larger than the page size.");
+      }
+      pos += len;
+      return p;
+    }
+
+    @Override
+    public void writeBoolean(boolean v) throws IOException {
+      buf.put(advance(1), (byte) (v ? 1 : 0));
+    }
+
+    @Override
+    public void writeByte(int v) throws IOException {
+      buf.put(advance(1), (byte) v);
+    }
+
+    @Override
+    public void writeShort(int v) throws IOException {
+      buf.putShort(advance(2), (short) v);
+    }
+
+    @Override
+    public void writeChar(int v) throws IOException {
+      buf.putChar(advance(2), (char) v);
+    }
+
+    @Override
+    public void writeInt(int v) throws IOException {
+      buf.putInt(advance(4), v);
+    }
+
+    @Override
+    public void writeLong(long v) throws IOException {
+      buf.putLong(advance(8), v);
+    }
+
+    @Override
+    public void writeFloat(float v) throws IOException {
+      buf.putFloat(advance(4), v);
+    }
+
+    @Override
+    public void writeDouble(double v) throws IOException {
+      buf.putDouble(advance(8), v);
+    }
+
+    @Override
+    public void writeBytes(String s) throws IOException {
+      final int len = s.length();
+      int p = advance(len);
+      for(int i = 0; i < len; i++) {
+        buf.put(p + i, (byte) s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeChars(String s) throws IOException {
+      final int len = s.length();
+      int p = advance(len << 1);
+      for(int i = 0; i < len; i++) {
+        buf.putChar(p + (i << 1), s.charAt(i));
+      }
+    }
+
+    @Override
+    public void writeUTF(String s) throws IOException {
+      writeInt(s.length());
+      writeChars(s);
+    }
+
+    @Override
+    public void writeObject(Object obj) throws IOException {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+        oos.writeObject(obj);
+      }
+      byte[] bytes = baos.toByteArray();
+      writeInt(bytes.length);
+      write(bytes);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      writeByte(b);
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+      write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      int p = advance(len);
+      for(int i = 0; i < len; i++) {
+        buf.put(p + i, b[off + i]);
+      }
+    }
+
+    @Override
+    public void flush() {
+      // Nothing to do.
+    }
+
+    @Override
+    public void close() {
+      // Nothing to do.
+    }
+  }
+}
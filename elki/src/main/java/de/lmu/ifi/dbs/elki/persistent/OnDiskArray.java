@@ -40,13 +40,15 @@ import de.lmu.ifi.dbs.elki.utilities.io.ByteArrayUtil;
  * structures. The file format is designed to have a fixed-size header followed
  * by the actual data.
  * 
+ * The data is mapped into memory in segments of up to 1 GB, so the file size
+ * is not limited by the maximum size of a single {@link MappedByteBuffer}.
+ * Records never cross segment boundaries.
+ * 
  * @author Erich Schubert
  * @since 0.2
  * 
  * @apiviz.composedOf RandomAccessFile
  */
-// TODO: ensure file doesn't become to big - check for overflows in recordsize *
-// numrecs + headersize
 public class OnDiskArray implements AutoCloseable {
   /**
    * Serial version.
@@ -55,7 +57,7 @@ public class OnDiskArray implements AutoCloseable {
    * incompatible way: This will modify the file magic, and thus prevent
    * applications from reading incompatible files.
    */
-  private static final long serialVersionUID = 7586497243452875056L;
+  private static final long serialVersionUID = 7586497243452875057L;
 
   /**
    * Magic number used to identify files.
@@ -63,8 +65,8 @@ public class OnDiskArray implements AutoCloseable {
   protected int magic;
 
   /**
-   * Size of the header in the file. Note that the internal header is four
-   * integers already.
+   * Size of the header in the file. Note that the internal header is three
+   * integers and one long already.
    */
   private int headersize;
 
@@ -76,7 +78,7 @@ public class OnDiskArray implements AutoCloseable {
   /**
    * Number of records in the file.
    */
-  private int numrecs;
+  private long numrecs;
 
   /**
    * File name.
@@ -99,14 +101,24 @@ public class OnDiskArray implements AutoCloseable {
   private boolean writable;
 
   /**
-   * The memory mapped buffer.
+   * The memory mapped buffers, one per segment.
+   */
+  private MappedByteBuffer[] maps;
+
+  /**
+   * Number of records per segment.
+   */
+  private int segrecs;
+
+  /**
+   * Maximum size of a mapped segment.
    */
-  private MappedByteBuffer map;
+  private static final int MAX_SEGMENT_SIZE = 1 << 30;
 
   /**
    * Size of the classes header size.
    */
-  private static final int INTERNAL_HEADER_SIZE = 4 * ByteArrayUtil.SIZE_INT;
+  private static final int INTERNAL_HEADER_SIZE = 3 * ByteArrayUtil.SIZE_INT + ByteArrayUtil.SIZE_LONG;
 
   /**
    * Position of file size (in records).
@@ -123,7 +135,7 @@ public class OnDiskArray implements AutoCloseable {
    * @param initialsize Initial file size (in records)
    * @throws IOException on IO errors
    */
-  public OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, int initialsize) throws IOException {
+  public OnDiskArray(File filename, int magicseed, int extraheadersize, int recordsize, long initialsize) throws IOException {
     this.magic = mixMagic((int) serialVersionUID, magicseed);
     this.headersize = extraheadersize + INTERNAL_HEADER_SIZE;
     this.recordsize = recordsize;
@@ -155,7 +167,7 @@ public class OnDiskArray implements AutoCloseable {
       // TODO: more appropriate exception class?
       throw new IOException("File position doesn't match when writing file size.");
     }
-    file.writeInt(initialsize);
+    file.writeLong(initialsize);
 
     // we should have written the complete internal header now.
     if (file.getFilePointer() != INTERNAL_HEADER_SIZE) {
@@ -235,12 +247,29 @@ public class OnDiskArray implements AutoCloseable {
    * @throws IOException on mapping error.
    */
   private synchronized void mapArray() throws IOException {
-    if (map != null) {
-      ByteArrayUtil.unmapByteBuffer(map);
-      map = null;
-    }
+    unmapArray();
     MapMode mode = writable ? MapMode.READ_WRITE : MapMode.READ_ONLY;
-    map = file.getChannel().map(mode, headersize, recordsize * numrecs);
+    segrecs = Math.max(1, MAX_SEGMENT_SIZE / Math.max(1, recordsize));
+    final int numseg = (int) ((numrecs + segrecs - 1) / segrecs);
+    MappedByteBuffer[] newmaps = new MappedByteBuffer[numseg];
+    for (int i = 0; i < numseg; i++) {
+      final long start = i * (long) segrecs;
+      final long len = Math.min(segrecs, numrecs - start) * recordsize;
+      newmaps[i] = file.getChannel().map(mode, indexToFileposition(start), len);
+    }
+    maps = newmaps;
+  }
+
+  /**
+   * Release the memory mapped segments.
+   */
+  private void unmapArray() {
+    if (maps != null) {
+      for (MappedByteBuffer map : maps) {
+        ByteArrayUtil.unmapByteBuffer(map);
+      }
+      maps = null;
+    }
   }
 
   /**
@@ -280,7 +309,7 @@ public class OnDiskArray implements AutoCloseable {
     if (file.getFilePointer() != HEADER_POS_SIZE) {
       throw new IOException("Incorrect file position when reading header.");
     }
-    this.numrecs = file.readInt();
+    this.numrecs = file.readLong();
     if (numrecs < 0 || file.length() != indexToFileposition(numrecs)) {
       throw new IOException("File size and number of records do not agree.");
     }
@@ -324,14 +353,14 @@ public class OnDiskArray implements AutoCloseable {
    * @param newsize New file size.
    * @throws IOException on IO errors
    */
-  public synchronized void resizeFile(int newsize) throws IOException {
+  public synchronized void resizeFile(long newsize) throws IOException {
     if (!writable) {
       throw new IOException("File is not writeable!");
     }
     // update the number of records
     this.numrecs = newsize;
     file.seek(HEADER_POS_SIZE);
-    file.writeInt(numrecs);
+    file.writeLong(numrecs);
 
     // resize file
     file.setLength(indexToFileposition(numrecs));
@@ -345,16 +374,87 @@ public class OnDiskArray implements AutoCloseable {
    * @return Byte buffer for the record
    * @throws IOException on IO errors
    */
-  public synchronized ByteBuffer getRecordBuffer(int index) throws IOException {
+  public synchronized ByteBuffer getRecordBuffer(long index) throws IOException {
     if (index < 0 || index >= numrecs) {
       throw new IOException("Access beyond end of file.");
     }
-    // Adjust buffer view
-    synchronized (map) {
-      map.limit(recordsize * (index + 1));
-      map.position(recordsize * index);
-      return map.slice();
-    }
+    // Adjust buffer view, on a duplicate to not affect concurrent readers.
+    ByteBuffer map = maps[(int) (index / segrecs)].duplicate();
+    final int pos = (int) (index % segrecs) * recordsize;
+    map.limit(pos + recordsize);
+    map.position(pos);
+    return map.slice();
+  }
+
+  /**
+   * Read a double value stored at the beginning of a record.
+   * 
+   * This uses absolute buffer access, and does not synchronize: it may be used
+   * concurrently, but not while the file is being resized.
+   * 
+   * @param index Record index
+   * @return Value
+   */
+  public double getDouble(long index) {
+    return maps[(int) (index / segrecs)].getDouble((int) (index % segrecs) * recordsize);
+  }
+
+  /**
+   * Write a double value at the beginning of a record.
+   * 
+   * This uses absolute buffer access, and does not synchronize: it may be used
+   * concurrently for different records, but not while the file is being
+   * resized.
+   * 
+   * @param index Record index
+   * @param value Value to store
+   */
+  public void putDouble(long index, double value) {
+    maps[(int) (index / segrecs)].putDouble((int) (index % segrecs) * recordsize, value);
+  }
+
+  /**
+   * Read a float value stored at the beginning of a record.
+   * 
+   * @param index Record index
+   * @return Value
+   * @see #getDouble(long)
+   */
+  public float getFloat(long index) {
+    return maps[(int) (index / segrecs)].getFloat((int) (index % segrecs) * recordsize);
+  }
+
+  /**
+   * Write a float value at the beginning of a record.
+   * 
+   * @param index Record index
+   * @param value Value to store
+   * @see #putDouble(long, double)
+   */
+  public void putFloat(long index, float value) {
+    maps[(int) (index / segrecs)].putFloat((int) (index % segrecs) * recordsize, value);
+  }
+
+  /**
+   * Read a short value stored at the beginning of a record.
+   * 
+   * @param index Record index
+   * @return Value
+   * @see #getDouble(long)
+   */
+  public short getShort(long index) {
+    return maps[(int) (index / segrecs)].getShort((int) (index % segrecs) * recordsize);
+  }
+
+  /**
+   * Write a short value at the beginning of a record.
+   * 
+   * @param index Record index
+   * @param value Value to store
+   * @see #putDouble(long, double)
+   */
+  public void putShort(long index, short value) {
+    maps[(int) (index / segrecs)].putShort((int) (index % segrecs) * recordsize, value);
   }
 
   /**
@@ -413,10 +513,7 @@ public class OnDiskArray implements AutoCloseable {
    */
   public synchronized void close() throws IOException {
     writable = false;
-    if (map != null) {
-      ByteArrayUtil.unmapByteBuffer(map);
-      map = null;
-    }
+    unmapArray();
     if (lock != null) {
       lock.release();
       lock = null;
@@ -429,7 +526,7 @@ public class OnDiskArray implements AutoCloseable {
    * 
    * @return Number of records in the file.
    */
-  public int getNumRecords() {
+  public long getNumRecords() {
     return numrecs;
   }
 
@@ -439,7 +536,7 @@ public class OnDiskArray implements AutoCloseable {
    * @param size Size
    * @throws IOException
    */
-  public void ensureSize(int size) throws IOException {
+  public void ensureSize(long size) throws IOException {
     if (size > getNumRecords()) {
       resizeFile(size);
     }
@@ -31,6 +31,9 @@ import java.nio.ByteBuffer;
  * Class representing an upper triangle matrix backed by an on-disk array of
  * O((n+1)*n/2) size
  * 
+ * Offsets are computed using long arithmetic, so the matrix may have more than
+ * 2^31 entries (e.g. 200000 objects), as long as the file system permits.
+ * 
  * @apiviz.composedOf OnDiskArray
  * 
  * @author Erich Schubert
@@ -87,9 +90,6 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public OnDiskUpperTriangleMatrix(File filename, int magicseed, int extraheadersize, int recordsize, int matrixsize) throws IOException {
-    if(matrixsize >= 0xFFFF) {
-      throw new RuntimeException("Matrix size is too big and will overflow the integer datatype.");
-    }
     this.matrixsize = matrixsize;
     array = new OnDiskArray(filename, OnDiskArray.mixMagic((int) serialVersionUID, magicseed), extraheadersize + TRIANGLE_HEADER_SIZE, recordsize, arraysize(matrixsize));
     ByteBuffer header = array.getExtraHeader();
@@ -103,9 +103,6 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @throws IOException on IO errors
    */
   public synchronized void resizeMatrix(int newsize) throws IOException {
-    if(newsize >= 0xFFFF) {
-      throw new RuntimeException("Matrix size is too big and will overflow the integer datatype.");
-    }
     if(!array.isWritable()) {
       throw new IOException("Can't resize a read-only array.");
     }
@@ -121,8 +118,8 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @param matrixsize size of the matrix
    * @return size of the array
    */
-  private static int arraysize(int matrixsize) {
-    return (matrixsize * (matrixsize + 1)) >> 1;
+  public static long arraysize(int matrixsize) {
+    return (matrixsize * (matrixsize + 1L)) >>> 1;
   }
 
   /**
@@ -132,11 +129,11 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
    * @param y Second coordinate
    * @return Linear offset
    */
-  private int computeOffset(int x, int y) {
+  private static long computeOffset(int x, int y) {
     if(y > x) {
       return computeOffset(y, x);
     }
-    return ((x * (x + 1)) >> 1) + y;
+    return ((x * (x + 1L)) >>> 1) + y;
   }
 
   /**
@@ -154,6 +151,81 @@ public class OnDiskUpperTriangleMatrix implements AutoCloseable {
     return array.getRecordBuffer(computeOffset(x, y));
   }
   
+  /**
+   * Read a double value stored at the beginning of a record.
+   * 
+   * Unlike {@link #getRecordBuffer}, this method is not synchronized and does
+   * not perform range checks: it may be used concurrently, but not while the
+   * matrix is being resized.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @return Value
+   */
+  public double getDouble(int x, int y) {
+    return array.getDouble(computeOffset(x, y));
+  }
+
+  /**
+   * Write a double value at the beginning of a record.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @param value Value to store
+   * @see #getDouble(int, int)
+   */
+  public void putDouble(int x, int y, double value) {
+    array.putDouble(computeOffset(x, y), value);
+  }
+
+  /**
+   * Read a float value stored at the beginning of a record.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @return Value
+   * @see #getDouble(int, int)
+   */
+  public float getFloat(int x, int y) {
+    return array.getFloat(computeOffset(x, y));
+  }
+
+  /**
+   * Write a float value at the beginning of a record.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @param value Value to store
+   * @see #getDouble(int, int)
+   */
+  public void putFloat(int x, int y, float value) {
+    array.putFloat(computeOffset(x, y), value);
+  }
+
+  /**
+   * Read a short value stored at the beginning of a record.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @return Value
+   * @see #getDouble(int, int)
+   */
+  public short getShort(int x, int y) {
+    return array.getShort(computeOffset(x, y));
+  }
+
+  /**
+   * Write a short value at the beginning of a record.
+   * 
+   * @param x First coordinate
+   * @param y Second coordinate
+   * @param value Value to store
+   * @see #getDouble(int, int)
+   */
+  public void putShort(int x, int y, short value) {
+    array.putShort(computeOffset(x, y), value);
+  }
+
   /**
    * Close the matrix file.
    * 
@@ -54,6 +54,9 @@ public interface PageFile<P extends Page> {
   /**
    * Reads the page with the given id from this file.
    * 
+   * Implementations must allow concurrent calls of this method (but not
+   * concurrent with writes), as batch queries may read pages in parallel.
+   * 
    * @param pageID the id of the page to be returned
    * @return the page with the given pageId
    */
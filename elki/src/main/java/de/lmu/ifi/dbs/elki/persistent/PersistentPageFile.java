@@ -30,6 +30,8 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import de.lmu.ifi.dbs.elki.index.tree.TreeIndexHeader;
 import de.lmu.ifi.dbs.elki.logging.Logging;
@@ -109,6 +111,8 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
   /**
    * Reads the page with the given id from this file.
    * 
+   * This method may be called concurrently.
+   * 
    * @param pageID the id of the page to be returned
    * @return the page with the given pageId
    */
@@ -118,8 +122,13 @@ public class PersistentPageFile<P extends ExternalizablePage> extends AbstractSt
       countRead();
       long offset = ((long) (header.getReservedPages() + pageID)) * (long) pageSize;
       byte[] buffer = new byte[pageSize];
-      file.seek(offset);
-      file.read(buffer);
+      // Positional reads do not use the shared file pointer, and thus are safe
+      // for concurrent readers, e.g. parallel batch queries.
+      ByteBuffer buf = ByteBuffer.wrap(buffer);
+      final FileChannel channel = file.getChannel();
+      while(buf.hasRemaining() && channel.read(buf, offset + buf.position()) >= 0) {
+        // Repeat until the page is complete, or the end of file is reached.
+      }
       return byteArrayToPage(buffer);
     }
     catch(IOException e) {
@@ -0,0 +1,410 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import de.lmu.ifi.dbs.elki.index.tree.Node;
+import de.lmu.ifi.dbs.elki.logging.Logging;
+import de.lmu.ifi.dbs.elki.logging.statistics.AtomicLongCounter;
+import de.lmu.ifi.dbs.elki.logging.statistics.Counter;
+import de.lmu.ifi.dbs.elki.logging.statistics.LongStatistic;
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+import de.lmu.ifi.dbs.elki.utilities.exceptions.AbortException;
+
+/**
+ * Scan-resistant page cache using the 2Q replacement strategy.
+ * 
+ * Pages seen for the first time enter a small FIFO queue (A1in). Only pages
+ * that are accessed again after they have left this queue (which is detected
+ * using a queue of recently evicted page ids, A1out) are admitted to the main
+ * LRU queue (Am). Therefore, a single large scan (e.g. a large range query)
+ * cannot flush the frequently used pages from the cache, as it happens with
+ * {@link LRUCache}.
+ * 
+ * Optionally, directory pages of index trees can be pinned (up to half of the
+ * cache capacity), so that the upper levels of the tree always stay resident.
+ * 
+ * Concurrent reads are safe: cache hits only hold the cache lock briefly, and
+ * misses read from the backing file without blocking other reads. Writes must
+ * not run concurrently with reads.
+ * 
+ * Reference:
+ * <p>
+ * T. Johnson, D. Shasha<br />
+ * 2Q: A Low Overhead High Performance Buffer Management Replacement
+ * Algorithm<br />
+ * In Proc. 20th Int. Conf. on Very Large Data Bases (VLDB 1994)
+ * </p>
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ * 
+ * @apiviz.uses PageFile
+ * 
+ * @param <P> Page type
+ */
+@Reference(authors = "T. Johnson, D. Shasha", //
+title = "2Q: A Low Overhead High Performance Buffer Management Replacement Algorithm", //
+booktitle = "Proc. 20th Int. Conf. on Very Large Data Bases (VLDB 1994)")
+public class TwoQueueCache<P extends Page> extends AbstractPageFile<P> {
+  /**
+   * Our class logger.
+   */
+  private static final Logging LOG = Logging.getLogger(TwoQueueCache.class);
+
+  /**
+   * Cache size in bytes.
+   */
+  protected int cacheSizeBytes;
+
+  /**
+   * The maximum number of pages in this cache.
+   */
+  protected int cacheSize;
+
+  /**
+   * Maximum size of the A1in queue.
+   */
+  private int maxIn;
+
+  /**
+   * Maximum size of the A1out queue.
+   */
+  private int maxOut;
+
+  /**
+   * Pin directory pages.
+   */
+  protected boolean pinDirectory;
+
+  /**
+   * Main LRU queue, in access order.
+   */
+  private LinkedHashMap<Integer, P> am;
+
+  /**
+   * FIFO queue of pages seen once.
+   */
+  private LinkedHashMap<Integer, P> a1in;
+
+  /**
+   * FIFO queue of recently evicted page ids.
+   */
+  private LinkedHashSet<Integer> a1out;
+
+  /**
+   * Pinned pages.
+   */
+  private HashMap<Integer, P> pinned;
+
+  /**
+   * The underlying file of this cache. If an object is dropped it is written to
+   * the file.
+   */
+  protected PageFile<P> file;
+
+  /**
+   * Statistics: cache hits, misses, and evictions.
+   */
+  private Counter hits, misses, evictions;
+
+  /**
+   * Constructor.
+   * 
+   * @param cacheSizeBytes the maximum number of bytes for this cache
+   * @param file the underlying file of this cache, if a page is dropped it is
+   *        written to the file
+   * @param pinDirectory Pin directory pages of index trees
+   */
+  public TwoQueueCache(int cacheSizeBytes, PageFile<P> file, boolean pinDirectory) {
+    super();
+    this.file = file;
+    this.cacheSizeBytes = cacheSizeBytes;
+    this.pinDirectory = pinDirectory;
+    if(LOG.isStatistics()) {
+      final String prefix = this.getClass().getName();
+      hits = new AtomicLongCounter(prefix + ".hits");
+      misses = new AtomicLongCounter(prefix + ".misses");
+      evictions = new AtomicLongCounter(prefix + ".evictions");
+    }
+  }
+
+  /**
+   * Retrieves a page from the cache, or from the underlying file.
+   * 
+   * @param pageID the id of the page to be returned
+   * @return the page associated to the id or null if no value with this key
+   *         exists
+   */
+  @Override
+  public P readPage(int pageID) {
+    synchronized(this) {
+      countRead();
+      P page = access(pageID);
+      if(page != null) {
+        if(hits != null) {
+          hits.increment();
+        }
+        return page;
+      }
+    }
+    // Read from the backing file, without holding the cache lock. Page files
+    // must support concurrent reads, so misses do not serialize either.
+    P page = file.readPage(pageID);
+    synchronized(this) {
+      if(misses != null) {
+        misses.increment();
+      }
+      if(page == null) {
+        return null;
+      }
+      // Another thread may have loaded the page concurrently.
+      P other = access(pageID);
+      if(other != null) {
+        return other;
+      }
+      admit(pageID, page);
+    }
+    return page;
+  }
+
+  @Override
+  public synchronized void writePage(int pageID, P page) {
+    countWrite();
+    page.setDirty(true);
+    if(pinned.containsKey(pageID)) {
+      pinned.put(pageID, page);
+    }
+    else if(am.containsKey(pageID)) {
+      am.put(pageID, page);
+    }
+    else if(a1in.containsKey(pageID)) {
+      a1in.put(pageID, page);
+    }
+    else {
+      admit(pageID, page);
+    }
+  }
+
+  @Override
+  public synchronized void deletePage(int pageID) {
+    countWrite();
+    pinned.remove(pageID);
+    am.remove(pageID);
+    a1in.remove(pageID);
+    a1out.remove(pageID);
+    file.deletePage(pageID);
+  }
+
+  /**
+   * Access a cached page, updating the recency information.
+   * 
+   * @param pageID Page id
+   * @return Page, or {@code null} if not cached.
+   */
+  private P access(int pageID) {
+    P page = pinned.get(pageID);
+    if(page != null) {
+      return page;
+    }
+    page = am.get(pageID); // Moves to the end of the LRU queue
+    if(page != null) {
+      return page;
+    }
+    return a1in.get(pageID); // Does not change the FIFO order
+  }
+
+  /**
+   * Admit a page that is not yet cached.
+   * 
+   * @param pageID Page id
+   * @param page Page
+   */
+  private void admit(int pageID, P page) {
+    if(pinDirectory && pinned.size() < (cacheSize >> 1) && isDirectoryPage(page)) {
+      pinned.put(pageID, page);
+      a1out.remove(pageID);
+    }
+    else if(a1out.remove(pageID)) {
+      am.put(pageID, page); // Re-referenced: hot page.
+    }
+    else {
+      a1in.put(pageID, page);
+    }
+    reclaim();
+  }
+
+  /**
+   * Test whether a page is a directory page of a tree.
+   * 
+   * @param page Page
+   * @return {@code true} for directory nodes.
+   */
+  private static boolean isDirectoryPage(Page page) {
+    return page instanceof Node && !((Node<?>) page).isLeaf();
+  }
+
+  /**
+   * Evict pages until the cache size is respected.
+   */
+  private void reclaim() {
+    while(pinned.size() + am.size() + a1in.size() > cacheSize) {
+      if(a1in.size() > maxIn || am.isEmpty()) {
+        Iterator<Map.Entry<Integer, P>> it = a1in.entrySet().iterator();
+        if(!it.hasNext()) {
+          break; // Only pinned pages left.
+        }
+        Map.Entry<Integer, P> eldest = it.next();
+        it.remove();
+        expirePage(eldest.getValue());
+        // Remember the page id, to detect re-references.
+        a1out.add(eldest.getKey());
+        if(a1out.size() > maxOut) {
+          Iterator<Integer> it2 = a1out.iterator();
+          it2.next();
+          it2.remove();
+        }
+      }
+      else {
+        Iterator<Map.Entry<Integer, P>> it = am.entrySet().iterator();
+        P eldest = it.next().getValue();
+        it.remove();
+        expirePage(eldest);
+      }
+      if(evictions != null) {
+        evictions.increment();
+      }
+    }
+  }
+
+  /**
+   * Write page through to disk.
+   * 
+   * @param page page
+   */
+  protected void expirePage(P page) {
+    if(LOG.isDebuggingFine()) {
+      LOG.debugFine("Write to backing:" + page.getPageID());
+    }
+    if(page.isDirty()) {
+      file.writePage(page);
+    }
+  }
+
+  @Override
+  public int setPageID(P page) {
+    return file.setPageID(page);
+  }
+
+  @Override
+  public int getNextPageID() {
+    return file.getNextPageID();
+  }
+
+  @Override
+  public void setNextPageID(int nextPageID) {
+    file.setNextPageID(nextPageID);
+  }
+
+  @Override
+  public int getPageSize() {
+    return file.getPageSize();
+  }
+
+  @Override
+  public boolean initialize(PageHeader header) {
+    boolean created = file.initialize(header);
+    // Compute the actual cache size.
+    this.cacheSize = cacheSizeBytes / header.getPageSize();
+    if(this.cacheSize <= 0) {
+      throw new AbortException("Invalid cache size: " + cacheSizeBytes + " / " + header.getPageSize() + " = " + cacheSize);
+    }
+    // Queue sizes recommended by Johnson and Shasha.
+    this.maxIn = Math.max(1, cacheSize >> 2);
+    this.maxOut = Math.max(1, cacheSize >> 1);
+    if(LOG.isDebugging()) {
+      LOG.debug("2Q cache size is " + cacheSize + " pages.");
+    }
+    this.am = new LinkedHashMap<>(16, 0.75f, true);
+    this.a1in = new LinkedHashMap<>();
+    this.a1out = new LinkedHashSet<>();
+    this.pinned = new HashMap<>();
+    return created;
+  }
+
+  @Override
+  public void close() {
+    flush();
+    file.close();
+  }
+
+  /**
+   * Flushes this caches by writing any entry to the underlying file.
+   */
+  public synchronized void flush() {
+    for(P page : pinned.values()) {
+      expirePage(page);
+    }
+    for(P page : am.values()) {
+      expirePage(page);
+    }
+    for(P page : a1in.values()) {
+      expirePage(page);
+    }
+    clear();
+  }
+
+  /**
+   * Clears this cache.
+   */
+  @Override
+  public synchronized void clear() {
+    pinned.clear();
+    am.clear();
+    a1in.clear();
+    a1out.clear();
+  }
+
+  @Override
+  public void logStatistics() {
+    super.logStatistics();
+    if(LOG.isStatistics()) {
+      LOG.statistics(hits);
+      LOG.statistics(misses);
+      LOG.statistics(evictions);
+      LOG.statistics(new LongStatistic(this.getClass().getName() + ".pinned", pinned.size()));
+    }
+    file.logStatistics();
+  }
+
+  @Override
+  protected Logging getLogger() {
+    return LOG;
+  }
+}
@@ -0,0 +1,159 @@
+package de.lmu.ifi.dbs.elki.utilities.datastructures.unionfind;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import de.lmu.ifi.dbs.elki.utilities.documentation.Reference;
+
+/**
+ * Lock-free union-find for a fixed range of primitive integers, that can be
+ * used by multiple threads concurrently.
+ *
+ * Unlike {@link WeightedQuickUnionInteger}, components are linked by index:
+ * the root with the larger index is attached to the root with the smaller
+ * index, using an atomic compare-and-set. As a side effect, the root of every
+ * component is always its smallest member. Paths are halved during
+ * {@link #find}, which is also done using compare-and-set, so that concurrent
+ * modifications are never lost.
+ *
+ * Reference:
+ * <p>
+ * R. J. Anderson, H. Woll<br />
+ * Wait-free parallel algorithms for the union-find problem<br />
+ * Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC)
+ * </p>
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+@Reference(authors = "R. J. Anderson, H. Woll", //
+title = "Wait-free parallel algorithms for the union-find problem", //
+booktitle = "Proc. 23rd Annual ACM Symposium on Theory of Computing (STOC)", //
+url = "http://dx.doi.org/10.1145/103418.103458")
+public class ConcurrentQuickUnionInteger {
+  /**
+   * Parent element
+   */
+  private final AtomicIntegerArray parent;
+
+  /**
+   * Constructor.
+   *
+   * @param size Number of elements
+   */
+  public ConcurrentQuickUnionInteger(int size) {
+    parent = new AtomicIntegerArray(size);
+    for(int i = 0; i < size; i++) {
+      parent.set(i, i);
+    }
+  }
+
+  /**
+   * Find the root of an object.
+   *
+   * @param cur Current entry
+   * @return Root entry
+   */
+  public int find(int cur) {
+    assert (cur >= 0 && cur < parent.length());
+    int p = parent.get(cur);
+    while(cur != p) {
+      final int gp = parent.get(p);
+      if(p != gp) {
+        parent.compareAndSet(cur, p, gp); // Path halving, may fail.
+      }
+      cur = gp;
+      p = parent.get(cur);
+    }
+    return cur;
+  }
+
+  /**
+   * Join the components of elements p and q.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return Component id.
+   */
+  public int union(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return first;
+      }
+      // Link the larger index to the smaller index:
+      if(first < second) {
+        final int tmp = first;
+        first = second;
+        second = tmp;
+      }
+      if(parent.compareAndSet(first, first, second)) {
+        return second;
+      }
+      // Someone else modified the root concurrently; retry.
+    }
+  }
+
+  /**
+   * Test if two components are connected.
+   *
+   * @param first First element
+   * @param second Second element
+   * @return {@code true} if they are in the same component.
+   */
+  public boolean isConnected(int first, int second) {
+    while(true) {
+      first = find(first);
+      second = find(second);
+      if(first == second) {
+        return true;
+      }
+      // Only answer negatively if no concurrent merge happened.
+      if(parent.get(first) == first) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Test whether an element currently is the root of its component.
+   *
+   * @param cur Element
+   * @return {@code true} if the element is a root.
+   */
+  public boolean isRoot(int cur) {
+    return parent.get(cur) == cur;
+  }
+
+  /**
+   * Number of indexes.
+   *
+   * @return Index number.
+   */
+  public int size() {
+    return parent.length();
+  }
+}
@@ -0,0 +1,111 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.em.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.em.EM;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.result.Result;
+import de.lmu.ifi.dbs.elki.result.ResultUtil;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full EM run, and compares the result with a clustering derived
+ * from the data set labels. This test ensures that EM's performance doesn't
+ * unexpectedly drop on this data set (and also ensures that the algorithms
+ * work, as a side effect).
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class ParallelEMTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run EM with fixed parameters and compare the result to a golden standard.
+   */
+  @Test
+  public void testParallelEMResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    ParallelEM<DoubleVector> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.96741048);
+    testClusterSizes(result, new int[] { 3, 5, 91, 98, 200, 313 });
+  }
+
+  /**
+   * Run EM with soft assignments, which must be probability distributions.
+   */
+  @Test
+  public void testParallelEMSoft() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.SEED_ID, 0);
+    params.addParameter(EM.Parameterizer.K_ID, 6);
+    params.addFlag(ParallelEM.Parameterizer.SOFT_ID);
+    ParallelEM<DoubleVector> em = ClassGenericsUtil.parameterizeOrAbort(ParallelEM.class, params);
+    testParameterizationOk(params);
+
+    // run EM on database
+    Clustering<?> result = em.run(db);
+    testFMeasure(db, result, 0.96741048);
+    Relation<double[]> soft = null;
+    for(Result r : ResultUtil.filterResults(result.getHierarchy(), result, Relation.class)) {
+      if(EM.SOFT_TYPE.equals(((Relation<?>) r).getDataTypeInformation())) {
+        @SuppressWarnings("unchecked")
+        Relation<double[]> rel = (Relation<double[]>) r;
+        soft = rel;
+      }
+    }
+    assertNotNull("No soft assignments.", soft);
+    for(DBIDIter it = soft.iterDBIDs(); it.valid(); it.advance()) {
+      double[] probs = soft.get(it);
+      assertEquals("Wrong number of probabilities.", 6, probs.length);
+      double sum = 0.;
+      for(double p : probs) {
+        sum += p;
+      }
+      assertEquals("Probabilities do not sum to 1.", 1., sum, 1e-10);
+    }
+  }
+}
@@ -23,13 +23,22 @@ package de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.parallel;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.clustering.DBSCAN;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.gdbscan.GeneralizedDBSCAN;
+import de.lmu.ifi.dbs.elki.data.Cluster;
 import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.model.CoreObjectsModel;
 import de.lmu.ifi.dbs.elki.data.model.Model;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
@@ -85,4 +94,48 @@ public class ParallelGeneralizedDBSCANTest extends AbstractSimpleAlgorithmTest {
     testFMeasure(db, result, 0.954382);
     testClusterSizes(result, new int[] { 11, 200, 203, 224 });
   }
-}
\ No newline at end of file
+
+  /**
+   * Compare the parallel result to the sequential Generalized DBSCAN, which
+   * must be identical including cluster order, border points and core points.
+   */
+  @Test
+  public void testSameAsSequential() {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    params.addFlag(GeneralizedDBSCAN.Parameterizer.COREMODEL_ID);
+    GeneralizedDBSCAN gdbscan = ClassGenericsUtil.parameterizeOrAbort(GeneralizedDBSCAN.class, params);
+    testParameterizationOk(params);
+    Clustering<Model> expected = gdbscan.run(db);
+
+    params = new ListParameterization();
+    params.addParameter(DBSCAN.Parameterizer.EPSILON_ID, 11.5);
+    params.addParameter(DBSCAN.Parameterizer.MINPTS_ID, 120);
+    params.addFlag(ParallelGeneralizedDBSCAN.Parameterizer.COREMODEL_ID);
+    ParallelGeneralizedDBSCAN dbscan = ClassGenericsUtil.parameterizeOrAbort(ParallelGeneralizedDBSCAN.class, params);
+    testParameterizationOk(params);
+
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      Clustering<Model> result = dbscan.run(db);
+      List<Cluster<Model>> ec = expected.getToplevelClusters(), rc = result.getToplevelClusters();
+      assertEquals("Number of clusters", ec.size(), rc.size());
+      for(int i = 0; i < ec.size(); i++) {
+        Cluster<Model> e = ec.get(i), r = rc.get(i);
+        assertEquals("Noise flag", e.isNoise(), r.isNoise());
+        assertEquals("Cluster size", e.size(), r.size());
+        assertEquals("Cluster members", e.size(), DBIDUtil.intersectionSize(e.getIDs(), r.getIDs()));
+        CoreObjectsModel em = (CoreObjectsModel) e.getModel(), rm = (CoreObjectsModel) r.getModel();
+        assertEquals("Core points", em.getCoreObjects().size(), rm.getCoreObjects().size());
+        assertEquals("Core points", em.getCoreObjects().size(), DBIDUtil.intersectionSize(em.getCoreObjects(), rm.getCoreObjects()));
+      }
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+}
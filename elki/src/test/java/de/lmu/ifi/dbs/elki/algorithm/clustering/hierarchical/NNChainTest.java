@@ -0,0 +1,130 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.hierarchical;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.datastore.DBIDDataStore;
+import de.lmu.ifi.dbs.elki.database.datastore.DoubleDataStore;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDVar;
+import de.lmu.ifi.dbs.elki.index.distancematrix.PrecomputedDistanceMatrix.Precision;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Perform agglomerative hierarchical clustering, using the nearest-neighbor
+ * chain algorithm, and compare the resulting hierarchy to the naive algorithm.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class NNChainTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Compare the single-link hierarchy to AGNES.
+   */
+  @Test
+  public void testSingleLink() {
+    testSameAsAGNES(SingleLinkageMethod.class, Precision.DOUBLE, 1e-10);
+  }
+
+  /**
+   * Compare the Ward hierarchy to AGNES.
+   */
+  @Test
+  public void testWard() {
+    testSameAsAGNES(WardLinkageMethod.class, Precision.DOUBLE, 1e-10);
+  }
+
+  /**
+   * Compare the group average hierarchy to AGNES.
+   */
+  @Test
+  public void testGroupAverage() {
+    testSameAsAGNES(GroupAverageLinkageMethod.class, Precision.DOUBLE, 1e-10);
+  }
+
+  /**
+   * Compare the complete-link hierarchy to AGNES.
+   */
+  @Test
+  public void testCompleteLink() {
+    testSameAsAGNES(CompleteLinkageMethod.class, Precision.DOUBLE, 1e-10);
+  }
+
+  /**
+   * Compare the Ward hierarchy to AGNES, using a float distance matrix.
+   */
+  @Test
+  public void testWardFloat() {
+    testSameAsAGNES(WardLinkageMethod.class, Precision.FLOAT, 1e-4);
+  }
+
+  /**
+   * Run AGNES and NNChain on the same data, and compare the pointer
+   * hierarchies.
+   *
+   * @param linkage Linkage method
+   * @param precision Precision of the NNChain distance matrix
+   * @param delta Tolerance for the merge distances (relative)
+   */
+  private void testSameAsAGNES(Class<?> linkage, Precision precision, double delta) {
+    Database db = makeSimpleDatabase(UNITTEST + "single-link-effect.ascii", 638);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(AGNES.Parameterizer.LINKAGE_ID, linkage);
+    AGNES<?> agnes = ClassGenericsUtil.parameterizeOrAbort(AGNES.class, params);
+    testParameterizationOk(params);
+
+    params = new ListParameterization();
+    params.addParameter(AGNES.Parameterizer.LINKAGE_ID, linkage);
+    params.addParameter(NNChain.Parameterizer.PRECISION_ID, precision);
+    NNChain<?> nnchain = ClassGenericsUtil.parameterizeOrAbort(NNChain.class, params);
+    testParameterizationOk(params);
+
+    PointerHierarchyRepresentationResult expected = agnes.run(db);
+    PointerHierarchyRepresentationResult actual = nnchain.run(db);
+
+    DBIDDataStore epi = expected.getParentStore(), api = actual.getParentStore();
+    DoubleDataStore elambda = expected.getParentDistanceStore(), alambda = actual.getParentDistanceStore();
+    DBIDVar ep = DBIDUtil.newVar(), ap = DBIDUtil.newVar();
+    int count = 0;
+    for(DBIDIter it = expected.getDBIDs().iter(); it.valid(); it.advance(), count++) {
+      epi.assignVar(it, ep);
+      api.assignVar(it, ap);
+      assertTrue("Parent differs for " + DBIDUtil.toString(it), DBIDUtil.equal(ep, ap));
+      final double e = elambda.doubleValue(it), a = alambda.doubleValue(it);
+      if(e != a) {
+        assertEquals("Merge distance differs for " + DBIDUtil.toString(it), e, a, delta * Math.abs(e));
+      }
+    }
+    assertEquals("Hierarchy sizes differ.", count, actual.getDBIDs().size());
+  }
+}
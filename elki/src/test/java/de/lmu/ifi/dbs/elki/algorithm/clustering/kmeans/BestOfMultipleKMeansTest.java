@@ -0,0 +1,237 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.quality.WithinClusterVarianceQualityMeasure;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.MeanModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.NumberVectorDistanceFunction;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Performs a full KMeans run, and compares the result with a clustering derived
+ * from the data set labels. This test ensures that KMeans's performance doesn't
+ * unexpectedly drop on this data set (and also ensures that the algorithms
+ * work, as a side effect).
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class BestOfMultipleKMeansTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run KMeans with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testBestOfMultipleKMeans() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    BestOfMultipleKMeans<DoubleVector, MeanModel> kmeans = makeAlgorithm();
+
+    // run KMeans on database
+    Clustering<MeanModel> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Running the trials in a single thread must yield the same result.
+   */
+  @Test
+  public void testSingleThreaded() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(1);
+    try {
+      BestOfMultipleKMeans<DoubleVector, MeanModel> kmeans = makeAlgorithm();
+      Clustering<MeanModel> result = kmeans.run(db);
+      testFMeasure(db, result, 0.998005);
+      testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+
+  /**
+   * Running twice with 4 threads must yield identical results, regardless of
+   * the order in which the trials are scheduled.
+   */
+  @Test
+  public void testDeterministic() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      for(int i = 0; i < 3; i++) {
+        assertSameClustering(makeAlgorithm(20).run(db), makeAlgorithm(20).run(db));
+      }
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+
+  /**
+   * Trials sharing an initializer instance must not run concurrently.
+   */
+  @Test
+  public void testSharedInitializer() {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      ExclusiveInitialMeans init = new ExclusiveInitialMeans();
+      makeSharedInitializer(init, 20).run(db);
+      assertFalse("Shared initializer was used concurrently.", init.concurrent);
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+
+  /**
+   * Compare two clusterings, cluster by cluster.
+   *
+   * @param first First clustering
+   * @param second Second clustering
+   */
+  private void assertSameClustering(Clustering<MeanModel> first, Clustering<MeanModel> second) {
+    List<Cluster<MeanModel>> fc = first.getToplevelClusters(), sc = second.getToplevelClusters();
+    assertEquals("Number of clusters differs.", fc.size(), sc.size());
+    for(int j = 0; j < fc.size(); j++) {
+      Cluster<MeanModel> f = fc.get(j), c = sc.get(j);
+      assertEquals("Cluster sizes differ.", f.size(), c.size());
+      assertEquals("Cluster assignments differ.", f.size(), DBIDUtil.intersectionSize(f.getIDs(), c.getIDs()));
+      assertArrayEquals("Means differ.", f.getModel().getMean(), c.getModel().getMean(), 0.);
+    }
+  }
+
+  /**
+   * Setup the algorithm, with one initializer instance shared by all trials.
+   *
+   * @param init Shared initializer
+   * @param k Number of clusters
+   * @return Algorithm
+   */
+  private BestOfMultipleKMeans<DoubleVector, MeanModel> makeSharedInitializer(ExclusiveInitialMeans init, int k) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, k);
+    params.addParameter(KMeans.INIT_ID, init);
+    params.addParameter(BestOfMultipleKMeans.Parameterizer.TRIALS_ID, 6);
+    params.addParameter(BestOfMultipleKMeans.Parameterizer.KMEANS_ID, KMeansLloyd.class);
+    params.addParameter(BestOfMultipleKMeans.Parameterizer.QUALITYMEASURE_ID, WithinClusterVarianceQualityMeasure.class);
+    BestOfMultipleKMeans<DoubleVector, MeanModel> kmeans = ClassGenericsUtil.parameterizeOrAbort(BestOfMultipleKMeans.class, params);
+    testParameterizationOk(params);
+    return kmeans;
+  }
+
+  /**
+   * Setup the algorithm.
+   *
+   * @return Algorithm
+   */
+  private BestOfMultipleKMeans<DoubleVector, MeanModel> makeAlgorithm() {
+    return makeAlgorithm(5);
+  }
+
+  /**
+   * Setup the algorithm.
+   *
+   * @param k Number of clusters
+   * @return Algorithm
+   */
+  private BestOfMultipleKMeans<DoubleVector, MeanModel> makeAlgorithm(int k) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, k);
+    params.addParameter(KMeans.SEED_ID, 7);
+    params.addParameter(BestOfMultipleKMeans.Parameterizer.TRIALS_ID, 6);
+    params.addParameter(BestOfMultipleKMeans.Parameterizer.KMEANS_ID, KMeansLloyd.class);
+    params.addParameter(BestOfMultipleKMeans.Parameterizer.QUALITYMEASURE_ID, WithinClusterVarianceQualityMeasure.class);
+    BestOfMultipleKMeans<DoubleVector, MeanModel> kmeans = ClassGenericsUtil.parameterizeOrAbort(BestOfMultipleKMeans.class, params);
+    testParameterizationOk(params);
+    return kmeans;
+  }
+
+  /**
+   * Initializer that records whether it was used by multiple threads at once.
+   *
+   * @author Erich Schubert
+   */
+  private static class ExclusiveInitialMeans extends RandomlyChosenInitialMeans<NumberVector> {
+    /**
+     * Number of active calls.
+     */
+    AtomicInteger active = new AtomicInteger();
+
+    /**
+     * Flag for concurrent use.
+     */
+    volatile boolean concurrent = false;
+
+    /**
+     * Constructor.
+     */
+    public ExclusiveInitialMeans() {
+      super(RandomFactory.get(7L));
+    }
+
+    @Override
+    public <T extends NumberVector> double[][] chooseInitialMeans(Database database, Relation<T> relation, int k, NumberVectorDistanceFunction<? super T> distanceFunction) {
+      if(active.incrementAndGet() > 1) {
+        concurrent = true;
+      }
+      try {
+        // Give concurrent trials a chance to overlap.
+        Thread.sleep(20);
+        return super.chooseInitialMeans(database, relation, k, distanceFunction);
+      }
+      catch(InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+      finally {
+        active.decrementAndGet();
+      }
+    }
+  }
+}
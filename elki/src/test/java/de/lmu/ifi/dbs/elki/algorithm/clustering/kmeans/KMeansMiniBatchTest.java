@@ -0,0 +1,123 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.trivial.ByLabelClustering;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.model.Model;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.datasource.filter.selection.ShuffleObjectsFilter;
+import de.lmu.ifi.dbs.elki.datasource.parser.NumberVectorLabelParser;
+import de.lmu.ifi.dbs.elki.math.linearalgebra.Centroid;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+import de.lmu.ifi.dbs.elki.utilities.random.RandomFactory;
+
+/**
+ * Regression test for mini-batch k-means.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class KMeansMiniBatchTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run KMeans with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testKMeansMiniBatch() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 2);
+    params.addParameter(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, 100);
+    params.addParameter(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0);
+    AbstractKMeans<DoubleVector, ?> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansMiniBatch.class, params);
+    testParameterizationOk(params);
+
+    // run KMeans on database
+    Clustering<?> result = kmeans.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Cluster the same data set as a stream. The initialization window covers
+   * only half of the stream, the remainder is processed in mini-batches. The
+   * file is sorted by cluster, so the stream is shuffled first.
+   */
+  @Test
+  public void testKMeansMiniBatchStream() throws Exception {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    Clustering<Model> truth = new ByLabelClustering().run(db);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    params.addParameter(KMeans.SEED_ID, 12);
+    params.addParameter(KMeansMiniBatch.Parameterizer.BATCHSIZE_ID, 100);
+    params.addParameter(KMeansMiniBatch.Parameterizer.SAMPLESIZE_ID, 50);
+    params.addParameter(KMeansMiniBatch.Parameterizer.RANDOM_ID, 0);
+    KMeansMiniBatch<DoubleVector> kmeans = ClassGenericsUtil.parameterizeOrAbort(KMeansMiniBatch.class, params);
+    testParameterizationOk(params);
+
+    NumberVectorLabelParser<DoubleVector> parser = new NumberVectorLabelParser<>(DoubleVector.FACTORY);
+    try (InputStream in = getClass().getResourceAsStream("/" + UNITTEST + "different-densities-2d-no-noise.ascii")) {
+      parser.initStream(in);
+      MultipleObjectsBundle bundle = new ShuffleObjectsFilter(RandomFactory.get(0L)).filter(parser.asMultipleObjectsBundle());
+      parser.cleanup();
+      double[][] means = kmeans.run(bundle.asStream());
+      assertEquals("Wrong number of means.", 5, means.length);
+      for(double[] mean : means) {
+        assertEquals("Wrong dimensionality.", 2, mean.length);
+      }
+      // Every true cluster center must have a nearby mean.
+      for(Cluster<Model> clus : truth.getAllClusters()) {
+        double[] center = Centroid.make(rel, clus.getIDs()).getArrayRef();
+        double best = Double.POSITIVE_INFINITY;
+        for(double[] mean : means) {
+          double dx = mean[0] - center[0], dy = mean[1] - center[1];
+          best = Math.min(best, Math.sqrt(dx * dx + dy * dy));
+        }
+        assertTrue("No mean near the center of cluster " + clus.getName() + ": " + best, best < 1.);
+      }
+    }
+  }
+}
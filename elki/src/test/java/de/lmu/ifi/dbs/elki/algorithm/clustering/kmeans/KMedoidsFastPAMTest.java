@@ -0,0 +1,107 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.initialization.RandomlyChosenInitialMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.MedoidModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full KMeans run, and compares the result with a clustering derived
+ * from the data set labels. This test ensures that KMeans's performance doesn't
+ * unexpectedly drop on this data set (and also ensures that the algorithms
+ * work, as a side effect).
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class KMedoidsFastPAMTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run KMedians PAM with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testKMedoidsFastPAM() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 5);
+    KMedoidsFastPAM<DoubleVector> kmedians = ClassGenericsUtil.parameterizeOrAbort(KMedoidsFastPAM.class, params);
+    testParameterizationOk(params);
+
+    // run KMedians on database
+    Clustering<MedoidModel> result = kmedians.run(db);
+    testFMeasure(db, result, 0.998005);
+    testClusterSizes(result, new int[] { 199, 200, 200, 200, 201 });
+  }
+
+  /**
+   * Starting from a poor random initialization, the accelerated swap phase must
+   * choose the same medoids as PAM.
+   */
+  @Test
+  public void testSameAsPAM() {
+    Database db = makeSimpleDatabase(UNITTEST + "different-densities-2d-no-noise.ascii", 1000);
+    Clustering<MedoidModel> pam = runWithRandomInit(KMedoidsPAM.class, db);
+    Clustering<MedoidModel> fast = runWithRandomInit(KMedoidsFastPAM.class, db);
+    List<? extends Cluster<MedoidModel>> c1 = pam.getToplevelClusters(), c2 = fast.getToplevelClusters();
+    assertEquals("Number of clusters does not match.", c1.size(), c2.size());
+    for(int i = 0; i < c1.size(); i++) {
+      assertTrue("Medoids differ.", DBIDUtil.equal(c1.get(i).getModel().getMedoid(), c2.get(i).getModel().getMedoid()));
+      assertEquals("Cluster sizes differ.", c1.get(i).size(), c2.get(i).size());
+    }
+  }
+
+  /**
+   * Run a PAM variant with a random initialization.
+   *
+   * @param cls PAM class
+   * @param db Database
+   * @return Clustering
+   */
+  private Clustering<MedoidModel> runWithRandomInit(Class<?> cls, Database db) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 7);
+    params.addParameter(KMeans.SEED_ID, 1);
+    params.addParameter(KMeans.INIT_ID, RandomlyChosenInitialMeans.class);
+    KMedoidsPAM<DoubleVector> kmedians = ClassGenericsUtil.parameterizeOrAbort(cls, params);
+    testParameterizationOk(params);
+    return kmedians.run(db);
+  }
+}
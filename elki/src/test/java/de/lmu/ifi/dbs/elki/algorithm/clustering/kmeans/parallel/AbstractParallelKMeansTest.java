@@ -0,0 +1,108 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.parallel;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.AbstractKMeans;
+import de.lmu.ifi.dbs.elki.algorithm.clustering.kmeans.KMeans;
+import de.lmu.ifi.dbs.elki.data.Cluster;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.model.KMeansModel;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Abstract base class for testing parallel k-means variants against their
+ * serial counterparts.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public abstract class AbstractParallelKMeansTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Compare a parallel implementation to the serial implementation, with a
+   * larger number of clusters, using 4 threads.
+   *
+   * @param serialClass Serial k-means class
+   * @param parallelClass Parallel k-means class
+   */
+  protected void testSameAsSerial(Class<?> serialClass, Class<?> parallelClass) {
+    Database db = makeSimpleDatabase(UNITTEST + "3clusters-and-noise-2d.csv", 330);
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      for(int seed = 0; seed < 3; seed++) {
+        AbstractKMeans<DoubleVector, KMeansModel> serial = makeKMeans(serialClass, seed);
+        AbstractKMeans<DoubleVector, KMeansModel> parallel = makeKMeans(parallelClass, seed);
+        assertSameClustering(serial.run(db), parallel.run(db));
+      }
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+
+  /**
+   * Setup a k-means instance with k=20.
+   *
+   * @param cls Class
+   * @param seed Random seed
+   * @return k-means instance
+   */
+  private AbstractKMeans<DoubleVector, KMeansModel> makeKMeans(Class<?> cls, int seed) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(KMeans.K_ID, 20);
+    params.addParameter(KMeans.SEED_ID, seed);
+    AbstractKMeans<DoubleVector, KMeansModel> kmeans = ClassGenericsUtil.parameterizeOrAbort(cls, params);
+    testParameterizationOk(params);
+    return kmeans;
+  }
+
+  /**
+   * Assert that two k-means results have the same assignments and means. Both
+   * runs use the same initialization, so the cluster order must agree.
+   *
+   * @param expected Expected result
+   * @param actual Actual result
+   */
+  protected static void assertSameClustering(Clustering<KMeansModel> expected, Clustering<KMeansModel> actual) {
+    List<Cluster<KMeansModel>> ec = expected.getToplevelClusters(), ac = actual.getToplevelClusters();
+    assertEquals("Number of clusters differs.", ec.size(), ac.size());
+    for(int i = 0; i < ec.size(); i++) {
+      Cluster<KMeansModel> e = ec.get(i), a = ac.get(i);
+      assertEquals("Cluster sizes differ.", e.size(), a.size());
+      assertEquals("Cluster assignments differ.", e.size(), DBIDUtil.intersectionSize(e.getIDs(), a.getIDs()));
+      assertArrayEquals("Means differ.", e.getModel().getMean(), a.getModel().getMean(), 1e-10);
+    }
+  }
+}
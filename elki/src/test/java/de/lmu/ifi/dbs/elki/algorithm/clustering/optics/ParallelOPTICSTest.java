@@ -0,0 +1,106 @@
+package de.lmu.ifi.dbs.elki.algorithm.clustering.optics;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.Clustering;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Performs a full OPTICS run using the parallel implementation, and compares
+ * the result with a clustering derived from the data set labels.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class ParallelOPTICSTest extends AbstractSimpleAlgorithmTest {
+  /**
+   * Run OPTICS with fixed parameters and compare the result to a golden
+   * standard.
+   */
+  @Test
+  public void testOPTICSResults() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    // Setup algorithm
+    ListParameterization params = new ListParameterization();
+    params.addParameter(ParallelOPTICS.Parameterizer.MINPTS_ID, 18);
+    params.addParameter(OPTICSXi.Parameterizer.XI_ID, 0.038);
+    params.addParameter(OPTICSXi.Parameterizer.XIALG_ID, ParallelOPTICS.class);
+    OPTICSXi opticsxi = ClassGenericsUtil.parameterizeOrAbort(OPTICSXi.class, params);
+    testParameterizationOk(params);
+
+    // run OPTICS on database
+    Clustering<?> clustering = opticsxi.run(db);
+
+    testFMeasure(db, clustering, 0.877117490049);
+    testClusterSizes(clustering, new int[] { 109, 121, 209, 271 });
+  }
+
+  /**
+   * Verify that the cluster order is identical to the one of
+   * {@link OPTICSHeap}, also when neighborhoods are prefetched in batches.
+   */
+  @Test
+  public void testSameClusterOrder() {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-2d.ascii", 710);
+
+    ListParameterization params = new ListParameterization();
+    params.addParameter(OPTICSHeap.Parameterizer.MINPTS_ID, 18);
+    OPTICSHeap<?> heap = ClassGenericsUtil.parameterizeOrAbort(OPTICSHeap.class, params);
+    testParameterizationOk(params);
+    params = new ListParameterization();
+    params.addParameter(ParallelOPTICS.Parameterizer.MINPTS_ID, 18);
+    ParallelOPTICS<?> parallel = ClassGenericsUtil.parameterizeOrAbort(ParallelOPTICS.class, params);
+    testParameterizationOk(params);
+
+    ClusterOrder expected = heap.run(db), actual;
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      actual = parallel.run(db);
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+    assertEquals("Cluster order length differs.", expected.size(), actual.size());
+    DBIDIter e = expected.iter(), a = actual.iter();
+    for(; e.valid(); e.advance(), a.advance()) {
+      assertTrue("Cluster order differs.", DBIDUtil.equal(e, a));
+      assertEquals("Reachability differs.", expected.getReachability(e), actual.getReachability(a), 0.);
+    }
+    assertFalse(a.valid());
+  }
+}
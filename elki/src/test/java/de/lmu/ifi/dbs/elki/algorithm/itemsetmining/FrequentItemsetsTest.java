@@ -0,0 +1,158 @@
+package de.lmu.ifi.dbs.elki.algorithm.itemsetmining;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.BitVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.datasource.MultipleObjectsBundleDatabaseConnection;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.result.FrequentItemsetsResult;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Compare the frequent itemset miners to a brute-force enumeration.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class FrequentItemsetsTest {
+  /**
+   * Number of items.
+   */
+  private static final int DIM = 14;
+
+  /**
+   * Transactions, as bit masks.
+   */
+  private long[] transactions;
+
+  /**
+   * Build a random database with correlated items.
+   *
+   * @return Database
+   */
+  private Database makeDatabase() {
+    Random rnd = new Random(0L);
+    transactions = new long[1000];
+    List<BitVector> vecs = new ArrayList<>(transactions.length);
+    for(int i = 0; i < transactions.length; i++) {
+      long bits = 0L;
+      for(int d = 0; d < DIM; d++) {
+        // Item frequencies between 3% and 68%.
+        if(rnd.nextDouble() < .03 + .05 * d) {
+          bits |= 1L << d;
+        }
+      }
+      // Correlated groups, to get longer frequent itemsets:
+      if(rnd.nextDouble() < .3) {
+        bits |= 0x0F0L;
+      }
+      if(rnd.nextDouble() < .1) {
+        bits |= 0x3003L;
+      }
+      transactions[i] = bits;
+      vecs.add(new BitVector(new long[] { bits }, DIM));
+    }
+    MultipleObjectsBundle bundle = MultipleObjectsBundle.makeSimple(new VectorFieldTypeInformation<>(BitVector.FACTORY, DIM), vecs);
+    Database db = new StaticArrayDatabase(new MultipleObjectsBundleDatabaseConnection(bundle), null);
+    db.initialize();
+    return db;
+  }
+
+  /**
+   * Brute-force support counts of all frequent itemsets.
+   *
+   * @param minsupp Minimum support
+   * @param minlength Minimum length
+   * @param maxlength Maximum length
+   * @return Map from item mask to support
+   */
+  private TLongIntHashMap bruteForce(int minsupp, int minlength, int maxlength) {
+    TLongIntHashMap expected = new TLongIntHashMap();
+    for(long mask = 1; mask < (1L << DIM); mask++) {
+      final int len = Long.bitCount(mask);
+      if(len < minlength || len > maxlength) {
+        continue;
+      }
+      int supp = 0;
+      for(long t : transactions) {
+        supp += ((t & mask) == mask) ? 1 : 0;
+      }
+      if(supp >= minsupp) {
+        expected.put(mask, supp);
+      }
+    }
+    return expected;
+  }
+
+  /**
+   * Compare a result to the expected itemsets.
+   *
+   * @param expected Expected itemsets
+   * @param result Result
+   */
+  private void checkResult(TLongIntHashMap expected, FrequentItemsetsResult result) {
+    List<Itemset> itemsets = result.getItemsets();
+    assertEquals(result.getLongName() + ": number of itemsets", expected.size(), itemsets.size());
+    for(Itemset is : itemsets) {
+      long mask = is.getItems()[0];
+      assertTrue(result.getLongName() + ": unexpected itemset", expected.containsKey(mask));
+      assertEquals(result.getLongName() + ": support", expected.get(mask), is.getSupport());
+    }
+    for(int i = 1; i < itemsets.size(); i++) {
+      assertTrue(result.getLongName() + ": not sorted", itemsets.get(i - 1).compareTo(itemsets.get(i)) < 0);
+    }
+  }
+
+  @Test
+  public void testMiners() {
+    Database db = makeDatabase();
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      int[][] settings = { { 20, 1, DIM }, { 50, 2, DIM }, { 100, 1, 2 }, { 20, 3, 4 } };
+      for(int[] s : settings) {
+        TLongIntHashMap expected = bruteForce(s[0], s[1], s[2]);
+        checkResult(expected, new APRIORI(s[0], s[1], s[2]).run(db));
+        checkResult(expected, new Eclat(s[0], s[1], s[2]).run(db));
+        checkResult(expected, new FPGrowth(s[0], s[1], s[2]).run(db));
+      }
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+}
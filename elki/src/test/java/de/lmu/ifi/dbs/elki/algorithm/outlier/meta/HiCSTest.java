@@ -23,14 +23,19 @@ package de.lmu.ifi.dbs.elki.algorithm.outlier.meta;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
 import de.lmu.ifi.dbs.elki.algorithm.outlier.lof.LOF;
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
 import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.relation.DoubleRelation;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.KolmogorovSmirnovTest;
 import de.lmu.ifi.dbs.elki.math.statistics.tests.WelchTTest;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.result.outlier.OutlierResult;
 import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
@@ -82,7 +87,44 @@ public class HiCSTest extends AbstractSimpleAlgorithmTest {
     // run HiCS on database
     OutlierResult result = fb.run(db);
 
-    testAUC(db, "Noise", result, 0.6255238);
-    testSingleScore(result, 1293, 2.542272);
+    testAUC(db, "Noise", result, 0.85340056);
+    testSingleScore(result, 1293, 4.935802);
+  }
+
+  @Test
+  public void testHiCSParallel() {
+    Database db = makeSimpleDatabase(UNITTEST + "outlier-axis-subspaces-6d.ascii", 1345);
+
+    // Results must not depend on the number of threads.
+    ParallelCore core = ParallelCore.getCore();
+    DoubleRelation single, multi;
+    try {
+      core.setParallelism(1);
+      single = makeHiCS(1).run(db).getScores();
+      core.setParallelism(4);
+      multi = makeHiCS(1).run(db).getScores();
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+    for(DBIDIter it = single.iterDBIDs(); it.valid(); it.advance()) {
+      assertEquals("Scores differ.", single.doubleValue(it), multi.doubleValue(it), 0.);
+    }
+  }
+
+  /**
+   * Setup a HiCS instance with a fresh random generator.
+   * 
+   * @param seed Random seed
+   * @return HiCS instance
+   */
+  private HiCS<DoubleVector> makeHiCS(int seed) {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(LOF.Parameterizer.K_ID, 10);
+    params.addParameter(HiCS.Parameterizer.LIMIT_ID, 10);
+    params.addParameter(HiCS.Parameterizer.SEED_ID, seed);
+    HiCS<DoubleVector> fb = ClassGenericsUtil.parameterizeOrAbort(HiCS.class, params);
+    testParameterizationOk(params);
+    return fb;
   }
-}
\ No newline at end of file
+}
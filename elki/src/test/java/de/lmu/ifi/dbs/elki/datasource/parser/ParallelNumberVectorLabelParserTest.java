@@ -0,0 +1,167 @@
+package de.lmu.ifi.dbs.elki.datasource.parser;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.VectorFieldTypeInformation;
+import de.lmu.ifi.dbs.elki.datasource.bundle.MultipleObjectsBundle;
+
+/**
+ * Test the parallel parser against the streaming number vector parser.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class ParallelNumberVectorLabelParserTest {
+  /**
+   * Test data files.
+   */
+  private static final String[] FILES = { //
+      "/data/testdata/unittests/hierarchical-3d2d1d.csv", //
+      "/data/testdata/unittests/single-link-effect.ascii", //
+      "/data/testdata/unittests/3clusters-and-noise-2d.csv", //
+  };
+
+  @Test
+  public void testFiles() throws IOException {
+    for(String file : FILES) {
+      byte[] data = load(file);
+      // Small blocks, to test the line splitting across block boundaries.
+      for(int blocksize : new int[] { 17, 1024, ParallelNumberVectorLabelParser.DEFAULT_BLOCK_SIZE }) {
+        compare(CSVReaderFormat.DEFAULT_FORMAT, null, data, blocksize);
+      }
+    }
+  }
+
+  @Test
+  public void testSpecialCases() {
+    String data = "# comment\r\n" //
+        + "x y \"z\" label\r\n" //
+        + "\n" //
+        + "1 2 3 a\r\n" //
+        + "  // another comment\n" //
+        + "4,5;6 \"b c\"\n" //
+        + "7 , 8 ,9 '10'\n" //
+        + "11 12 13 14\n" //
+        + "; comment\n" //
+        + "15\t16\t\"unclosed\n" //
+        + "17 18 19";
+    byte[] bytes = data.getBytes(Charset.forName("UTF-8"));
+    for(int blocksize : new int[] { 1, 5, 1024 }) {
+      compare(CSVReaderFormat.DEFAULT_FORMAT, null, bytes, blocksize);
+      compare(CSVReaderFormat.DEFAULT_FORMAT, new long[] { 1L << 2 }, bytes, blocksize);
+    }
+    MultipleObjectsBundle bundle = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY, 5).parse(new ByteArrayInputStream(bytes));
+    assertEquals("Wrong number of objects.", 6, bundle.dataLength());
+    assertEquals("Wrong number of columns.", 2, bundle.metaLength());
+  }
+
+  @Test
+  public void testRegexFormat() {
+    String data = "a|b|c|d\n1|2|3|p\n#4|5|6\n7|8|9|x\n9||10|\"q|r\"\n";
+    byte[] bytes = data.getBytes(Charset.forName("UTF-8"));
+    CSVReaderFormat format = new CSVReaderFormat(Pattern.compile("\\|"), CSVReaderFormat.QUOTE_CHARS, Pattern.compile("^#.*$"));
+    for(int blocksize : new int[] { 3, 1024 }) {
+      compare(format, null, bytes, blocksize);
+    }
+    // Byte-level separator with a non-default comment pattern:
+    format = new CSVReaderFormat(Pattern.compile(CSVReaderFormat.DEFAULT_SEPARATOR), CSVReaderFormat.QUOTE_CHARS, Pattern.compile("^%.*$"));
+    compare(format, null, "%c\n1 2 a\n#3 4\n".getBytes(Charset.forName("UTF-8")), 1024);
+  }
+
+  @Test
+  public void testEmpty() {
+    MultipleObjectsBundle bundle = new ParallelNumberVectorLabelParser<>(CSVReaderFormat.DEFAULT_FORMAT, null, DoubleVector.FACTORY).parse(new ByteArrayInputStream(new byte[0]));
+    assertEquals(0, bundle.metaLength());
+  }
+
+  /**
+   * Parse the data with both parsers, and compare the results.
+   *
+   * @param format Input format
+   * @param labelIndices Label columns
+   * @param data Data
+   * @param blocksize Block size
+   */
+  private void compare(CSVReaderFormat format, long[] labelIndices, byte[] data, int blocksize) {
+    MultipleObjectsBundle expected = new NumberVectorLabelParser<>(format, labelIndices, DoubleVector.FACTORY).parse(new ByteArrayInputStream(data));
+    MultipleObjectsBundle actual = new ParallelNumberVectorLabelParser<>(format, labelIndices, DoubleVector.FACTORY, blocksize).parse(new ByteArrayInputStream(data));
+    assertEquals("Number of columns differs.", expected.metaLength(), actual.metaLength());
+    assertEquals("Number of objects differs.", expected.dataLength(), actual.dataLength());
+    for(int c = 0; c < expected.metaLength(); c++) {
+      assertEquals("Column type differs.", expected.meta(c).getClass(), actual.meta(c).getClass());
+      assertEquals("Column type differs.", expected.meta(c).toString(), actual.meta(c).toString());
+      if(expected.meta(c) instanceof VectorFieldTypeInformation) {
+        VectorFieldTypeInformation<?> et = (VectorFieldTypeInformation<?>) expected.meta(c);
+        VectorFieldTypeInformation<?> at = (VectorFieldTypeInformation<?>) actual.meta(c);
+        for(int d = 0; d < et.getDimensionality(); d++) {
+          assertEquals("Column names differ.", et.getLabel(d), at.getLabel(d));
+        }
+      }
+      for(int i = 0; i < expected.dataLength(); i++) {
+        Object e = expected.data(i, c), a = actual.data(i, c);
+        if(e instanceof NumberVector) {
+          NumberVector ev = (NumberVector) e, av = (NumberVector) a;
+          assertEquals("Dimensionality differs.", ev.getDimensionality(), av.getDimensionality());
+          for(int d = 0; d < ev.getDimensionality(); d++) {
+            assertEquals("Value differs.", ev.doubleValue(d), av.doubleValue(d), 0.);
+          }
+        }
+        else {
+          assertEquals("Labels differ.", e.toString(), a.toString());
+        }
+      }
+    }
+  }
+
+  /**
+   * Load a test resource.
+   *
+   * @param name Resource name
+   * @return Data
+   * @throws IOException on read errors
+   */
+  private byte[] load(String name) throws IOException {
+    try (InputStream in = getClass().getResourceAsStream(name)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[4096];
+      for(int r; (r = in.read(buf)) >= 0;) {
+        out.write(buf, 0, r);
+      }
+      return out.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package de.lmu.ifi.dbs.elki.distance.distancefunction.external;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+
+/**
+ * Unit test for the parallel ASCII distance parser, converting the matrix into
+ * a binary on-disk matrix.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class ParallelAsciiDistanceParserTest {
+  /**
+   * Test conversion to the binary format, with small blocks.
+   *
+   * @throws IOException on errors.
+   */
+  @Test
+  public void testConvertToDiskCache() throws IOException {
+    final int size = 150;
+    Random rnd = new Random(0L);
+    double[][] dists = new double[size][size];
+    StringBuilder buf = new StringBuilder();
+    buf.append("# Random distance matrix\n");
+    for(int i = 0; i < size; i++) {
+      for(int j = i + 1; j < size; j++) {
+        dists[i][j] = dists[j][i] = rnd.nextDouble();
+        // Mix separators, line endings and ordering.
+        if((i + j) % 3 == 0) {
+          buf.append(j).append(", ").append(i).append(", ").append(dists[i][j]).append("\r\n");
+        }
+        else {
+          buf.append(i).append(' ').append(j).append('\t').append(dists[i][j]).append('\n');
+        }
+      }
+    }
+    byte[] input = buf.toString().getBytes("UTF-8");
+
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      for(boolean singlePrecision : new boolean[] { false, true }) {
+        File file = File.createTempFile("ELKIUnitTest", null);
+        file.deleteOnExit();
+        try (DiskCacheDistanceWriter writer = new DiskCacheDistanceWriter(file, singlePrecision)) {
+          new ParallelAsciiDistanceParser(100).parse(new ByteArrayInputStream(input), writer);
+          assertEquals("Matrix size does not match.", size, writer.size());
+        }
+        final double eps = singlePrecision ? 1e-7 : 0.;
+        if(singlePrecision) {
+          DiskCacheBasedFloatDistanceFunction df = new DiskCacheBasedFloatDistanceFunction(file);
+          for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+              assertEquals("Distance does not match.", dists[i][j], df.distance(i, j), eps);
+            }
+          }
+        }
+        else {
+          DiskCacheBasedDoubleDistanceFunction df = new DiskCacheBasedDoubleDistanceFunction(file);
+          for(int i = 0; i < size; i++) {
+            for(int j = 0; j < size; j++) {
+              assertEquals("Distance does not match.", dists[i][j], df.distance(i, j), eps);
+            }
+          }
+        }
+      }
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+
+  /**
+   * Test that missing values and invalid lines are detected.
+   *
+   * @throws IOException on errors.
+   */
+  @Test
+  public void testInvalidInput() throws IOException {
+    String[] inputs = { "0 1 0.5\n0 2 0.5\n", "0 1 0.5\n0 2 0.5\n1 2\n", "0 1 0.5\n0 x 0.5\n1 2 0.5\n" };
+    String[] errors = { "missing", "Less than three", "id2" };
+    for(int i = 0; i < inputs.length; i++) {
+      File file = File.createTempFile("ELKIUnitTest", null);
+      file.deleteOnExit();
+      try (DiskCacheDistanceWriter writer = new DiskCacheDistanceWriter(file, false)) {
+        new ParallelAsciiDistanceParser().parse(new ByteArrayInputStream(inputs[i].getBytes("UTF-8")), writer);
+        fail("Invalid input was accepted: " + inputs[i]);
+      }
+      catch(IllegalArgumentException e) {
+        assertTrue("Unexpected error: " + e.getMessage(), e.getMessage().contains(errors[i]));
+      }
+    }
+  }
+}
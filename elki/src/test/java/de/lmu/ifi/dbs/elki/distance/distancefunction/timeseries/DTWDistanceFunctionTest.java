@@ -23,10 +23,31 @@ package de.lmu.ifi.dbs.elki.distance.distancefunction.timeseries;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
 
 import org.junit.Test;
 
 import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.NumberVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDList;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.distance.PrimitiveDistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanDTWKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanDTWRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.RangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.ArrayAdapterDatabaseConnection;
 
 /**
  * Unit test for dynamic time warping distance.
@@ -116,4 +137,64 @@ public class DTWDistanceFunctionTest {
       }
     }
   }
+
+  @Test
+  public void testLowerBounds() {
+    DoubleVector[] vecs = new DoubleVector[DATA.length];
+    for(int i = 0; i < DATA.length; i++) {
+      vecs[i] = DoubleVector.wrap(DATA[i]);
+    }
+    for(DTWDistanceFunction f : new DTWDistanceFunction[] { new DTWDistanceFunction(), new DTWDistanceFunction(.33) }) {
+      for(int i = 0; i < vecs.length; i++) {
+        for(int j = 0; j < vecs.length; j++) {
+          final int dim2 = vecs[j].getDimensionality();
+          double dist = f.distance(vecs[i], vecs[j]), sqdist = f.squaredDistance(vecs[i], vecs[j], INF);
+          assertEquals("Squared distance does not agree.", dist * dist, sqdist, 1e-13);
+          assertTrue("LB_Kim is not a lower bound.", f.squaredLowerBoundKim(vecs[i], vecs[j]) <= sqdist);
+          double[] lower = new double[dim2], upper = new double[dim2];
+          f.envelope(vecs[i], dim2, lower, upper);
+          assertTrue("LB_Keogh is not a lower bound.", f.squaredLowerBoundKeogh(lower, upper, vecs[j], INF) <= sqdist);
+          if(sqdist > 0 && sqdist < INF) {
+            assertTrue("Not abandoned early.", f.squaredDistance(vecs[i], vecs[j], sqdist * .5) > sqdist * .5);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testLowerBoundQueries() {
+    // Random walks:
+    Random rnd = new Random(0L);
+    double[][] data = new double[200][32];
+    for(double[] row : data) {
+      row[0] = rnd.nextGaussian();
+      for(int j = 1; j < row.length; j++) {
+        row[j] = row[j - 1] + rnd.nextGaussian();
+      }
+    }
+    Database db = new StaticArrayDatabase(new ArrayAdapterDatabaseConnection(data), null);
+    db.initialize();
+    Relation<NumberVector> rel = db.getRelation(TypeUtil.NUMBER_VECTOR_FIELD);
+    for(DTWDistanceFunction f : new DTWDistanceFunction[] { new DTWDistanceFunction(), new DTWDistanceFunction(.1), new DTWDistanceFunction(3) }) {
+      DistanceQuery<NumberVector> dq = db.getDistanceQuery(rel, f);
+      KNNQuery<NumberVector> knnq = db.getKNNQuery(dq, 5);
+      RangeQuery<NumberVector> rq = db.getRangeQuery(dq);
+      assertTrue(knnq instanceof LinearScanDTWKNNQuery);
+      assertTrue(rq instanceof LinearScanDTWRangeQuery);
+      KNNQuery<NumberVector> refknnq = new LinearScanPrimitiveDistanceKNNQuery<>((PrimitiveDistanceQuery<NumberVector>) dq);
+      RangeQuery<NumberVector> refrq = new LinearScanPrimitiveDistanceRangeQuery<>((PrimitiveDistanceQuery<NumberVector>) dq);
+      int q = 0;
+      for(DBIDIter iter = rel.iterDBIDs(); iter.valid() && q < 20; iter.advance(), q++) {
+        KNNList knn = knnq.getKNNForDBID(iter, 5), ref = refknnq.getKNNForDBID(iter, 5);
+        assertEquals("kNN size does not agree.", ref.size(), knn.size());
+        for(DoubleDBIDListIter a = knn.iter(), b = ref.iter(); a.valid(); a.advance(), b.advance()) {
+          assertEquals("kNN distance does not agree.", b.doubleValue(), a.doubleValue(), 1e-10);
+        }
+        final double range = ref.getKNNDistance();
+        DoubleDBIDList res = rq.getRangeForDBID(iter, range), refres = refrq.getRangeForDBID(iter, range);
+        assertEquals("Range query size does not agree.", refres.size(), res.size());
+      }
+    }
+  }
 }
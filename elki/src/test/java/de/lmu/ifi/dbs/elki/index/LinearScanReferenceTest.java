@@ -23,10 +23,34 @@ package de.lmu.ifi.dbs.elki.index;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDArrayIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanEuclideanDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanFlatVectorKNNQuery;
 import de.lmu.ifi.dbs.elki.database.query.knn.LinearScanPrimitiveDistanceKNNQuery;
+import de.lmu.ifi.dbs.elki.database.query.range.LinearScanFlatVectorRangeQuery;
 import de.lmu.ifi.dbs.elki.database.query.range.LinearScanPrimitiveDistanceRangeQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -53,4 +77,69 @@ public class LinearScanReferenceTest extends AbstractIndexStructureTest {
     ListParameterization params = new ListParameterization();
     testExactCosine(params, LinearScanPrimitiveDistanceKNNQuery.class, LinearScanPrimitiveDistanceRangeQuery.class);
   }
+
+  /**
+   * Test exact query on flat vector storage.
+   */
+  @Test
+  public void testExactFlat() {
+    ListParameterization params = new ListParameterization();
+    params.addFlag(StaticArrayDatabase.Parameterizer.FLAT_ID);
+    testExactEuclidean(params, LinearScanFlatVectorKNNQuery.class, LinearScanFlatVectorRangeQuery.class);
+  }
+
+  /**
+   * Test exact query on flat vector storage.
+   */
+  @Test
+  public void testExactCosineFlat() {
+    ListParameterization params = new ListParameterization();
+    params.addFlag(StaticArrayDatabase.Parameterizer.FLAT_ID);
+    testExactCosine(params, LinearScanFlatVectorKNNQuery.class, LinearScanFlatVectorRangeQuery.class);
+  }
+
+  /**
+   * Test that the tiled bulk kNN query produces the same results as the
+   * individual queries.
+   */
+  @Test
+  public void testBulkKNN() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, dataset);
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, params);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+
+    DistanceQuery<DoubleVector> euclidean = db.getDistanceQuery(rel, EuclideanDistanceFunction.STATIC);
+    KNNQuery<DoubleVector> knnq = db.getKNNQuery(euclidean, k);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof LinearScanEuclideanDistanceKNNQuery);
+    assertBulkKNN(knnq, ids);
+
+    DistanceQuery<DoubleVector> manhattan = db.getDistanceQuery(rel, ManhattanDistanceFunction.STATIC);
+    knnq = db.getKNNQuery(manhattan, k);
+    assertTrue("Unexpected query class: " + knnq.getClass(), knnq instanceof LinearScanPrimitiveDistanceKNNQuery);
+    assertBulkKNN(knnq, ids);
+  }
+
+  /**
+   * Compare bulk kNN to single kNN queries.
+   *
+   * @param knnq kNN query
+   * @param ids IDs to query
+   */
+  private void assertBulkKNN(KNNQuery<DoubleVector> knnq, ArrayDBIDs ids) {
+    List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, k);
+    assertEquals("Bulk result size does not match.", ids.size(), bulk.size());
+    int i = 0;
+    for(DBIDArrayIter it = ids.iter(); it.valid(); it.advance(), i++) {
+      KNNList single = knnq.getKNNForDBID(it, k);
+      KNNList other = bulk.get(i);
+      assertEquals("kNN sizes do not agree.", single.size(), other.size());
+      for(DoubleDBIDListIter a = single.iter(), b = other.iter(); a.valid(); a.advance(), b.advance()) {
+        assertTrue("kNN do not agree.", DBIDUtil.equal(a, b));
+        assertEquals("kNN distances do not agree.", a.doubleValue(), b.doubleValue(), 0.);
+      }
+    }
+  }
 }
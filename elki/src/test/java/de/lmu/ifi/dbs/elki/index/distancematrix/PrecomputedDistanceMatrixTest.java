@@ -0,0 +1,144 @@
+package de.lmu.ifi.dbs.elki.index.distancematrix;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.algorithm.AbstractSimpleAlgorithmTest;
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.distance.DistanceQuery;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.index.distancematrix.PrecomputedDistanceMatrix.Precision;
+
+/**
+ * Unit test for the precomputed distance matrix, with the different storage
+ * options.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class PrecomputedDistanceMatrixTest extends AbstractSimpleAlgorithmTest {
+  @Test
+  public void testDouble() {
+    testMatrix(Precision.DOUBLE, null, 0.);
+  }
+
+  @Test
+  public void testFloat() {
+    testMatrix(Precision.FLOAT, null, 1e-7);
+  }
+
+  @Test
+  public void testShort() {
+    testMatrix(Precision.SHORT, null, 1. / 256);
+  }
+
+  @Test
+  public void testOnDisk() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    testMatrix(Precision.FLOAT, file, 1e-7);
+    file.delete();
+  }
+
+  /**
+   * Running again on the same file must rebuild the matrix.
+   */
+  @Test
+  public void testOnDiskTwice() throws IOException {
+    File file = File.createTempFile("ELKIUnitTest", null);
+    file.deleteOnExit();
+    testMatrix(Precision.FLOAT, file, 1e-7);
+    assertTrue("Matrix file was not written.", file.length() > 0);
+    testMatrix(Precision.SHORT, file, 1. / 256);
+    file.delete();
+  }
+
+  /**
+   * Compare the matrix to the exact distances.
+   *
+   * @param precision Precision
+   * @param file File, may be {@code null}
+   * @param releps Relative error tolerated
+   */
+  private void testMatrix(Precision precision, File file, double releps) {
+    Database db = makeSimpleDatabase(UNITTEST + "hierarchical-3d2d1d.csv", 600);
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    DistanceQuery<DoubleVector> exact = EuclideanDistanceFunction.STATIC.instantiate(rel);
+
+    PrecomputedDistanceMatrix<DoubleVector> matrix = new PrecomputedDistanceMatrix<>(rel, EuclideanDistanceFunction.STATIC, precision, file);
+    matrix.initialize();
+    try {
+      checkMatrix(rel, exact, matrix, releps);
+    }
+    finally {
+      matrix.close();
+    }
+  }
+
+  /**
+   * Compare the matrix to the exact distances.
+   *
+   * @param rel Relation
+   * @param exact Exact distance query
+   * @param matrix Initialized matrix
+   * @param releps Relative error tolerated
+   */
+  private void checkMatrix(Relation<DoubleVector> rel, DistanceQuery<DoubleVector> exact, PrecomputedDistanceMatrix<DoubleVector> matrix, double releps) {
+    DistanceQuery<DoubleVector> dq = matrix.getDistanceQuery(EuclideanDistanceFunction.STATIC);
+    for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+      for(DBIDIter b = rel.iterDBIDs(); b.valid(); b.advance()) {
+        final double d = exact.distance(a, b);
+        assertEquals("Distance does not match.", d, dq.distance(a, b), d * releps);
+      }
+    }
+
+    KNNQuery<DoubleVector> knnq = matrix.getKNNQuery(dq);
+    for(DBIDIter a = rel.iterDBIDs(); a.valid(); a.advance()) {
+      KNNList knn = knnq.getKNNForDBID(a, 10);
+      // Quantization makes ties more likely, which are included in the result.
+      assertTrue("Wrong kNN size.", knn.size() >= 10);
+      double prev = 0.;
+      for(DoubleDBIDListIter it = knn.iter(); it.valid(); it.advance()) {
+        final double d = exact.distance(a, it);
+        assertEquals("kNN distance does not match.", d, it.doubleValue(), d * releps);
+        assertTrue("kNN not sorted.", prev <= it.doubleValue());
+        prev = it.doubleValue();
+      }
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package de.lmu.ifi.dbs.elki.index.lsh;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.lsh.hashfamilies.EuclideanHashFunctionFamily;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
+import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
+
+/**
+ * Unit test for the in-memory LSH index.
+ *
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class InMemoryLSHIndexTest extends AbstractIndexStructureTest {
+  /**
+   * Test {@link InMemoryLSHIndex} with multi-probe queries.
+   */
+  @Test
+  public void testLSHMultiProbe() {
+    ListParameterization params = new ListParameterization();
+    params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, InMemoryLSHIndex.class);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.WIDTH_ID, .5);
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+    params.addParameter(EuclideanHashFunctionFamily.Parameterizer.RANDOM_ID, 1L);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 4);
+    params.addParameter(InMemoryLSHIndex.Parameterizer.PROBES_ID, 8);
+    testExactEuclidean(params, InMemoryLSHIndex.Instance.LSHKNNQuery.class, InMemoryLSHIndex.Instance.LSHRangeQuery.class);
+  }
+
+  /**
+   * Test the parallel build of the hash tables.
+   */
+  @Test
+  public void testLSHParallelBuild() {
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      ListParameterization params = new ListParameterization();
+      params.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, InMemoryLSHIndex.class);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.FAMILY_ID, EuclideanHashFunctionFamily.class);
+      params.addParameter(EuclideanHashFunctionFamily.Parameterizer.WIDTH_ID, .5);
+      params.addParameter(EuclideanHashFunctionFamily.Parameterizer.NUMPROJ_ID, 3);
+      params.addParameter(EuclideanHashFunctionFamily.Parameterizer.RANDOM_ID, 1L);
+      params.addParameter(InMemoryLSHIndex.Parameterizer.L_ID, 20);
+      testExactEuclidean(params, InMemoryLSHIndex.Instance.LSHKNNQuery.class, InMemoryLSHIndex.Instance.LSHRangeQuery.class);
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+}
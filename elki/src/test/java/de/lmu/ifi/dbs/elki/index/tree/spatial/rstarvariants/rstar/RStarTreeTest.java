@@ -23,10 +23,33 @@ package de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar;
  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Test;
 
+import de.lmu.ifi.dbs.elki.data.DoubleVector;
+import de.lmu.ifi.dbs.elki.data.type.TypeUtil;
+import de.lmu.ifi.dbs.elki.database.Database;
 import de.lmu.ifi.dbs.elki.database.StaticArrayDatabase;
+import de.lmu.ifi.dbs.elki.database.ids.ArrayDBIDs;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDIter;
+import de.lmu.ifi.dbs.elki.database.ids.DBIDUtil;
+import de.lmu.ifi.dbs.elki.database.ids.DoubleDBIDListIter;
+import de.lmu.ifi.dbs.elki.database.ids.KNNList;
+import de.lmu.ifi.dbs.elki.database.query.knn.KNNQuery;
+import de.lmu.ifi.dbs.elki.database.relation.Relation;
+import de.lmu.ifi.dbs.elki.datasource.FileBasedDatabaseConnection;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.PrimitiveDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.EuclideanDistanceFunction;
+import de.lmu.ifi.dbs.elki.distance.distancefunction.minkowski.ManhattanDistanceFunction;
 import de.lmu.ifi.dbs.elki.index.AbstractIndexStructureTest;
+import de.lmu.ifi.dbs.elki.index.PagedIndexFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.AbstractRStarTreeFactory;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeKNNQuery;
 import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.query.RStarTreeRangeQuery;
@@ -46,7 +69,13 @@ import de.lmu.ifi.dbs.elki.math.spacefillingcurves.BinarySplitSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.HilbertSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.PeanoSpatialSorter;
 import de.lmu.ifi.dbs.elki.math.spacefillingcurves.ZCurveSpatialSorter;
+import de.lmu.ifi.dbs.elki.parallel.ParallelCore;
 import de.lmu.ifi.dbs.elki.persistent.AbstractPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.LRUCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.MappedPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.PersistentPageFileFactory;
+import de.lmu.ifi.dbs.elki.persistent.TwoQueueCachePageFileFactory;
+import de.lmu.ifi.dbs.elki.utilities.ClassGenericsUtil;
 import de.lmu.ifi.dbs.elki.utilities.optionhandling.parameterization.ListParameterization;
 
 /**
@@ -72,6 +101,125 @@ public class RStarTreeTest extends AbstractIndexStructureTest {
     testExactCosine(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
   }
 
+  /**
+   * Test {@link RStarTree} built concurrently in a parallel database.
+   */
+  @Test
+  public void testRStarTreeParallelDatabase() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addFlag(StaticArrayDatabase.Parameterizer.PARALLEL_ID);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test the batched kNN join of {@link RStarTreeKNNQuery} against single
+   * queries, for the Euclidean and the general code path.
+   */
+  @Test
+  public void testRStarTreeBulkKNN() {
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testBulkKNN(spatparams);
+  }
+
+  /**
+   * Test the parallel batched kNN join on uncached on-disk page files.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testRStarTreeBulkKNNPersistent() throws IOException {
+    for(Class<?> pagefile : Arrays.asList(PersistentPageFileFactory.class, MappedPageFileFactory.class)) {
+      File tmp = File.createTempFile("elki-rstar", ".idx");
+      tmp.delete(); // Must not exist yet.
+      tmp.deleteOnExit();
+      ListParameterization spatparams = new ListParameterization();
+      spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+      spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, pagefile);
+      spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp.getPath());
+      // Java serialization needs some extra space.
+      spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 1024);
+      testBulkKNN(spatparams);
+    }
+  }
+
+  /**
+   * Compare the batched kNN join to single queries, using 4 threads.
+   *
+   * @param spatparams Index parameters
+   */
+  private void testBulkKNN(ListParameterization spatparams) {
+    spatparams.addParameter(FileBasedDatabaseConnection.Parameterizer.INPUT_ID, "data/testdata/unittests/hierarchical-3d2d1d.csv");
+    Database db = ClassGenericsUtil.parameterizeOrAbort(StaticArrayDatabase.class, spatparams);
+    db.initialize();
+    Relation<DoubleVector> rel = db.getRelation(TypeUtil.DOUBLE_VECTOR_FIELD);
+    ArrayDBIDs ids = DBIDUtil.ensureArray(rel.getDBIDs());
+    ParallelCore core = ParallelCore.getCore();
+    core.setParallelism(4);
+    try {
+      for(PrimitiveDistanceFunction<? super DoubleVector> df : Arrays.asList(EuclideanDistanceFunction.STATIC, ManhattanDistanceFunction.STATIC)) {
+        KNNQuery<DoubleVector> knnq = db.getKNNQuery(db.getDistanceQuery(rel, df), 10);
+        assertTrue(knnq instanceof RStarTreeKNNQuery);
+        List<? extends KNNList> bulk = knnq.getKNNForBulkDBIDs(ids, 10);
+        assertEquals(ids.size(), bulk.size());
+        int i = 0;
+        for(DBIDIter it = ids.iter(); it.valid(); it.advance(), i++) {
+          KNNList single = knnq.getKNNForDBID(it, 10), batch = bulk.get(i);
+          assertEquals("Result size does not match.", single.size(), batch.size());
+          for(DoubleDBIDListIter s = single.iter(), b = batch.iter(); s.valid(); s.advance(), b.advance()) {
+            assertEquals("Distance does not match.", s.doubleValue(), b.doubleValue(), 1e-15);
+          }
+        }
+      }
+    }
+    finally {
+      core.setParallelism(ParallelCore.ALL_PROCESSORS);
+    }
+  }
+
+  /**
+   * Test {@link RStarTree} stored in a memory-mapped page file.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testRStarTreeMappedPageFile() throws IOException {
+    File tmp = File.createTempFile("elki-rstar", ".idx");
+    tmp.delete(); // Must not exist yet.
+    tmp.deleteOnExit();
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class);
+    spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp.getPath());
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
+  /**
+   * Test {@link RStarTree} stored in a memory-mapped page file, with a small
+   * 2Q cache and pinned directory pages.
+   *
+   * @throws IOException on errors creating the temporary file
+   */
+  @Test
+  public void testRStarTreeTwoQueueCache() throws IOException {
+    File tmp = File.createTempFile("elki-rstar", ".idx");
+    tmp.delete(); // Must not exist yet.
+    tmp.deleteOnExit();
+    ListParameterization spatparams = new ListParameterization();
+    spatparams.addParameter(StaticArrayDatabase.Parameterizer.INDEX_ID, RStarTreeFactory.class);
+    spatparams.addParameter(PagedIndexFactory.Parameterizer.PAGEFILE_ID, TwoQueueCachePageFileFactory.class);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.CACHE_SIZE_ID, 300 * 8);
+    spatparams.addFlag(TwoQueueCachePageFileFactory.Parameterizer.PIN_DIRECTORY_ID);
+    spatparams.addParameter(LRUCachePageFileFactory.Parameterizer.PAGEFILE_ID, MappedPageFileFactory.class);
+    spatparams.addParameter(PersistentPageFileFactory.Parameterizer.FILE_ID, tmp.getPath());
+    spatparams.addParameter(AbstractPageFileFactory.Parameterizer.PAGE_SIZE_ID, 300);
+    testExactEuclidean(spatparams, RStarTreeKNNQuery.class, RStarTreeRangeQuery.class);
+  }
+
   /**
    * Test {@link RStarTree} using a file based database connection. With "fast"
    * mode enabled on an extreme level (since this should only reduce
@@ -0,0 +1,218 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Unit test for the memory-mapped page file.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class MappedPageFileTest {
+  /**
+   * Test writing, closing and reopening a page file.
+   * 
+   * @throws IOException on errors
+   */
+  @Test
+  public void testReopen() throws IOException {
+    final int pagesize = 256, numpages = 100;
+    File f = tempFile();
+    MappedPageFile<TestPage> file = new MappedPageFile<>(pagesize, f.getPath(), TestPage.class);
+    assertEquals("File should be new.", false, file.initialize(new DefaultPageHeader(pagesize)));
+    writePages(file, numpages);
+    file.close();
+    // Only the used part of the segment should have been mapped.
+    assertTrue("File too large: " + f.length(), f.length() < 64 * 1024);
+
+    file = new MappedPageFile<>(pagesize, f.getPath(), TestPage.class);
+    assertEquals("File should exist.", true, file.initialize(new DefaultPageHeader(pagesize)));
+    assertEquals("Next page id does not match.", numpages, file.getNextPageID());
+    checkPages(file, numpages);
+    file.close();
+  }
+
+  /**
+   * Test clearing a page file.
+   * 
+   * @throws IOException on errors
+   */
+  @Test
+  public void testClear() throws IOException {
+    final int pagesize = 256, numpages = 50;
+    File f = tempFile();
+    DefaultPageHeader header = new DefaultPageHeader(pagesize);
+    MappedPageFile<TestPage> file = new MappedPageFile<>(pagesize, f.getPath(), TestPage.class);
+    file.initialize(header);
+    writePages(file, numpages);
+    file.clear();
+    assertEquals("File not truncated.", header.size(), f.length());
+    for(int i = 0; i < numpages; i++) {
+      assertNull("Page not cleared: " + i, file.readPage(i));
+    }
+    file.close();
+  }
+
+  /**
+   * Test with pages in multiple segments, read concurrently after reopening.
+   * 
+   * @throws Exception on errors
+   */
+  @Test
+  public void testSegmentBoundary() throws Exception {
+    // 32 pages per segment.
+    final int pagesize = 1 << 21, numpages = 80;
+    File f = tempFile();
+    MappedPageFile<TestPage> file = new MappedPageFile<>(pagesize, f.getPath(), TestPage.class);
+    file.initialize(new DefaultPageHeader(pagesize));
+    writePages(file, numpages);
+    checkPages(file, numpages);
+    file.close();
+
+    final MappedPageFile<TestPage> rfile = new MappedPageFile<>(pagesize, f.getPath(), TestPage.class);
+    rfile.initialize(new DefaultPageHeader(pagesize));
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for(int t = 0; t < 4; t++) {
+        final int start = t * 17;
+        futures.add(pool.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for(int i = 0; i < numpages; i++) {
+              final int p = (start + i * 7) % numpages;
+              TestPage page = rfile.readPage(p);
+              assertNotNull("Page missing: " + p, page);
+              assertEquals("Page contents do not match.", p * 31, page.value);
+            }
+            return null;
+          }
+        }));
+      }
+      for(Future<Void> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+    rfile.close();
+  }
+
+  /**
+   * Create a temporary file name, not yet existing.
+   * 
+   * @return File
+   * @throws IOException on errors
+   */
+  private static File tempFile() throws IOException {
+    File f = File.createTempFile("ELKIUnitTest", null);
+    f.delete();
+    f.deleteOnExit();
+    return f;
+  }
+
+  /**
+   * Write test pages.
+   * 
+   * @param file Page file
+   * @param numpages Number of pages
+   */
+  private static void writePages(PageFile<TestPage> file, int numpages) {
+    for(int i = 0; i < numpages; i++) {
+      TestPage page = new TestPage();
+      page.value = i * 31;
+      assertEquals("Page id not sequential.", i, file.writePage(page));
+    }
+  }
+
+  /**
+   * Verify the test pages.
+   * 
+   * @param file Page file
+   * @param numpages Number of pages
+   */
+  private static void checkPages(PageFile<TestPage> file, int numpages) {
+    for(int i = 0; i < numpages; i++) {
+      TestPage page = file.readPage(i);
+      assertNotNull("Page missing: " + i, page);
+      assertEquals("Page id does not match.", i, page.getPageID());
+      assertEquals("Page contents do not match.", i * 31, page.value);
+    }
+  }
+
+  /**
+   * Minimal page class for testing.
+   * 
+   * @author Erich Schubert
+   */
+  public static class TestPage extends AbstractExternalizablePage {
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Page payload.
+     */
+    int value;
+
+    /**
+     * Empty constructor.
+     */
+    public TestPage() {
+      super();
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeInt(value);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      value = in.readInt();
+    }
+  }
+}
@@ -52,7 +52,7 @@ public class OnDiskArrayTest {
     final int recsize = 3;
     int numrec = 4;
     // Only applicable to the version we are testing.
-    final int ODR_HEADER_SIZE = 4 * 4;
+    final int ODR_HEADER_SIZE = 3 * 4 + 8;
     OnDiskArray array = new OnDiskArray(file, 1, extraheadersize, recsize, numrec);
     byte[] header = { 42, 23 };
     array.getExtraHeader().put(header);
@@ -51,7 +51,7 @@ public class OnDiskUpperTriangleMatrixTest {
     final int recsize = 3;
     int matsize = 2;
     // Only applicable to the version we are testing.
-    final int ODR_HEADER_SIZE = 4 * 4 + 4;
+    final int ODR_HEADER_SIZE = 3 * 4 + 8 + 4;
     OnDiskUpperTriangleMatrix array = new OnDiskUpperTriangleMatrix(file, 1, extraheadersize, recsize, matsize);
     byte[] record1 = { 31, 41, 59 };
     byte[] record2 = { 26, 53, 58 };
@@ -0,0 +1,195 @@
+package de.lmu.ifi.dbs.elki.persistent;
+
+/*
+ This file is part of ELKI:
+ Environment for Developing KDD-Applications Supported by Index-Structures
+
+ Copyright (C) 2015
+ Ludwig-Maximilians-Universität München
+ Lehr- und Forschungseinheit für Datenbanksysteme
+ ELKI Development Team
+
+ This program is free software: you can redistribute it and/or modify
+ it under the terms of the GNU Affero General Public License as published by
+ the Free Software Foundation, either version 3 of the License, or
+ (at your option) any later version.
+
+ This program is distributed in the hope that it will be useful,
+ but WITHOUT ANY WARRANTY; without even the implied warranty of
+ MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ GNU Affero General Public License for more details.
+
+ You should have received a copy of the GNU Affero General Public License
+ along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.lmu.ifi.dbs.elki.index.tree.spatial.rstarvariants.rstar.RStarTreeNode;
+
+/**
+ * Unit test for the 2Q page cache.
+ * 
+ * @author Erich Schubert
+ * @since 0.7.1
+ */
+public class TwoQueueCacheTest {
+  /**
+   * Page size used.
+   */
+  private static final int PAGESIZE = 100;
+
+  /**
+   * Test that a re-referenced page is promoted to the main queue, and survives
+   * a large scan.
+   */
+  @Test
+  public void testScanResistance() {
+    CountingPageFile backing = makeBacking(100, 0);
+    // Capacity 8 pages: A1in holds 2, A1out remembers 4 page ids.
+    TwoQueueCache<RStarTreeNode> cache = new TwoQueueCache<>(8 * PAGESIZE, backing, false);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+
+    // First access: pages enter A1in.
+    cache.readPage(0);
+    cache.readPage(1);
+    assertEquals("Misses", 2, backing.reads);
+    // Second access while still in A1in: hits, no promotion.
+    cache.readPage(0);
+    assertEquals("Should be a hit", 2, backing.reads);
+    // Push 0 and 1 out of A1in (into A1out), then re-reference them.
+    for(int i = 10; i < 18; i++) {
+      cache.readPage(i);
+    }
+    assertEquals("Misses", 10, backing.reads);
+    cache.readPage(0);
+    cache.readPage(1);
+    assertEquals("Re-references are misses", 12, backing.reads);
+
+    // A long scan must not evict the hot pages from Am.
+    for(int i = 20; i < 100; i++) {
+      cache.readPage(i);
+    }
+    assertEquals("Scan pages are misses", 92, backing.reads);
+    cache.readPage(0);
+    cache.readPage(1);
+    assertEquals("Hot pages must stay resident", 92, backing.reads);
+    // But scan pages are not retained beyond A1in.
+    cache.readPage(20);
+    assertEquals("Scan page should have been evicted", 93, backing.reads);
+  }
+
+  /**
+   * Test that a least recently used page of the main queue is evicted, once
+   * more pages become hot than fit into the cache.
+   */
+  @Test
+  public void testMainQueueLRU() {
+    CountingPageFile backing = makeBacking(100, 0);
+    TwoQueueCache<RStarTreeNode> cache = new TwoQueueCache<>(8 * PAGESIZE, backing, false);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    // Make pages hot in two rounds: 0..3 first, then 4..7.
+    for(int round = 0; round < 2; round++) {
+      for(int i = round * 4; i < round * 4 + 4; i++) {
+        cache.readPage(i); // Admit to A1in
+      }
+      for(int i = 50; i < 54; i++) {
+        cache.readPage(i); // Push out into A1out
+      }
+      for(int i = round * 4; i < round * 4 + 4; i++) {
+        cache.readPage(i); // Promote to Am
+      }
+    }
+    // Touch page 0, so that 1 is the least recently used hot page.
+    cache.readPage(0);
+    int reads = backing.reads;
+    // Am now holds 8 - 2 = 6 pages at most, so some hot pages were evicted;
+    // but page 0 was used most recently.
+    cache.readPage(0);
+    assertEquals("Most recently used page evicted", reads, backing.reads);
+    cache.readPage(1);
+    assertEquals("Least recently used page should be evicted", reads + 1, backing.reads);
+  }
+
+  /**
+   * Test pinning of directory pages.
+   */
+  @Test
+  public void testPinDirectory() {
+    // Pages 0..3 are directory pages.
+    CountingPageFile backing = makeBacking(100, 4);
+    TwoQueueCache<RStarTreeNode> cache = new TwoQueueCache<>(8 * PAGESIZE, backing, true);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < 100; i++) {
+      cache.readPage(i);
+    }
+    assertEquals("Misses", 100, backing.reads);
+    for(int i = 0; i < 4; i++) {
+      assertEquals("Wrong page", i, cache.readPage(i).getPageID());
+    }
+    assertEquals("Directory pages must stay pinned", 100, backing.reads);
+  }
+
+  /**
+   * Test writes are cached, and written back on eviction.
+   */
+  @Test
+  public void testWriteBack() {
+    CountingPageFile backing = makeBacking(0, 0);
+    TwoQueueCache<RStarTreeNode> cache = new TwoQueueCache<>(8 * PAGESIZE, backing, false);
+    cache.initialize(new DefaultPageHeader(PAGESIZE));
+    for(int i = 0; i < 20; i++) {
+      assertEquals("Page id", i, cache.writePage(new RStarTreeNode(4, true)));
+    }
+    // Evicted pages must have been written to the backing file.
+    for(int i = 0; i < 12; i++) {
+      assertEquals("Page not written back", i, backing.readPage(i).getPageID());
+    }
+    cache.flush();
+    for(int i = 0; i < 20; i++) {
+      assertEquals("Page not written back", i, backing.readPage(i).getPageID());
+    }
+  }
+
+  /**
+   * Build a backing page file.
+   * 
+   * @param numpages Number of pages
+   * @param numdir Number of directory pages (at the beginning)
+   * @return Page file
+   */
+  private static CountingPageFile makeBacking(int numpages, int numdir) {
+    CountingPageFile backing = new CountingPageFile();
+    for(int i = 0; i < numpages; i++) {
+      backing.writePage(new RStarTreeNode(4, i >= numdir));
+    }
+    return backing;
+  }
+
+  /**
+   * Memory page file counting the reads.
+   * 
+   * @author Erich Schubert
+   */
+  private static class CountingPageFile extends MemoryPageFile<RStarTreeNode> {
+    /**
+     * Number of reads.
+     */
+    int reads = 0;
+
+    /**
+     * Constructor.
+     */
+    public CountingPageFile() {
+      super(PAGESIZE);
+    }
+
+    @Override
+    public synchronized RStarTreeNode readPage(int pageID) {
+      ++reads;
+      return super.readPage(pageID);
+    }
+  }
+}